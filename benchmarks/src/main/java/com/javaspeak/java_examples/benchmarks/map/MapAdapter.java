@@ -0,0 +1,150 @@
+package com.javaspeak.java_examples.benchmarks.map;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.javaspeak.java_examples.concurrency.custom.map.concurrent.ConcurrentMap;
+import com.javaspeak.java_examples.concurrency.custom.map.concurrent.ConcurrentMapImpl;
+import com.javaspeak.java_examples.concurrency.custom.map.concurrent.ShardedConcurrentMapImpl;
+
+/**
+ * MapAdapter gives the benchmarks the same get, put and remove over ConcurrentMapImpl and the
+ * maps of the JDK, so that each workload is written once and run against every map.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public interface MapAdapter {
+
+    /**
+     * Maps which can be benchmarked.  The names are the values of the implementation @Param.
+     */
+    public enum Implementation {
+
+        ConcurrentMapImpl, ShardedConcurrentMapImpl, ConcurrentHashMap;
+
+
+        /**
+         * @param initialCapacity
+         *      number of keys the map is expected to hold
+         *
+         * @return empty map of this implementation
+         */
+        public MapAdapter create( int initialCapacity ) {
+
+            switch ( this ) {
+
+                case ConcurrentMapImpl:
+                    return new ConcurrentMapAdapter( initialCapacity );
+
+                case ShardedConcurrentMapImpl:
+                    return new ConcurrentMapAdapter( new ShardedConcurrentMapImpl<>() );
+
+                default:
+                    return new ConcurrentHashMapAdapter( initialCapacity );
+            }
+        }
+    }
+
+
+    public Long get( Long key );
+
+
+    public Long put( Long key, Long value );
+
+
+    public void remove( Long key );
+
+
+    public long size();
+
+
+    /**
+     * MapAdapter over ConcurrentMapImpl or another ConcurrentMap of this repository
+     */
+    public static final class ConcurrentMapAdapter implements MapAdapter {
+
+        private final ConcurrentMap<Long, Long> map;
+
+        public ConcurrentMapAdapter( int initialCapacity ) {
+
+            // Same load factor as ConcurrentHashMap is sized with
+            int bucketSize = Integer.highestOneBit( Math.max( 16, initialCapacity * 4 / 3 ) ) << 1;
+            this.map = new ConcurrentMapImpl<>( bucketSize );
+        }
+
+
+        public ConcurrentMapAdapter( ConcurrentMap<Long, Long> map ) {
+
+            this.map = map;
+        }
+
+
+        @Override
+        public Long get( Long key ) {
+
+            return map.getValue( key );
+        }
+
+
+        @Override
+        public Long put( Long key, Long value ) {
+
+            return map.put( key, value );
+        }
+
+
+        @Override
+        public void remove( Long key ) {
+
+            map.remove( key );
+        }
+
+
+        @Override
+        public long size() {
+
+            return map.size();
+        }
+    }
+
+
+    /**
+     * MapAdapter over java.util.concurrent.ConcurrentHashMap
+     */
+    public static final class ConcurrentHashMapAdapter implements MapAdapter {
+
+        private final ConcurrentHashMap<Long, Long> map;
+
+        public ConcurrentHashMapAdapter( int initialCapacity ) {
+
+            this.map = new ConcurrentHashMap<>( initialCapacity );
+        }
+
+
+        @Override
+        public Long get( Long key ) {
+
+            return map.get( key );
+        }
+
+
+        @Override
+        public Long put( Long key, Long value ) {
+
+            return map.put( key, value );
+        }
+
+
+        @Override
+        public void remove( Long key ) {
+
+            map.remove( key );
+        }
+
+
+        @Override
+        public long size() {
+
+            return map.size();
+        }
+    }
+}
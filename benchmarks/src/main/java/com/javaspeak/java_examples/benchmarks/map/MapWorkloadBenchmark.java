@@ -0,0 +1,247 @@
+package com.javaspeak.java_examples.benchmarks.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of ConcurrentMapImpl against java.util.concurrent.ConcurrentHashMap under three
+ * mixes of operations:
+ * <p>
+ *     readHeavy   : 90% get, 9% put, 1% remove<p>
+ *     writeHeavy  : 10% get, 80% put, 10% remove<p>
+ *     deleteHeavy : 10% get, 45% put, 45% remove
+ * <p>
+ * The keys are drawn either uniformly or from a scrambled Zipfian distribution with the theta of
+ * YCSB, where a few hot keys take most of the operations and so most of the contention.  Each
+ * thread draws its keys and operations up front into arrays which it then walks round, so the
+ * measured time is the map and not the random number generator or boxing.
+ * <p>
+ * main(..) runs every benchmark with 1, 2, 4, ... threads up to the number of processors and
+ * writes the results of each thread count as JSON to target/jmh-result-&lt;threads&gt;-threads.json.
+ * Any JMH options given on the command line, such as -wi 1 -i 3 -f 1, are passed on:
+ * <p>
+ *     mvn install -DskipTests<p>
+ *     mvn -f benchmarks/pom.xml package<p>
+ *     java -jar benchmarks/target/benchmarks.jar
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class MapWorkloadBenchmark {
+
+    private static final int OPERATIONS_PER_THREAD = 1 << 16;
+    private static final long FIRST_KEY = 1_000_000;
+
+    private static final byte GET = 0;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    public enum Distribution {
+
+        UNIFORM, ZIPFIAN
+    }
+
+
+    @Param( { "ConcurrentMapImpl", "ShardedConcurrentMapImpl", "ConcurrentHashMap" } )
+    public MapAdapter.Implementation implementation;
+
+    @Param( { "UNIFORM", "ZIPFIAN" } )
+    public Distribution distribution;
+
+    @Param( { "100000" } )
+    public int keyCount;
+
+    private MapAdapter map;
+    private Long[] keys;
+
+
+    /**
+     * Keys and operations of one thread
+     */
+    @State( Scope.Thread )
+    public static class ThreadState {
+
+        private Long[] keys;
+        private byte[] readHeavyOperations;
+        private byte[] writeHeavyOperations;
+        private byte[] deleteHeavyOperations;
+        private int cursor;
+
+
+        @Setup( Level.Trial )
+        public void setUp( MapWorkloadBenchmark benchmark, ThreadParams threadParams ) {
+
+            long seed = 31L * threadParams.getThreadIndex() + 17;
+            SplittableRandom random = new SplittableRandom( seed );
+
+            ZipfianGenerator zipfianGenerator =
+                    benchmark.distribution == Distribution.ZIPFIAN ?
+                            new ZipfianGenerator(
+                                    benchmark.keyCount, ZipfianGenerator.YCSB_THETA, true, seed ) :
+                            null;
+
+            keys = new Long[OPERATIONS_PER_THREAD];
+
+            for ( int i = 0; i < OPERATIONS_PER_THREAD; i++ ) {
+
+                int index = zipfianGenerator != null ?
+                        zipfianGenerator.next() : random.nextInt( benchmark.keyCount );
+
+                keys[i] = benchmark.keys[index];
+            }
+
+            readHeavyOperations = operations( random, 90, 9 );
+            writeHeavyOperations = operations( random, 10, 80 );
+            deleteHeavyOperations = operations( random, 10, 45 );
+        }
+
+
+        private static byte[] operations( SplittableRandom random, int getPercent, int putPercent ) {
+
+            byte[] operations = new byte[OPERATIONS_PER_THREAD];
+
+            for ( int i = 0; i < OPERATIONS_PER_THREAD; i++ ) {
+
+                int percent = random.nextInt( 100 );
+
+                operations[i] =
+                        percent < getPercent ? GET :
+                                percent < getPercent + putPercent ? PUT : REMOVE;
+            }
+
+            return operations;
+        }
+
+
+        private int next() {
+
+            return cursor++ & ( OPERATIONS_PER_THREAD - 1 );
+        }
+    }
+
+
+    @Setup( Level.Trial )
+    public void setUp() {
+
+        map = implementation.create( keyCount );
+        keys = new Long[keyCount];
+
+        // Outside the Long cache so that every key is a distinct object, as in use
+        for ( int i = 0; i < keyCount; i++ ) {
+
+            keys[i] = FIRST_KEY + i;
+            map.put( keys[i], keys[i] );
+        }
+    }
+
+
+    private Long execute( byte operation, Long key ) {
+
+        switch ( operation ) {
+
+            case GET:
+                return map.get( key );
+
+            case PUT:
+                return map.put( key, key );
+
+            default:
+                map.remove( key );
+                return null;
+        }
+    }
+
+
+    @Benchmark
+    public Long readHeavy( ThreadState threadState ) {
+
+        int i = threadState.next();
+        return execute( threadState.readHeavyOperations[i], threadState.keys[i] );
+    }
+
+
+    @Benchmark
+    public Long writeHeavy( ThreadState threadState ) {
+
+        int i = threadState.next();
+        return execute( threadState.writeHeavyOperations[i], threadState.keys[i] );
+    }
+
+
+    @Benchmark
+    public Long deleteHeavy( ThreadState threadState ) {
+
+        int i = threadState.next();
+        return execute( threadState.deleteHeavyOperations[i], threadState.keys[i] );
+    }
+
+
+    /**
+     * @return 1, 2, 4, ... up to and including the number of processors
+     */
+    private static List<Integer> threadCounts() {
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<>();
+
+        for ( int threads = 1; threads < processors; threads *= 2 ) {
+
+            threadCounts.add( threads );
+        }
+
+        threadCounts.add( processors );
+        return threadCounts;
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions( args );
+
+        // A benchmark named on the command line, such as readHeavy, narrows the run down to it
+        String include =
+                commandLineOptions.getIncludes().isEmpty() ?
+                        MapWorkloadBenchmark.class.getSimpleName() :
+                        commandLineOptions.getIncludes().get( 0 );
+
+        for ( int threads : threadCounts() ) {
+
+            Options options =
+                    new OptionsBuilder()
+                            .parent( commandLineOptions )
+                            .include( include )
+                            .threads( threads )
+                            .resultFormat( ResultFormatType.JSON )
+                            .result( "target/jmh-result-" + threads + "-threads.json" )
+                            .build();
+
+            new Runner( options ).run();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.javaspeak.java_examples.benchmarks.map;
+
+import java.util.SplittableRandom;
+
+/**
+ * ZipfianGenerator returns numbers from 0 to itemCount - 1 where the probability of number i is
+ * proportional to 1 / ( i + 1 ) ^ theta, so a few numbers are drawn very often and most are drawn
+ * rarely, as with the keys of a cache.  With the theta of 0.99 used by YCSB the most popular 1% of
+ * 100,000 keys take about half of the draws.
+ * <p>
+ * It uses the rejection-free method of Gray et al, "Quickly Generating Billion-Record Synthetic
+ * Databases", which needs zeta( itemCount, theta ) computed once in the constructor.  When
+ * scrambled, the ranks are hashed so that the popular keys are spread over the key space rather
+ * than being 0, 1, 2, ... which would all sit next to each other in the bins of a map.
+ * <p>
+ * ZipfianGenerator is not thread safe.  Each benchmark thread has its own.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class ZipfianGenerator {
+
+    public static final double YCSB_THETA = 0.99;
+
+    private final int itemCount;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+    private final boolean scrambled;
+    private final SplittableRandom random;
+
+
+    /**
+     * @param itemCount
+     *      number of distinct numbers to draw from
+     *
+     * @param theta
+     *      skew, where 0 is uniform and the larger theta is the more skewed the draws
+     *
+     * @param scrambled
+     *      whether the popular numbers are spread over 0 .. itemCount - 1
+     *
+     * @param seed
+     *      seed of the random numbers so that runs can be repeated
+     */
+    public ZipfianGenerator( int itemCount, double theta, boolean scrambled, long seed ) {
+
+        if ( itemCount < 2 || theta <= 0 || theta == 1 ) {
+
+            throw new IllegalArgumentException( "itemCount must be > 1 and theta > 0 and != 1" );
+        }
+
+        this.itemCount = itemCount;
+        this.theta = theta;
+        this.scrambled = scrambled;
+        this.random = new SplittableRandom( seed );
+        this.alpha = 1 / ( 1 - theta );
+        this.zetaN = zeta( itemCount, theta );
+        this.eta = ( 1 - Math.pow( 2.0 / itemCount, 1 - theta ) ) / ( 1 - zeta( 2, theta ) / zetaN );
+    }
+
+
+    private static double zeta( int n, double theta ) {
+
+        double sum = 0;
+
+        for ( int i = 1; i <= n; i++ ) {
+
+            sum += 1 / Math.pow( i, theta );
+        }
+
+        return sum;
+    }
+
+
+    /**
+     * @return hash of the rank which is the same for the same rank
+     */
+    private static long mix( long rank ) {
+
+        rank = ( rank ^ ( rank >>> 33 ) ) * 0xff51afd7ed558ccdL;
+        rank = ( rank ^ ( rank >>> 33 ) ) * 0xc4ceb9fe1a85ec53L;
+        return rank ^ ( rank >>> 33 );
+    }
+
+
+    /**
+     * @return next number from 0 to itemCount - 1
+     */
+    public int next() {
+
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        int rank;
+
+        if ( uz < 1 ) {
+
+            rank = 0;
+        }
+        else if ( uz < 1 + Math.pow( 0.5, theta ) ) {
+
+            rank = 1;
+        }
+        else {
+
+            rank = ( int )( itemCount * Math.pow( eta * u - eta + 1, alpha ) );
+            rank = Math.min( rank, itemCount - 1 );
+        }
+
+        return scrambled ? ( int )Long.remainderUnsigned( mix( rank ), itemCount ) : rank;
+    }
+}
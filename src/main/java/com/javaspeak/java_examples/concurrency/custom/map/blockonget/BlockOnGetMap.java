@@ -1,6 +1,9 @@
 package com.javaspeak.java_examples.concurrency.custom.map.blockonget;
 
- 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author John Dickerson - 15 Dec 2022
  */
@@ -9,6 +12,53 @@ public interface BlockOnGetMap<K, V> {
     V get( K k, Integer timeoutMilli );
 
 
+    /**
+     * Waits for the value of the key like get(..) without holding a thread while it waits
+     *
+     * @param k
+     *      key to wait for the value of
+     *
+     * @param timeoutMilli
+     *      how long to wait for the value
+     *
+     * @return CompletableFuture completed with the value when it is put, or with null if it is not
+     *      put within the timeout.  It is completed on the thread doing the put or on the thread
+     *      of a TimerWheel, so long running stages should be added with the async methods of
+     *      CompletableFuture.
+     */
+    CompletableFuture<V> getAsync( K k, Integer timeoutMilli );
+
+
+    /**
+     * Waits for the values of many keys at once.  The timeout covers the whole wait rather than
+     * each key.
+     *
+     * @param keys
+     *      keys to wait for the values of
+     *
+     * @param timeoutMilli
+     *      how long to wait for all the values
+     *
+     * @return values which arrived within the timeout, by key, in the order of the keys
+     */
+    Map<K, V> getAll( Collection<? extends K> keys, Integer timeoutMilli );
+
+
+    /**
+     * Waits for the value of whichever of the keys is put first.  The values of the other keys
+     * are left in the map for later gets.
+     *
+     * @param keys
+     *      keys to wait for the value of one of
+     *
+     * @param timeoutMilli
+     *      how long to wait
+     *
+     * @return first key and value to arrive, or null if none arrived within the timeout
+     */
+    Map.Entry<K, V> awaitAny( Collection<? extends K> keys, Integer timeoutMilli );
+
+
     void put( K k, V v );
 
 
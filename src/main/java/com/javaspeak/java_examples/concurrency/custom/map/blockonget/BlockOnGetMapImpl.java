@@ -1,198 +1,894 @@
 package com.javaspeak.java_examples.concurrency.custom.map.blockonget;
 
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntBiFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.javaspeak.java_examples.concurrency.custom.map.concurrent.ConcurrentMap;
+import com.javaspeak.java_examples.concurrency.custom.map.concurrent.ConcurrentMapImpl;
+import com.javaspeak.java_examples.concurrency.custom.timer.Timeout;
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheel;
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheelImpl;
 
 /**
  * This class is to be used as follows:
- * 
- * We have a request with an asynchronous response. We want to block waiting for the asynchronous 
+ *
+ * We have a request with an asynchronous response. We want to block waiting for the asynchronous
  * response.
- * 
+ *
  * Here are the steps:
- * 
+ *
  * (i) We create an ID.
- * 
+ *
  * (ii) We make the request to a remote service and pass it the ID.  The response from the remote
  *      service is asynchronous and it will pass back the ID.
- *      
+ *
  * (iii) We call BlockOnGetMap.get( ID ) and block on it.
- * 
- * (iv) Another thread handles the asynchronous response, gets the ID and puts it in the 
+ *
+ * (iv) Another thread handles the asynchronous response, gets the ID and puts it in the
  *     BlockOnGetMap.
- * 
+ *
  * (v) The method that was blocking on BlockOnGetMap now gets its value.
- * 
- * The call doing the get then removes the key and value from the underlying maps.
- * 
- * Note that a synchronized block is synchronizing on a monitor.  It cares about the reference
- * of the object. That is why we have a second map so we can dig out the monitor.
- * 
+ *
+ * The call doing the get then removes the key and value from the underlying map.
+ * <p>
+ * Each key has its own Rendezvous, a CompletableFuture which is kept in a lock-free
+ * ConcurrentMapImpl.  Whichever of get(..) and put(..) comes first adds the Rendezvous for the
+ * key with computeIfAbsent(..) or putIfAbsent(..).  get(..) waits on it and put(..) completes it,
+ * so a get and a put only ever meet on the Rendezvous of their own key, and gets and puts of
+ * different keys share no lock or monitor.
+ * <p>
+ * A get(..) which times out cancels its Rendezvous before removing it.  If a put(..) completes
+ * it first, the get returns the value rather than dropping it.  If the get cancels it first, the
+ * put cannot complete it and adds a new Rendezvous instead, which holds the value until the next
+ * get of the key or until it is purged.  Putting a key which already holds an unclaimed value
+ * replaces the value.  Each value put is claimed by one get: if several gets of a key are waiting
+ * they all return it, but a get which comes after it has been claimed waits for the next put.
+ * <p>
+ * getAsync(..), getAll(..) and awaitAny(..) wait on the same Rendezvous without a thread.  Each
+ * is a Waiter, which adds a stage to the Rendezvous of each of its keys and schedules one task on
+ * a TimerWheel for its deadline, which gives up the Rendezvous in the same way as a get(..) which
+ * times out.  A pending getAsync(..) therefore costs a few small objects and a Timeout, and one
+ * TimerWheel thread times out any number of them.  getAll(..) and awaitAny(..) block on the
+ * result of their Waiter, so however many keys they wait for there is one deadline and the
+ * thread is woken once, when all the values or the first value have arrived.
+ * <p>
+ * get(..) waits in CompletableFuture.get(..), which parks the thread with LockSupport.park(..)
+ * while holding no monitor.  A virtual thread waiting in get(..) therefore unmounts from its
+ * carrier thread rather than pinning it, so a virtual thread per waiting request is cheap.
+ * <p>
+ * A value put before anybody waits for it is purged if it is not claimed within
+ * maxMilliSecondsInMap.  The put schedules the purge on the TimerWheel, which costs O(1) whatever
+ * the number of values waiting to be claimed, and the get which claims the value cancels it.
+ * Purges are counted in the BlockOnGetMapMetrics returned by getMetrics().
+ * <p>
+ * A map built with a capacity bounds the total weight of its unclaimed values, so that a burst of
+ * puts nobody gets cannot run the JVM out of memory.  Each value weighs what the weigher says,
+ * such as its size in bytes, or 1, and the weights are permits of a Semaphore which a put takes
+ * before storing its value and which are given back when the value is claimed, purged, replaced
+ * or evicted.  A put handed straight to a waiting get takes no room.  When there is no room the
+ * OverflowPolicy rejects the put, blocks it, or evicts the oldest unclaimed values, which are kept
+ * in put order in a queue.  A value handed to a Waiter which no longer wants it stays in the map
+ * and takes its room then.  Its put has already returned, so the value is never dropped: if there
+ * is no room and nothing to evict, the map goes over its capacity until values are claimed,
+ * purged or evicted, and until then puts are rejected, blocked or evict as if the map were full.
+ * Each pending key is a single Rendezvous in a single map, holding its value, weight and purge
+ * Timeout, rather than entries in three HashMaps.
+ *
  * @author John Dickerson - 15 Dec 2022
  */
 public class BlockOnGetMapImpl<K, V> implements BlockOnGetMap<K, V> {
 
-    private Map<K, V> valueMap = new HashMap<>();
-    private Map<K, K> keyMap = new HashMap<>();
-    private Map<K, Long> nanoTimeMap = new HashMap<>();
-    private ReadWriteLock readWriteLockKey = new ReentrantReadWriteLock();
-    private Long maxMilliSecondsInMap;
+    private final ConcurrentMap<K, Rendezvous<V>> rendezvousMap = new ConcurrentMapImpl<>( 64 );
+    private static final Object MISSING = new Object();
+
+    private final AtomicInteger entryCount = new AtomicInteger( 0 );
+    private final LongAdder purgedCount = new LongAdder();
+    private final LongAdder timedOutGetCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final Long maxMilliSecondsInMap;
+    private final TimerWheel timerWheel;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final Room room;
+    private final ConcurrentLinkedQueue<Map.Entry<K, Rendezvous<V>>> evictionQueue;
+
+    /**
+     * Semaphore whose permits are the room left for unclaimed values.  It can be overdrawn, which
+     * leaves fewer than no permits until enough room is given back.
+     */
+    private static final class Room extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private Room( int capacity ) {
+
+            super( capacity );
+        }
 
 
-    public BlockOnGetMapImpl( Long maxMilliSecondsInMap ) {
+        private void overdraw( int weight ) {
 
-        this.maxMilliSecondsInMap = maxMilliSecondsInMap;
+            reducePermits( weight );
+        }
     }
 
+    /**
+     * Where a get(..) and a put(..) of the same key meet.  It is completed with the value when
+     * the value is put.
+     */
+    private static final class Rendezvous<V> extends CompletableFuture<V> {
 
-    private K getMonitorKey( K k ) {
+        private volatile Timeout purgeTimeout;
 
-        Lock writeLockKey = readWriteLockKey.writeLock();
-        K monitor = null;
+        // Room the value takes in a map with a capacity, given back by whoever removes the value
+        private final AtomicInteger weight = new AtomicInteger( 0 );
 
-        try {
-            writeLockKey.lock();
-            monitor = keyMap.get( k );
+        // Set once the value is stored unclaimed, so its room is taken and its purge scheduled once
+        private final AtomicBoolean stored = new AtomicBoolean( false );
+    }
+
+
+    private final BlockOnGetMapMetrics metrics = new BlockOnGetMapMetrics() {
+
+        @Override
+        public long getPendingValueCount() {
+
+            return entryCount.get();
+        }
+
+
+        @Override
+        public long getPurgedCount() {
+
+            return purgedCount.sum();
+        }
+
+
+        @Override
+        public long getTimedOutGetCount() {
+
+            return timedOutGetCount.sum();
+        }
+
+
+        @Override
+        public long getPendingWeight() {
+
+            return room == null ? 0 : capacity - room.availablePermits();
+        }
+
+
+        @Override
+        public long getCapacity() {
+
+            return capacity;
+        }
+
+
+        @Override
+        public long getRejectedCount() {
+
+            return rejectedCount.sum();
+        }
+
+
+        @Override
+        public long getEvictedCount() {
+
+            return evictedCount.sum();
+        }
+    };
+
+
+    /**
+     * Waits without a thread for the values of one or more keys with one deadline.  Each key has
+     * a stage on the Rendezvous of the key which hands the value to take(..), and one Timeout
+     * on the TimerWheel calls timeOut() at the deadline.  Once the result is complete every
+     * Rendezvous still waited on is cancelled, in the same way as by a get(..) which times out.
+     */
+    private abstract class Waiter<R> {
+
+        protected final List<K> keys;
+        protected final CompletableFuture<R> result = new CompletableFuture<>();
+        private final AtomicReferenceArray<Rendezvous<V>> registered;
+        private Timeout timeout;
+
+        private Waiter( List<K> keys ) {
+
+            this.keys = keys;
+            this.registered = new AtomicReferenceArray<>( keys.size() );
+        }
 
-            if ( monitor == null ) {
 
-                monitor = k;
-                keyMap.put( k, monitor );
+        /**
+         * @return true if the value is wanted, in which case it is claimed from the map and then
+         *      passed to taken(..)
+         */
+        protected abstract boolean take( int index, V value );
+
+
+        /**
+         * Called with a value once it has been claimed, so that whoever the result wakes sees
+         * the map without it
+         */
+        protected abstract void taken( int index, K k, V value );
+
+
+        /**
+         * Completes the result with whatever has arrived
+         */
+        protected abstract void timeOut();
+
+
+        CompletableFuture<R> start( Integer timeoutMilli ) {
+
+            timeout = timerWheel().schedule( this::timeOut, timeoutMilli, TimeUnit.MILLISECONDS );
+            result.whenComplete( ( value, throwable ) -> finish() );
+
+            for ( int i = 0; i < keys.size() && !result.isDone(); i++ ) {
+
+                await( i );
+            }
+
+            return result;
+        }
+
+
+        private void await( int index ) {
+
+            if ( result.isDone() ) {
+
+                return;
+            }
+
+            K k = keys.get( index );
+            Rendezvous<V> rendezvous =
+                    rendezvousMap.computeIfAbsent( k, key -> new Rendezvous<>() );
+
+            registered.set( index, rendezvous );
+
+            // finish() may have run before the Rendezvous was registered
+            if ( result.isDone() ) {
+
+                rendezvous.cancel( false );
             }
 
-            return monitor;
+            rendezvous.whenComplete( ( value, throwable ) -> {
+
+                if ( throwable == null ) {
+
+                    if ( take( index, value ) ) {
+
+                        claim( k, rendezvous );
+                        taken( index, k, value );
+                    }
+                    else if ( rendezvous.stored.compareAndSet( false, true ) ) {
+
+                        // Nobody may be left waiting for the value so it is stored unclaimed
+                        declined( k, rendezvous, value );
+                    }
+
+                    return;
+                }
+
+                // Given up by this Waiter or by another get of the same key
+                rendezvousMap.remove( k, rendezvous );
+                await( index );
+            } );
         }
-        finally {
-            writeLockKey.unlock();
+
+
+        private void finish() {
+
+            timeout.cancel();
+
+            for ( int i = 0; i < registered.length(); i++ ) {
+
+                Rendezvous<V> rendezvous = registered.get( i );
+
+                if ( rendezvous != null ) {
+
+                    rendezvous.cancel( false );
+                }
+            }
         }
     }
 
 
-    private void removeKey( K k ) {
+    /**
+     * Completes with the first key and value to arrive, or with null at the deadline
+     */
+    private final class AnyWaiter extends Waiter<Map.Entry<K, V>> {
 
-        Lock writeLockKey = readWriteLockKey.writeLock();
+        private final AtomicBoolean decided = new AtomicBoolean( false );
 
-        try {
-            writeLockKey.lock();
-            keyMap.remove( k );
-            nanoTimeMap.remove( k );
+        private AnyWaiter( List<K> keys ) {
+
+            super( keys );
+        }
+
+
+        @Override
+        protected boolean take( int index, V value ) {
+
+            return decided.compareAndSet( false, true );
         }
-        finally {
 
-            writeLockKey.unlock();
+
+        @Override
+        protected void taken( int index, K k, V value ) {
+
+            result.complete( new AbstractMap.SimpleImmutableEntry<>( k, value ) );
+        }
+
+
+        @Override
+        protected void timeOut() {
+
+            if ( decided.compareAndSet( false, true ) ) {
+
+                timedOutGetCount.increment();
+                result.complete( null );
+            }
         }
     }
 
 
-    private void purgeExpiredKeys() {
+    /**
+     * Completes with the values of all the keys once they have all arrived, or with the values
+     * which have arrived at the deadline
+     */
+    private final class AllWaiter extends Waiter<Map<K, V>> {
 
-        Long now = System.nanoTime();
-        List<K> keysToDelete = new ArrayList<>();
-        
-        for ( Entry<K, Long> entry : nanoTimeMap.entrySet() ) {
+        private final AtomicReferenceArray<Object> values;
+        private final AtomicInteger remaining;
 
-            Long diff = ( now - entry.getValue() ) / 1000000;
+        private AllWaiter( List<K> keys ) {
 
-            if ( diff > maxMilliSecondsInMap ) {
+            super( keys );
+            this.values = new AtomicReferenceArray<>( keys.size() );
+            this.remaining = new AtomicInteger( keys.size() );
 
-                keysToDelete.add( entry.getKey() );
+            if ( keys.isEmpty() ) {
+
+                result.complete( Collections.emptyMap() );
             }
         }
 
-        for ( K k : keysToDelete ) {
 
-            K valueKey = keyMap.get( k );
-            valueMap.remove( valueKey );
-            keyMap.remove( k );
-            nanoTimeMap.remove( k );
-            System.out.println( "Purged key: " + k );
+        @Override
+        protected boolean take( int index, V value ) {
+
+            // Fails if timeOut() has already marked the key as missing
+            return values.compareAndSet( index, null, value );
         }
-    }
 
 
-    @Override
-    public V get( K k, Integer timeoutMilli ) {
+        @Override
+        protected void taken( int index, K k, V value ) {
+
+            if ( remaining.decrementAndGet() == 0 ) {
+
+                result.complete( toMap() );
+            }
+        }
 
-        K monitor = getMonitorKey( k );
-        V value = null;
 
-        synchronized ( monitor ) {
+        @Override
+        protected void timeOut() {
 
-            try {
-                value = valueMap.get( monitor );
+            boolean missing = false;
+
+            for ( int i = 0; i < values.length(); i++ ) {
+
+                missing |= values.compareAndSet( i, null, MISSING );
+            }
+
+            if ( result.complete( toMap() ) && missing ) {
+
+                timedOutGetCount.increment();
+            }
+        }
 
-                if ( value != null ) {
 
-                    return value;
+        @SuppressWarnings( "unchecked" )
+        private Map<K, V> toMap() {
+
+            Map<K, V> map = new LinkedHashMap<>();
+
+            for ( int i = 0; i < values.length(); i++ ) {
+
+                Object value = values.get( i );
+
+                if ( value != null && value != MISSING ) {
+
+                    map.put( keys.get( i ), ( V )value );
                 }
+            }
+
+            return map;
+        }
+    }
+
 
-                long start = System.nanoTime();
+    /**
+     * Constructor
+     *
+     * @param maxMilliSecondsInMap
+     *      how long a value which has not been claimed stays in the map
+     *
+     * @param timerWheel
+     *      TimerWheel which times out getAsync(..) and purges unclaimed values, or null to use
+     *      TimerWheelImpl.shared()
+     */
+    public BlockOnGetMapImpl( Long maxMilliSecondsInMap, TimerWheel timerWheel ) {
+
+        this( maxMilliSecondsInMap, timerWheel, Integer.MAX_VALUE, null, null );
+    }
+
+
+    /**
+     * Constructor of a map which holds at most capacity worth of unclaimed values
+     *
+     * @param maxMilliSecondsInMap
+     *      how long a value which has not been claimed stays in the map
+     *
+     * @param timerWheel
+     *      TimerWheel which times out getAsync(..) and purges unclaimed values, or null to use
+     *      TimerWheelImpl.shared()
+     *
+     * @param capacity
+     *      total weight of the unclaimed values the map may hold
+     *
+     * @param overflowPolicy
+     *      what a put(..) does when there is no room for its value
+     *
+     * @param weigher
+     *      room each value takes, such as its size in bytes, or null for 1 per value
+     */
+    public BlockOnGetMapImpl(
+            Long maxMilliSecondsInMap, TimerWheel timerWheel, int capacity,
+            OverflowPolicy overflowPolicy, ToIntBiFunction<? super K, ? super V> weigher ) {
+
+        if ( capacity < 1 ) {
+
+            throw new IllegalArgumentException( "capacity must be positive" );
+        }
+
+        this.maxMilliSecondsInMap = maxMilliSecondsInMap;
+        this.timerWheel = timerWheel;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.weigher = weigher == null ? ( k, v ) -> 1 : weigher;
+        this.room = overflowPolicy == null ? null : new Room( capacity );
+
+        this.evictionQueue =
+                overflowPolicy == OverflowPolicy.EVICT_OLDEST ?
+                        new ConcurrentLinkedQueue<>() : null;
+    }
+
+
+    public BlockOnGetMapImpl( Long maxMilliSecondsInMap ) {
+
+        this( maxMilliSecondsInMap, null );
+    }
+
+
+    private TimerWheel timerWheel() {
+
+        return timerWheel == null ? TimerWheelImpl.shared() : timerWheel;
+    }
+
+
+    /**
+     * Schedules the purge of a value which was put before anybody waited for it
+     */
+    private void schedulePurge( K k, Rendezvous<V> rendezvous ) {
+
+        rendezvous.purgeTimeout =
+                timerWheel().schedule(
+                        () -> purge( k, rendezvous ), maxMilliSecondsInMap, TimeUnit.MILLISECONDS );
+    }
+
+
+    private void purge( K k, Rendezvous<V> rendezvous ) {
+
+        if ( rendezvousMap.remove( k, rendezvous ) ) {
+
+            entryCount.decrementAndGet();
+            purgedCount.increment();
+            releaseRoom( rendezvous );
+        }
+    }
+
+
+    /**
+     * Takes room for a value which is to be stored until a get claims it
+     */
+    private void makeRoom( int weight ) {
+
+        if ( room == null ) {
+
+            return;
+        }
+
+        if ( weight < 0 || weight > capacity ) {
+
+            throw new IllegalArgumentException(
+                    "Weight " + weight + " is not between 0 and the capacity " + capacity );
+        }
+
+        switch ( overflowPolicy ) {
+
+            case REJECT:
+
+                if ( !room.tryAcquire( weight ) ) {
+
+                    rejectedCount.increment();
+                    throw new IllegalStateException( "BlockOnGetMap is full" );
+                }
 
-                while ( true ) {
+                return;
 
-                    long now = System.nanoTime();
-                    long diff = now - start;
-                    long diffMilli = diff / 1000000;
-                    long remainingMilli = timeoutMilli - diffMilli;
+            case EVICT_OLDEST:
 
-                    k.wait( remainingMilli );
+                while ( !room.tryAcquire( weight ) ) {
 
-                    if ( remainingMilli < 0 ) {
+                    if ( !evictOldest() ) {
 
-                        break;
+                        // The room is held by puts which have not added their values yet
+                        Thread.yield();
                     }
                 }
 
-                value = valueMap.get( monitor );
-                return value;
+                return;
+
+            default:
+
+                try {
+                    room.acquire( weight );
+                }
+                catch ( InterruptedException e ) {
+
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException( "Interrupted waiting for room", e );
+                }
+        }
+    }
+
+
+    /**
+     * Takes room without blocking for a value handed to a Waiter which did not want it
+     *
+     * @return false if there is no room and nothing could be evicted
+     */
+    private boolean tryMakeRoom( int weight ) {
+
+        if ( weight > capacity ) {
+
+            return false;
+        }
+
+        while ( !room.tryAcquire( weight ) ) {
+
+            if ( overflowPolicy != OverflowPolicy.EVICT_OLDEST || !evictOldest() ) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private void releaseRoom( Rendezvous<V> rendezvous ) {
+
+        cancelPurge( rendezvous );
+
+        if ( room != null ) {
+
+            room.release( rendezvous.weight.getAndSet( 0 ) );
+        }
+    }
+
+
+    /**
+     * @return true if an unclaimed value was evicted
+     */
+    private boolean evictOldest() {
+
+        for ( Map.Entry<K, Rendezvous<V>> entry; ( entry = evictionQueue.poll() ) != null; ) {
+
+            if ( rendezvousMap.remove( entry.getKey(), entry.getValue() ) ) {
+
+                entryCount.decrementAndGet();
+                evictedCount.increment();
+                releaseRoom( entry.getValue() );
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Called once a value which nobody was waiting for has been added to the map
+     */
+    private void stored( K k, Rendezvous<V> rendezvous ) {
+
+        schedulePurge( k, rendezvous );
+
+        if ( evictionQueue == null ) {
+
+            return;
+        }
+
+        evictionQueue.add( new AbstractMap.SimpleImmutableEntry<>( k, rendezvous ) );
+
+        // Every value is claimed or purged within maxMilliSecondsInMap, so dropping those at the
+        // head keeps the queue to the values put within that time
+        for ( Map.Entry<K, Rendezvous<V>> head; ( head = evictionQueue.peek() ) != null; ) {
+
+            if ( rendezvousMap.getValue( head.getKey() ) == head.getValue() ) {
+
+                break;
             }
-            catch ( InterruptedException e ) {
 
-                System.out.println( "Interrupted" );
-                return null;
+            evictionQueue.remove( head );
+        }
+    }
+
+
+    /**
+     * Called once a value handed straight to a Waiter has been declined, so that it stays in the
+     * map unclaimed like a value put before anybody waited for it.  Never blocks, as the thread
+     * handing the value over may be the TimerWheel thread.
+     */
+    private void declined( K k, Rendezvous<V> rendezvous, V value ) {
+
+        if ( room != null ) {
+
+            int weight = Math.max( 0, weigher.applyAsInt( k, value ) );
+
+            if ( !tryMakeRoom( weight ) ) {
+
+                // The put has returned, so rather than lose the value the map goes over capacity
+                room.overdraw( weight );
             }
-            finally {
-                valueMap.remove( monitor );
-                removeKey( k );
+
+            rendezvous.weight.set( weight );
+
+            // A get may have claimed the value, and given back no room, before the weight was set
+            if ( rendezvousMap.getValue( k ) != rendezvous ) {
+
+                room.release( rendezvous.weight.getAndSet( 0 ) );
+                return;
             }
         }
+
+        stored( k, rendezvous );
+    }
+
+
+    private static void cancelPurge( Rendezvous<?> rendezvous ) {
+
+        Timeout purgeTimeout = rendezvous.purgeTimeout;
+
+        if ( purgeTimeout != null ) {
+
+            purgeTimeout.cancel();
+        }
+    }
+
+
+    /**
+     * Removes a Rendezvous holding a value.  Only the get which removes it counts the value as
+     * claimed, as gets of the same key share the Rendezvous.
+     */
+    private void claim( K k, Rendezvous<V> rendezvous ) {
+
+        if ( rendezvousMap.remove( k, rendezvous ) ) {
+
+            entryCount.decrementAndGet();
+            releaseRoom( rendezvous );
+        }
     }
 
 
     @Override
-    public void put( K k, V v ) {
+    public V get( K k, Integer timeoutMilli ) {
 
-        K monitor = null;
-        Lock writeLockKey = readWriteLockKey.writeLock();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeoutMilli );
 
-        try {
-            writeLockKey.lock();
-            purgeExpiredKeys();
+        while ( true ) {
+
+            Rendezvous<V> rendezvous =
+                    rendezvousMap.computeIfAbsent( k, key -> new Rendezvous<>() );
+
+            try {
+                V value = rendezvous.get( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+                claim( k, rendezvous );
+                return value;
+            }
+            catch ( CancellationException e ) {
+
+                // Another get of the same key timed out and gave up the Rendezvous
+                rendezvousMap.remove( k, rendezvous );
 
-            monitor = keyMap.get( k );
+                if ( deadline - System.nanoTime() <= 0 ) {
 
-            if ( monitor == null ) {
+                    timedOutGetCount.increment();
+                    return null;
+                }
+            }
+            catch ( TimeoutException | InterruptedException e ) {
+
+                if ( e instanceof InterruptedException ) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                // Once cancelled a put cannot complete the Rendezvous after it has been removed
+                if ( rendezvous.cancel( false ) || rendezvous.isCancelled() ) {
+
+                    rendezvousMap.remove( k, rendezvous );
+                    timedOutGetCount.increment();
+                    return null;
+                }
+
+                // A put completed the Rendezvous after the wait gave up but before the cancel
+                claim( k, rendezvous );
+                return rendezvous.getNow( null );
+            }
+            catch ( ExecutionException e ) {
 
-                monitor = k;
-                keyMap.put( k, monitor );
-                nanoTimeMap.put( k, System.nanoTime() );
+                // Rendezvous are only ever completed with a value or cancelled
+                throw new IllegalStateException( e );
             }
         }
-        finally {
+    }
+
+
+    @Override
+    public CompletableFuture<V> getAsync( K k, Integer timeoutMilli ) {
+
+        return new AnyWaiter( List.of( k ) )
+                .start( timeoutMilli )
+                .thenApply( entry -> entry == null ? null : entry.getValue() );
+    }
+
+
+    @Override
+    public Map<K, V> getAll( Collection<? extends K> keys, Integer timeoutMilli ) {
+
+        return waitFor( new AllWaiter( new ArrayList<>( new LinkedHashSet<>( keys ) ) ),
+                timeoutMilli );
+    }
+
+
+    @Override
+    public Map.Entry<K, V> awaitAny( Collection<? extends K> keys, Integer timeoutMilli ) {
+
+        return waitFor( new AnyWaiter( new ArrayList<>( new LinkedHashSet<>( keys ) ) ),
+                timeoutMilli );
+    }
+
+
+    private <R> R waitFor( Waiter<R> waiter, Integer timeoutMilli ) {
+
+        CompletableFuture<R> result = waiter.start( timeoutMilli );
+
+        try {
+            return result.get();
+        }
+        catch ( InterruptedException e ) {
 
-            writeLockKey.unlock();
+            Thread.currentThread().interrupt();
+            waiter.timeOut();
+            return result.join();
         }
+        catch ( ExecutionException e ) {
+
+            // The result is only ever completed with a value
+            throw new IllegalStateException( e );
+        }
+    }
+
+
+    @Override
+    public void put( K k, V v ) {
+
+        Rendezvous<V> newRendezvous = null;
 
-        synchronized ( monitor ) {
+        while ( true ) {
 
-            valueMap.put( monitor, v );
-            monitor.notifyAll();
+            Rendezvous<V> rendezvous = rendezvousMap.getValue( k );
+
+            if ( rendezvous != null && rendezvous.isCancelled() ) {
+
+                // A get gave up on it and is about to remove it
+                rendezvousMap.remove( k, rendezvous );
+                continue;
+            }
+
+            if ( rendezvous != null && !rendezvous.isDone() ) {
+
+                // A get is waiting, so the value is handed straight over and takes no room.
+                // Counted before the value can be seen so that a get never takes the count below 0
+                entryCount.incrementAndGet();
+
+                if ( rendezvous.complete( v ) ) {
+
+                    if ( newRendezvous != null ) {
+
+                        releaseRoom( newRendezvous );
+                    }
+
+                    return;
+                }
+
+                entryCount.decrementAndGet();
+                continue;
+            }
+
+            if ( newRendezvous == null ) {
+
+                int weight = room == null ? 0 : weigher.applyAsInt( k, v );
+                makeRoom( weight );
+
+                newRendezvous = new Rendezvous<>();
+                newRendezvous.weight.set( weight );
+                newRendezvous.stored.set( true );
+                newRendezvous.complete( v );
+
+                // A get may have started waiting while the put waited for room
+                continue;
+            }
+
+            if ( rendezvous == null ) {
+
+                entryCount.incrementAndGet();
+
+                if ( rendezvousMap.putIfAbsent( k, newRendezvous ) == null ) {
+
+                    stored( k, newRendezvous );
+                    return;
+                }
+
+                entryCount.decrementAndGet();
+            }
+            else if ( rendezvousMap.replace( k, rendezvous, newRendezvous ) ) {
+
+                // The key held an unclaimed value, which the new value replaces
+                releaseRoom( rendezvous );
+                stored( k, newRendezvous );
+                return;
+            }
         }
     }
 
@@ -200,6 +896,42 @@ public class BlockOnGetMapImpl<K, V> implements BlockOnGetMap<K, V> {
     @Override
     public Integer getEntryCount() {
 
-        return valueMap.size();
+        return entryCount.get();
+    }
+
+
+    /**
+     * @return counters of this map
+     */
+    public BlockOnGetMapMetrics getMetrics() {
+
+        return metrics;
+    }
+
+
+    /**
+     * Publishes the metrics of this map to the platform MBeanServer as
+     * com.javaspeak.java_examples:type=BlockOnGetMap,name=&lt;name&gt;
+     *
+     * @param name
+     *      name telling this map apart from the others
+     *
+     * @return ObjectName the metrics were registered under, which can be used to unregister them
+     */
+    public ObjectName registerMetrics( String name ) {
+
+        try {
+            ObjectName objectName =
+                    new ObjectName(
+                            "com.javaspeak.java_examples:type=BlockOnGetMap,name=" +
+                                    ObjectName.quote( name ) );
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean( metrics, objectName );
+            return objectName;
+        }
+        catch ( JMException e ) {
+
+            throw new IllegalStateException( "Could not register metrics of " + name, e );
+        }
     }
 }
@@ -0,0 +1,57 @@
+package com.javaspeak.java_examples.concurrency.custom.map.blockonget;
+
+import javax.management.MXBean;
+
+/**
+ * Counters of BlockOnGetMapImpl which tell whether values are being put that nobody claims and
+ * whether gets are timing out.  BlockOnGetMapImpl.registerMetrics(..) publishes them to JMX.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@MXBean
+public interface BlockOnGetMapMetrics {
+
+    /**
+     * @return number of values which have been put and have not yet been claimed or purged
+     */
+    public long getPendingValueCount();
+
+
+    /**
+     * @return number of values purged because nobody claimed them within maxMilliSecondsInMap
+     */
+    public long getPurgedCount();
+
+
+    /**
+     * @return number of get(..), getAsync(..) and awaitAny(..) calls which timed out without a
+     *      value and getAll(..) calls which timed out without all their values
+     */
+    public long getTimedOutGetCount();
+
+
+    /**
+     * @return total weight of the unclaimed values of a map with a capacity, or 0 for a map
+     *      without one.  May briefly exceed the capacity while values declined by a Waiter are
+     *      kept
+     */
+    public long getPendingWeight();
+
+
+    /**
+     * @return total weight of the unclaimed values the map may hold
+     */
+    public long getCapacity();
+
+
+    /**
+     * @return number of puts rejected because the map was full
+     */
+    public long getRejectedCount();
+
+
+    /**
+     * @return number of unclaimed values evicted to make room for newer ones
+     */
+    public long getEvictedCount();
+}
@@ -0,0 +1,25 @@
+package com.javaspeak.java_examples.concurrency.custom.map.blockonget;
+
+/**
+ * What a BlockOnGetMapImpl with a capacity does with a put(..) which has no room for its value
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public enum OverflowPolicy {
+
+    /**
+     * put(..) throws IllegalStateException
+     */
+    REJECT,
+
+    /**
+     * put(..) waits until gets claim or purges remove enough values.  As unclaimed values are
+     * purged after maxMilliSecondsInMap, it waits at most that long.
+     */
+    BLOCK,
+
+    /**
+     * put(..) evicts the oldest unclaimed values until there is room
+     */
+    EVICT_OLDEST
+}
@@ -0,0 +1,935 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.javaspeak.java_examples.concurrency.custom.queue.RingBuffer;
+import com.javaspeak.java_examples.concurrency.custom.timer.Timeout;
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheel;
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheelImpl;
+
+/**
+ * BoundedConcurrentMapImpl is a ConcurrentMapImpl with a maximum size, for use as a cache.  Once
+ * the map holds more keys than the maximum size, the keys least likely to be used again are
+ * evicted.
+ * <p>
+ * The keys are kept in a ConcurrentMapImpl which maps each key to a Node holding its value.  The
+ * eviction policy is W-TinyLFU:
+ * <p>
+ * New keys go into a small LRU window of 1% of the maximum size.  Keys falling out of the window
+ * become candidates for the main space, which is a segmented LRU split between a probation and a
+ * protected queue.  A key used again while on probation is promoted to the protected queue, which
+ * takes up to 80% of the main space.  When the map is too big, the newest candidate on probation
+ * is compared with the oldest key on probation and the one a FrequencySketch says has been used
+ * less often recently is evicted.  A scan over many keys which are each used once therefore only
+ * churns the window and cannot flush out keys which are used again and again.
+ * <p>
+ * The queues are not thread safe and are only changed holding the eviction lock.  getValue(..)
+ * does not take it: a read records the Node it found in one of a set of striped read buffers,
+ * small lossy rings chosen by the thread, and if the ring is full the read is simply not
+ * recorded.  Writes record what they changed in a RingBuffer which is never lossy.  Whichever
+ * thread fills a read buffer or writes then drains the buffers and evicts, but only if tryLock()
+ * on the eviction lock succeeds; otherwise the thread holding it will do the work.  Only a writer
+ * finding the write buffer full waits for the lock.  The map can therefore go over its maximum
+ * size by the number of writes in flight until the next drain.
+ * <p>
+ * Node values never change.  A put of a key already in the map puts a new Node, and the old Node
+ * is removed from the queues when the buffer is drained.
+ * <p>
+ * put(key, value, ttl, unit) puts a Node holding the System.nanoTime() at which it expires and
+ * schedules its removal on a TimerWheel, which removes it from the queues like any other remove.
+ * Every operation treats an expired Node as absent as soon as its time has passed, and
+ * getValue(..) removes one it comes across, so an expired key is never returned even if the
+ * TimerWheel is running late.  size() counts expired keys until they have been removed.
+ * replace(..) and merge(..) keep the expiry of the key; put(..) replaces it.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> Key wish to put in the Map
+ * @param <V> Value wish to put in the Map
+ */
+public class BoundedConcurrentMapImpl<K, V> implements ExpiringConcurrentMap<K, V> {
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    private static final int READ_BUFFER_COUNT = Integer.highestOneBit( NCPU * 2 - 1 ) << 1;
+    private static final int WRITE_BUFFER_SIZE = 1024;
+
+    // Queue a Node is in
+    private static final int NONE = 0;
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    private final ConcurrentMapImpl<K, Node<K, V>> data;
+    private final long maximumSize;
+    private final long windowMaximumSize;
+    private final long protectedMaximumSize;
+    private final TimerWheel timerWheel;
+
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final RingBuffer<Runnable> writeBuffer = new RingBuffer<>( WRITE_BUFFER_SIZE );
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // Only used holding the evictionLock
+    private final FrequencySketch frequencySketch;
+    private final AccessOrderQueue<K, V> window = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> probation = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<>();
+    private long evictionCount;
+
+    /**
+     * Value of a key together with its place in the eviction queues.  Everything but the key, the
+     * value and the expiry is only used holding the eviction lock.
+     */
+    private static final class Node<K, V> {
+
+        private final K key;
+        private final V value;
+        private final boolean expiring;
+        private final long expiresAt;
+
+        // Set once the removal has been scheduled, which is after the Node has been put
+        private volatile Timeout timeout;
+
+        private Node<K, V> previous;
+        private Node<K, V> next;
+        private int queue = NONE;
+
+        // Set once the Node has been removed from the map, so that a late add is ignored
+        private boolean retired;
+
+        private Node( K key, V value ) {
+
+            this( key, value, false, 0 );
+        }
+
+
+        private Node( K key, V value, boolean expiring, long expiresAt ) {
+
+            this.key = key;
+            this.value = value;
+            this.expiring = expiring;
+            this.expiresAt = expiresAt;
+        }
+
+
+        private boolean isExpired( long now ) {
+
+            return expiring && now - expiresAt >= 0;
+        }
+
+
+        private KeyValuePair<K, V> toKeyValuePair() {
+
+            return expiring
+                    ? new ExpiringKeyValuePair<K, V>( key, value, expiresAt, null )
+                    : new KeyValuePair<K, V>( key, value );
+        }
+
+
+        @Override
+        public String toString() {
+
+            return String.valueOf( value );
+        }
+    }
+
+    /**
+     * Doubly linked list of Nodes from least to most recently used
+     */
+    private static final class AccessOrderQueue<K, V> {
+
+        private Node<K, V> first;
+        private Node<K, V> last;
+        private long size;
+
+        private void addLast( Node<K, V> node ) {
+
+            node.previous = last;
+            node.next = null;
+
+            if ( last == null ) {
+
+                first = node;
+            }
+            else {
+
+                last.next = node;
+            }
+
+            last = node;
+            size++;
+        }
+
+
+        private void remove( Node<K, V> node ) {
+
+            if ( node.previous == null ) {
+
+                first = node.next;
+            }
+            else {
+
+                node.previous.next = node.next;
+            }
+
+            if ( node.next == null ) {
+
+                last = node.previous;
+            }
+            else {
+
+                node.next.previous = node.previous;
+            }
+
+            node.previous = null;
+            node.next = null;
+            size--;
+        }
+
+
+        private void moveToLast( Node<K, V> node ) {
+
+            if ( node != last ) {
+
+                remove( node );
+                addLast( node );
+            }
+        }
+    }
+
+    /**
+     * Lossy ring of Nodes that have been read.  Any thread may offer a Node; a Node is dropped if
+     * the ring is full or another thread wins the CAS for the same slot.  The ring is only
+     * drained holding the eviction lock.
+     */
+    private static final class ReadBuffer<K, V> {
+
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Node<K, V>> nodes = new AtomicReferenceArray<>( SIZE );
+        private final AtomicLong writeCounter = new AtomicLong( 0 );
+        private volatile long readCounter;
+
+        /**
+         * @return true if the ring is full and should be drained
+         */
+        private boolean offer( Node<K, V> node ) {
+
+            long write = writeCounter.get();
+
+            if ( write - readCounter >= SIZE ) {
+
+                return true;
+            }
+
+            if ( writeCounter.compareAndSet( write, write + 1 ) ) {
+
+                nodes.lazySet( ( int )write & MASK, node );
+            }
+
+            return write + 1 - readCounter >= SIZE;
+        }
+
+
+        private void drainTo( Consumer<Node<K, V>> consumer ) {
+
+            long write = writeCounter.get();
+            long read = readCounter;
+
+            for ( ; read < write; read++ ) {
+
+                int index = ( int )read & MASK;
+                Node<K, V> node = nodes.get( index );
+
+                // The writer has claimed the slot but not yet filled it
+                if ( node == null ) {
+
+                    break;
+                }
+
+                nodes.lazySet( index, null );
+                consumer.accept( node );
+            }
+
+            readCounter = read;
+        }
+    }
+
+    /**
+     * Hands out the KeyValuePairs of the Nodes found by the Spliterator of the data map, leaving
+     * out expired Nodes
+     */
+    private static final class NodeSpliterator<K, V> implements Spliterator<KeyValuePair<K, V>> {
+
+        private final Spliterator<KeyValuePair<K, Node<K, V>>> spliterator;
+        private Node<K, V> node;
+
+        private NodeSpliterator( Spliterator<KeyValuePair<K, Node<K, V>>> spliterator ) {
+
+            this.spliterator = spliterator;
+        }
+
+
+        @Override
+        public boolean tryAdvance( Consumer<? super KeyValuePair<K, V>> action ) {
+
+            while ( spliterator.tryAdvance( keyValuePair -> node = keyValuePair.getValue() ) ) {
+
+                Node<K, V> found = node;
+                node = null;
+
+                if ( !found.isExpired( System.nanoTime() ) ) {
+
+                    action.accept( found.toKeyValuePair() );
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+
+        @Override
+        public Spliterator<KeyValuePair<K, V>> trySplit() {
+
+            Spliterator<KeyValuePair<K, Node<K, V>>> prefix = spliterator.trySplit();
+            return prefix == null ? null : new NodeSpliterator<>( prefix );
+        }
+
+
+        @Override
+        public long estimateSize() {
+
+            return spliterator.estimateSize();
+        }
+
+
+        @Override
+        public int characteristics() {
+
+            return spliterator.characteristics();
+        }
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param maximumSize
+     *      number of keys above which keys are evicted
+     */
+    public BoundedConcurrentMapImpl( long maximumSize ) {
+
+        this( maximumSize, null );
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param maximumSize
+     *      number of keys above which keys are evicted
+     *
+     * @param timerWheel
+     *      TimerWheel which removes keys put with a time to live, or null to use
+     *      TimerWheelImpl.shared()
+     */
+    public BoundedConcurrentMapImpl( long maximumSize, TimerWheel timerWheel ) {
+
+        if ( maximumSize < 1 ) {
+
+            throw new IllegalArgumentException( "maximumSize must be at least 1" );
+        }
+
+        this.data = new ConcurrentMapImpl<>();
+        this.maximumSize = maximumSize;
+        this.windowMaximumSize = Math.max( 1, maximumSize / 100 );
+        this.protectedMaximumSize = ( maximumSize - windowMaximumSize ) * 8 / 10;
+        this.frequencySketch = new FrequencySketch( maximumSize );
+        this.timerWheel = timerWheel;
+
+        @SuppressWarnings( "unchecked" )
+        ReadBuffer<K, V>[] buffers = ( ReadBuffer<K, V>[] )new ReadBuffer<?, ?>[READ_BUFFER_COUNT];
+
+        for ( int i = 0; i < READ_BUFFER_COUNT; i++ ) {
+
+            buffers[i] = new ReadBuffer<>();
+        }
+
+        this.readBuffers = buffers;
+    }
+
+
+    private TimerWheel timerWheel() {
+
+        return timerWheel == null ? TimerWheelImpl.shared() : timerWheel;
+    }
+
+
+    private ReadBuffer<K, V> readBuffer() {
+
+        long id = Thread.currentThread().getId();
+        return readBuffers[( int )( id ^ ( id >>> 16 ) ) & ( READ_BUFFER_COUNT - 1 )];
+    }
+
+
+    /**
+     * Records a read.  Never blocks.
+     */
+    private void afterRead( Node<K, V> node ) {
+
+        if ( readBuffer().offer( node ) ) {
+
+            tryDrain();
+        }
+    }
+
+
+    /**
+     * Records a write.  Only blocks if the write buffer is full.
+     */
+    private void afterWrite( Runnable task ) {
+
+        while ( !writeBuffer.offer( task ) ) {
+
+            evictionLock.lock();
+
+            try {
+                drain();
+            }
+            finally {
+                evictionLock.unlock();
+            }
+        }
+
+        tryDrain();
+    }
+
+
+    private void afterAdd( Node<K, V> node ) {
+
+        afterWrite( () -> onAdd( node ) );
+    }
+
+
+    private void afterRemove( Node<K, V> node ) {
+
+        afterWrite( () -> onRemove( node ) );
+    }
+
+
+    private void afterReplace( Node<K, V> oldNode, Node<K, V> newNode ) {
+
+        afterWrite( () -> {
+
+            onRemove( oldNode );
+            onAdd( newNode );
+        } );
+    }
+
+
+    private void tryDrain() {
+
+        if ( evictionLock.tryLock() ) {
+
+            try {
+                drain();
+            }
+            finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Applies the recorded reads and writes to the queues and evicts.  Must hold the eviction
+     * lock.
+     */
+    private void drain() {
+
+        for ( ReadBuffer<K, V> readBuffer : readBuffers ) {
+
+            readBuffer.drainTo( this::onAccess );
+        }
+
+        for ( Runnable task; ( task = writeBuffer.poll() ) != null; ) {
+
+            task.run();
+        }
+
+        evict();
+    }
+
+
+    private void onAdd( Node<K, V> node ) {
+
+        if ( node.retired ) {
+
+            return;
+        }
+
+        frequencySketch.increment( node.key.hashCode() );
+        window.addLast( node );
+        node.queue = WINDOW;
+    }
+
+
+    private void onRemove( Node<K, V> node ) {
+
+        unlink( node );
+        node.retired = true;
+
+        Timeout timeout = node.timeout;
+
+        if ( timeout != null ) {
+
+            timeout.cancel();
+        }
+    }
+
+
+    private void unlink( Node<K, V> node ) {
+
+        switch ( node.queue ) {
+
+            case WINDOW:
+                window.remove( node );
+                break;
+
+            case PROBATION:
+                probation.remove( node );
+                break;
+
+            case PROTECTED:
+                protectedQueue.remove( node );
+                break;
+
+            default:
+                break;
+        }
+
+        node.queue = NONE;
+    }
+
+
+    private void onAccess( Node<K, V> node ) {
+
+        frequencySketch.increment( node.key.hashCode() );
+
+        switch ( node.queue ) {
+
+            case WINDOW:
+                window.moveToLast( node );
+                break;
+
+            case PROBATION:
+                probation.remove( node );
+                protectedQueue.addLast( node );
+                node.queue = PROTECTED;
+
+                if ( protectedQueue.size > protectedMaximumSize ) {
+
+                    Node<K, V> demoted = protectedQueue.first;
+                    protectedQueue.remove( demoted );
+                    probation.addLast( demoted );
+                    demoted.queue = PROBATION;
+                }
+
+                break;
+
+            case PROTECTED:
+                protectedQueue.moveToLast( node );
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * Moves keys that fall out of the window onto probation, then evicts until the map is no
+     * bigger than its maximum size.  The newest key on probation, the candidate, is admitted
+     * only if it has been used more often than the oldest key on probation, the victim.
+     */
+    private void evict() {
+
+        while ( window.size > windowMaximumSize ) {
+
+            Node<K, V> node = window.first;
+            window.remove( node );
+            probation.addLast( node );
+            node.queue = PROBATION;
+        }
+
+        while ( window.size + probation.size + protectedQueue.size > maximumSize ) {
+
+            Node<K, V> victim = probation.first;
+            Node<K, V> candidate = probation.last;
+
+            if ( victim == null ) {
+
+                evict( protectedQueue.first != null ? protectedQueue.first : window.first );
+            }
+            else if ( victim == candidate ) {
+
+                evict( victim );
+            }
+            else if ( frequencySketch.frequency( candidate.key.hashCode() ) >
+                    frequencySketch.frequency( victim.key.hashCode() ) ) {
+
+                evict( victim );
+            }
+            else {
+
+                evict( candidate );
+            }
+        }
+    }
+
+
+    private void evict( Node<K, V> node ) {
+
+        onRemove( node );
+
+        // Fails if the key has since been given a new Node or removed, whose task then follows
+        data.remove( node.key, node );
+        evictionCount++;
+    }
+
+
+    /**
+     * Schedules the removal of a Node put with a time to live.  Called once the Node has been put,
+     * so the removal can never run before the put.
+     */
+    private void scheduleExpiry( Node<K, V> node ) {
+
+        if ( node.expiring ) {
+
+            node.timeout =
+                    timerWheel().schedule(
+                            () -> expire( node ), node.expiresAt - System.nanoTime(),
+                            TimeUnit.NANOSECONDS );
+        }
+    }
+
+
+    /**
+     * Removes the Node if it is still the Node of its key
+     */
+    private void expire( Node<K, V> node ) {
+
+        if ( data.remove( node.key, node ) ) {
+
+            afterRemove( node );
+        }
+    }
+
+
+    /**
+     * @return Node of the key, or null if there is none or it has expired, in which case it is
+     *      removed
+     */
+    private Node<K, V> getNode( K key ) {
+
+        Node<K, V> node = data.getValue( key );
+
+        if ( node != null && node.isExpired( System.nanoTime() ) ) {
+
+            expire( node );
+            return null;
+        }
+
+        return node;
+    }
+
+
+    private static <V> V liveValue( Node<?, V> node ) {
+
+        return node == null || node.isExpired( System.nanoTime() ) ? null : node.value;
+    }
+
+
+    /**
+     * Drains the read and write buffers and evicts now, rather than when the buffers next fill
+     * up or are next written to
+     */
+    public void cleanUp() {
+
+        evictionLock.lock();
+
+        try {
+            drain();
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    /**
+     * @return number of keys above which keys are evicted
+     */
+    public long getMaximumSize() {
+
+        return maximumSize;
+    }
+
+
+    /**
+     * @return number of keys evicted so far
+     */
+    public long getEvictionCount() {
+
+        evictionLock.lock();
+
+        try {
+            return evictionCount;
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    @Override
+    public V put( K key, V value ) {
+
+        return putNode( new Node<>( key, value ) );
+    }
+
+
+    @Override
+    public V put( K key, V value, long ttl, TimeUnit unit ) {
+
+        long ttlNanos = unit.toNanos( ttl );
+
+        if ( ttlNanos <= 0 ) {
+
+            throw new IllegalArgumentException( "ttl must be positive" );
+        }
+
+        return putNode( new Node<>( key, value, true, System.nanoTime() + ttlNanos ) );
+    }
+
+
+    private V putNode( Node<K, V> node ) {
+
+        Node<K, V> oldNode = data.put( node.key, node );
+        scheduleExpiry( node );
+
+        if ( oldNode == null ) {
+
+            afterAdd( node );
+            return null;
+        }
+
+        afterReplace( oldNode, node );
+        return liveValue( oldNode );
+    }
+
+
+    @Override
+    public V putIfAbsent( K key, V value ) {
+
+        Node<K, V> node = new Node<>( key, value );
+
+        while ( true ) {
+
+            Node<K, V> existingNode = data.putIfAbsent( key, node );
+
+            if ( existingNode == null ) {
+
+                afterAdd( node );
+                return null;
+            }
+
+            if ( !existingNode.isExpired( System.nanoTime() ) ) {
+
+                afterRead( existingNode );
+                return existingNode.value;
+            }
+
+            if ( data.replace( key, existingNode, node ) ) {
+
+                afterReplace( existingNode, node );
+                return null;
+            }
+        }
+    }
+
+
+    @Override
+    public boolean replace( K key, V oldValue, V newValue ) {
+
+        while ( true ) {
+
+            Node<K, V> oldNode = getNode( key );
+
+            if ( oldNode == null || !oldNode.value.equals( oldValue ) ) {
+
+                return false;
+            }
+
+            Node<K, V> newNode = new Node<>( key, newValue, oldNode.expiring, oldNode.expiresAt );
+
+            if ( data.replace( key, oldNode, newNode ) ) {
+
+                scheduleExpiry( newNode );
+                afterReplace( oldNode, newNode );
+                return true;
+            }
+        }
+    }
+
+
+    @Override
+    public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction ) {
+
+        Node<K, V> existingNode = getNode( key );
+
+        if ( existingNode != null ) {
+
+            afterRead( existingNode );
+            return existingNode.value;
+        }
+
+        V value = mappingFunction.apply( key );
+
+        if ( value == null ) {
+
+            return null;
+        }
+
+        V existingValue = putIfAbsent( key, value );
+        return existingValue == null ? value : existingValue;
+    }
+
+
+    @Override
+    public V merge(
+            K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction ) {
+
+        while ( true ) {
+
+            Node<K, V> oldNode = getNode( key );
+
+            if ( oldNode == null ) {
+
+                Node<K, V> node = new Node<>( key, value );
+
+                if ( data.putIfAbsent( key, node ) == null ) {
+
+                    afterAdd( node );
+                    return value;
+                }
+
+                continue;
+            }
+
+            V newValue = remappingFunction.apply( oldNode.value, value );
+
+            if ( newValue == null ) {
+
+                if ( data.remove( key, oldNode ) ) {
+
+                    afterRemove( oldNode );
+                    return null;
+                }
+
+                continue;
+            }
+
+            Node<K, V> newNode = new Node<>( key, newValue, oldNode.expiring, oldNode.expiresAt );
+
+            if ( data.replace( key, oldNode, newNode ) ) {
+
+                scheduleExpiry( newNode );
+                afterReplace( oldNode, newNode );
+                return newValue;
+            }
+        }
+    }
+
+
+    @Override
+    public V getValue( K key ) {
+
+        Node<K, V> node = getNode( key );
+
+        if ( node == null ) {
+
+            return null;
+        }
+
+        afterRead( node );
+        return node.value;
+    }
+
+
+    @Override
+    public void remove( K key ) {
+
+        Node<K, V> node;
+
+        while ( ( node = data.getValue( key ) ) != null ) {
+
+            if ( data.remove( key, node ) ) {
+
+                afterRemove( node );
+                return;
+            }
+        }
+    }
+
+
+    @Override
+    public boolean remove( K key, V value ) {
+
+        while ( true ) {
+
+            Node<K, V> node = getNode( key );
+
+            if ( node == null || !node.value.equals( value ) ) {
+
+                return false;
+            }
+
+            if ( data.remove( key, node ) ) {
+
+                afterRemove( node );
+                return true;
+            }
+        }
+    }
+
+
+    @Override
+    public long size() {
+
+        return data.size();
+    }
+
+
+    @Override
+    public Spliterator<KeyValuePair<K, V>> spliterator() {
+
+        return new NodeSpliterator<>( data.spliterator() );
+    }
+
+
+    @Override
+    public String debug() {
+
+        return data.debug();
+    }
+}
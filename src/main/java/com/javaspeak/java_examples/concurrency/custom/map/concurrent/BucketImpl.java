@@ -1,16 +1,17 @@
 package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 
 /**
- * In the ConcurrentMap the buckets array is initialized with instances of BucketImpl.
+ * In the ConcurrentMap each slot of the buckets array holds a chain of BucketImpl instances.
  *
- * When an entry is being added to the ConcurrentMap, the hashCode() of the key is called and the 
- * resultant hash has a modulus performed on it against the number of buckets in the array:
+ * When an entry is being added to the ConcurrentMap, the hashCode() of the key is called, its bits 
+ * are spread and the result is masked against the number of buckets in the array, which is always 
+ * a power of two:
  *
- *     int hashCode = key.hashCode();
- *     int arrayIndex = hashCode % bucketSize;
+ *     int hash = spread( key.hashCode() );
+ *     int arrayIndex = hash & ( bucketSize - 1 );
  *
  * This maps a hashcode to an array index.
  *
@@ -21,12 +22,8 @@ import java.util.concurrent.atomic.AtomicReference;
  *     hashCode = "BB".hashCode() = 2112
  *     hashCode = "Aa".hashCode() = 2112
  *
- * If the number of buckets are 33 both "BB" and "Aa" would need to be stored at index 0:
- *
- *     int arrayIndex = 2112 % 33 = 0
- *
  * If the size of the hashcodes is much bigger than the number of slots in the array we will also 
- * expect the modulus to give the same array index for different hashcodes.  If many more keys are 
+ * expect the mask to give the same array index for different hashcodes.  If many more keys are 
  * added to the map then there are array slots then we will expect the number of collisions to be 
  * even greater as many different keys will have the same index.
  *
@@ -38,6 +35,10 @@ import java.util.concurrent.atomic.AtomicReference;
  * Note that these chains make looking up a key slower so it is good to initialize the ConcurrentMap 
  * with a size which is bigger than the expected number of items you are putting in it.
  *
+ * The KeyValuePair and child Bucket are volatile fields updated through static 
+ * AtomicReferenceFieldUpdaters rather than held in two AtomicReferences.  This means adding a 
+ * Bucket to a chain allocates one object instead of three.
+ *
  * @author John Dickerson - 16 Dec 2022
  *
  * @param <K> Key of ConcurrentMap
@@ -45,9 +46,19 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public class BucketImpl<K, V> implements Bucket<K, V> {
 
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<BucketImpl, KeyValuePair>
+            KEY_VALUE_PAIR_UPDATER =
+                    AtomicReferenceFieldUpdater.newUpdater(
+                            BucketImpl.class, KeyValuePair.class, "keyValuePair" );
+
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<BucketImpl, Bucket> CHILD_BUCKET_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater( BucketImpl.class, Bucket.class, "childBucket" );
+
     private int index;
-    private AtomicReference<KeyValuePair<K, V>> keyValuePairReference;
-    private AtomicReference<Bucket<K, V>> childBucketReference = new AtomicReference<>();
+    private volatile KeyValuePair<K, V> keyValuePair;
+    private volatile Bucket<K, V> childBucket;
 
     /**
      * Constructor
@@ -65,7 +76,6 @@ public class BucketImpl<K, V> implements Bucket<K, V> {
     public BucketImpl( int index ) {
 
         this.index = index;
-        keyValuePairReference = new AtomicReference<>();
     }
 
 
@@ -82,16 +92,31 @@ public class BucketImpl<K, V> implements Bucket<K, V> {
     public BucketImpl( K key, V value, int index ) {
 
         this.index = index;
-        KeyValuePair<K, V> keyValuePair = new KeyValuePair<>( key, value );
-        keyValuePairReference = new AtomicReference<>( keyValuePair );
+        this.keyValuePair = new KeyValuePair<>( key, value );
+    }
+
+
+    /**
+     * Used when migrating a chain to a bigger buckets array so that the existing KeyValuePair can
+     * be reused instead of copied.
+     *
+     * @param keyValuePair
+     *  KeyValuePair to place in this Bucket
+     *
+     * @param index
+     *  Index of buckets array that this Bucket resides in
+     */
+    public BucketImpl( KeyValuePair<K, V> keyValuePair, int index ) {
 
+        this.index = index;
+        this.keyValuePair = keyValuePair;
     }
 
 
     @Override
     public KeyValuePair<K, V> getKeyValuePair() {
 
-        return keyValuePairReference.get();
+        return keyValuePair;
     }
 
 
@@ -100,8 +125,7 @@ public class BucketImpl<K, V> implements Bucket<K, V> {
             KeyValuePair<K, V> oldKeyValuePair,
             KeyValuePair<K, V> newKeyValuePair ) {
 
-        return keyValuePairReference.compareAndSet(
-                oldKeyValuePair, newKeyValuePair );
+        return KEY_VALUE_PAIR_UPDATER.compareAndSet( this, oldKeyValuePair, newKeyValuePair );
     }
 
 
@@ -115,7 +139,7 @@ public class BucketImpl<K, V> implements Bucket<K, V> {
     @Override
     public Bucket<K, V> getChildBucket() {
 
-        return childBucketReference.get();
+        return childBucket;
     }
 
 
@@ -123,15 +147,14 @@ public class BucketImpl<K, V> implements Bucket<K, V> {
     public boolean setChildBucketAtomically(
             Bucket<K, V> oldChildBucket, Bucket<K, V> newChildBucket ) {
 
-        return childBucketReference.compareAndSet(
-                oldChildBucket, newChildBucket );
+        return CHILD_BUCKET_UPDATER.compareAndSet( this, oldChildBucket, newChildBucket );
     }
 
 
     @Override
     public void setChildBucket( Bucket<K, V> childBucket ) {
 
-        childBucketReference.set( childBucket );
+        this.childBucket = childBucket;
     }
 
 
@@ -139,11 +162,30 @@ public class BucketImpl<K, V> implements Bucket<K, V> {
 
         StringBuilder sb = new StringBuilder();
 
-        KeyValuePair<K, V> keyValuePair = keyValuePairReference.get();
+        KeyValuePair<K, V> keyValuePair = this.keyValuePair;
         sb.append( keyValuePair == null ? "null keyValuePair" : keyValuePair.toString() );
         sb.append( " ==> " );
 
-        Bucket<K, V> childBucket = childBucketReference.get();
+        // Walk the chain rather than calling toString() on the child so that a long chain cannot 
+        // overflow the stack
+        Bucket<K, V> childBucket = this.childBucket;
+
+        while ( childBucket instanceof BucketImpl || childBucket instanceof MarkerBucket ) {
+
+            if ( childBucket instanceof MarkerBucket ) {
+
+                sb.append( childBucket.toString() );
+            }
+            else {
+
+                keyValuePair = childBucket.getKeyValuePair();
+                sb.append( keyValuePair == null ? "null keyValuePair" : keyValuePair.toString() );
+            }
+
+            sb.append( " ==> " );
+            childBucket = childBucket.getChildBucket();
+        }
+
         sb.append( childBucket == null ? "null bucket" : childBucket.toString() );
         return sb.toString();
     }
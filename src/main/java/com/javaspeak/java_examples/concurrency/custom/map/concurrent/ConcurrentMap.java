@@ -1,19 +1,29 @@
 package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
- * This ConcurrentMap does not use synchronized blocks for put(..), getValue(..) and remove(..) 
- * methods during the major part of its operation. Instead it uses CAS for put and remove. 
- * <p> 
- * This ConcurrentMap does however have housekeeping operations which use hard synchronization 
- * (synchronized blocks) to do cleanups when certain thresholds are reached.
+ * This ConcurrentMap does not use synchronized blocks for put(..), getValue(..) and remove(..).  
+ * Instead it uses CAS for put and remove, and getValue never blocks.
  * <p>
- * The ConcurrentMap bucket array is pre-populated with BucketImpl instances.
+ * The slots of the ConcurrentMap bucket array stay null until the first key for that slot is put.
  * <p>
- * When an entry is being added, the hashCode() of the key is called and the resultant hash has a 
- * modulus performed on it against the number of buckets in the array:
+ * When an entry is being added, the hashCode() of the key is called and the resultant hash is 
+ * spread and then masked against the number of buckets in the array, which is always a power of 
+ * two:
  * <p>
- *     int hashCode = key.hashCode();<p>
- *     int arrayIndex = hashCode % bucketSize;
+ *     int hash = spread( key.hashCode() );<p>
+ *     int arrayIndex = hash &amp; ( bucketSize - 1 );
  * <p>
  * This maps a hashcode to an array index. The problem with this is that more than one hashcode may 
  * end up being assigned to the same arrayIndex.  For example "BB" and "Aa" have the same hashcode 
@@ -22,12 +32,8 @@ package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
  *     hashCode = "BB".hashCode() = 2112<p>
  *     hashCode = "Aa".hashCode() = 2112
  * <p>
- * If the number of buckets are 33 both "BB" and "Aa" would need to be stored at index 0:
- * <p>
- *     int arrayIndex = 2112 % 33 = 0
- * <p>
- * If we are reducing bigger hashcode numbers to smaller array index numbers using the modulus, 
- * then it is very possible that different hashcodes will also produce the same modulus.
+ * If we are reducing bigger hashcode numbers to smaller array index numbers then it is very 
+ * possible that different hashcodes will also produce the same index.
  * <p>
  * To get around this, further buckets can be chained to the bucket already in the arrayIndex.  
  * Each Bucket has a reference to a child bucket.  If a new key translates to an index in the 
@@ -37,30 +43,34 @@ package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
  * The method, put(K key, V values) uses CAS functionality to update child bucket references in 
  * Buckets and to update a Bucket with a KeyValuePair.
  * <p>
- * If there is already a Bucket in the chain of Buckets connected to a certain array index that has 
- * a null KeyValuePair then that bucket will be used for a new keyValuePair.  If there are no 
- * null KeyValuePairs in the buckets chained to a certain index then a new Bucket is created at the 
- * end of the bucket chain and the KeyValuePair set in that new Bucket.
+ * put(..) walks the chain once.  If a Bucket already holds the key its KeyValuePair is replaced 
+ * with a single CAS, so a key is never stored twice.  Otherwise a new Bucket is CAS'ed onto the 
+ * end of the chain.  Buckets emptied by remove(..) are not reused because two threads putting the 
+ * same key could each claim a different empty Bucket.
+ * <p>
+ * putIfAbsent(..), replace(..), computeIfAbsent(..) and merge(..) are built on the same walk and 
+ * each takes effect with one CAS on a Bucket, so they are atomic without taking a lock.
  * <p>
  * The method, getValue( Key k ) uses CAS to read the child bucket and KeyValuePair
  * <p>
  * The method, remove( K k ) uses CAS functionality to update the KeyValuePair of a bucket with 
- * null.  The remove method does not delete the Bucket itself for that would require more than a 
- * simple CAAS operation which would affect performance.  What this means is that if objects are 
- * added to the map which have the same arrayIndex and they are then removed, we could end up
- * with buckets in the chain of buckets leading of an index which have no KeyValuePairs.  This would 
- * make get() operations slightly longer as we would needless be traversing elements in a linked 
- * list which had no values in them.
- * <p>
- * There is however a configuration parameter called "numberOfKeyValuePairsDeletedBeforeHouseKeeping" 
- * which on reaching the threshold triggers a house keeping process which removes all chained 
- * Buckets which have null KeyValuePairs in them.  If there is a bucket chain A -> B -> C then 
- * removing B would result in A being mapped to C:  A -> C.  During this house keeping exercise 
- * all calls to put(..) and getValue(..) block until the house keeping is finished.
- * <p>
- * The advantage of this implementation is that the cost of heavy weight synchronization is reduced 
- * to occasional house keeping exercises.  All other cases of synchronization use CAS which is more 
- * performant.
+ * null, which removes the key from the map.  The Bucket is then marked as deleted by CAS'ing a 
+ * MarkerBucket in as its child, like the mark bit on the next pointer of a Harris linked list.  A 
+ * marked Bucket can have nothing added after it, so it can be unlinked with one more CAS on its 
+ * parent.  If there is a bucket chain A -> B -> C then removing B results in A being mapped to C:  
+ * A -> C.
+ * <p>
+ * The unlinking is done by the writers that walk past the marked Bucket, starting with the 
+ * remove(..) that marked it.  Nothing ever blocks put(..) or getValue(..) to tidy up the chains.
+ * <p>
+ * forEach(..), entryIterator(), spliterator() and parallelStream() walk the map while other 
+ * threads change it.  They are weakly consistent in the same way as the iterators of 
+ * java.util.concurrent.ConcurrentHashMap: they never throw ConcurrentModificationException, 
+ * every key that is in the map for the whole walk is returned, and keys put or removed during 
+ * the walk may or may not be returned.
+ * <p>
+ * putAll(..), getAll(..) and removeAll(..) work on many keys in one call.  ConcurrentMapImpl 
+ * grows to fit a batch before putting it.
  * <p>
  * @author John Dickerson
  *
@@ -73,13 +83,74 @@ package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
 public interface ConcurrentMap<K, V> {
 
     /**
-     * This method uses CAS instead of heavy synchronization
+     * This method uses CAS instead of heavy synchronization.  If the key is already in the map its 
+     * value is replaced.
      *
      * @param key Key wish to put in the Map
      * 
      * @param value Value wish to put in the Map
+     * 
+     * @return the previous value or null if the key was not in the map
+     */
+    public V put( K key, V value );
+
+
+    /**
+     * Puts the value only if the key is not already in the map
+     *
+     * @param key Key wish to put in the Map
+     * 
+     * @param value Value wish to put in the Map
+     * 
+     * @return the existing value or null if the value was put
+     */
+    public V putIfAbsent( K key, V value );
+
+
+    /**
+     * Replaces the value of the key only if it is currently oldValue
+     *
+     * @param key Key whose value wish to replace
+     * 
+     * @param oldValue Value expected to be in the map
+     * 
+     * @param newValue Value wish to put in the Map
+     * 
+     * @return true if the value was replaced
      */
-    public void put( K key, V value );
+    public boolean replace( K key, V oldValue, V newValue );
+
+
+    /**
+     * If the key is not in the map, computes its value with the mappingFunction and puts it unless 
+     * another thread puts a value first.  The mappingFunction may be called by more than one 
+     * thread but only one result is put.
+     *
+     * @param key Key wish to retrieve or put the value with
+     * 
+     * @param mappingFunction Computes the value for the key.  If it returns null nothing is put
+     * 
+     * @return the existing or computed value
+     */
+    public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction );
+
+
+    /**
+     * If the key is not in the map puts the value, else puts the result of calling the 
+     * remappingFunction with the existing value and value.  If the remappingFunction returns null 
+     * the key is removed.  The remappingFunction is called again if another thread changes the 
+     * value in the meantime.
+     *
+     * @param key Key wish to merge the value with
+     * 
+     * @param value Value to put or to merge with the existing value
+     * 
+     * @param remappingFunction Merges the existing value with value
+     * 
+     * @return the new value or null if the key was removed
+     */
+    public V merge(
+            K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction );
 
 
     /**
@@ -102,6 +173,124 @@ public interface ConcurrentMap<K, V> {
     public void remove( K key );
 
 
+    /**
+     * Removes the key only if its value is currently value
+     *
+     * @param key
+     *      Key wish to remove the value with
+     *
+     * @param value
+     *      Value expected to be in the map
+     *
+     * @return true if the key was removed
+     */
+    public boolean remove( K key, V value );
+
+
+    /**
+     * Puts every key and value of the map.  Each key is put atomically but the batch is not: 
+     * other threads can see some of the keys before the rest have been put.
+     *
+     * @param map
+     *      keys and values wish to put in the Map
+     */
+    public default void putAll( Map<? extends K, ? extends V> map ) {
+
+        map.forEach( this::put );
+    }
+
+
+    /**
+     * Gets the values of many keys at once.  Each value is read atomically but the batch is not a 
+     * snapshot of the map.
+     *
+     * @param keys
+     *      keys wish to get the values of
+     *
+     * @return values of the keys which are in the map, by key
+     */
+    public default Map<K, V> getAll( Collection<? extends K> keys ) {
+
+        Map<K, V> values = new HashMap<>();
+
+        for ( K key : keys ) {
+
+            V value = getValue( key );
+
+            if ( value != null ) {
+
+                values.put( key, value );
+            }
+        }
+
+        return values;
+    }
+
+
+    /**
+     * Removes many keys at once.  Each key is removed atomically but the batch is not.
+     *
+     * @param keys
+     *      keys wish to remove
+     */
+    public default void removeAll( Collection<? extends K> keys ) {
+
+        for ( K key : keys ) {
+
+            remove( key );
+        }
+    }
+
+
+    /**
+     * Sums a striped counter, so it does not stop other threads from changing the count.  The 
+     * result is only exact if no other thread changes the map in the meantime.
+     *
+     * @return number of keys in the map
+     */
+    public long size();
+
+
+    /**
+     * Splits the map by ranges of slots so that a parallel stream can walk each range on a 
+     * different core
+     *
+     * @return weakly consistent Spliterator over the KeyValuePairs of the map
+     */
+    public Spliterator<KeyValuePair<K, V>> spliterator();
+
+
+    /**
+     * @return weakly consistent Iterator over the KeyValuePairs of the map
+     */
+    public default Iterator<KeyValuePair<K, V>> entryIterator() {
+
+        return Spliterators.iterator( spliterator() );
+    }
+
+
+    /**
+     * Calls the action with every key and value in the map, without blocking other threads
+     *
+     * @param action
+     *      called with each key and its value
+     */
+    public default void forEach( BiConsumer<? super K, ? super V> action ) {
+
+        spliterator().forEachRemaining(
+                keyValuePair -> action.accept( keyValuePair.getKey(), keyValuePair.getValue() ) );
+    }
+
+
+    /**
+     * @return weakly consistent parallel Stream over the KeyValuePairs of the map
+     */
+    public default Stream<KeyValuePair<K, V>> parallelStream() {
+
+        return StreamSupport.stream( spliterator(), true );
+    }
+
+
     /**
      * Debugging the contents of the internal array and its chained buckets
      *
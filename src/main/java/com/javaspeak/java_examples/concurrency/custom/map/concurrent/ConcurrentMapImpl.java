@@ -1,24 +1,43 @@
 package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.javaspeak.java_examples.concurrency.custom.timer.Timeout;
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheel;
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheelImpl;
 
 /**
- * This ConcurrentMap does not use synchronized blocks for put(..), getValue(..) and remove(..) 
- * methods during the major part of its operation. Instead it uses CAS for put and remove.  
+ * This ConcurrentMap does not use synchronized blocks for put(..), getValue(..) and remove(..).  
+ * Instead it uses CAS for put and remove, and getValue never blocks.
  * <p>
- * This ConcurrentMap does however have housekeeping operations which use hard synchronization 
- * (synchronized blocks) to do cleanups when certain thresholds are reached.
+ * A slot of the ConcurrentMap bucket array is null until the first key is added to it.
  * <p>
- * The ConcurrentMap bucket array is pre-populated with BucketImpl instances.
+ * When an entry is being added, the hashCode() of the key is called and the resultant hash is 
+ * spread and then masked against the number of buckets in the array, which is always a power of 
+ * two:
  * <p>
- * When an entry is being added, the hashCode() of the key is called and the resultant hash has a 
- * modulus performed on it against the number of buckets in the array:
+ *     int hash = spread( key.hashCode() );<p>
+ *     int arrayIndex = hash &amp; ( bucketSize - 1 );
  * <p>
- *     int hashCode = key.hashCode();<p>
- *     int arrayIndex = hashCode % bucketSize;
+ * spread(..) mixes the hashcode with a multiply by the golden ratio constant and folds the high 
+ * 16 bits into the low 16 bits.  Keys whose hashcodes only differ in their high bits, such as ids 
+ * which are multiples of 64, would otherwise all land on the same few slots as the mask only looks 
+ * at the low bits.  spread(..) also clears the sign bit so a negative hashcode cannot produce a 
+ * negative index, and the mask is much cheaper than the division a modulus needs.
  * <p>
  * This maps a hashcode to an array index. The problem with this is that more than one hashcode may 
  * end up being assigned to the same arrayIndex.  For example "BB" and "Aa" have the same hashcode 
@@ -27,45 +46,72 @@ import java.util.concurrent.atomic.AtomicInteger;
  *     hashCode = "BB".hashCode() = 2112<p>
  *     hashCode = "Aa".hashCode() = 2112
  * <p>
- * If the number of buckets are 33 both "BB" and "Aa" would need to be stored at index 0:
- * <p>
- *     int arrayIndex = 2112 % 33 = 0
- * <p>
- * If we are reducing bigger hashcode numbers to smaller array index numbers using the modulus, 
- * then it is very possible that different hashcodes will also produce the same modulus.
+ * If we are reducing bigger hashcode numbers to smaller array index numbers then it is very 
+ * possible that different hashcodes will also produce the same index.
  * <p>
  * To get around this, further buckets can be chained to the bucket already in the arrayIndex.  
  * Each Bucket has a reference to a child bucket.  If a new key translates to an index in the bucket 
- * array that already has a KeyValuePair in it then a new bucket is created and added as a child 
- * to the last bucket in the chain.
+ * array that already has a Bucket in it then a new bucket is created and added as a child to the 
+ * last bucket in the chain.
  * <p>
- * The method, put(K key, V values) uses CAS functionality to update child bucket references in 
- * Buckets and to update a Bucket with a KeyValuePair.
+ * The method, put(K key, V values) walks the chain once.  If it finds a Bucket holding the key it 
+ * replaces the KeyValuePair of that Bucket with a single CAS.  If it does not, it adds a new Bucket 
+ * with a single CAS, either into the empty slot or as the child of the last Bucket it walked to.  
+ * That CAS only succeeds if nothing was added to the chain after the walk, so two threads putting 
+ * the same key cannot both add a Bucket for it.  For the same reason a Bucket whose KeyValuePair 
+ * has been removed is never reused for a different key: a new key always goes on the end of the 
+ * chain.
  * <p>
- * If there is already a Bucket in the chain of Buckets connected to a certain array index that has 
- * a null KeyValuePair then that bucket will be used for a new keyValuePair.  If there are no null 
- * KeyValuePairs in the buckets chained to a certain index then a new Bucket is created at the end
- * of the bucket chain and the KeyValuePair set in that new Bucket.
+ * putIfAbsent(..), replace(..), computeIfAbsent(..) and merge(..) work the same way, each changing 
+ * the map with one CAS on Bucket.setKeyValuePairAtomically(..) or one CAS adding a new Bucket, and 
+ * retrying from the walk if the CAS fails.
  * <p>
  * The method, getValue( Key k ) uses CAS to read the child bucket and KeyValuePair
  * <p>
- * The method, remove( K k ) uses CAS functionality to update the KeyValuePair of a bucket with 
- * null.  The remove method does not delete the Bucket itself for that would require more than a 
- * simple CAAS operation which would affect performance.  What this means is that if objects are 
- * added to the map which have the same arrayIndex and they are then removed, we could end up
- * with buckets in the chain of buckets leading of an index which have no KeyValuePairs.  This would 
- * make get() operations slightly longer as we would needless be traversing elements in a linked 
- * list which had no values in them.
+ * The method, remove( K k ) first uses CAS to update the KeyValuePair of the bucket with null.  
+ * That is the moment the key leaves the map.  The Bucket is then marked as deleted by CAS'ing in a 
+ * MarkerBucket as its child, in the same way as a Harris linked list sets the mark bit on the next 
+ * pointer of a deleted node.  Once a Bucket is marked its child can never change so nothing can be 
+ * added after it, and it can be unlinked with a single CAS on the child of its parent, or on the 
+ * slot if it is the head of the chain.  If the parent is marked in the meantime that CAS fails 
+ * and the walk starts again.
+ * <p>
+ * There is no separate house keeping.  Marked Buckets are unlinked by whichever writer walks past 
+ * them: remove(..) walks the chain again straight after marking, and put(..), replace(..) and 
+ * merge(..) unlink any marked Buckets on their way down the chain.  getValue(..) only writes to 
+ * remove a key it finds expired; it skips deleted Buckets, so it never waits for a remove and its 
+ * latency does not depend on the rate of removes.
+ * <p>
+ * The buckets array grows when the number of KeyValuePairs passes three quarters of its size.  
+ * The resize does not block: the first thread to notice the threshold creates a buckets array 
+ * twice as big and then threads claim ranges of slots to migrate.  Each chain is migrated on its 
+ * own: every Bucket in it is frozen by CAS'ing in a MovedKeyValuePair, the live KeyValuePairs are 
+ * split between index i and index i + oldSize of the new array, and a ForwardingBucket is placed 
+ * in the old slot.  Readers and writers that come across a ForwardingBucket repeat their 
+ * operation in the new array, and writers that come across a frozen chain help with the 
+ * migration before retrying.
+ * <p>
+ * The spliterator() walks a range of slots of the buckets array it starts with and splits by 
+ * halving the range.  A slot holding a ForwardingBucket is walked in the newer buckets array 
+ * instead, at both slots its chain was split between, so a walk never misses keys because of a 
+ * resize.  A frozen chain is walked through the original KeyValuePairs of its 
+ * MovedKeyValuePairs.  size() sums the LongAdder the map already keeps to decide when to resize.
+ * <p>
+ * put(key, value, ttl, unit) puts an ExpiringKeyValuePair, which holds the System.nanoTime() at 
+ * which it expires, and schedules its removal on a TimerWheel.  The TimerWheel is a hierarchical 
+ * timing wheel so scheduling, cancelling and running the removal take O(1) per key and nothing 
+ * ever scans the map.  Every operation treats an expired KeyValuePair as absent as soon as its 
+ * time has passed, and getValue(..) removes one it comes across, so an expired key is never 
+ * returned even if the TimerWheel is running late.  size() counts expired keys until they have 
+ * been removed.  replace(..) and merge(..) keep the expiry of the key; put(..) replaces it.
  * <p>
- * There is however a configuration parameter called "numberOfKeyValuePairsDeletedBeforeHouseKeeping" 
- * which on reaching the threshold triggers a house keeping process which removes all chained 
- * Buckets which have null KeyValuePairs in them.  If there is a bucket chain A -> B -> C then 
- * removing B would result in A being mapped to C:  A -> C.  During this house keeping exercise 
- * all calls to put(..) and getValue(..) block until the house keeping is finished.
+ * putAll(..) doubles the buckets array as many times as the batch needs before putting it, while 
+ * the map holds only the keys it had, rather than migrating the batch again with every doubling 
+ * as it goes in.  It then only checks whether to resize every 64 keys.
  * <p>
- * The advantage of this implementation is that the cost of heavy weight synchronization is reduced 
- * to occasional house keeping exercises.  All other cases of synchronization use CAS which is 
- * more performant.
+ * getMetrics() counts failed CAS's, unlinked Buckets and resizes and records how far writers walk 
+ * down the chains.  Recording is switched on with a system property read into a static final 
+ * field, see ConcurrentMapMetrics, so when it is off the JIT compiles it out of the hot paths.
  * <p>
  * @author John Dickerson
  *
@@ -75,457 +121,1469 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * @author John Dickerson - 16 Dec 2022
  */
-public class ConcurrentMapImpl<K, V> implements ConcurrentMap<K, V> {
+public class ConcurrentMapImpl<K, V> implements ExpiringConcurrentMap<K, V> {
 
-    // Used for Spring Cleaning
-    private Queue<Bucket<K, V>> bucketsToDeleteConcurrentLinkedQueue;
-    private Bucket<K, V>[] buckets;
-    private int bucketSize;
-    private int numberOfKeyValuePairsDeletedBeforeHouseKeeping;
-    private AtomicInteger numberDeleted = new AtomicInteger( 0 );
+    // Minimum number of slots a thread claims at a time when migrating to a bigger buckets array
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int HASH_BITS = 0x7fffffff;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
 
-    private Object removeLock;
+    // Number of keys putAll(..) adds between checks of whether the map needs to resize
+    private static final int RESIZE_CHECK_INTERVAL = 64;
 
-    private AtomicBoolean removeBoolean = new AtomicBoolean( false );
-    private AtomicBoolean putBoolean = new AtomicBoolean( false );
+    private volatile AtomicReferenceArray<Bucket<K, V>> buckets;
+    private AtomicReference<Resize<K, V>> resizeReference;
+    private LongAdder keyValuePairCount = new LongAdder();
+    private final TimerWheel timerWheel;
+    private final ConcurrentMapMetricsImpl metrics =
+            new ConcurrentMapMetricsImpl( this::getChainLengths );
 
     /**
-     * Finds last Bucket in the Linked List.  Each index of the buckets array is pre-populated with 
-     * a BucketImpl. Each Bucket in the array can have a child Bucket and so can the child Buckets 
-     * have child buckets themselves.
+     * Holds the state of one resize: the buckets array being migrated, the buckets array being 
+     * migrated to and the counters threads use to claim and account for strides of slots.
      * <p>
-     * This method finds the last Bucket in the linked list of buckets.
-     *
-     * @param bucket
-     * 
-     * @return last child bucket in chain of buckets
+     * The map always references the latest Resize.  Once complete is true the target is the 
+     * current buckets array and a new Resize may be started from it.
      */
-    private Bucket<K, V> getLastBucket( Bucket<K, V> bucket ) {
+    private static final class Resize<K, V> {
+
+        private final AtomicReferenceArray<Bucket<K, V>> source;
+        private final AtomicReferenceArray<Bucket<K, V>> target;
+        private final AtomicInteger transferIndex;
+        private final AtomicInteger transferredBinCount = new AtomicInteger( 0 );
+        private volatile boolean complete;
+        private long startNanos;
+        private ConcurrentMapResizeEvent event;
+
+        private Resize( AtomicReferenceArray<Bucket<K, V>> source ) {
 
-        Bucket<K, V> childBucket = bucket.getChildBucket();
+            this.source = source;
+            this.target = new AtomicReferenceArray<>( source.length() << 1 );
+            this.transferIndex = new AtomicInteger( source.length() );
 
-        if ( childBucket == null ) {
+            if ( ConcurrentMapMetricsImpl.ENABLED ) {
 
-            return bucket;
+                startNanos = System.nanoTime();
+                event = new ConcurrentMapResizeEvent();
+                event.begin();
+            }
         }
-        else {
 
-            return getLastBucket( childBucket );
+
+        private Resize( AtomicReferenceArray<Bucket<K, V>> initialBuckets, boolean complete ) {
+
+            this.source = null;
+            this.target = initialBuckets;
+            this.transferIndex = new AtomicInteger( 0 );
+            this.complete = complete;
         }
     }
 
 
     /**
-     * A bucket can optional have a KeyValuePair.  If it has no KeyValuePair that means the bucket 
-     * is not being used at the moment.  
-     * <p>
-     * If the bucket has no KeyValuePair, and it is in one of the child buckets of the bucket 
-     * which is in the array of buckets then that means that the bucket is not being used at the 
-     * moment and may be removed by house keeping if the number of deleted buckets passes the 
-     * threshold defined by numberOfKeyValuePairsDeletedBeforeHouseKeeping
-     * <p>
-     * This method looks at the bucket passed in to see if it has a KeyValuePair for the key passed 
-     * in. 
-     * <p>
-     * If it does not it will recursively look at the child buckets to see if they have a 
-     * KeyValuePair corresponding to the Key.
-     * <p>
-     * If a KeyValuePair is found which corresponds to the key, the value for that KeyValuePair is 
-     * returned. If no KeyValuePair is found null is returned.
-     * <p>
-     * @param bucket 
-     *      Bucket to look for KeyValuePairs recursively until one is found which matches the key
-     *
-     * @param key 
-     *      the key to macth KeyValuePairs with
-     *      
-     * @return value of matched KeyValuePair
+     * Walks the slots from index up to fence of one buckets array.  trySplit() hands the first 
+     * half of the remaining slots to a new BinSpliterator.  tryAdvance(..) reads a whole slot at a 
+     * time into a buffer, as the chain of a slot is short.
      */
-    private V getValue( Bucket<K, V> bucket, K key ) {
+    private static final class BinSpliterator<K, V> implements Spliterator<KeyValuePair<K, V>> {
+
+        private final AtomicReferenceArray<Bucket<K, V>> tab;
+        private final int fence;
+        private final ArrayDeque<KeyValuePair<K, V>> buffer = new ArrayDeque<>();
+        private int index;
+        private long estimatedSize;
+
+        private BinSpliterator(
+                AtomicReferenceArray<Bucket<K, V>> tab, int index, int fence,
+                    long estimatedSize ) {
+
+            this.tab = tab;
+            this.index = index;
+            this.fence = fence;
+            this.estimatedSize = estimatedSize;
+        }
 
-        KeyValuePair<K, V> keyValuePair = bucket.getKeyValuePair();
 
-        if ( keyValuePair != null ) {
+        @Override
+        public Spliterator<KeyValuePair<K, V>> trySplit() {
 
-            if ( keyValuePair.getKey().equals( key ) ) {
+            int mid = ( index + fence ) >>> 1;
 
-                return keyValuePair.getValue();
+            if ( mid <= index ) {
+
+                return null;
             }
+
+            BinSpliterator<K, V> prefix =
+                    new BinSpliterator<>( tab, index, mid, estimatedSize >>>= 1 );
+
+            index = mid;
+            return prefix;
         }
 
-        Bucket<K, V> childBucket = bucket.getChildBucket();
 
-        if ( childBucket != null ) {
+        @Override
+        public boolean tryAdvance( Consumer<? super KeyValuePair<K, V>> action ) {
 
-            return getValue( childBucket, key );
-        }
-        else {
+            while ( buffer.isEmpty() && index < fence ) {
 
-            return null;
+                forEachInSlot( tab, index++, buffer::add );
+            }
+
+            KeyValuePair<K, V> keyValuePair = buffer.poll();
+
+            if ( keyValuePair == null ) {
+
+                return false;
+            }
+
+            action.accept( keyValuePair );
+            return true;
         }
-    }
 
 
-    /**
-     * BucketImpl has a getChildBucket() method which can reference a child BucketImpl.  
-     * <p>
-     * Consequently Buckets can be chained.  The reason buckets are chained is that if one or more 
-     * keys have the same hashcode or one or mode keys have the same modulus of the hashcode then 
-     * they will be assigned to the same index in the array.  Obviously only one value can be 
-     * assigned to one slot in the array so to get around this we allow the BucketImpls to be 
-     * chained.
-     * <p>
-     * Searching through chained BucketImpls is slower than going directly to the array index, but 
-     * if there are not too many of them then it does not impact performance significantly.
-     * <p>
-     * This method will look in the bucket and recursively at its children to find a bucket which 
-     * has a KeyValuePair whose Key matches the key of this method.
-     *
-     * @param bucket 
-     *      The parent bucket to look for the key in itself or its children
-     *      
-     * @param key 
-     *      the key to look for in the buckets
-     *      
-     * @return The Bucket who has a KeyValuePair which matches the key of this method
-     */
-    private Bucket<K, V> getBucket( Bucket<K, V> bucket, K key ) {
+        @Override
+        public void forEachRemaining( Consumer<? super KeyValuePair<K, V>> action ) {
 
-        KeyValuePair<K, V> keyValuePair = bucket.getKeyValuePair();
+            for ( KeyValuePair<K, V> keyValuePair; ( keyValuePair = buffer.poll() ) != null; ) {
 
-        if ( keyValuePair != null ) {
+                action.accept( keyValuePair );
+            }
 
-            if ( keyValuePair.getKey().equals( key ) ) {
+            while ( index < fence ) {
 
-                return bucket;
+                forEachInSlot( tab, index++, action );
             }
         }
 
-        Bucket<K, V> childBucket = bucket.getChildBucket();
 
-        if ( childBucket != null ) {
+        @Override
+        public long estimateSize() {
 
-            return getBucket( childBucket, key );
+            return estimatedSize;
         }
-        else {
 
-            return null;
+
+        @Override
+        public int characteristics() {
+
+            return Spliterator.CONCURRENT | Spliterator.NONNULL;
         }
     }
 
 
     /**
-     * This method looks at the buckets children recursively to find the first child bucket which 
-     * has a null KeyValuePair.  This Bucket can then be reused instead of creating a new one and 
-     * adding it on the end of the chain.
+     * Calls the action with every live KeyValuePair at a slot.  If the slot has been migrated the 
+     * two slots of the newer buckets array its chain was split between are walked instead.
      *
-     * @param bucket 
-     *      Parent Bucket to look for the first child recursively that has a null KeyValuePair
-     *      
-     * @return Return first child Bucket that has a null KeyValuePair
+     * @param tab
+     *      buckets array
+     *
+     * @param i
+     *      index of the slot
+     *
+     * @param action
+     *      called with each KeyValuePair
      */
-    private Bucket<K, V> getFreeChildBucket( Bucket<K, V> bucket ) {
+    private static <K, V> void forEachInSlot(
+            AtomicReferenceArray<Bucket<K, V>> tab, int i,
+                Consumer<? super KeyValuePair<K, V>> action ) {
+
+        Bucket<K, V> bucket = tab.get( i );
+
+        if ( bucket instanceof ForwardingBucket ) {
 
-        Bucket<K, V> childBucket = bucket.getChildBucket();
+            AtomicReferenceArray<Bucket<K, V>> nextTable =
+                    ( ( ForwardingBucket<K, V> )bucket ).getNextTable();
 
-        if ( childBucket != null ) {
+            forEachInSlot( nextTable, i, action );
+            forEachInSlot( nextTable, i + tab.length(), action );
+            return;
+        }
+
+        for ( ; bucket != null; bucket = bucket.getChildBucket() ) {
 
-            if ( childBucket.getKeyValuePair() == null ) {
+            KeyValuePair<K, V> keyValuePair = bucket.getKeyValuePair();
 
-                return childBucket;
+            if ( keyValuePair instanceof MovedKeyValuePair ) {
+
+                keyValuePair = ( ( MovedKeyValuePair<K, V> )keyValuePair ).getOriginal();
             }
-            else {
 
-                return getFreeChildBucket( childBucket );
+            if ( keyValuePair != null && !isExpired( keyValuePair ) ) {
+
+                action.accept( keyValuePair );
             }
         }
+    }
 
-        return null;
+
+    /**
+     * @return true if the KeyValuePair was put with a time to live which has passed
+     */
+    private static boolean isExpired( KeyValuePair<?, ?> keyValuePair ) {
+
+        return keyValuePair instanceof ExpiringKeyValuePair
+                && ( ( ExpiringKeyValuePair<?, ?> )keyValuePair ).isExpired( System.nanoTime() );
     }
 
 
     /**
-     * If more buckets are deleted then the value denoted by 
-     * numberOfKeyValuePairsDeletedBeforeHouseKeeping then a remove will trigger a spring cleaning 
-     * exercise to tidy up chains of Buckets who have had an element deleted in them.
-     * <p>
-     * The reason this cleanup is necessary is that calling remove on a key nullifies the 
-     * KeyWordPair of the bucket in question without deleting the bucket itself. The reason the 
-     * bucket is not deleted itself is that deleting the bucket itself could necessitate non 
-     * CAS hard synchronization as several bucket references could need to be updated in the chain 
-     * in one atomic transaction.
-     * <p>
-     * Imagine the chain array:
-     * <p>
-     *     Index 0 : Aa:Apple ==> [null keyValuePair] ==> BB:Bat ==> null bucket
-     * <p>
-     * Deleting the bucket denoted [null keyValuePair] would involve changing Aa:Apple so it 
-     * references BB:Bat. If another thread removed BB:Bat and another thread added a new bucket 
-     * to [null keyValuePair] it would be missed from the chain. This is why hard synchronization 
-     * would be required to block any threads putting or getting while a remove was taking place.
-     * <p>
-     * To involve the expensive hard sychronization on the remove we instead just nullify the 
-     * KeyValuePair and add a reference to the nullified bucket in a 
-     * bucketsToDeleteConcurrentLinkedQueue so that later on we can block all threads while we do a 
-     * proper clean up.
-     * <p>
-     * The principle is not too dissimilar to garbage collection
+     * Cancels the removal of a KeyValuePair put with a time to live, as it has been replaced or 
+     * removed
      */
-    private void springClean() {
+    private static void cancelTimeout( KeyValuePair<?, ?> keyValuePair ) {
 
-        Bucket<K, V> bucketToRemove;
+        if ( keyValuePair instanceof ExpiringKeyValuePair ) {
 
-        while ( ( bucketToRemove = bucketsToDeleteConcurrentLinkedQueue.poll() ) != null ) {
+            Timeout timeout = ( ( ExpiringKeyValuePair<?, ?> )keyValuePair ).getTimeout();
 
-            if ( bucketToRemove.getKeyValuePair() == null ) {
+            if ( timeout != null ) {
 
-                removeBucket( bucketToRemove );
+                timeout.cancel();
             }
         }
     }
 
 
     /**
-     * This method is called by springClean().  It called when put and get methods are blocked 
-     * by springClean(). springClean() does not occur on each removal of a key and value from the 
-     * ConcurrentMap. The springClean() occurs after a certain number of removes have been called 
-     * denoted by numberOfKeyValuePairsDeletedBeforeHouseKeeping.
-     * <p>
-     * The springClean() means that put, get and remove methods all occur without hard core 
-     * synchronization most of the time. Instead CAS is used ensure state changes are visible 
-     * across all threads.
-     *
-     * @param bucketToRemove
+     * @return KeyValuePair with the new value and the same expiry as the KeyValuePair it replaces
      */
-    private void removeBucket( Bucket<K, V> bucketToRemove ) {
+    private static <K, V> KeyValuePair<K, V> withValue( KeyValuePair<K, V> keyValuePair, V value ) {
 
-        Bucket<K, V> parentBucket = buckets[bucketToRemove.getIndex()];
+        if ( keyValuePair instanceof ExpiringKeyValuePair ) {
 
-        if ( parentBucket != null ) {
+            ExpiringKeyValuePair<K, V> expiringKeyValuePair = 
+                    ( ExpiringKeyValuePair<K, V> )keyValuePair;
 
-            if ( parentBucket.getKeyValuePair() == null ) {
+            return new ExpiringKeyValuePair<K, V>(
+                    keyValuePair.getKey(), value, expiringKeyValuePair.getExpiresAt(), 
+                        expiringKeyValuePair.getTimeout() );
+        }
 
-                Bucket<K, V> nextBucket = parentBucket.getChildBucket();
+        return new KeyValuePair<K, V>( keyValuePair.getKey(), value );
+    }
 
-                if ( nextBucket != null ) {
 
-                    buckets[parentBucket.getIndex()] = nextBucket;
-                }
-            }
-        }
+    /**
+     * Spreads the bits of a hashcode so that the low bits used by indexFor(..) depend on all the 
+     * bits of the hashcode.  The high 16 bits are folded into the low 16 bits, the result is 
+     * multiplied by the golden ratio constant, which mixes every bit into the high bits, and the 
+     * high bits are folded down again.  The sign bit is cleared so the result is never negative.
+     *
+     * @param hashCode
+     *      hashCode of the key
+     *
+     * @return spread hash
+     */
+    private static int spread( int hashCode ) {
 
-        while ( parentBucket != null ) {
+        int h = ( hashCode ^ ( hashCode >>> 16 ) ) * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & HASH_BITS;
+    }
 
-            Bucket<K, V> nextBucket = parentBucket.getChildBucket();
 
-            if ( nextBucket != null ) {
+    /**
+     * Maps a spread hash to a slot of a buckets array.  As the length is always a power of two 
+     * the index is the low bits of the hash.  When the buckets array doubles, a key at index i 
+     * therefore moves to either i or i + oldLength.
+     *
+     * @param hash
+     *      spread hash of the key
+     *
+     * @param length
+     *      length of the buckets array, a power of two
+     *
+     * @return index of the slot
+     */
+    private static int indexFor( int hash, int length ) {
 
-                if ( nextBucket.getKeyValuePair() == null ) {
+        return hash & ( length - 1 );
+    }
 
-                    Bucket<K, V> afterNextBucket = nextBucket.getChildBucket();
-                    parentBucket.setChildBucket( afterNextBucket );
-                }
-            }
 
-            parentBucket = nextBucket;
-        }
+    /**
+     * Rounds the requested number of slots up to a power of two
+     *
+     * @param bucketSize
+     *      requested number of slots
+     *
+     * @return smallest power of two greater than or equal to bucketSize
+     */
+    private static int tableSizeFor( int bucketSize ) {
+
+        int n = -1 >>> Integer.numberOfLeadingZeros( Math.max( bucketSize, 1 ) - 1 );
+        return n < 0 ? 1 : n >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : n + 1;
     }
 
 
     /**
-     * Constructor
-     *
-     * @param bucketSize  
-     *      The number of slots in this Map.  Note that if we try and place more items in the map 
-     *      then there are slots chaining will for sure occur which can degrade performance if 
-     *      there is significant chaining.  Best using a prime number for the bucket size to 
-     *      minimise the amount of chaining.
+     * A bucket whose KeyValuePair is null has had its key removed and is waiting to be unlinked 
+     * from the chain.  A MarkerBucket never has a KeyValuePair.  Both are skipped.
+     * <p>
+     * This method looks at the bucket passed in to see if it has a KeyValuePair for the key passed 
+     * in. 
+     * <p>
+     * If it does not it will walk down the child buckets to see if they have a KeyValuePair 
+     * corresponding to the Key.  The chain is walked with a loop rather than recursion so that a 
+     * long chain cannot overflow the stack and the method stays small enough to be inlined.
+     * <p>
+     * If a KeyValuePair is found which corresponds to the key, the value for that KeyValuePair is 
+     * returned. If no KeyValuePair is found null is returned.  If the KeyValuePair has expired it 
+     * is removed and null is returned.
+     * <p>
+     * @param bucket 
+     *      Bucket to look for KeyValuePairs in until one is found which matches the key
      *
-     * @param numberOfKeyValuePairsDeletedBeforeHouseKeeping 
-     *      This threshold determines how many KeyValuePairs can be deleted before houseKeeping is
-     *      triggered.  House Keeping removes child buckets which have had their KeyValuePairs 
-     *      nullified.
+     * @param key 
+     *      the key to macth KeyValuePairs with
+     *      
+     * @return value of matched KeyValuePair
      */
-    @SuppressWarnings( "unchecked" )
-    public ConcurrentMapImpl(
-            int bucketSize, int numberOfKeyValuePairsDeletedBeforeHouseKeeping ) {
+    private V getValue( Bucket<K, V> bucket, K key ) {
+
+        while ( bucket != null ) {
 
-        this.bucketSize = bucketSize;
+            KeyValuePair<K, V> keyValuePair = bucket.getKeyValuePair();
 
-        this.numberOfKeyValuePairsDeletedBeforeHouseKeeping =
-                numberOfKeyValuePairsDeletedBeforeHouseKeeping;
+            if ( keyValuePair != null && key.equals( keyValuePair.getKey() ) ) {
 
-        buckets = new Bucket[bucketSize];
+                if ( isExpired( keyValuePair ) ) {
 
-        bucketsToDeleteConcurrentLinkedQueue = new ConcurrentLinkedQueue<Bucket<K, V>>();
+                    removeValue( key, null, true );
+                    return null;
+                }
 
-        for ( int i = 0; i < bucketSize; i++ ) {
+                return keyValuePair.getValue();
+            }
 
-            buckets[i] = new BucketImpl<K, V>( i );
+            bucket = bucket.getChildBucket();
         }
+
+        return null;
     }
 
 
     /**
-     *  Constructor
+     * BucketImpl has a getChildBucket() method which can reference a child BucketImpl.  
+     * <p>
+     * Consequently Buckets can be chained.  The reason buckets are chained is that if one or more 
+     * keys have the same hashcode or one or mode keys have the same masked hash then 
+     * they will be assigned to the same index in the array.  Obviously only one value can be 
+     * assigned to one slot in the array so to get around this we allow the BucketImpls to be 
+     * chained.
+     * <p>
+     * This method walks down the chain once and returns the Bucket whose KeyValuePair has the key 
+     * or, if there is no such Bucket, the last Bucket in the chain so that a new Bucket can be 
+     * added to it.
+     * <p>
+     * On the way down it unlinks every marked Bucket it comes across by CAS'ing the child of the 
+     * parent, or the slot, from the marked Bucket to the Bucket after it.  If that CAS fails the 
+     * parent has changed, most likely because it has been marked itself, and the walk starts 
+     * again from the head of the chain.
+     * <p>
+     * If the chain is frozen for a resize the walk returns a Bucket holding a MovedKeyValuePair or 
+     * ends at the ForwardingBucket which refuses a child.
+     *
+     * @param tab
+     *      buckets array
+     *
+     * @param arrayIndex
+     *      index of the slot holding the chain
+     *
+     * @param key 
+     *      the key to look for in the buckets
+     *      
+     * @return Bucket holding the key, else the last Bucket in the chain, else null if the chain is 
+     *      empty
      */
-    public ConcurrentMapImpl() {
+    private Bucket<K, V> findBucket(
+            AtomicReferenceArray<Bucket<K, V>> tab, int arrayIndex, K key ) {
 
-        this( 33, 10 );
-    }
+        restart:
+        while ( true ) {
 
+            Bucket<K, V> parentBucket = null;
+            Bucket<K, V> bucket = tab.get( arrayIndex );
+            int chainLength = 0;
 
-    private void putValue( K key, V value ) {
+            while ( bucket != null ) {
 
-        putBoolean.set( true );
+                Bucket<K, V> childBucket = bucket.getChildBucket();
 
-        int hashCode = key.hashCode();
-        int arrayIndex = hashCode % bucketSize;
+                if ( childBucket instanceof MarkerBucket ) {
 
-        while ( true ) {
+                    Bucket<K, V> nextBucket = childBucket.getChildBucket();
 
-            KeyValuePair<K, V> keyValuePair = buckets[arrayIndex].getKeyValuePair();
+                    boolean unlinked =
+                            parentBucket == null
+                                    ? tab.compareAndSet( arrayIndex, bucket, nextBucket )
+                                    : parentBucket.setChildBucketAtomically( bucket, nextBucket );
 
-            // If the parent bucket in the index has a Null KeyValuePair then set the new 
-            // KeyValuePair in it
-            if ( keyValuePair == null ) {
+                    if ( !unlinked ) {
 
-                if ( buckets[arrayIndex].setKeyValuePairAtomically(
-                        keyValuePair, new KeyValuePair<K, V>( key, value ) ) ) {
+                        if ( ConcurrentMapMetricsImpl.ENABLED ) {
 
-                    break;
-                }
-            }
-            else {
-                // Navigate down the chain of buckets starting at the child of the parent bucket 
-                // at the index and return the first bucket that has a null KeyValuePair.  If
-                // a Bucket is returned that means we are reusing an old bucket.
-                Bucket<K, V> freeBucket = getFreeChildBucket( buckets[arrayIndex] );
+                            metrics.recordUnlinkRetry();
+                        }
 
-                if ( freeBucket != null ) {
+                        continue restart;
+                    }
 
-                    if ( freeBucket.setKeyValuePairAtomically(
-                            null, new KeyValuePair<K, V>( key, value ) ) ) {
+                    if ( ConcurrentMapMetricsImpl.ENABLED ) {
 
-                        numberDeleted.getAndDecrement();
-                        break;
+                        metrics.recordUnlink();
                     }
+
+                    bucket = nextBucket;
+                    continue;
                 }
-                else {
-                    // We did not find any unused buckets so we get the last bucket in the chain 
-                    // and add a new bucket to it.
-                    Bucket<K, V> lastBucket = getLastBucket( buckets[arrayIndex] );
 
-                    if ( lastBucket.setChildBucketAtomically(
-                            null, new BucketImpl<K, V>(
-                                    key, value, arrayIndex ) ) ) {
+                KeyValuePair<K, V> keyValuePair = bucket.getKeyValuePair();
 
-                        break;
+                if ( ( keyValuePair != null && key.equals( keyValuePair.getKey() ) )
+                        || childBucket == null ) {
+
+                    if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                        metrics.recordWriteChainLength( chainLength );
                     }
+
+                    return bucket;
                 }
+
+                parentBucket = bucket;
+                bucket = childBucket;
+                chainLength++;
             }
+
+            return parentBucket;
+        }
+    }
+
+
+    /**
+     * Adds a new Bucket to a chain with a single CAS.  If the chain is empty the Bucket is CAS'ed 
+     * into the slot, else it is CAS'ed in as the child of the last Bucket.
+     *
+     * @param tab
+     *      buckets array
+     *
+     * @param arrayIndex
+     *      index of the slot
+     *
+     * @param lastBucket
+     *      last Bucket in the chain or null if the slot was empty
+     *
+     * @param newBucket
+     *      Bucket to add
+     *
+     * @return true if the Bucket was added, false if the chain changed since it was walked
+     */
+    private boolean addBucket(
+            AtomicReferenceArray<Bucket<K, V>> tab, int arrayIndex,
+            Bucket<K, V> lastBucket, Bucket<K, V> newBucket ) {
+
+        if ( lastBucket == null ) {
+
+            return tab.compareAndSet( arrayIndex, null, newBucket );
         }
 
-        putBoolean.set( false );
+        return lastBucket.setChildBucketAtomically( null, newBucket );
     }
 
 
-    @Override
-    public void put( K key, V value ) {
+    /**
+     * Marks a Bucket whose KeyValuePair has been nullified as deleted by CAS'ing a MarkerBucket in 
+     * as its child.  If a put(..) adds a Bucket after it first the CAS is repeated with the new 
+     * child.  A Bucket which has been frozen for a resize in the meantime is left alone: the 
+     * migration drops it anyway.
+     *
+     * @param bucket
+     *      Bucket whose KeyValuePair has been nullified
+     */
+    private void markDeleted( Bucket<K, V> bucket ) {
 
-        while ( removeBoolean.get() ) {
+        while ( bucket.getKeyValuePair() == null ) {
 
-            synchronized ( removeLock ) {
+            Bucket<K, V> childBucket = bucket.getChildBucket();
 
-                try {
-                    removeLock.wait();
-                    putValue( key, value );
-                }
-                catch ( InterruptedException e ) {
-                    // do nothing
-                }
+            if ( childBucket instanceof MarkerBucket || childBucket instanceof ForwardingBucket ) {
+
+                return;
+            }
+
+            if ( bucket.setChildBucketAtomically(
+                    childBucket, new MarkerBucket<K, V>( childBucket ) ) ) {
+
+                return;
             }
         }
+    }
+
+
+    /**
+     * Called after a KeyValuePair has been nullified.  Marks the Bucket as deleted and then walks 
+     * the chain again so that the Bucket is unlinked by the thread that removed it.
+     *
+     * @param tab
+     *      buckets array the KeyValuePair was removed from
+     *
+     * @param arrayIndex
+     *      index of the slot holding the chain
+     *
+     * @param bucket
+     *      Bucket whose KeyValuePair has been nullified
+     *
+     * @param key
+     *      key that was removed
+     */
+    private void removed(
+            AtomicReferenceArray<Bucket<K, V>> tab, int arrayIndex, Bucket<K, V> bucket, K key ) {
 
-        putValue( key, value );
+        keyValuePairCount.decrement();
+        markDeleted( bucket );
+        findBucket( tab, arrayIndex, key );
     }
 
 
-    @Override
-    public V getValue( K key ) {
+    /**
+     * Called after a KeyValuePair has been added.  If the number of KeyValuePairs has passed 
+     * three quarters of the size of the buckets array then a resize is started, or joined if 
+     * another thread has already started one.
+     *
+     * @param tab
+     *      buckets array the KeyValuePair was added to
+     */
+    private void addCount( AtomicReferenceArray<Bucket<K, V>> tab ) {
 
-        while ( true ) {
+        keyValuePairCount.increment();
+        resizeIfNeeded( tab );
+    }
 
-            while ( removeBoolean.get() ) {
 
-                synchronized ( removeLock ) {
+    /**
+     * Starts or joins a resize if the number of KeyValuePairs has passed three quarters of the 
+     * size of the buckets array
+     *
+     * @param tab
+     *      buckets array KeyValuePairs were added to
+     */
+    private void resizeIfNeeded( AtomicReferenceArray<Bucket<K, V>> tab ) {
 
-                    try {
-                        this.wait();
-                        break;
-                    }
-                    catch ( InterruptedException e ) {
+        resizeIfNeeded( tab, keyValuePairCount.sum() );
+    }
 
-                    }
-                }
-            }
 
-            int hashCode = key.hashCode();
-            int arrayIndex = hashCode % bucketSize;
+    /**
+     * Starts or joins a resize if count has passed three quarters of the size of the buckets 
+     * array
+     *
+     * @param tab
+     *      buckets array
+     *
+     * @param count
+     *      number of KeyValuePairs the buckets array has to hold
+     */
+    private void resizeIfNeeded( AtomicReferenceArray<Bucket<K, V>> tab, long count ) {
+
+        int n = tab.length();
+
+        if ( n < MAXIMUM_CAPACITY && count > n - ( n >>> 2 ) ) {
+
+            Resize<K, V> resize = resizeReference.get();
+
+            if ( !resize.complete ) {
 
-            V v = getValue( buckets[arrayIndex], key );
+                transfer( resize );
+            }
+            else if ( resize.target == tab ) {
+
+                Resize<K, V> newResize = new Resize<>( tab );
 
-            if ( !removeBoolean.get() ) {
+                if ( resizeReference.compareAndSet( resize, newResize ) ) {
 
-                return v;
+                    transfer( newResize );
+                }
             }
         }
     }
 
 
-    @Override
-    public void remove( K key ) {
+    /**
+     * Called by a thread that found a slot holding a ForwardingBucket.  The thread helps with the 
+     * resize if it is still in progress and then carries on in the new buckets array.
+     *
+     * @param forwardingBucket
+     *      ForwardingBucket found in the slot
+     *
+     * @return the buckets array to repeat the operation in
+     */
+    private AtomicReferenceArray<Bucket<K, V>> helpTransfer(
+            ForwardingBucket<K, V> forwardingBucket ) {
 
-        int hashCode = key.hashCode();
-        int arrayIndex = hashCode % bucketSize;
+        if ( ConcurrentMapMetricsImpl.ENABLED ) {
 
-        while ( true ) {
+            metrics.recordResizeRetry();
+        }
 
-            Bucket<K, V> bucket = getBucket( buckets[arrayIndex], key );
+        AtomicReferenceArray<Bucket<K, V>> nextTable = forwardingBucket.getNextTable();
+        Resize<K, V> resize = resizeReference.get();
 
-            if ( bucket == null ) {
+        if ( !resize.complete && resize.target == nextTable ) {
 
-                return;
-            }
+            transfer( resize );
+        }
 
-            if ( bucket.setKeyValuePairAtomically( bucket.getKeyValuePair(), null ) ) {
+        return nextTable;
+    }
 
-                bucketsToDeleteConcurrentLinkedQueue.add( bucket );
-                break;
-            }
+
+    /**
+     * Called by a writer that found a frozen chain.  The writer helps migrate any slots that 
+     * nobody has claimed yet and then yields to the thread migrating the frozen chain.
+     */
+    private void helpTransfer() {
+
+        if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+            metrics.recordResizeRetry();
         }
 
-        if ( numberDeleted.getAndIncrement()
-                + 2 > numberOfKeyValuePairsDeletedBeforeHouseKeeping ) {
+        Resize<K, V> resize = resizeReference.get();
 
-            synchronized ( this ) {
+        if ( !resize.complete ) {
 
-                if ( numberDeleted.getAndIncrement()
-                        + 2 > numberOfKeyValuePairsDeletedBeforeHouseKeeping ) {
+            transfer( resize );
+        }
 
-                    try {
-                        removeBoolean.getAndSet( true );
+        Thread.yield();
+    }
 
-                        springClean();
-                        numberDeleted.set( 0 );
-                    }
-                    finally {
-                        removeBoolean.getAndSet( false );
+
+    /**
+     * Threads claim strides of slots to migrate by decrementing transferIndex with CAS.  A stride 
+     * is only ever migrated by the thread that claimed it.  The thread which accounts for the last 
+     * migrated slot publishes the new buckets array.
+     *
+     * @param resize
+     *      the resize to help with
+     */
+    private void transfer( Resize<K, V> resize ) {
+
+        int n = resize.source.length();
+        int stride = Math.max( ( n >>> 3 ) / NCPU, MIN_TRANSFER_STRIDE );
+
+        while ( true ) {
+
+            int nextIndex = resize.transferIndex.get();
+
+            if ( nextIndex <= 0 ) {
+
+                return;
+            }
+
+            int bound = Math.max( nextIndex - stride, 0 );
+
+            if ( !resize.transferIndex.compareAndSet( nextIndex, bound ) ) {
+
+                continue;
+            }
+
+            for ( int i = nextIndex - 1; i >= bound; i-- ) {
+
+                transferBucket( resize, i );
+            }
+
+            if ( resize.transferredBinCount.addAndGet( nextIndex - bound ) == n ) {
+
+                buckets = resize.target;
+                resize.complete = true;
+
+                if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                    metrics.recordResize( System.nanoTime() - resize.startNanos );
+                    resize.event.oldLength = n;
+                    resize.event.newLength = resize.target.length();
+                    resize.event.commit();
+                }
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Migrates the chain of Buckets at one slot of the old buckets array.
+     * <p>
+     * An empty slot is migrated by CAS'ing the ForwardingBucket straight into it.  Otherwise every 
+     * Bucket in the chain has its KeyValuePair swapped for a MovedKeyValuePair and the last Bucket 
+     * has a ForwardingBucket CAS'ed in as its child.  From then on no put or remove can change the 
+     * chain.  The live KeyValuePairs are then split between slot i and slot i + oldSize of the new 
+     * array, keeping their order, and finally the ForwardingBucket is CAS'ed into the old slot.
+     * <p>
+     * A marked Bucket met while freezing is unlinked first, as its MarkerBucket could otherwise be 
+     * the end of the chain and leave no place for the ForwardingBucket.  Whenever the head of the 
+     * chain changes, because a marked head was unlinked, the migration starts again from the new 
+     * head.  Freezing a Bucket a second time changes nothing.
+     *
+     * @param resize
+     *      the resize the slot belongs to
+     *
+     * @param i
+     *      index of the slot in the old buckets array
+     */
+    private void transferBucket( Resize<K, V> resize, int i ) {
+
+        AtomicReferenceArray<Bucket<K, V>> source = resize.source;
+        AtomicReferenceArray<Bucket<K, V>> target = resize.target;
+        int n = source.length();
+
+        ForwardingBucket<K, V> forwardingBucket = new ForwardingBucket<>( i, target );
+
+        while ( true ) {
+
+            Bucket<K, V> head = source.get( i );
+
+            if ( head == null ) {
+
+                if ( source.compareAndSet( i, null, forwardingBucket ) ) {
+
+                    return;
+                }
+
+                continue;
+            }
+
+            Bucket<K, V> parentBucket = null;
+            Bucket<K, V> bucket = head;
+            boolean restart = false;
+
+            while ( bucket != null && !( bucket instanceof ForwardingBucket ) ) {
+
+                KeyValuePair<K, V> keyValuePair;
+
+                do {
+                    keyValuePair = bucket.getKeyValuePair();
+                }
+                while ( !( keyValuePair instanceof MovedKeyValuePair )
+                        && !bucket.setKeyValuePairAtomically(
+                                keyValuePair, MovedKeyValuePair.of( keyValuePair ) ) );
+
+                Bucket<K, V> childBucket = bucket.getChildBucket();
+
+                if ( childBucket instanceof MarkerBucket ) {
+
+                    Bucket<K, V> nextBucket = childBucket.getChildBucket();
+
+                    if ( parentBucket == null ) {
+
+                        source.compareAndSet( i, bucket, nextBucket );
+                    }
+                    else {
+
+                        parentBucket.setChildBucketAtomically( bucket, nextBucket );
+                    }
+
+                    restart = true;
+                    break;
+                }
+
+                if ( childBucket == null ) {
+
+                    // Either the ForwardingBucket goes in or another Bucket was added or marked 
+                    // first, in which case the same Bucket is looked at again
+                    if ( bucket.setChildBucketAtomically( null, forwardingBucket ) ) {
+
+                        break;
+                    }
+
+                    continue;
+                }
+
+                parentBucket = bucket;
+                bucket = childBucket;
+            }
+
+            if ( restart ) {
+
+                continue;
+            }
+
+            Bucket<K, V> lowHead = null, lowTail = null, highHead = null, highTail = null;
+
+            for ( bucket = head; bucket != null && !( bucket instanceof ForwardingBucket );
+                    bucket = bucket.getChildBucket() ) {
+
+                // A Bucket can still be marked after it was frozen if its remove nullified it just 
+                // before, in which case the chain carries on after the MarkerBucket
+                if ( bucket instanceof MarkerBucket ) {
+
+                    continue;
+                }
+
+                KeyValuePair<K, V> keyValuePair =
+                        ( ( MovedKeyValuePair<K, V> )bucket.getKeyValuePair() ).getOriginal();
+
+                if ( keyValuePair == null ) {
+
+                    continue;
+                }
+
+                int index =
+                        indexFor( spread( keyValuePair.getKey().hashCode() ), target.length() );
+
+                Bucket<K, V> copy = new BucketImpl<>( keyValuePair, index );
+
+                if ( index == i ) {
+
+                    if ( lowTail == null ) {
+
+                        lowHead = copy;
+                    }
+                    else {
+
+                        lowTail.setChildBucket( copy );
+                    }
+
+                    lowTail = copy;
+                }
+                else {
+
+                    if ( highTail == null ) {
+
+                        highHead = copy;
+                    }
+                    else {
+
+                        highTail.setChildBucket( copy );
+                    }
+
+                    highTail = copy;
+                }
+            }
+
+            target.set( i, lowHead );
+            target.set( i + n, highHead );
+
+            if ( source.compareAndSet( i, head, forwardingBucket ) ) {
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param bucketSize  
+     *      The initial number of slots in this Map, rounded up to a power of two.  The number of 
+     *      slots is doubled whenever the number of items in the map passes three quarters of the 
+     *      number of slots.
+     */
+    public ConcurrentMapImpl( int bucketSize ) {
+
+        this( bucketSize, null );
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param bucketSize  
+     *      The initial number of slots in this Map, rounded up to a power of two
+     *
+     * @param timerWheel
+     *      TimerWheel which removes keys put with a time to live, or null to use 
+     *      TimerWheelImpl.shared()
+     */
+    public ConcurrentMapImpl( int bucketSize, TimerWheel timerWheel ) {
+
+        buckets = new AtomicReferenceArray<>( tableSizeFor( bucketSize ) );
+        resizeReference = new AtomicReference<>( new Resize<>( buckets, true ) );
+        this.timerWheel = timerWheel;
+    }
+
+
+    /**
+     *  Constructor
+     */
+    public ConcurrentMapImpl() {
+
+        this( 32 );
+    }
+
+
+    /**
+     * Puts the key and value in the map.  The chain is walked once: if a Bucket holding the key is 
+     * found its KeyValuePair is replaced with one CAS, else a new Bucket is added with one CAS.  
+     * If the CAS fails the walk is repeated.  An expired KeyValuePair counts as absent and is 
+     * replaced even if onlyIfAbsent is true.
+     *
+     * @param newKeyValuePair
+     *      KeyValuePair wish to put in the Map.  It is allocated once however many times the CAS 
+     *      has to be retried.
+     *
+     * @param onlyIfAbsent
+     *      if true an existing value is left as it is
+     *
+     * @return the previous value or null if the key was not in the map
+     */
+    private V putKeyValuePair( KeyValuePair<K, V> newKeyValuePair, boolean onlyIfAbsent ) {
+
+        return putKeyValuePair( newKeyValuePair, onlyIfAbsent, true );
+    }
+
+
+    /**
+     * @param newKeyValuePair
+     *      KeyValuePair wish to put in the Map
+     *
+     * @param onlyIfAbsent
+     *      if true an existing value is left as it is
+     *
+     * @param checkResize
+     *      if false a new key is counted but the caller checks whether the map needs to resize, 
+     *      so that a batch can check once every few keys rather than summing the counter for 
+     *      every key
+     *
+     * @return the previous value or null if the key was not in the map
+     */
+    private V putKeyValuePair(
+            KeyValuePair<K, V> newKeyValuePair, boolean onlyIfAbsent, boolean checkResize ) {
+
+        K key = newKeyValuePair.getKey();
+        int hash = spread( key.hashCode() );
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+
+        // The Bucket is only allocated if the key is not already in the map
+        Bucket<K, V> newBucket = null;
+
+        while ( true ) {
+
+            int arrayIndex = indexFor( hash, tab.length() );
+            Bucket<K, V> headBucket = tab.get( arrayIndex );
+
+            // The chain has been migrated so repeat the put in the new buckets array
+            if ( headBucket instanceof ForwardingBucket ) {
+
+                tab = helpTransfer( ( ForwardingBucket<K, V> )headBucket );
+                continue;
+            }
+
+            Bucket<K, V> bucket = findBucket( tab, arrayIndex, key );
+            KeyValuePair<K, V> keyValuePair = bucket == null ? null : bucket.getKeyValuePair();
+
+            // The chain is being migrated so help and then try again
+            if ( keyValuePair instanceof MovedKeyValuePair ) {
+
+                helpTransfer();
+                continue;
+            }
+
+            if ( keyValuePair != null && key.equals( keyValuePair.getKey() ) ) {
+
+                boolean expired = isExpired( keyValuePair );
+
+                if ( onlyIfAbsent && !expired ) {
+
+                    return keyValuePair.getValue();
+                }
+
+                if ( bucket.setKeyValuePairAtomically( keyValuePair, newKeyValuePair ) ) {
+
+                    cancelTimeout( keyValuePair );
+                    return expired ? null : keyValuePair.getValue();
+                }
+
+                if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                    metrics.recordPutCasFailure();
+                }
+            }
+            else {
+                // The key is not in the chain so we add a new bucket after the last bucket
+                if ( newBucket == null || newBucket.getIndex() != arrayIndex ) {
+
+                    newBucket = new BucketImpl<K, V>( newKeyValuePair, arrayIndex );
+                }
+
+                if ( addBucket( tab, arrayIndex, bucket, newBucket ) ) {
+
+                    if ( checkResize ) {
+
+                        addCount( tab );
                     }
+                    else {
+
+                        keyValuePairCount.increment();
+                    }
+
+                    return null;
+                }
+
+                if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                    metrics.recordPutCasFailure();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Finds the Bucket at the head of the chain the key belongs to, following ForwardingBuckets 
+     * into newer buckets arrays if a resize is taking place.
+     *
+     * @param key
+     *      key to find the chain of
+     *
+     * @return head of the chain
+     */
+    private Bucket<K, V> getHeadBucket( K key ) {
+
+        int hash = spread( key.hashCode() );
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+
+        while ( true ) {
+
+            Bucket<K, V> bucket = tab.get( indexFor( hash, tab.length() ) );
+
+            if ( !( bucket instanceof ForwardingBucket ) ) {
+
+                return bucket;
+            }
+
+            tab = helpTransfer( ( ForwardingBucket<K, V> )bucket );
+        }
+    }
+
+
+    private V putValue( K key, V value, boolean onlyIfAbsent ) {
+
+        return putKeyValuePair( new KeyValuePair<K, V>( key, value ), onlyIfAbsent );
+    }
+
+
+    private TimerWheel timerWheel() {
+
+        return timerWheel == null ? TimerWheelImpl.shared() : timerWheel;
+    }
+
+
+    @Override
+    public V put( K key, V value ) {
+
+        return putValue( key, value, false );
+    }
+
+
+    /**
+     * The removal of the key is scheduled on the TimerWheel once the key has been put, so the 
+     * removal can never run before the put.
+     */
+    @Override
+    public V put( K key, V value, long ttl, TimeUnit unit ) {
+
+        long ttlNanos = unit.toNanos( ttl );
+
+        if ( ttlNanos <= 0 ) {
+
+            throw new IllegalArgumentException( "ttl must be positive" );
+        }
+
+        ExpiringKeyValuePair<K, V> keyValuePair =
+                new ExpiringKeyValuePair<K, V>( key, value, System.nanoTime() + ttlNanos, null );
+
+        V oldValue = putKeyValuePair( keyValuePair, false );
+        keyValuePair.setTimeout( timerWheel().schedule( () -> removeExpired( key ), ttl, unit ) );
+        return oldValue;
+    }
+
+
+    @Override
+    public V putIfAbsent( K key, V value ) {
+
+        return putValue( key, value, true );
+    }
+
+
+    @Override
+    public boolean replace( K key, V oldValue, V newValue ) {
+
+        int hash = spread( key.hashCode() );
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+
+        while ( true ) {
+
+            int arrayIndex = indexFor( hash, tab.length() );
+            Bucket<K, V> headBucket = tab.get( arrayIndex );
+
+            if ( headBucket instanceof ForwardingBucket ) {
+
+                tab = helpTransfer( ( ForwardingBucket<K, V> )headBucket );
+                continue;
+            }
+
+            Bucket<K, V> bucket = findBucket( tab, arrayIndex, key );
+            KeyValuePair<K, V> keyValuePair = bucket == null ? null : bucket.getKeyValuePair();
+
+            if ( keyValuePair instanceof MovedKeyValuePair ) {
+
+                helpTransfer();
+                continue;
+            }
+
+            if ( keyValuePair == null || !key.equals( keyValuePair.getKey() )
+                    || !oldValue.equals( keyValuePair.getValue() ) || isExpired( keyValuePair ) ) {
+
+                return false;
+            }
+
+            if ( bucket.setKeyValuePairAtomically(
+                    keyValuePair, withValue( keyValuePair, newValue ) ) ) {
+
+                return true;
+            }
+
+            if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                metrics.recordPutCasFailure();
+            }
+        }
+    }
+
+
+    @Override
+    public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction ) {
+
+        V value = getValue( getHeadBucket( key ), key );
+
+        if ( value != null ) {
+
+            return value;
+        }
+
+        value = mappingFunction.apply( key );
+
+        if ( value == null ) {
+
+            return null;
+        }
+
+        V existingValue = putValue( key, value, true );
+        return existingValue == null ? value : existingValue;
+    }
+
+
+    @Override
+    public V merge(
+            K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction ) {
+
+        int hash = spread( key.hashCode() );
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+
+        while ( true ) {
+
+            int arrayIndex = indexFor( hash, tab.length() );
+            Bucket<K, V> headBucket = tab.get( arrayIndex );
+
+            if ( headBucket instanceof ForwardingBucket ) {
+
+                tab = helpTransfer( ( ForwardingBucket<K, V> )headBucket );
+                continue;
+            }
+
+            Bucket<K, V> bucket = findBucket( tab, arrayIndex, key );
+            KeyValuePair<K, V> keyValuePair = bucket == null ? null : bucket.getKeyValuePair();
+
+            if ( keyValuePair instanceof MovedKeyValuePair ) {
+
+                helpTransfer();
+                continue;
+            }
+
+            if ( keyValuePair == null || !key.equals( keyValuePair.getKey() )
+                    || isExpired( keyValuePair ) ) {
+
+                // Not in the map so add it, unless another thread gets there first in which case 
+                // we go round again and merge with its value
+                if ( putValue( key, value, true ) == null ) {
+
+                    return value;
+                }
+
+                continue;
+            }
+
+            V newValue = remappingFunction.apply( keyValuePair.getValue(), value );
+
+            if ( newValue == null ) {
+
+                if ( bucket.setKeyValuePairAtomically( keyValuePair, null ) ) {
+
+                    cancelTimeout( keyValuePair );
+                    removed( tab, arrayIndex, bucket, key );
+                    return null;
+                }
+
+                if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                    metrics.recordRemoveCasFailure();
+                }
+            }
+            else if ( bucket.setKeyValuePairAtomically(
+                    keyValuePair, withValue( keyValuePair, newValue ) ) ) {
+
+                return newValue;
+            }
+            else if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                metrics.recordPutCasFailure();
+            }
+        }
+    }
+
+
+    @Override
+    public V getValue( K key ) {
+
+        return getValue( getHeadBucket( key ), key );
+    }
+
+
+    @Override
+    public void remove( K key ) {
+
+        removeValue( key, null, false );
+    }
+
+
+    @Override
+    public boolean remove( K key, V value ) {
+
+        return value != null && removeValue( key, value, false );
+    }
+
+
+    /**
+     * Run by the TimerWheel once the time to live of a key has passed.  Does nothing if the key 
+     * has been put again since without a time to live, or with a later one.
+     */
+    private void removeExpired( K key ) {
+
+        removeValue( key, null, true );
+    }
+
+
+    /**
+     * Removes the key if its value equals value, or whatever its value if value is null.  If 
+     * onlyIfExpired is true the key is only removed if it has expired.
+     *
+     * @return true if the key was removed
+     */
+    private boolean removeValue( K key, V value, boolean onlyIfExpired ) {
+
+        int hash = spread( key.hashCode() );
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+
+        while ( true ) {
+
+            int arrayIndex = indexFor( hash, tab.length() );
+            Bucket<K, V> headBucket = tab.get( arrayIndex );
+
+            if ( headBucket instanceof ForwardingBucket ) {
+
+                tab = helpTransfer( ( ForwardingBucket<K, V> )headBucket );
+                continue;
+            }
+
+            Bucket<K, V> bucket = findBucket( tab, arrayIndex, key );
+
+            // Read the KeyValuePair once so that we only ever nullify the one we matched
+            KeyValuePair<K, V> keyValuePair = bucket == null ? null : bucket.getKeyValuePair();
+
+            if ( keyValuePair instanceof MovedKeyValuePair ) {
+
+                helpTransfer();
+                continue;
+            }
+
+            if ( keyValuePair == null || !key.equals( keyValuePair.getKey() ) ) {
+
+                return false;
+            }
+
+            if ( value != null && !value.equals( keyValuePair.getValue() ) ) {
+
+                return false;
+            }
+
+            boolean expired = isExpired( keyValuePair );
+
+            // remove( key ) also clears out an expired key, remove( key, value ) treats it as absent
+            if ( onlyIfExpired ? !expired : expired && value != null ) {
+
+                return false;
+            }
+
+            // Nullifying the KeyValuePair removes the key.  The Bucket is unlinked afterwards.
+            if ( bucket.setKeyValuePairAtomically( keyValuePair, null ) ) {
+
+                cancelTimeout( keyValuePair );
+                removed( tab, arrayIndex, bucket, key );
+                return true;
+            }
+
+            if ( ConcurrentMapMetricsImpl.ENABLED ) {
+
+                metrics.recordRemoveCasFailure();
+            }
+        }
+    }
+
+
+    /**
+     * Grows the buckets array, one doubling at a time, until it can hold count KeyValuePairs 
+     * without passing three quarters full.  Doubling before a batch is added means only the 
+     * KeyValuePairs already in the map are migrated, rather than the batch being migrated again 
+     * and again as it is added.
+     *
+     * @param count
+     *      number of KeyValuePairs the map is expected to hold
+     */
+    private void presize( long count ) {
+
+        while ( true ) {
+
+            AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+            int n = tab.length();
+
+            if ( n >= MAXIMUM_CAPACITY || count <= n - ( n >>> 2 ) ) {
+
+                return;
+            }
+
+            resizeIfNeeded( tab, count );
+
+            // Another thread is still migrating the last slots it claimed
+            if ( buckets == tab ) {
+
+                Thread.yield();
+            }
+        }
+    }
+
+
+    /**
+     * Grows the buckets array to fit the batch before putting it, so the batch is not migrated 
+     * again and again as it goes in.  New keys are counted as they are added but the check 
+     * whether the map needs to resize, which sums the striped counter, is only made every 
+     * RESIZE_CHECK_INTERVAL keys and at the end of the batch.
+     */
+    @Override
+    public void putAll( Map<? extends K, ? extends V> map ) {
+
+        presize( keyValuePairCount.sum() + map.size() );
+        int count = 0;
+
+        for ( Map.Entry<? extends K, ? extends V> entry : map.entrySet() ) {
+
+            putKeyValuePair(
+                    new KeyValuePair<K, V>( entry.getKey(), entry.getValue() ), false, false );
+
+            if ( ++count % RESIZE_CHECK_INTERVAL == 0 ) {
+
+                resizeIfNeeded( buckets );
+            }
+        }
+
+        resizeIfNeeded( buckets );
+    }
+
+
+    @Override
+    public long size() {
+
+        return keyValuePairCount.sum();
+    }
+
+
+    @Override
+    public Spliterator<KeyValuePair<K, V>> spliterator() {
+
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+        return new BinSpliterator<>( tab, 0, tab.length(), Math.max( size(), 0 ) );
+    }
+
+
+    /**
+     * @return metrics of this map, which are all 0 unless the JVM was started with 
+     *      -Dcom.javaspeak.java_examples.concurrentMap.metrics=true
+     */
+    public ConcurrentMapMetrics getMetrics() {
+
+        return metrics;
+    }
+
+
+    /**
+     * Publishes the metrics of this map to the platform MBeanServer as 
+     * com.javaspeak.java_examples:type=ConcurrentMap,name=&lt;name&gt;
+     *
+     * @param name
+     *      name telling this map apart from the others
+     *
+     * @return ObjectName the metrics were registered under, which can be used to unregister them
+     */
+    public ObjectName registerMetrics( String name ) {
+
+        try {
+            ObjectName objectName =
+                    new ObjectName(
+                            "com.javaspeak.java_examples:type=ConcurrentMap,name=" +
+                                    ObjectName.quote( name ) );
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean( metrics, objectName );
+            return objectName;
+        }
+        catch ( JMException e ) {
+
+            throw new IllegalStateException( "Could not register metrics of " + name, e );
+        }
+    }
+
+
+    /**
+     * Counts the KeyValuePairs chained at each slot of the current buckets array.  Used to check 
+     * how evenly keys are spread across the slots.
+     *
+     * @return number of KeyValuePairs at each slot
+     */
+    int[] getChainLengths() {
+
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
+        int[] chainLengths = new int[tab.length()];
+
+        for ( int i = 0; i < chainLengths.length; i++ ) {
+
+            for ( Bucket<K, V> bucket = tab.get( i ); bucket != null;
+                    bucket = bucket.getChildBucket() ) {
+
+                KeyValuePair<K, V> keyValuePair = bucket.getKeyValuePair();
+
+                if ( keyValuePair != null && keyValuePair.getKey() != null ) {
+
+                    chainLengths[i]++;
                 }
             }
         }
 
+        return chainLengths;
     }
 
 
@@ -533,11 +1591,13 @@ public class ConcurrentMapImpl<K, V> implements ConcurrentMap<K, V> {
     public String debug() {
 
         StringBuilder sb = new StringBuilder( "\n" );
+        AtomicReferenceArray<Bucket<K, V>> tab = buckets;
 
-        for ( int i = 0; i < buckets.length; i++ ) {
+        for ( int i = 0; i < tab.length(); i++ ) {
 
             sb.append( "Index " ).append( i ).append( " : " );
-            sb.append( buckets[i].toString() ).append( "\n" );
+            Bucket<K, V> bucket = tab.get( i );
+            sb.append( bucket == null ? "null bucket" : bucket.toString() ).append( "\n" );
         }
 
         return sb.toString();
@@ -0,0 +1,105 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import javax.management.MXBean;
+
+/**
+ * Counters and histograms of what ConcurrentMapImpl does on its hot paths, to explain why it has
+ * slowed down: long chains, threads retrying failed CAS's on the same slots, marked Buckets being
+ * unlinked and resizes.
+ * <p>
+ * Metrics are only recorded if the JVM was started with:
+ * <p>
+ *     -Dcom.javaspeak.java_examples.concurrentMap.metrics=true
+ * <p>
+ * The flag is read once into a static final field, so when it is off the JIT removes the
+ * recording altogether and the map runs exactly as if it had none.  When it is on the counters
+ * are LongAdders, which threads add to without contending.
+ * <p>
+ * ConcurrentMapMetrics is an MXBean, so ConcurrentMapImpl.registerMetrics(..) can publish it to
+ * JMX, and each resize is also committed as a JFR event named
+ * com.javaspeak.java_examples.ConcurrentMapResize.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@MXBean
+public interface ConcurrentMapMetrics {
+
+    /**
+     * @return true if the JVM records metrics
+     */
+    public boolean isEnabled();
+
+
+    /**
+     * @return number of CAS's that failed while putting, replacing or merging a key, each of which
+     *      made the thread walk the chain again
+     */
+    public long getPutCasFailureCount();
+
+
+    /**
+     * @return number of CAS's that failed while removing a key, each of which made the thread walk
+     *      the chain again
+     */
+    public long getRemoveCasFailureCount();
+
+
+    /**
+     * @return number of times an operation found its chain migrated, or being migrated, to a
+     *      bigger buckets array and carried on in that array instead
+     */
+    public long getResizeRetryCount();
+
+
+    /**
+     * @return number of marked Buckets unlinked from their chains after a remove
+     */
+    public long getUnlinkCount();
+
+
+    /**
+     * @return number of times the unlinking of a marked Bucket failed because its parent changed,
+     *      which restarts the walk from the head of the chain
+     */
+    public long getUnlinkRetryCount();
+
+
+    /**
+     * @return number of Buckets writers walked past before finding the key or the end of the
+     *      chain, at the 99th percentile
+     */
+    public long getWriteChainLength99thPercentile();
+
+
+    /**
+     * @return most Buckets a writer has walked past
+     */
+    public long getWriteChainLengthMax();
+
+
+    /**
+     * @return number of slots of the current buckets array holding a chain of each length from 0
+     *      to 8, with the last element counting every chain of 8 or more KeyValuePairs.  It is
+     *      computed by walking the whole map.
+     */
+    public long[] getChainLengthDistribution();
+
+
+    /**
+     * @return number of resizes which have completed
+     */
+    public long getResizeCount();
+
+
+    /**
+     * @return mean time in nanoseconds from the start of a resize to the new buckets array being
+     *      published
+     */
+    public double getResizeMeanNanos();
+
+
+    /**
+     * @return longest time in nanoseconds a resize has taken
+     */
+    public long getResizeMaxNanos();
+}
@@ -0,0 +1,184 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * ConcurrentMapMetricsImpl holds the metrics of one ConcurrentMapImpl.  The map calls the record
+ * methods inside if ( ConcurrentMapMetricsImpl.ENABLED ) blocks so that, with metrics off, the
+ * calls are never compiled in.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+final class ConcurrentMapMetricsImpl implements ConcurrentMapMetrics {
+
+    static final String ENABLED_PROPERTY = "com.javaspeak.java_examples.concurrentMap.metrics";
+
+    // static final so that the JIT can drop the recording when it is false
+    static final boolean ENABLED = Boolean.getBoolean( ENABLED_PROPERTY );
+
+    private static final int LONGEST_CHAIN_COUNTED = 8;
+
+    private final Recorders recorders = ENABLED ? new Recorders() : Recorders.NONE;
+    private final Supplier<int[]> chainLengthsSupplier;
+
+    /**
+     * The counters and histograms of one map.  With metrics off every map shares NONE, which is
+     * never recorded to, rather than allocating some 130 LongAdders per map, shard and inner map.
+     */
+    private static final class Recorders {
+
+        private static final Recorders NONE = new Recorders();
+
+        private final LongAdder putCasFailureCount = new LongAdder();
+        private final LongAdder removeCasFailureCount = new LongAdder();
+        private final LongAdder resizeRetryCount = new LongAdder();
+        private final LongAdder unlinkCount = new LongAdder();
+        private final LongAdder unlinkRetryCount = new LongAdder();
+        private final LogHistogram writeChainLengths = new LogHistogram();
+        private final LogHistogram resizeNanos = new LogHistogram();
+    }
+
+
+    /**
+     * @param chainLengthsSupplier
+     *      returns the number of KeyValuePairs at each slot of the map
+     */
+    ConcurrentMapMetricsImpl( Supplier<int[]> chainLengthsSupplier ) {
+
+        this.chainLengthsSupplier = chainLengthsSupplier;
+    }
+
+
+    void recordPutCasFailure() {
+
+        recorders.putCasFailureCount.increment();
+    }
+
+
+    void recordRemoveCasFailure() {
+
+        recorders.removeCasFailureCount.increment();
+    }
+
+
+    void recordResizeRetry() {
+
+        recorders.resizeRetryCount.increment();
+    }
+
+
+    void recordUnlink() {
+
+        recorders.unlinkCount.increment();
+    }
+
+
+    void recordUnlinkRetry() {
+
+        recorders.unlinkRetryCount.increment();
+    }
+
+
+    void recordWriteChainLength( int chainLength ) {
+
+        recorders.writeChainLengths.record( chainLength );
+    }
+
+
+    void recordResize( long nanos ) {
+
+        recorders.resizeNanos.record( nanos );
+    }
+
+
+    @Override
+    public boolean isEnabled() {
+
+        return ENABLED;
+    }
+
+
+    @Override
+    public long getPutCasFailureCount() {
+
+        return recorders.putCasFailureCount.sum();
+    }
+
+
+    @Override
+    public long getRemoveCasFailureCount() {
+
+        return recorders.removeCasFailureCount.sum();
+    }
+
+
+    @Override
+    public long getResizeRetryCount() {
+
+        return recorders.resizeRetryCount.sum();
+    }
+
+
+    @Override
+    public long getUnlinkCount() {
+
+        return recorders.unlinkCount.sum();
+    }
+
+
+    @Override
+    public long getUnlinkRetryCount() {
+
+        return recorders.unlinkRetryCount.sum();
+    }
+
+
+    @Override
+    public long getWriteChainLength99thPercentile() {
+
+        return recorders.writeChainLengths.getValueAtPercentile( 99 );
+    }
+
+
+    @Override
+    public long getWriteChainLengthMax() {
+
+        return recorders.writeChainLengths.getMax();
+    }
+
+
+    @Override
+    public long[] getChainLengthDistribution() {
+
+        long[] distribution = new long[LONGEST_CHAIN_COUNTED + 1];
+
+        for ( int chainLength : chainLengthsSupplier.get() ) {
+
+            distribution[Math.min( chainLength, LONGEST_CHAIN_COUNTED )]++;
+        }
+
+        return distribution;
+    }
+
+
+    @Override
+    public long getResizeCount() {
+
+        return recorders.resizeNanos.getCount();
+    }
+
+
+    @Override
+    public double getResizeMeanNanos() {
+
+        return recorders.resizeNanos.getMean();
+    }
+
+
+    @Override
+    public long getResizeMaxNanos() {
+
+        return recorders.resizeNanos.getMax();
+    }
+}
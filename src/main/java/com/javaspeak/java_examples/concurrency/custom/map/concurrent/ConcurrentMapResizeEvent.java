@@ -0,0 +1,27 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event committed by ConcurrentMapImpl when a resize completes.  It begins when the resize is
+ * started and is committed by whichever thread migrates the last slot, so its duration is the
+ * whole resize however many threads helped with it.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@Name( "com.javaspeak.java_examples.ConcurrentMapResize" )
+@Label( "ConcurrentMap Resize" )
+@Category( { "Java Examples", "ConcurrentMap" } )
+@Description( "Migration of a ConcurrentMapImpl to a buckets array twice the size" )
+final class ConcurrentMapResizeEvent extends Event {
+
+    @Label( "Old Length" )
+    int oldLength;
+
+    @Label( "New Length" )
+    int newLength;
+}
@@ -0,0 +1,75 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Saves the contents of a ConcurrentMap to a file and loads them back, so that a cache can be
+ * warm again straight after a restart rather than being rebuilt from scratch.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public interface ConcurrentMapSnapshot<K, V> {
+
+    /**
+     * Writes every key in the map to the file without blocking the threads using the map.  The
+     * snapshot is weakly consistent: keys put or removed while it is being written may or may not
+     * be in it.  The file is only replaced once the whole snapshot is on disk.
+     *
+     * @param map
+     *      map to save
+     *
+     * @param path
+     *      file to save the map to
+     *
+     * @return number of keys written
+     *
+     * @throws IOException
+     *      if the file cannot be written
+     */
+    public long write( ConcurrentMap<K, V> map, Path path ) throws IOException;
+
+
+    /**
+     * Puts every key of a snapshot into the map, using several threads
+     *
+     * @param path
+     *      file written by write(..)
+     *
+     * @param map
+     *      map to load the keys into
+     *
+     * @param threadCount
+     *      number of threads to load with
+     *
+     * @return number of keys loaded, which leaves out keys whose time to live has passed
+     *
+     * @throws IOException
+     *      if the file cannot be read or is not a valid snapshot
+     *
+     * @throws IllegalArgumentException
+     *      if the snapshot holds keys with a time to live which has not yet passed and the map is
+     *      not an ExpiringConcurrentMap
+     */
+    public long load( Path path, ConcurrentMap<K, V> map, int threadCount ) throws IOException;
+
+
+    /**
+     * Loads a snapshot into a new ConcurrentMapImpl big enough to hold it without resizing
+     *
+     * @param path
+     *      file written by write(..)
+     *
+     * @param threadCount
+     *      number of threads to load with
+     *
+     * @return the loaded map
+     *
+     * @throws IOException
+     *      if the file cannot be read or is not a valid snapshot
+     */
+    public ConcurrentMapImpl<K, V> load( Path path, int threadCount ) throws IOException;
+}
@@ -0,0 +1,472 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * ConcurrentMapSnapshotImpl writes a snapshot as a header followed by chunks of records:
+ * <p>
+ *     header : magic (int) | version (int) | number of keys (long) | number of chunks (long) |
+ *              latest time a key expires in epoch millis, or 0 (long)<p>
+ *     chunk  : length of records (int) | number of records (int) | CRC32 of records (int) |
+ *              records<p>
+ *     record : key | value | 0 (byte), or 1 (byte) | time it expires in epoch millis (long)
+ * <p>
+ * write(..) walks the map with its Spliterator, which never blocks other threads, and encodes
+ * records into a direct buffer of about a megabyte.  Each full buffer is written to the file with
+ * one FileChannel.write(..) and no copying on the heap.  The snapshot goes to a temporary file
+ * which is forced to disk and then moved over the old snapshot, so a crash while writing leaves
+ * the previous snapshot in place.
+ * <p>
+ * load(..) reads the header and the chunk headers to find where each chunk starts, then the
+ * threads take chunks one at a time.  Each chunk is mapped into memory with a MappedByteBuffer,
+ * so the records are decoded straight from the page cache, checked against its CRC32 and put in
+ * the map.  load( path, threadCount ) creates a ConcurrentMapImpl sized for the number of keys in
+ * the header, so the threads never wait on a resize.
+ * <p>
+ * A key put with a time to live keeps it: the snapshot stores the wall clock time it expires,
+ * since System.nanoTime() means nothing after a restart, and load(..) leaves out keys whose time
+ * has passed.  Such keys can only be loaded into an ExpiringConcurrentMap, which load(..) checks
+ * against the latest expiry time in the header before it puts a single key.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class ConcurrentMapSnapshotImpl<K, V> implements ConcurrentMapSnapshot<K, V> {
+
+    private static final int MAGIC = 0x434d534e;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int CHUNK_HEADER_SIZE = 12;
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final SnapshotCodec<K> keyCodec;
+    private final SnapshotCodec<V> valueCodec;
+
+    /**
+     * Fills a direct buffer with records and writes it to the file as a chunk when it is full
+     */
+    private final class ChunkWriter {
+
+        private final FileChannel channel;
+        private final CRC32 crc32 = new CRC32();
+        private ByteBuffer buffer = newBuffer( CHUNK_SIZE );
+        private int recordCount;
+        private long keyCount;
+        private long chunkCount;
+        private long latestExpiresAt;
+
+        private ChunkWriter( FileChannel channel ) {
+
+            this.channel = channel;
+        }
+
+
+        private ByteBuffer newBuffer( int size ) {
+
+            return ByteBuffer.allocateDirect( size ).position( CHUNK_HEADER_SIZE );
+        }
+
+
+        private void add( KeyValuePair<K, V> keyValuePair ) throws IOException {
+
+            long expiresAt = expiresAtMillis( keyValuePair );
+
+            if ( expiresAt < 0 ) {
+
+                return;
+            }
+
+            while ( true ) {
+
+                int start = buffer.position();
+
+                try {
+                    keyCodec.write( keyValuePair.getKey(), buffer );
+                    valueCodec.write( keyValuePair.getValue(), buffer );
+
+                    if ( expiresAt == 0 ) {
+
+                        buffer.put( ( byte )0 );
+                    }
+                    else {
+
+                        buffer.put( ( byte )1 ).putLong( expiresAt );
+                        latestExpiresAt = Math.max( latestExpiresAt, expiresAt );
+                    }
+
+                    recordCount++;
+                    return;
+                }
+                catch ( BufferOverflowException e ) {
+
+                    buffer.position( start );
+
+                    // A record bigger than a whole chunk gets a chunk of its own
+                    if ( recordCount == 0 ) {
+
+                        buffer = newBuffer( buffer.capacity() * 2 );
+                    }
+                    else {
+
+                        flush();
+                    }
+                }
+            }
+        }
+
+
+        private void flush() throws IOException {
+
+            if ( recordCount == 0 ) {
+
+                return;
+            }
+
+            int length = buffer.position() - CHUNK_HEADER_SIZE;
+
+            crc32.reset();
+            crc32.update( buffer.duplicate().flip().position( CHUNK_HEADER_SIZE ) );
+
+            buffer.putInt( 0, length )
+                    .putInt( 4, recordCount )
+                    .putInt( 8, ( int )crc32.getValue() );
+            buffer.flip();
+
+            while ( buffer.hasRemaining() ) {
+
+                channel.write( buffer );
+            }
+
+            buffer.clear().position( CHUNK_HEADER_SIZE );
+            keyCount += recordCount;
+            chunkCount++;
+            recordCount = 0;
+        }
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param keyCodec
+     *      writes and reads the keys
+     *
+     * @param valueCodec
+     *      writes and reads the values
+     */
+    public ConcurrentMapSnapshotImpl( SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec ) {
+
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+    }
+
+
+    /**
+     * @return 0 if the KeyValuePair never expires, -1 if it already has, else the epoch millis it
+     *      expires at
+     */
+    private static long expiresAtMillis( KeyValuePair<?, ?> keyValuePair ) {
+
+        if ( !( keyValuePair instanceof ExpiringKeyValuePair ) ) {
+
+            return 0;
+        }
+
+        long remainingNanos =
+                ( ( ExpiringKeyValuePair<?, ?> )keyValuePair ).getExpiresAt() - System.nanoTime();
+
+        if ( remainingNanos <= 0 ) {
+
+            return -1;
+        }
+
+        return System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis( remainingNanos ) + 1;
+    }
+
+
+    @Override
+    public long write( ConcurrentMap<K, V> map, Path path ) throws IOException {
+
+        Path temporaryPath = path.resolveSibling( path.getFileName() + ".tmp" );
+        ChunkWriter chunkWriter;
+
+        try ( FileChannel channel =
+                FileChannel.open(
+                        temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING ) ) {
+
+            chunkWriter = new ChunkWriter( channel );
+            channel.position( HEADER_SIZE );
+
+            for ( Iterator<KeyValuePair<K, V>> iterator = map.entryIterator();
+                    iterator.hasNext(); ) {
+
+                chunkWriter.add( iterator.next() );
+            }
+
+            chunkWriter.flush();
+
+            ByteBuffer header =
+                    ByteBuffer.allocate( HEADER_SIZE )
+                            .putInt( MAGIC ).putInt( VERSION )
+                            .putLong( chunkWriter.keyCount ).putLong( chunkWriter.chunkCount )
+                            .putLong( chunkWriter.latestExpiresAt )
+                            .flip();
+
+            channel.write( header, 0 );
+            channel.force( true );
+        }
+
+        Files.move(
+                temporaryPath, path,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+        return chunkWriter.keyCount;
+    }
+
+
+    /**
+     * @return number of keys, number of chunks and latest time a key expires in epoch millis, from
+     *      the header of the snapshot
+     */
+    private static long[] readHeader( FileChannel channel, Path path ) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+
+        while ( header.hasRemaining() && channel.read( header, header.position() ) >= 0 ) {
+        }
+
+        header.flip();
+
+        if ( header.remaining() < HEADER_SIZE || header.getInt() != MAGIC ) {
+
+            throw new IOException( path + " is not a ConcurrentMap snapshot" );
+        }
+
+        int version = header.getInt();
+
+        if ( version != VERSION ) {
+
+            throw new IOException( path + " has unsupported snapshot version " + version );
+        }
+
+        return new long[] { header.getLong(), header.getLong(), header.getLong() };
+    }
+
+
+    /**
+     * @return position in the file of every chunk
+     */
+    private static long[] findChunks( FileChannel channel, long chunkCount, Path path )
+            throws IOException {
+
+        long[] positions = new long[( int )chunkCount];
+        ByteBuffer chunkHeader = ByteBuffer.allocate( 4 );
+        long position = HEADER_SIZE;
+        long size = channel.size();
+
+        for ( int i = 0; i < positions.length; i++ ) {
+
+            chunkHeader.clear();
+
+            if ( position + CHUNK_HEADER_SIZE > size
+                    || channel.read( chunkHeader, position ) != 4 ) {
+
+                throw new IOException( path + " is truncated" );
+            }
+
+            positions[i] = position;
+            position += CHUNK_HEADER_SIZE + chunkHeader.flip().getInt();
+        }
+
+        if ( position > size ) {
+
+            throw new IOException( path + " is truncated" );
+        }
+
+        return positions;
+    }
+
+
+    /**
+     * Maps one chunk, checks its CRC32 and puts its records in the map
+     *
+     * @return number of keys put
+     */
+    private long loadChunk( FileChannel channel, long position, ConcurrentMap<K, V> map, Path path )
+            throws IOException {
+
+        ByteBuffer lengthBuffer = ByteBuffer.allocate( 4 );
+        channel.read( lengthBuffer, position );
+        int length = lengthBuffer.flip().getInt();
+
+        MappedByteBuffer chunk =
+                channel.map( FileChannel.MapMode.READ_ONLY, position, CHUNK_HEADER_SIZE + length );
+
+        chunk.position( 4 );
+        int recordCount = chunk.getInt();
+        int crc = chunk.getInt();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update( chunk.duplicate() );
+
+        if ( ( int )crc32.getValue() != crc ) {
+
+            throw new IOException( path + " is corrupt at position " + position );
+        }
+
+        long now = System.currentTimeMillis();
+        long loaded = 0;
+
+        try {
+            for ( int i = 0; i < recordCount; i++ ) {
+
+                K key = keyCodec.read( chunk );
+                V value = valueCodec.read( chunk );
+
+                if ( chunk.get() == 0 ) {
+
+                    map.put( key, value );
+                    loaded++;
+                }
+                else {
+
+                    long ttl = chunk.getLong() - now;
+
+                    // load(..) has checked that the map can expire keys if any is still live
+                    if ( ttl > 0 ) {
+
+                        ( ( ExpiringConcurrentMap<K, V> )map )
+                                .put( key, value, ttl, TimeUnit.MILLISECONDS );
+                        loaded++;
+                    }
+                }
+            }
+        }
+        catch ( BufferUnderflowException e ) {
+
+            throw new IOException( path + " has a bad chunk at position " + position, e );
+        }
+
+        return loaded;
+    }
+
+
+    @Override
+    public long load( Path path, ConcurrentMap<K, V> map, int threadCount ) throws IOException {
+
+        if ( threadCount < 1 ) {
+
+            throw new IllegalArgumentException( "threadCount must be positive" );
+        }
+
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+
+            long[] header = readHeader( channel, path );
+
+            // Checked before any key is put so that the map is never left part loaded
+            if ( header[2] > System.currentTimeMillis()
+                    && !( map instanceof ExpiringConcurrentMap ) ) {
+
+                throw new IllegalArgumentException(
+                        path + " holds keys with a time to live, which "
+                                + map.getClass().getSimpleName() + " cannot expire" );
+            }
+
+            long[] chunkPositions = findChunks( channel, header[1], path );
+            AtomicInteger nextChunk = new AtomicInteger( 0 );
+            ExecutorService executorService = Executors.newFixedThreadPool( threadCount );
+            List<Future<Long>> futures = new ArrayList<>();
+
+            try {
+                for ( int t = 0; t < threadCount; t++ ) {
+
+                    futures.add( executorService.submit( () -> {
+
+                        long loaded = 0;
+
+                        int i;
+
+                        while ( ( i = nextChunk.getAndIncrement() ) < chunkPositions.length ) {
+
+                            loaded += loadChunk( channel, chunkPositions[i], map, path );
+                        }
+
+                        return loaded;
+                    } ) );
+                }
+
+                long loaded = 0;
+
+                for ( Future<Long> future : futures ) {
+
+                    loaded += future.get();
+                }
+
+                return loaded;
+            }
+            catch ( ExecutionException e ) {
+
+                if ( e.getCause() instanceof IOException ) {
+
+                    throw ( IOException )e.getCause();
+                }
+
+                if ( e.getCause() instanceof IllegalArgumentException ) {
+
+                    throw ( IllegalArgumentException )e.getCause();
+                }
+
+                throw new IllegalStateException( "Could not load " + path, e.getCause() );
+            }
+            catch ( InterruptedException e ) {
+
+                Thread.currentThread().interrupt();
+                throw new IOException( "Interrupted loading " + path, e );
+            }
+            finally {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+
+    @Override
+    public ConcurrentMapImpl<K, V> load( Path path, int threadCount ) throws IOException {
+
+        long keyCount;
+
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+
+            keyCount = readHeader( channel, path )[0];
+        }
+
+        // Three quarters full at most, so loading never resizes
+        ConcurrentMapImpl<K, V> map =
+                new ConcurrentMapImpl<>( ( int )Math.min( keyCount * 4 / 3 + 1, 1 << 30 ) );
+
+        load( path, map, threadCount );
+        return map;
+    }
+}
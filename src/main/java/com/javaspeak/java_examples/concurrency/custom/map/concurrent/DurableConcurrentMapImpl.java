@@ -0,0 +1,258 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * DurableConcurrentMapImpl is a ConcurrentMapImpl whose puts and removes are also appended to a
+ * WriteAheadLog, so that after a crash the map can be built again by replaying the log.
+ * <p>
+ * Every change is made to the ConcurrentMapImpl first, exactly as without the log, and then
+ * recorded with WriteAheadLog.append(..), which reads back the value the key now has.  Neither
+ * step takes a lock, so writers still never block each other.  With FsyncPolicy.NEVER or GROUP a
+ * change has been made but may not yet be on disk when the method returns; with SYNC it is on
+ * disk.
+ * <p>
+ * The constructor replays the log into the map before it can be used.  Keys cannot be put with a
+ * time to live, as the log has no record of expiry.  The log grows with every change; it can be
+ * started again empty once the map has been saved with a ConcurrentMapSnapshot.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class DurableConcurrentMapImpl<K, V> implements ConcurrentMap<K, V>, AutoCloseable {
+
+    private static final int RING_CAPACITY = 1 << 16;
+
+    private final ConcurrentMapImpl<K, V> map;
+    private final WriteAheadLog<K, V> writeAheadLog;
+    private final Function<K, V> currentValue;
+
+
+    /**
+     * Constructor
+     *
+     * @param path
+     *      file of the WriteAheadLog, which is replayed if it exists
+     *
+     * @param keyCodec
+     *      writes and reads the keys
+     *
+     * @param valueCodec
+     *      writes and reads the values
+     *
+     * @param fsyncPolicy
+     *      when changes are forced to disk
+     *
+     * @throws IOException
+     *      if the log cannot be opened or replayed
+     */
+    public DurableConcurrentMapImpl(
+            Path path, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec,
+            FsyncPolicy fsyncPolicy ) throws IOException {
+
+        this(
+                new ConcurrentMapImpl<>(),
+                new WriteAheadLogImpl<>( path, keyCodec, valueCodec, fsyncPolicy, RING_CAPACITY ) );
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param map
+     *      map to replay the log into and then keep up to date
+     *
+     * @param writeAheadLog
+     *      log of the changes to the map
+     *
+     * @throws IOException
+     *      if the log cannot be replayed
+     */
+    public DurableConcurrentMapImpl(
+            ConcurrentMapImpl<K, V> map, WriteAheadLog<K, V> writeAheadLog ) throws IOException {
+
+        this.map = map;
+        this.writeAheadLog = writeAheadLog;
+        this.currentValue = map::getValue;
+
+        try {
+            writeAheadLog.replay( map );
+        }
+        catch ( IOException | RuntimeException e ) {
+
+            writeAheadLog.close();
+            throw e;
+        }
+    }
+
+
+    private void log( K key ) {
+
+        writeAheadLog.append( key, currentValue );
+    }
+
+
+    @Override
+    public V put( K key, V value ) {
+
+        V oldValue = map.put( key, value );
+        log( key );
+        return oldValue;
+    }
+
+
+    @Override
+    public V putIfAbsent( K key, V value ) {
+
+        V existingValue = map.putIfAbsent( key, value );
+
+        if ( existingValue == null ) {
+
+            log( key );
+        }
+
+        return existingValue;
+    }
+
+
+    @Override
+    public boolean replace( K key, V oldValue, V newValue ) {
+
+        if ( map.replace( key, oldValue, newValue ) ) {
+
+            log( key );
+            return true;
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction ) {
+
+        V value = map.getValue( key );
+
+        if ( value != null ) {
+
+            return value;
+        }
+
+        value = map.computeIfAbsent( key, mappingFunction );
+
+        if ( value != null ) {
+
+            log( key );
+        }
+
+        return value;
+    }
+
+
+    @Override
+    public V merge(
+            K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction ) {
+
+        V newValue = map.merge( key, value, remappingFunction );
+        log( key );
+        return newValue;
+    }
+
+
+    @Override
+    public V getValue( K key ) {
+
+        return map.getValue( key );
+    }
+
+
+    @Override
+    public void remove( K key ) {
+
+        map.remove( key );
+        log( key );
+    }
+
+
+    @Override
+    public boolean remove( K key, V value ) {
+
+        if ( map.remove( key, value ) ) {
+
+            log( key );
+            return true;
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public void putAll( Map<? extends K, ? extends V> keyValues ) {
+
+        map.putAll( keyValues );
+
+        for ( K key : keyValues.keySet() ) {
+
+            log( key );
+        }
+    }
+
+
+    @Override
+    public Map<K, V> getAll( Collection<? extends K> keys ) {
+
+        return map.getAll( keys );
+    }
+
+
+    @Override
+    public void removeAll( Collection<? extends K> keys ) {
+
+        map.removeAll( keys );
+
+        for ( K key : keys ) {
+
+            log( key );
+        }
+    }
+
+
+    @Override
+    public long size() {
+
+        return map.size();
+    }
+
+
+    @Override
+    public Spliterator<KeyValuePair<K, V>> spliterator() {
+
+        return map.spliterator();
+    }
+
+
+    @Override
+    public String debug() {
+
+        return map.debug();
+    }
+
+
+    /**
+     * Closes the WriteAheadLog once every change has been written and forced to disk
+     */
+    @Override
+    public void close() {
+
+        writeAheadLog.close();
+    }
+}
@@ -0,0 +1,34 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A ConcurrentMap whose keys can be put with a time to live.  Once the time to live has passed
+ * the key counts as removed, whether or not it has actually been taken out of the map yet.
+ * <p>
+ * ConcurrentMapImpl, ShardedConcurrentMapImpl and BoundedConcurrentMapImpl can expire keys.
+ * OffHeapConcurrentMapImpl and DurableConcurrentMapImpl cannot and are only ConcurrentMaps.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> Key wish to put in the Map
+ * @param <V> Value wish to put in the Map
+ */
+public interface ExpiringConcurrentMap<K, V> extends ConcurrentMap<K, V> {
+
+    /**
+     * Puts the value for the given time to live.  Once the time to live has passed the key counts 
+     * as removed.
+     *
+     * @param key Key wish to put in the Map
+     * 
+     * @param value Value wish to put in the Map
+     * 
+     * @param ttl time to live of the key, which must be positive
+     * 
+     * @param unit unit of the ttl
+     * 
+     * @return the previous value or null if the key was not in the map
+     */
+    public V put( K key, V value, long ttl, TimeUnit unit );
+}
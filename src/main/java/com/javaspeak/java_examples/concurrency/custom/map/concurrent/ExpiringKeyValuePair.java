@@ -0,0 +1,62 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import com.javaspeak.java_examples.concurrency.custom.timer.Timeout;
+
+/**
+ * ExpiringKeyValuePair is a KeyValuePair put with a time to live.  Once System.nanoTime() passes
+ * expiresAt the KeyValuePair counts as removed even if it is still in its Bucket.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> Key of ConcurrentMap
+ * @param <V> Value of ConcurrentMap
+ */
+class ExpiringKeyValuePair<K, V> extends KeyValuePair<K, V> {
+
+    private final long expiresAt;
+
+    // Set once the Timeout has been scheduled, which is after the KeyValuePair has been put
+    private volatile Timeout timeout;
+
+
+    ExpiringKeyValuePair( K key, V value, long expiresAt, Timeout timeout ) {
+
+        super( key, value );
+        this.expiresAt = expiresAt;
+        this.timeout = timeout;
+    }
+
+
+    long getExpiresAt() {
+
+        return expiresAt;
+    }
+
+
+    /**
+     * @return Timeout which removes the key once it has expired
+     */
+    Timeout getTimeout() {
+
+        return timeout;
+    }
+
+
+    void setTimeout( Timeout timeout ) {
+
+        this.timeout = timeout;
+    }
+
+
+    boolean isExpired( long now ) {
+
+        return now - expiresAt >= 0;
+    }
+
+
+    @Override
+    public String toString() {
+
+        return "ExpiringKeyValuePair [key=" + getKey() + ", value=" + getValue() + "]";
+    }
+}
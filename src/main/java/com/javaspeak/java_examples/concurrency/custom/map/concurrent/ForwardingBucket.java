@@ -0,0 +1,104 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A ForwardingBucket is placed in a slot of the old buckets array once the chain of Buckets at
+ * that slot has been migrated to the new (twice as large) buckets array during a resize.
+ * <p>
+ * Any thread that reads a ForwardingBucket from a slot knows that it has to repeat its lookup in
+ * the new buckets array returned by getNextTable().
+ * <p>
+ * The same ForwardingBucket is also CAS'ed in as the child of the last Bucket of a chain while the
+ * chain is being migrated.  This stops a put(..) from appending a new Bucket to a chain which has
+ * already been copied.
+ * <p>
+ * A ForwardingBucket can never be updated: both setKeyValuePairAtomically(..) and
+ * setChildBucketAtomically(..) always return false.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> Key of ConcurrentMap
+ * @param <V> Value of ConcurrentMap
+ */
+class ForwardingBucket<K, V> implements Bucket<K, V> {
+
+    private final int index;
+    private final AtomicReferenceArray<Bucket<K, V>> nextTable;
+
+    /**
+     * Constructor
+     *
+     * @param index
+     *      Index of the old buckets array that this ForwardingBucket is placed in
+     *
+     * @param nextTable
+     *      The new buckets array the chain at index has been migrated to
+     */
+    ForwardingBucket( int index, AtomicReferenceArray<Bucket<K, V>> nextTable ) {
+
+        this.index = index;
+        this.nextTable = nextTable;
+    }
+
+
+    /**
+     * @return the new buckets array that lookups must be repeated in
+     */
+    AtomicReferenceArray<Bucket<K, V>> getNextTable() {
+
+        return nextTable;
+    }
+
+
+    @Override
+    public KeyValuePair<K, V> getKeyValuePair() {
+
+        return MovedKeyValuePair.empty();
+    }
+
+
+    @Override
+    public boolean setKeyValuePairAtomically(
+            KeyValuePair<K, V> oldKeyValuePair, KeyValuePair<K, V> newKeyValuePair ) {
+
+        return false;
+    }
+
+
+    @Override
+    public Bucket<K, V> getChildBucket() {
+
+        return null;
+    }
+
+
+    @Override
+    public boolean setChildBucketAtomically(
+            Bucket<K, V> oldChildBucket, Bucket<K, V> newChildBucket ) {
+
+        return false;
+    }
+
+
+    @Override
+    public void setChildBucket( Bucket<K, V> childBucket ) {
+
+        throw new UnsupportedOperationException( "A ForwardingBucket cannot have a child" );
+    }
+
+
+    @Override
+    public int getIndex() {
+
+        return index;
+    }
+
+
+    @Override
+    public String toString() {
+
+        return "ForwardingBucket";
+    }
+}
@@ -0,0 +1,121 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * FrequencySketch estimates how often each key has been used recently, in a fixed amount of memory
+ * whatever the number of keys.  It is the TinyLFU part of the eviction policy of
+ * BoundedConcurrentMapImpl.
+ * <p>
+ * It is a count-min sketch of 4 bit counters, 16 to a long.  A key is counted in 4 counters picked
+ * by 4 different hashes of its hashcode, and its frequency is the smallest of the 4, so a key is
+ * only overestimated if all 4 of its counters are shared with more frequent keys.  Counters stop
+ * at 15.  Once 10 times as many increments as the maximum size of the map have been counted,
+ * every counter is halved so that keys which were popular a long time ago fade away.
+ * <p>
+ * FrequencySketch is not thread safe.  BoundedConcurrentMapImpl only uses it holding its eviction
+ * lock.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS =
+            { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final long sampleSize;
+    private long additions;
+
+
+    /**
+     * @param maximumSize
+     *      maximum number of keys of the map the sketch counts the keys of
+     */
+    FrequencySketch( long maximumSize ) {
+
+        int length = ( int )Math.min( Math.max( maximumSize, 16 ), 1 << 30 );
+        length = Integer.highestOneBit( length - 1 ) << 1;
+
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * Math.max( maximumSize, 16 );
+    }
+
+
+    /**
+     * @return hash of the hashcode for the counter with the given seed
+     */
+    private static long hash( int hashCode, int i ) {
+
+        long h = ( hashCode + SEEDS[i] ) * SEEDS[i];
+        return h + ( h >>> 32 );
+    }
+
+
+    /**
+     * @param hashCode
+     *      hashcode of the key
+     *
+     * @return estimated number of times the key has been counted recently, at most 15
+     */
+    int frequency( int hashCode ) {
+
+        int frequency = 15;
+
+        for ( int i = 0; i < 4; i++ ) {
+
+            long h = hash( hashCode, i );
+            int shift = ( int )( ( h >>> 40 ) & 15 ) << 2;
+            int count = ( int )( ( table[( int )h & tableMask] >>> shift ) & 15 );
+            frequency = Math.min( frequency, count );
+        }
+
+        return frequency;
+    }
+
+
+    /**
+     * Counts one use of the key
+     *
+     * @param hashCode
+     *      hashcode of the key
+     */
+    void increment( int hashCode ) {
+
+        boolean added = false;
+
+        for ( int i = 0; i < 4; i++ ) {
+
+            long h = hash( hashCode, i );
+            int index = ( int )h & tableMask;
+            int shift = ( int )( ( h >>> 40 ) & 15 ) << 2;
+
+            if ( ( ( table[index] >>> shift ) & 15 ) != 15 ) {
+
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if ( added && ++additions == sampleSize ) {
+
+            reset();
+        }
+    }
+
+
+    /**
+     * Halves every counter
+     */
+    private void reset() {
+
+        for ( int i = 0; i < table.length; i++ ) {
+
+            table[i] = ( table[i] >>> 1 ) & RESET_MASK;
+        }
+
+        additions /= 2;
+    }
+}
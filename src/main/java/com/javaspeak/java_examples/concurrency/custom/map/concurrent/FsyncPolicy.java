@@ -0,0 +1,29 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * When a WriteAheadLog forces what it has written from the page cache to the disk
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Never forces until the log is closed.  Only the records the writer thread has already handed
+     * to FileChannel.write(..) survive the process crashing, as records still waiting in the ring
+     * are lost with it, and no record is sure to survive the machine crashing or losing power.
+     */
+    NEVER,
+
+    /**
+     * Forces after every group of records the writer thread writes, but the threads appending do
+     * not wait for it.  A machine crash loses at most the last group.
+     */
+    GROUP,
+
+    /**
+     * Forces after every group of records and makes every thread appending wait until its record
+     * has been forced.  One force covers every thread waiting at the time, so the cost of the
+     * force is shared by the group rather than paid per record.
+     */
+    SYNC
+}
@@ -0,0 +1,69 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * A concurrent map from int keys to object values which never boxes a key.
+ * <p>
+ * Where a ConcurrentMap&lt;Integer, V&gt; needs an Integer key, a KeyValuePair and a Bucket for
+ * every entry, an IntObjConcurrentMap keeps its keys in a flat int[] array and its values in a
+ * flat Object[] array, so the only object an entry costs is the value itself.  Lookups allocate
+ * nothing.
+ * <p>
+ * Values cannot be null; null is returned when a key is not in the map.  Any int, including 0, can
+ * be a key.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <V> Value wish to put in the Map
+ */
+public interface IntObjConcurrentMap<V> {
+
+    /**
+     * This method uses CAS instead of heavy synchronization.  If the key is already in the map its
+     * value is replaced.
+     *
+     * @param key Key wish to put in the Map
+     *
+     * @param value Value wish to put in the Map, must not be null
+     *
+     * @return the previous value or null if the key was not in the map
+     */
+    public V put( int key, V value );
+
+
+    /**
+     * Puts the value only if the key is not already in the map
+     *
+     * @param key Key wish to put in the Map
+     *
+     * @param value Value wish to put in the Map, must not be null
+     *
+     * @return the existing value or null if the value was put
+     */
+    public V putIfAbsent( int key, V value );
+
+
+    /**
+     * This method does not require synchronization and does not allocate
+     *
+     * @param key Key wish to retrieve the value with
+     *
+     * @return value or null if the key is not in the map
+     */
+    public V getValue( int key );
+
+
+    /**
+     * This method uses CAS instead of heavy synchronization
+     *
+     * @param key Key wish to remove the value with
+     *
+     * @return the removed value or null if the key was not in the map
+     */
+    public V remove( int key );
+
+
+    /**
+     * @return number of keys in the map
+     */
+    public long size();
+}
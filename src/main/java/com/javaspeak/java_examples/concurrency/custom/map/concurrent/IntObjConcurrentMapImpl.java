@@ -0,0 +1,628 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IntObjConcurrentMapImpl uses open addressing over two flat arrays: the key of slot i is at
+ * index i of an int[] array and its value at index i of an Object[] array.  Both are read and
+ * CAS'ed through VarHandles onto the arrays, so an entry does not need any objects of its own
+ * apart from the value.
+ * <p>
+ * It works the same way as LongLongConcurrentMapImpl.  A key is CAS'ed into the first free slot
+ * found by linear probing and never changes after that, the value is CAS'ed in, replaced and
+ * CAS'ed back to null by remove, and the key 0, which marks a free slot, has its value kept in a
+ * field of its own.
+ * <p>
+ * When the number of claimed slots passes three quarters of the arrays, new arrays are created and
+ * threads claim strides of slots to migrate.  Each slot is copied first and then frozen by CAS'ing
+ * its value to the MOVED object, so a reader that finds MOVED always finds the latest value in the
+ * new arrays.  Writers that find MOVED help with the migration and wait for it to finish before
+ * retrying.  Slots of removed keys are not copied.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <V> Value wish to put in the Map
+ */
+public class IntObjConcurrentMapImpl<V> implements IntObjConcurrentMap<V> {
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle( int[].class );
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle( Object[].class );
+    private static final VarHandle ZERO_KEY_VALUE;
+
+    // Key of a free slot
+    private static final int EMPTY = 0;
+
+    // Value of a slot that has been migrated
+    private static final Object MOVED = new Object();
+
+    // Minimum number of slots a thread claims at a time when migrating to new arrays
+    private static final int MIN_TRANSFER_STRIDE = 64;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    static {
+        try {
+            ZERO_KEY_VALUE =
+                    MethodHandles.lookup().findVarHandle(
+                            IntObjConcurrentMapImpl.class, "zeroKeyValue", Object.class );
+        }
+        catch ( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+    private volatile Table table;
+    private volatile Object zeroKeyValue;
+    private LongAdder size = new LongAdder();
+
+    /**
+     * One pair of arrays together with the state used to migrate them to the next pair
+     */
+    private static final class Table {
+
+        private final int[] keys;
+        private final Object[] values;
+        private final int mask;
+        private final int threshold;
+        private final AtomicInteger claimedSlotCount = new AtomicInteger( 0 );
+        private final AtomicReference<Table> nextTable = new AtomicReference<>();
+        private final AtomicInteger transferIndex;
+        private final AtomicInteger transferredSlotCount = new AtomicInteger( 0 );
+
+        private Table( int capacity ) {
+
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+            this.threshold = capacity - ( capacity >>> 2 );
+            this.transferIndex = new AtomicInteger( capacity );
+        }
+    }
+
+
+    /**
+     * Spreads the bits of the key in the same way as ConcurrentMapImpl spreads a hashcode and masks
+     * the result to a slot.
+     *
+     * @param key
+     *      key to find the first slot of
+     *
+     * @param mask
+     *      number of slots minus one
+     *
+     * @return index of the first slot to probe
+     */
+    private static int indexFor( int key, int mask ) {
+
+        int h = ( key ^ ( key >>> 16 ) ) * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & mask;
+    }
+
+
+    /**
+     * Rounds the requested number of slots up to a power of two
+     *
+     * @param capacity
+     *      requested number of slots
+     *
+     * @return smallest power of two greater than or equal to capacity
+     */
+    private static int tableSizeFor( int capacity ) {
+
+        int n = -1 >>> Integer.numberOfLeadingZeros( Math.max( capacity, 2 ) - 1 );
+        return n >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+
+    /**
+     * Works out the number of slots of the arrays a table is migrated to: the smallest power of
+     * two, no smaller than the table, which is at least twice the number of keys in the map.
+     *
+     * @param table
+     *      table being migrated
+     *
+     * @return number of slots of the new arrays
+     */
+    private int newCapacity( Table table ) {
+
+        int capacity = table.mask + 1;
+        long keyCount = size.sum();
+        int newCapacity = capacity;
+
+        while ( newCapacity < MAXIMUM_CAPACITY && keyCount >= ( newCapacity >>> 1 ) ) {
+
+            newCapacity <<= 1;
+        }
+
+        if ( keyCount > table.threshold && newCapacity == capacity ) {
+
+            throw new IllegalStateException(
+                    "IntObjConcurrentMapImpl cannot hold more than " + table.threshold + " keys" );
+        }
+
+        return newCapacity;
+    }
+
+
+    /**
+     * Claims a free slot of the arrays being migrated to.  Only the thread migrating the slot of
+     * the key in the old arrays claims a slot for it, so the key cannot already be in the new
+     * arrays.
+     *
+     * @param next
+     *      table being migrated to
+     *
+     * @param key
+     *      key to claim a slot for
+     *
+     * @return index of the claimed slot
+     */
+    private static int claimSlot( Table next, int key ) {
+
+        int index = indexFor( key, next.mask );
+
+        while ( !KEYS.compareAndSet( next.keys, index, EMPTY, key ) ) {
+
+            index = ( index + 1 ) & next.mask;
+        }
+
+        next.claimedSlotCount.incrementAndGet();
+        return index;
+    }
+
+
+    /**
+     * Migrates one slot.  A slot with a value is copied to the new arrays and then frozen by
+     * CAS'ing its value to MOVED.  If the CAS fails the value has been changed, so the copy is
+     * updated and the CAS repeated.  A slot without a value is frozen straight away so that no
+     * put can use it any more.
+     *
+     * @param table
+     *      table being migrated
+     *
+     * @param i
+     *      index of the slot
+     *
+     * @param next
+     *      table being migrated to
+     */
+    private static void transferSlot( Table table, int i, Table next ) {
+
+        int nextIndex = -1;
+
+        while ( true ) {
+
+            Object value = VALUES.getVolatile( table.values, i );
+
+            if ( value == null ) {
+
+                if ( VALUES.compareAndSet( table.values, i, null, MOVED ) ) {
+
+                    // The key was removed after it had been copied
+                    if ( nextIndex >= 0 ) {
+
+                        VALUES.setVolatile( next.values, nextIndex, null );
+                    }
+
+                    return;
+                }
+
+                continue;
+            }
+
+            if ( nextIndex < 0 ) {
+
+                nextIndex = claimSlot( next, ( int )KEYS.getVolatile( table.keys, i ) );
+            }
+
+            VALUES.setVolatile( next.values, nextIndex, value );
+
+            if ( VALUES.compareAndSet( table.values, i, value, MOVED ) ) {
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Threads claim strides of slots to migrate by decrementing transferIndex with CAS.  The thread
+     * which accounts for the last migrated slot publishes the new table.
+     *
+     * @param table
+     *      table being migrated
+     *
+     * @param next
+     *      table being migrated to
+     */
+    private void transfer( Table table, Table next ) {
+
+        int capacity = table.mask + 1;
+        int stride = Math.max( ( capacity >>> 3 ) / NCPU, MIN_TRANSFER_STRIDE );
+
+        while ( true ) {
+
+            int nextIndex = table.transferIndex.get();
+
+            if ( nextIndex <= 0 ) {
+
+                return;
+            }
+
+            int bound = Math.max( nextIndex - stride, 0 );
+
+            if ( !table.transferIndex.compareAndSet( nextIndex, bound ) ) {
+
+                continue;
+            }
+
+            for ( int i = nextIndex - 1; i >= bound; i-- ) {
+
+                transferSlot( table, i, next );
+            }
+
+            if ( table.transferredSlotCount.addAndGet( nextIndex - bound ) == capacity ) {
+
+                this.table = next;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Starts migrating a table unless another thread already has and helps migrate any slots
+     * nobody has claimed yet.
+     *
+     * @param table
+     *      table to migrate
+     *
+     * @return table being migrated to
+     */
+    private Table resize( Table table ) {
+
+        Table next = table.nextTable.get();
+
+        if ( next == null ) {
+
+            Table newTable = new Table( newCapacity( table ) );
+            next = table.nextTable.compareAndSet( null, newTable ) ? newTable : table.nextTable.get();
+        }
+
+        transfer( table, next );
+        return next;
+    }
+
+
+    /**
+     * Called by a writer that found a migrated slot or no free slot.  The writer helps with the
+     * migration and then waits for the threads still migrating strides to finish, as the new table
+     * does not take writes until every slot has been copied.
+     *
+     * @param table
+     *      table the writer was using
+     *
+     * @return table to repeat the write in
+     */
+    private Table helpTransfer( Table table ) {
+
+        Table next = resize( table );
+
+        while ( table.transferredSlotCount.get() < table.mask + 1 ) {
+
+            Thread.yield();
+        }
+
+        return next;
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *      The initial number of slots, rounded up to a power of two.  A resize takes place when
+     *      three quarters of the slots have been claimed.
+     */
+    public IntObjConcurrentMapImpl( int capacity ) {
+
+        table = new Table( tableSizeFor( capacity ) );
+    }
+
+
+    /**
+     * Constructor
+     */
+    public IntObjConcurrentMapImpl() {
+
+        this( 32 );
+    }
+
+
+    /**
+     * The key 0 marks a free slot so its value is kept in the zeroKeyValue field instead
+     *
+     * @param value
+     *      Value wish to put in the Map
+     *
+     * @param onlyIfAbsent
+     *      if true an existing value is left as it is
+     *
+     * @return the previous value or null if the key 0 was not in the map
+     */
+    @SuppressWarnings( "unchecked" )
+    private V putZeroKey( V value, boolean onlyIfAbsent ) {
+
+        while ( true ) {
+
+            Object current = zeroKeyValue;
+
+            if ( onlyIfAbsent && current != null ) {
+
+                return ( V )current;
+            }
+
+            if ( ZERO_KEY_VALUE.compareAndSet( this, current, value ) ) {
+
+                if ( current == null ) {
+
+                    size.increment();
+                }
+
+                return ( V )current;
+            }
+        }
+    }
+
+
+    /**
+     * Probes for the key and either CAS'es the new value into its slot or claims the first free
+     * slot for it.
+     *
+     * @param key
+     *      Key wish to put in the Map
+     *
+     * @param value
+     *      Value wish to put in the Map
+     *
+     * @param onlyIfAbsent
+     *      if true an existing value is left as it is
+     *
+     * @return the previous value or null if the key was not in the map
+     */
+    @SuppressWarnings( "unchecked" )
+    private V putValue( int key, V value, boolean onlyIfAbsent ) {
+
+        if ( value == null ) {
+
+            throw new NullPointerException( "Values cannot be null" );
+        }
+
+        if ( key == EMPTY ) {
+
+            return putZeroKey( value, onlyIfAbsent );
+        }
+
+        Table t = table;
+
+        retry:
+        while ( true ) {
+
+            int[] keys = t.keys;
+            Object[] values = t.values;
+            int mask = t.mask;
+            int index = indexFor( key, mask );
+
+            for ( int probes = 0; probes <= mask; probes++, index = ( index + 1 ) & mask ) {
+
+                int slotKey = ( int )KEYS.getVolatile( keys, index );
+                boolean resizeNeeded = false;
+
+                if ( slotKey == EMPTY ) {
+
+                    if ( VALUES.getVolatile( values, index ) == MOVED ) {
+
+                        t = helpTransfer( t );
+                        continue retry;
+                    }
+
+                    if ( KEYS.compareAndSet( keys, index, EMPTY, key ) ) {
+
+                        slotKey = key;
+                        resizeNeeded = t.claimedSlotCount.incrementAndGet() > t.threshold;
+                    }
+                    else {
+
+                        slotKey = ( int )KEYS.getVolatile( keys, index );
+                    }
+                }
+
+                if ( slotKey != key ) {
+
+                    continue;
+                }
+
+                Object current;
+
+                while ( true ) {
+
+                    current = VALUES.getVolatile( values, index );
+
+                    if ( current == MOVED ) {
+
+                        t = helpTransfer( t );
+                        continue retry;
+                    }
+
+                    if ( onlyIfAbsent && current != null ) {
+
+                        break;
+                    }
+
+                    if ( VALUES.compareAndSet( values, index, current, value ) ) {
+
+                        if ( current == null ) {
+
+                            size.increment();
+                        }
+
+                        break;
+                    }
+                }
+
+                // The resize is started once the value is in so that the put is not undone by it
+                if ( resizeNeeded ) {
+
+                    resize( t );
+                }
+
+                return ( V )current;
+            }
+
+            // Every slot is claimed by another key
+            t = helpTransfer( t );
+        }
+    }
+
+
+    @Override
+    public V put( int key, V value ) {
+
+        return putValue( key, value, false );
+    }
+
+
+    @Override
+    public V putIfAbsent( int key, V value ) {
+
+        return putValue( key, value, true );
+    }
+
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public V getValue( int key ) {
+
+        if ( key == EMPTY ) {
+
+            return ( V )zeroKeyValue;
+        }
+
+        Table t = table;
+
+        retry:
+        while ( true ) {
+
+            int[] keys = t.keys;
+            int mask = t.mask;
+            int index = indexFor( key, mask );
+
+            for ( int probes = 0; probes <= mask; probes++, index = ( index + 1 ) & mask ) {
+
+                int slotKey = ( int )KEYS.getVolatile( keys, index );
+
+                if ( slotKey == key || slotKey == EMPTY ) {
+
+                    Object value = VALUES.getVolatile( t.values, index );
+
+                    if ( value == MOVED ) {
+
+                        t = t.nextTable.get();
+                        continue retry;
+                    }
+
+                    // A free slot always has a null value
+                    return ( V )value;
+                }
+            }
+
+            Table next = t.nextTable.get();
+
+            if ( next == null ) {
+
+                return null;
+            }
+
+            t = next;
+        }
+    }
+
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public V remove( int key ) {
+
+        if ( key == EMPTY ) {
+
+            Object current = ZERO_KEY_VALUE.getAndSet( this, null );
+
+            if ( current != null ) {
+
+                size.decrement();
+            }
+
+            return ( V )current;
+        }
+
+        Table t = table;
+
+        retry:
+        while ( true ) {
+
+            int[] keys = t.keys;
+            Object[] values = t.values;
+            int mask = t.mask;
+            int index = indexFor( key, mask );
+
+            for ( int probes = 0; probes <= mask; probes++, index = ( index + 1 ) & mask ) {
+
+                int slotKey = ( int )KEYS.getVolatile( keys, index );
+
+                if ( slotKey != key && slotKey != EMPTY ) {
+
+                    continue;
+                }
+
+                while ( true ) {
+
+                    Object current = VALUES.getVolatile( values, index );
+
+                    if ( current == MOVED ) {
+
+                        t = helpTransfer( t );
+                        continue retry;
+                    }
+
+                    if ( current == null || slotKey == EMPTY ) {
+
+                        return null;
+                    }
+
+                    if ( VALUES.compareAndSet( values, index, current, null ) ) {
+
+                        size.decrement();
+                        return ( V )current;
+                    }
+                }
+            }
+
+            if ( t.nextTable.get() == null ) {
+
+                return null;
+            }
+
+            t = helpTransfer( t );
+        }
+    }
+
+
+    @Override
+    public long size() {
+
+        return size.sum();
+    }
+}
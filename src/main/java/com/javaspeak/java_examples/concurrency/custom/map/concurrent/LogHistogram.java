@@ -0,0 +1,120 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LogHistogram records positive values, such as durations in nanoseconds or chain lengths, in
+ * buckets whose bounds are powers of two: bucket 0 counts 0, bucket 1 counts 1, bucket 2 counts 2
+ * and 3, bucket 3 counts 4 to 7 and so on.  Like an HdrHistogram it takes a fixed amount of memory
+ * however many values are recorded and a percentile is read off the buckets rather than computed
+ * from the values, but it trades precision for size: a percentile is only known to within a
+ * factor of two.
+ * <p>
+ * Each bucket is a LongAdder so threads recording at the same time do not contend on one counter.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+final class LogHistogram {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator( Math::max, 0 );
+
+
+    LogHistogram() {
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+
+            buckets[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * @param value
+     *      value to record.  Negative values are recorded as 0.
+     */
+    void record( long value ) {
+
+        value = Math.max( value, 0 );
+        buckets[BUCKET_COUNT - Long.numberOfLeadingZeros( value )].increment();
+        sum.add( value );
+        max.accumulate( value );
+    }
+
+
+    /**
+     * @return number of values recorded
+     */
+    long getCount() {
+
+        long count = 0;
+
+        for ( LongAdder bucket : buckets ) {
+
+            count += bucket.sum();
+        }
+
+        return count;
+    }
+
+
+    /**
+     * @return mean of the values recorded or 0 if none have been
+     */
+    double getMean() {
+
+        long count = getCount();
+        return count == 0 ? 0 : ( double )sum.sum() / count;
+    }
+
+
+    /**
+     * @return largest value recorded
+     */
+    long getMax() {
+
+        return max.get();
+    }
+
+
+    /**
+     * @param percentile
+     *      percentile from 0 to 100
+     *
+     * @return upper bound of the bucket holding the percentile, capped at the largest value
+     *      recorded, or 0 if no values have been recorded
+     */
+    long getValueAtPercentile( double percentile ) {
+
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+
+        long rank = ( long )Math.ceil( count * Math.min( Math.max( percentile, 0 ), 100 ) / 100 );
+        long seen = 0;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+
+            seen += counts[i];
+
+            if ( seen > 0 && seen >= rank ) {
+
+                long upperBound =
+                        i == 0 ? 0 : i == BUCKET_COUNT - 1 ? Long.MAX_VALUE : ( 1L << i ) - 1;
+
+                return Math.min( upperBound, getMax() );
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,73 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * A concurrent map from long keys to long values which never boxes a key or a value.
+ * <p>
+ * Where a ConcurrentMap&lt;Long, Long&gt; needs a Long key, a Long value, a KeyValuePair and a
+ * Bucket for every entry, a LongLongConcurrentMap keeps its keys and values side by side in one
+ * long[] array, so an entry costs two longs plus the free slots the array keeps for its load
+ * factor.  Lookups allocate nothing.
+ * <p>
+ * As a long value cannot be null, NO_VALUE is returned when a key is not in the map.  NO_VALUE and
+ * NO_VALUE + 1 are reserved and cannot be put as values.  Any long, including 0, can be a key.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public interface LongLongConcurrentMap {
+
+    /**
+     * Returned when a key is not in the map
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+
+    /**
+     * This method uses CAS instead of heavy synchronization.  If the key is already in the map its
+     * value is replaced.
+     *
+     * @param key Key wish to put in the Map
+     *
+     * @param value Value wish to put in the Map, must not be NO_VALUE or NO_VALUE + 1
+     *
+     * @return the previous value or NO_VALUE if the key was not in the map
+     */
+    public long put( long key, long value );
+
+
+    /**
+     * Puts the value only if the key is not already in the map
+     *
+     * @param key Key wish to put in the Map
+     *
+     * @param value Value wish to put in the Map, must not be NO_VALUE or NO_VALUE + 1
+     *
+     * @return the existing value or NO_VALUE if the value was put
+     */
+    public long putIfAbsent( long key, long value );
+
+
+    /**
+     * This method does not require synchronization and does not allocate
+     *
+     * @param key Key wish to retrieve the value with
+     *
+     * @return value or NO_VALUE if the key is not in the map
+     */
+    public long getValue( long key );
+
+
+    /**
+     * This method uses CAS instead of heavy synchronization
+     *
+     * @param key Key wish to remove the value with
+     *
+     * @return the removed value or NO_VALUE if the key was not in the map
+     */
+    public long remove( long key );
+
+
+    /**
+     * @return number of keys in the map
+     */
+    public long size();
+}
@@ -0,0 +1,648 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LongLongConcurrentMapImpl uses open addressing instead of chains of Buckets.  The keys and values
+ * live side by side in one long[] array: the key of slot i is at index 2 * i and its value at
+ * index 2 * i + 1.  Both are read and CAS'ed through a VarHandle onto the array, so an entry does
+ * not need any objects of its own.
+ * <p>
+ * A key is placed in the first free slot found by linear probing from the slot its spread hash
+ * maps to.  The key of a slot is CAS'ed in once, from 0 to the key, and never changes after that.
+ * The value is then CAS'ed in, replaced with CAS by later puts and CAS'ed back to empty by remove.
+ * As the slot of a removed key stays claimed, putting the key again reuses the slot and no key
+ * can ever be found in two slots.  The key 0 marks a free slot so the value of the key 0 is kept
+ * in a field of its own.
+ * <p>
+ * Values are stored with their sign bit flipped so that a new array, which is all zeros, has every
+ * value empty without having to be filled.  This is why NO_VALUE, which becomes 0, is reserved.
+ * NO_VALUE + 1 becomes 1, which marks a slot that has been migrated to a bigger array.
+ * <p>
+ * When the number of claimed slots passes three quarters of the array, a new array is created and
+ * threads claim strides of slots to migrate, like ConcurrentMapImpl does.  Each slot is copied
+ * first and then frozen by CAS'ing its value to MOVED.  If a put or remove changed the value in
+ * the meantime the copy is updated and the CAS repeated.  A reader that finds MOVED therefore
+ * always finds the latest value in the new array.  Writers that find MOVED help with the
+ * migration and wait for it to finish before retrying, as the new array only takes writes once
+ * every slot has been copied.  Slots of removed keys are not copied so a resize also clears them
+ * out, and if most claimed slots belong to removed keys the new array has the same size.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class LongLongConcurrentMapImpl implements LongLongConcurrentMap {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle( long[].class );
+    private static final VarHandle ZERO_KEY_VALUE;
+
+    // Key of a free slot
+    private static final long EMPTY = 0;
+
+    // Stored value of a slot with no value, ie. NO_VALUE with its sign bit flipped
+    private static final long ABSENT = 0;
+
+    // Stored value of a slot that has been migrated, ie. NO_VALUE + 1 with its sign bit flipped
+    private static final long MOVED = 1;
+
+    // Minimum number of slots a thread claims at a time when migrating to a new array
+    private static final int MIN_TRANSFER_STRIDE = 64;
+    private static final int MAXIMUM_CAPACITY = 1 << 29;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    static {
+        try {
+            ZERO_KEY_VALUE =
+                    MethodHandles.lookup().findVarHandle(
+                            LongLongConcurrentMapImpl.class, "zeroKeyValue", long.class );
+        }
+        catch ( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+    private volatile Table table;
+    private volatile long zeroKeyValue = NO_VALUE;
+    private LongAdder size = new LongAdder();
+
+    /**
+     * One array of slots together with the state used to migrate it to the next array
+     */
+    private static final class Table {
+
+        private final long[] slots;
+        private final int mask;
+        private final int threshold;
+        private final AtomicInteger claimedSlotCount = new AtomicInteger( 0 );
+        private final AtomicReference<Table> nextTable = new AtomicReference<>();
+        private final AtomicInteger transferIndex;
+        private final AtomicInteger transferredSlotCount = new AtomicInteger( 0 );
+
+        private Table( int capacity ) {
+
+            this.slots = new long[capacity << 1];
+            this.mask = capacity - 1;
+            this.threshold = capacity - ( capacity >>> 2 );
+            this.transferIndex = new AtomicInteger( capacity );
+        }
+    }
+
+
+    /**
+     * Spreads the bits of the key with a multiply by the 64 bit golden ratio constant, folds the
+     * high half into the low half and masks the result to a slot.
+     *
+     * @param key
+     *      key to find the first slot of
+     *
+     * @param mask
+     *      number of slots minus one
+     *
+     * @return index of the first slot to probe
+     */
+    private static int indexFor( long key, int mask ) {
+
+        long h = key * 0x9E3779B97F4A7C15L;
+        return ( int )( h ^ ( h >>> 32 ) ) & mask;
+    }
+
+
+    /**
+     * Flips the sign bit so that NO_VALUE is stored as 0.  Flipping it again decodes the value.
+     *
+     * @param value
+     *      value to encode or stored value to decode
+     *
+     * @return encoded or decoded value
+     */
+    private static long flip( long value ) {
+
+        return value ^ Long.MIN_VALUE;
+    }
+
+
+    /**
+     * Rounds the requested number of slots up to a power of two
+     *
+     * @param capacity
+     *      requested number of slots
+     *
+     * @return smallest power of two greater than or equal to capacity
+     */
+    private static int tableSizeFor( int capacity ) {
+
+        int n = -1 >>> Integer.numberOfLeadingZeros( Math.max( capacity, 2 ) - 1 );
+        return n >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+
+    /**
+     * Works out the number of slots of the array a table is migrated to: the smallest power of two,
+     * no smaller than the table, which is at least twice the number of keys in the map.
+     *
+     * @param table
+     *      table being migrated
+     *
+     * @return number of slots of the new array
+     */
+    private int newCapacity( Table table ) {
+
+        int capacity = table.mask + 1;
+        long keyCount = size.sum();
+        int newCapacity = capacity;
+
+        while ( newCapacity < MAXIMUM_CAPACITY && keyCount >= ( newCapacity >>> 1 ) ) {
+
+            newCapacity <<= 1;
+        }
+
+        if ( keyCount > table.threshold && newCapacity == capacity ) {
+
+            throw new IllegalStateException(
+                    "LongLongConcurrentMapImpl cannot hold more than " + table.threshold + " keys" );
+        }
+
+        return newCapacity;
+    }
+
+
+    /**
+     * Claims a free slot of an array being migrated to.  Only the thread migrating the slot of the
+     * key in the old array claims a slot for it, so the key cannot already be in the new array.
+     *
+     * @param next
+     *      table being migrated to
+     *
+     * @param key
+     *      key to claim a slot for
+     *
+     * @return index of the claimed slot
+     */
+    private static int claimSlot( Table next, long key ) {
+
+        long[] slots = next.slots;
+        int index = indexFor( key, next.mask );
+
+        while ( !SLOTS.compareAndSet( slots, index << 1, EMPTY, key ) ) {
+
+            index = ( index + 1 ) & next.mask;
+        }
+
+        next.claimedSlotCount.incrementAndGet();
+        return index;
+    }
+
+
+    /**
+     * Migrates one slot.  A slot with a value is copied to the new array and then frozen by
+     * CAS'ing its value to MOVED.  If the CAS fails the value has been changed, so the copy is
+     * updated and the CAS repeated.  A slot without a value is frozen straight away so that no
+     * put can use it any more.
+     *
+     * @param slots
+     *      array being migrated
+     *
+     * @param i
+     *      index of the slot
+     *
+     * @param next
+     *      table being migrated to
+     */
+    private static void transferSlot( long[] slots, int i, Table next ) {
+
+        int k = i << 1;
+        int nextIndex = -1;
+
+        while ( true ) {
+
+            long value = ( long )SLOTS.getVolatile( slots, k + 1 );
+
+            if ( value == ABSENT ) {
+
+                if ( SLOTS.compareAndSet( slots, k + 1, ABSENT, MOVED ) ) {
+
+                    // The key was removed after it had been copied
+                    if ( nextIndex >= 0 ) {
+
+                        SLOTS.setVolatile( next.slots, ( nextIndex << 1 ) + 1, ABSENT );
+                    }
+
+                    return;
+                }
+
+                continue;
+            }
+
+            if ( nextIndex < 0 ) {
+
+                nextIndex = claimSlot( next, ( long )SLOTS.getVolatile( slots, k ) );
+            }
+
+            SLOTS.setVolatile( next.slots, ( nextIndex << 1 ) + 1, value );
+
+            if ( SLOTS.compareAndSet( slots, k + 1, value, MOVED ) ) {
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Threads claim strides of slots to migrate by decrementing transferIndex with CAS.  The thread
+     * which accounts for the last migrated slot publishes the new table.
+     *
+     * @param table
+     *      table being migrated
+     *
+     * @param next
+     *      table being migrated to
+     */
+    private void transfer( Table table, Table next ) {
+
+        int capacity = table.mask + 1;
+        int stride = Math.max( ( capacity >>> 3 ) / NCPU, MIN_TRANSFER_STRIDE );
+
+        while ( true ) {
+
+            int nextIndex = table.transferIndex.get();
+
+            if ( nextIndex <= 0 ) {
+
+                return;
+            }
+
+            int bound = Math.max( nextIndex - stride, 0 );
+
+            if ( !table.transferIndex.compareAndSet( nextIndex, bound ) ) {
+
+                continue;
+            }
+
+            for ( int i = nextIndex - 1; i >= bound; i-- ) {
+
+                transferSlot( table.slots, i, next );
+            }
+
+            if ( table.transferredSlotCount.addAndGet( nextIndex - bound ) == capacity ) {
+
+                this.table = next;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Starts migrating a table unless another thread already has and helps migrate any slots
+     * nobody has claimed yet.
+     *
+     * @param table
+     *      table to migrate
+     *
+     * @return table being migrated to
+     */
+    private Table resize( Table table ) {
+
+        Table next = table.nextTable.get();
+
+        if ( next == null ) {
+
+            Table newTable = new Table( newCapacity( table ) );
+            next = table.nextTable.compareAndSet( null, newTable ) ? newTable : table.nextTable.get();
+        }
+
+        transfer( table, next );
+        return next;
+    }
+
+
+    /**
+     * Called by a writer that found a migrated slot or no free slot.  The writer helps with the
+     * migration and then waits for the threads still migrating strides to finish, as the new table
+     * does not take writes until every slot has been copied.
+     *
+     * @param table
+     *      table the writer was using
+     *
+     * @return table to repeat the write in
+     */
+    private Table helpTransfer( Table table ) {
+
+        Table next = resize( table );
+
+        while ( table.transferredSlotCount.get() < table.mask + 1 ) {
+
+            Thread.yield();
+        }
+
+        return next;
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *      The initial number of slots, rounded up to a power of two.  A resize takes place when
+     *      three quarters of the slots have been claimed.
+     */
+    public LongLongConcurrentMapImpl( int capacity ) {
+
+        table = new Table( tableSizeFor( capacity ) );
+    }
+
+
+    /**
+     * Constructor
+     */
+    public LongLongConcurrentMapImpl() {
+
+        this( 32 );
+    }
+
+
+    /**
+     * The key 0 marks a free slot so its value is kept in the zeroKeyValue field instead
+     *
+     * @param value
+     *      Value wish to put in the Map
+     *
+     * @param onlyIfAbsent
+     *      if true an existing value is left as it is
+     *
+     * @return the previous value or NO_VALUE if the key 0 was not in the map
+     */
+    private long putZeroKey( long value, boolean onlyIfAbsent ) {
+
+        while ( true ) {
+
+            long current = zeroKeyValue;
+
+            if ( onlyIfAbsent && current != NO_VALUE ) {
+
+                return current;
+            }
+
+            if ( ZERO_KEY_VALUE.compareAndSet( this, current, value ) ) {
+
+                if ( current == NO_VALUE ) {
+
+                    size.increment();
+                }
+
+                return current;
+            }
+        }
+    }
+
+
+    /**
+     * Probes for the key and either CAS'es the new value into its slot or claims the first free
+     * slot for it.
+     *
+     * @param key
+     *      Key wish to put in the Map
+     *
+     * @param value
+     *      Value wish to put in the Map
+     *
+     * @param onlyIfAbsent
+     *      if true an existing value is left as it is
+     *
+     * @return the previous value or NO_VALUE if the key was not in the map
+     */
+    private long putValue( long key, long value, boolean onlyIfAbsent ) {
+
+        if ( value == NO_VALUE || value == NO_VALUE + 1 ) {
+
+            throw new IllegalArgumentException( "The value " + value + " is reserved" );
+        }
+
+        if ( key == EMPTY ) {
+
+            return putZeroKey( value, onlyIfAbsent );
+        }
+
+        long storedValue = flip( value );
+        Table t = table;
+
+        retry:
+        while ( true ) {
+
+            long[] slots = t.slots;
+            int mask = t.mask;
+            int index = indexFor( key, mask );
+
+            for ( int probes = 0; probes <= mask; probes++, index = ( index + 1 ) & mask ) {
+
+                int k = index << 1;
+                long slotKey = ( long )SLOTS.getVolatile( slots, k );
+                boolean resizeNeeded = false;
+
+                if ( slotKey == EMPTY ) {
+
+                    if ( ( long )SLOTS.getVolatile( slots, k + 1 ) == MOVED ) {
+
+                        t = helpTransfer( t );
+                        continue retry;
+                    }
+
+                    if ( SLOTS.compareAndSet( slots, k, EMPTY, key ) ) {
+
+                        slotKey = key;
+                        resizeNeeded = t.claimedSlotCount.incrementAndGet() > t.threshold;
+                    }
+                    else {
+
+                        slotKey = ( long )SLOTS.getVolatile( slots, k );
+                    }
+                }
+
+                if ( slotKey != key ) {
+
+                    continue;
+                }
+
+                long current;
+
+                while ( true ) {
+
+                    current = ( long )SLOTS.getVolatile( slots, k + 1 );
+
+                    if ( current == MOVED ) {
+
+                        t = helpTransfer( t );
+                        continue retry;
+                    }
+
+                    if ( onlyIfAbsent && current != ABSENT ) {
+
+                        break;
+                    }
+
+                    if ( SLOTS.compareAndSet( slots, k + 1, current, storedValue ) ) {
+
+                        if ( current == ABSENT ) {
+
+                            size.increment();
+                        }
+
+                        break;
+                    }
+                }
+
+                // The resize is started once the value is in so that the put is not undone by it
+                if ( resizeNeeded ) {
+
+                    resize( t );
+                }
+
+                return flip( current );
+            }
+
+            // Every slot is claimed by another key
+            t = helpTransfer( t );
+        }
+    }
+
+
+    @Override
+    public long put( long key, long value ) {
+
+        return putValue( key, value, false );
+    }
+
+
+    @Override
+    public long putIfAbsent( long key, long value ) {
+
+        return putValue( key, value, true );
+    }
+
+
+    @Override
+    public long getValue( long key ) {
+
+        if ( key == EMPTY ) {
+
+            return zeroKeyValue;
+        }
+
+        Table t = table;
+
+        retry:
+        while ( true ) {
+
+            long[] slots = t.slots;
+            int mask = t.mask;
+            int index = indexFor( key, mask );
+
+            for ( int probes = 0; probes <= mask; probes++, index = ( index + 1 ) & mask ) {
+
+                int k = index << 1;
+                long slotKey = ( long )SLOTS.getVolatile( slots, k );
+
+                if ( slotKey == key || slotKey == EMPTY ) {
+
+                    long value = ( long )SLOTS.getVolatile( slots, k + 1 );
+
+                    if ( value == MOVED ) {
+
+                        t = t.nextTable.get();
+                        continue retry;
+                    }
+
+                    // A free slot always has an empty value
+                    return flip( value );
+                }
+            }
+
+            Table next = t.nextTable.get();
+
+            if ( next == null ) {
+
+                return NO_VALUE;
+            }
+
+            t = next;
+        }
+    }
+
+
+    @Override
+    public long remove( long key ) {
+
+        if ( key == EMPTY ) {
+
+            long current = ( long )ZERO_KEY_VALUE.getAndSet( this, NO_VALUE );
+
+            if ( current != NO_VALUE ) {
+
+                size.decrement();
+            }
+
+            return current;
+        }
+
+        Table t = table;
+
+        retry:
+        while ( true ) {
+
+            long[] slots = t.slots;
+            int mask = t.mask;
+            int index = indexFor( key, mask );
+
+            for ( int probes = 0; probes <= mask; probes++, index = ( index + 1 ) & mask ) {
+
+                int k = index << 1;
+                long slotKey = ( long )SLOTS.getVolatile( slots, k );
+
+                if ( slotKey != key && slotKey != EMPTY ) {
+
+                    continue;
+                }
+
+                while ( true ) {
+
+                    long current = ( long )SLOTS.getVolatile( slots, k + 1 );
+
+                    if ( current == MOVED ) {
+
+                        t = helpTransfer( t );
+                        continue retry;
+                    }
+
+                    if ( current == ABSENT || slotKey == EMPTY ) {
+
+                        return NO_VALUE;
+                    }
+
+                    if ( SLOTS.compareAndSet( slots, k + 1, current, ABSENT ) ) {
+
+                        size.decrement();
+                        return flip( current );
+                    }
+                }
+            }
+
+            if ( t.nextTable.get() == null ) {
+
+                return NO_VALUE;
+            }
+
+            t = helpTransfer( t );
+        }
+    }
+
+
+    @Override
+    public long size() {
+
+        return size.sum();
+    }
+}
@@ -0,0 +1,88 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+
+/**
+ * A MarkerBucket is CAS'ed in as the child of a Bucket whose KeyValuePair has been removed.  It
+ * marks the Bucket as deleted in the same way as the mark bit on the next pointer of a node in a
+ * Harris linked list.
+ * <p>
+ * The MarkerBucket holds the child the deleted Bucket had when it was marked and can never be
+ * updated.  As a result, once a Bucket is marked its child can no longer change.  No put(..) can
+ * add a Bucket after it and the Bucket can be unlinked safely by CAS'ing the child of its parent
+ * (or the slot, if it is the head of the chain) from the deleted Bucket to getChildBucket() of
+ * the MarkerBucket.  If the parent has been marked in the meantime that CAS fails because the
+ * child of the parent is now a MarkerBucket.
+ * <p>
+ * A MarkerBucket has no KeyValuePair so readers walking the chain skip over it.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> Key of ConcurrentMap
+ * @param <V> Value of ConcurrentMap
+ */
+class MarkerBucket<K, V> implements Bucket<K, V> {
+
+    private final Bucket<K, V> childBucket;
+
+    /**
+     * Constructor
+     *
+     * @param childBucket
+     *      child of the deleted Bucket at the time it was marked, may be null
+     */
+    MarkerBucket( Bucket<K, V> childBucket ) {
+
+        this.childBucket = childBucket;
+    }
+
+
+    @Override
+    public KeyValuePair<K, V> getKeyValuePair() {
+
+        return null;
+    }
+
+
+    @Override
+    public boolean setKeyValuePairAtomically(
+            KeyValuePair<K, V> oldKeyValuePair, KeyValuePair<K, V> newKeyValuePair ) {
+
+        return false;
+    }
+
+
+    @Override
+    public Bucket<K, V> getChildBucket() {
+
+        return childBucket;
+    }
+
+
+    @Override
+    public boolean setChildBucketAtomically(
+            Bucket<K, V> oldChildBucket, Bucket<K, V> newChildBucket ) {
+
+        return false;
+    }
+
+
+    @Override
+    public void setChildBucket( Bucket<K, V> childBucket ) {
+
+        throw new UnsupportedOperationException( "The child of a MarkerBucket cannot change" );
+    }
+
+
+    @Override
+    public int getIndex() {
+
+        return -1;
+    }
+
+
+    @Override
+    public String toString() {
+
+        return "MarkerBucket";
+    }
+}
@@ -0,0 +1,73 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * A MovedKeyValuePair is CAS'ed into every Bucket of a chain when the chain is frozen for
+ * migration to a bigger buckets array.
+ * <p>
+ * It exposes the same key and value as the KeyValuePair it replaced so that getValue(..) can keep
+ * reading a frozen chain without noticing the migration.  Writers however check for it and, on
+ * finding one, help with the resize and then retry against the new buckets array.
+ * <p>
+ * A Bucket that had a null KeyValuePair when it was frozen gets the shared empty
+ * MovedKeyValuePair, which has a null key and value.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> Key of ConcurrentMap
+ * @param <V> Value of ConcurrentMap
+ */
+class MovedKeyValuePair<K, V> extends KeyValuePair<K, V> {
+
+    @SuppressWarnings( "rawtypes" )
+    private static final MovedKeyValuePair EMPTY = new MovedKeyValuePair<>( null );
+
+    private final KeyValuePair<K, V> original;
+
+
+    private MovedKeyValuePair( KeyValuePair<K, V> original ) {
+
+        super( original == null ? null : original.getKey(),
+                original == null ? null : original.getValue() );
+
+        this.original = original;
+    }
+
+
+    /**
+     * @return the MovedKeyValuePair used to freeze Buckets which had a null KeyValuePair
+     */
+    @SuppressWarnings( "unchecked" )
+    static <K, V> MovedKeyValuePair<K, V> empty() {
+
+        return EMPTY;
+    }
+
+
+    /**
+     * @param original
+     *      KeyValuePair being frozen, may be null
+     *
+     * @return MovedKeyValuePair wrapping original
+     */
+    static <K, V> MovedKeyValuePair<K, V> of( KeyValuePair<K, V> original ) {
+
+        return original == null ? empty() : new MovedKeyValuePair<>( original );
+    }
+
+
+    /**
+     * @return the KeyValuePair that was in the Bucket before it was frozen, or null if the Bucket
+     *      was empty
+     */
+    KeyValuePair<K, V> getOriginal() {
+
+        return original;
+    }
+
+
+    @Override
+    public String toString() {
+
+        return "MovedKeyValuePair [" + original + "]";
+    }
+}
@@ -0,0 +1,57 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * Writes keys or values of one type to native memory and reads them back.  Every instance takes
+ * the same fixed number of bytes so that an OffHeapConcurrentMapImpl can lay its slots out at fixed
+ * offsets.
+ * <p>
+ * read(..) and equals(..) may be called on bytes which another thread is in the middle of
+ * rewriting.  The map throws the result away in that case, but the codec must not fail or read
+ * outside its size however inconsistent the bytes are.
+ * <p>
+ * OffHeapCodecs has codecs for Long, Integer and Strings of bounded length.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <T> type of key or value
+ */
+public interface OffHeapCodec<T> {
+
+    /**
+     * @return number of bytes every instance takes in native memory
+     */
+    public int size();
+
+
+    /**
+     * @param t
+     *      instance to write
+     *
+     * @param address
+     *      address of size() bytes of native memory to write it to
+     */
+    public void write( T t, long address );
+
+
+    /**
+     * @param address
+     *      address of size() bytes of native memory written by write(..)
+     *
+     * @return instance read from native memory
+     */
+    public T read( long address );
+
+
+    /**
+     * Compares an instance with native memory without reading it back into an object
+     *
+     * @param t
+     *      instance to compare
+     *
+     * @param address
+     *      address of size() bytes of native memory written by write(..)
+     *
+     * @return true if the native memory holds t
+     */
+    public boolean equals( T t, long address );
+}
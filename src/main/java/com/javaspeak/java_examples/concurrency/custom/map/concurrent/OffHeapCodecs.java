@@ -0,0 +1,161 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * OffHeapCodecs for the types most often used as keys and values of an OffHeapConcurrentMapImpl
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public final class OffHeapCodecs {
+
+    /**
+     * Writes a Long as 8 bytes
+     */
+    public static final OffHeapCodec<Long> LONG = new OffHeapCodec<Long>() {
+
+        @Override
+        public int size() {
+
+            return 8;
+        }
+
+
+        @Override
+        public void write( Long t, long address ) {
+
+            UnsafeAccess.putLong( address, t );
+        }
+
+
+        @Override
+        public Long read( long address ) {
+
+            return UnsafeAccess.getLong( address );
+        }
+
+
+        @Override
+        public boolean equals( Long t, long address ) {
+
+            return UnsafeAccess.getLong( address ) == t;
+        }
+    };
+
+    /**
+     * Writes an Integer as 4 bytes
+     */
+    public static final OffHeapCodec<Integer> INTEGER = new OffHeapCodec<Integer>() {
+
+        @Override
+        public int size() {
+
+            return 4;
+        }
+
+
+        @Override
+        public void write( Integer t, long address ) {
+
+            UnsafeAccess.putInt( address, t );
+        }
+
+
+        @Override
+        public Integer read( long address ) {
+
+            return UnsafeAccess.getInt( address );
+        }
+
+
+        @Override
+        public boolean equals( Integer t, long address ) {
+
+            return UnsafeAccess.getInt( address ) == t;
+        }
+    };
+
+
+    private OffHeapCodecs() {
+
+    }
+
+
+    /**
+     * Writes a String as a 4 byte length followed by 2 bytes for each char.  Every String takes the
+     * space of the longest one allowed.
+     *
+     * @param maxLength
+     *      the maximum number of chars of a String
+     *
+     * @return codec for Strings of up to maxLength chars
+     */
+    public static OffHeapCodec<String> string( int maxLength ) {
+
+        return new OffHeapCodec<String>() {
+
+            @Override
+            public int size() {
+
+                return 4 + 2 * maxLength;
+            }
+
+
+            @Override
+            public void write( String t, long address ) {
+
+                if ( t.length() > maxLength ) {
+
+                    throw new IllegalArgumentException(
+                            "\"" + t + "\" is longer than " + maxLength + " chars" );
+                }
+
+                UnsafeAccess.putInt( address, t.length() );
+
+                for ( int i = 0; i < t.length(); i++ ) {
+
+                    UnsafeAccess.putChar( address + 4 + 2 * i, t.charAt( i ) );
+                }
+            }
+
+
+            // The length is clamped as it may be read while another thread is rewriting it
+            private int length( long address ) {
+
+                return Math.max( 0, Math.min( UnsafeAccess.getInt( address ), maxLength ) );
+            }
+
+
+            @Override
+            public String read( long address ) {
+
+                char[] chars = new char[length( address )];
+
+                for ( int i = 0; i < chars.length; i++ ) {
+
+                    chars[i] = UnsafeAccess.getChar( address + 4 + 2 * i );
+                }
+
+                return new String( chars );
+            }
+
+
+            @Override
+            public boolean equals( String t, long address ) {
+
+                if ( UnsafeAccess.getInt( address ) != t.length() || t.length() > maxLength ) {
+
+                    return false;
+                }
+
+                for ( int i = 0; i < t.length(); i++ ) {
+
+                    if ( UnsafeAccess.getChar( address + 4 + 2 * i ) != t.charAt( i ) ) {
+
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        };
+    }
+}
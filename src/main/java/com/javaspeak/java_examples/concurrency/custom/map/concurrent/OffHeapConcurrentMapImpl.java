@@ -0,0 +1,817 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * OffHeapConcurrentMapImpl keeps its keys and values in one block of native memory taken with
+ * Unsafe.allocateMemory(..), as demonstrated in UnsafeTest.  The heap only holds the map object
+ * itself, so a map of several GB adds nothing for the garbage collector to mark or copy.  The keys
+ * and values are written to native memory by OffHeapCodecs, which give every key and every value
+ * the same fixed size.
+ * <p>
+ * The block is an array of slots of the same size, each laid out as:
+ * <p>
+ *     state (8 bytes) | spread hash (4 bytes) | padding (4 bytes) | key | value
+ * <p>
+ * rounded up to a multiple of 8 bytes so that every state is aligned for compareAndSwapLong.  The
+ * slots are found with linear probing from the slot the spread hash of the key maps to.
+ * <p>
+ * The state of a slot is 0 until the slot is claimed.  After that it holds a CLAIMED bit, a
+ * PRESENT bit which is set while the slot holds a value, a BUSY bit and a version which goes up
+ * every time the slot is written.  A thread claims a slot by CAS'ing the BUSY bit on, writes the
+ * hash, key or value and then publishes the slot by writing back a state with BUSY off and the
+ * next version.  Readers never take the slot: they read the state, the hash, key and value, and
+ * then read the state again.  If it has changed the slot was rewritten while they read it and they
+ * start again, as with a seqlock.
+ * <p>
+ * Values of keys already in the map are replaced or removed holding only the slot.  A new key is
+ * written to the first free slot or the first slot of a removed key on its probe sequence, so two
+ * threads putting the same new key could each claim a different slot.  New keys are therefore put
+ * holding one of a set of striped locks chosen by the hash of the key.  This only serializes puts
+ * of new keys that share a stripe; getValue(..) never waits for a lock.
+ * <p>
+ * The number of slots is fixed when the map is created, as copying a multi-GB block to grow it
+ * would stall every writer.  Putting a new key when every slot holds a key throws an
+ * IllegalStateException.  Lookups stop at the first slot that was never claimed, so the map should
+ * be created with about twice as many slots as keys it will hold.
+ * <p>
+ * spliterator() splits the slots into ranges and reads each slot in the same way as getValue(..), 
+ * creating a KeyValuePair on the heap only for the entry it is about to return.
+ * <p>
+ * The native memory is only freed by close().  The map must not be used once closed.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> Key wish to put in the Map
+ * @param <V> Value wish to put in the Map
+ */
+public class OffHeapConcurrentMapImpl<K, V> implements ConcurrentMap<K, V>, AutoCloseable {
+
+    private static final long BUSY = 1;
+    private static final long PRESENT = 2;
+    private static final long CLAIMED = 4;
+    private static final long FLAGS = BUSY | PRESENT | CLAIMED;
+    private static final long VERSION = 8;
+
+    // State of a slot that has never been claimed
+    private static final long FREE = 0;
+
+    private static final int HASH_OFFSET = 8;
+    private static final int KEY_OFFSET = 16;
+    private static final int HASH_BITS = 0x7fffffff;
+    private static final int LOCK_STRIPES = 64;
+
+    private final OffHeapCodec<K> keyCodec;
+    private final OffHeapCodec<V> valueCodec;
+    private final long valueOffset;
+    private final long slotSize;
+    private final long capacity;
+    private final long mask;
+    private final long address;
+    private final ReentrantLock[] insertLocks = new ReentrantLock[LOCK_STRIPES];
+    private final LongAdder keyValuePairCount = new LongAdder();
+    private volatile boolean closed;
+
+
+    /**
+     * @param capacity
+     *      number of slots, rounded up to a power of two
+     *
+     * @param keyCodec
+     *      writes the keys to native memory
+     *
+     * @param valueCodec
+     *      writes the values to native memory
+     */
+    public OffHeapConcurrentMapImpl(
+            long capacity, OffHeapCodec<K> keyCodec, OffHeapCodec<V> valueCodec ) {
+
+        if ( capacity < 1 || capacity > 1L << 40 ) {
+
+            throw new IllegalArgumentException( "capacity must be between 1 and 2^40" );
+        }
+
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.valueOffset = KEY_OFFSET + align( keyCodec.size() );
+        this.slotSize = valueOffset + align( valueCodec.size() );
+        this.capacity = capacity == 1 ? 1 : Long.highestOneBit( capacity - 1 ) << 1;
+        this.mask = this.capacity - 1;
+
+        for ( int i = 0; i < LOCK_STRIPES; i++ ) {
+
+            insertLocks[i] = new ReentrantLock();
+        }
+
+        long bytes = Math.multiplyExact( this.capacity, slotSize );
+        this.address = UnsafeAccess.allocateMemory( bytes );
+        UnsafeAccess.setMemory( address, bytes, ( byte )0 );
+    }
+
+
+    private static long align( int size ) {
+
+        return ( size + 7 ) & ~7L;
+    }
+
+
+    /**
+     * Spreads the hashcode in the same way as ConcurrentMapImpl
+     *
+     * @param hashCode
+     *      hashcode of the key
+     *
+     * @return spread hash
+     */
+    private static int spread( int hashCode ) {
+
+        int h = ( hashCode ^ ( hashCode >>> 16 ) ) * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & HASH_BITS;
+    }
+
+
+    private int hash( Object key ) {
+
+        if ( closed ) {
+
+            throw new IllegalStateException( "map has been closed" );
+        }
+
+        return spread( key.hashCode() );
+    }
+
+
+    private long slotAddress( long index ) {
+
+        return address + index * slotSize;
+    }
+
+
+    /**
+     * @return state of the slot once no other thread is writing it
+     */
+    private static long awaitState( long slot ) {
+
+        long state;
+
+        while ( ( ( state = UnsafeAccess.getLongVolatile( slot ) ) & BUSY ) != 0 ) {
+
+            Thread.onSpinWait();
+        }
+
+        return state;
+    }
+
+
+    /**
+     * @return true if the state of the slot is still the one its contents were read under
+     */
+    private static boolean validate( long slot, long state ) {
+
+        UnsafeAccess.loadFence();
+        return UnsafeAccess.getLongVolatile( slot ) == state;
+    }
+
+
+    private boolean holds( long slot, long state, K key, int hash ) {
+
+        return ( state & PRESENT ) != 0 &&
+                UnsafeAccess.getInt( slot + HASH_OFFSET ) == hash &&
+                keyCodec.equals( key, slot + KEY_OFFSET );
+    }
+
+
+    /**
+     * Publishes a slot taken by this thread with the next version
+     */
+    private static void release( long slot, boolean present ) {
+
+        long state = UnsafeAccess.getLong( slot );
+        long version = ( state & ~FLAGS ) + VERSION;
+        UnsafeAccess.putLongVolatile( slot, version | CLAIMED | ( present ? PRESENT : 0 ) );
+    }
+
+
+    /**
+     * Gives back a slot taken by this thread without having changed it
+     */
+    private static void releaseUnchanged( long slot ) {
+
+        UnsafeAccess.putLongVolatile( slot, UnsafeAccess.getLong( slot ) & ~BUSY );
+    }
+
+
+    /**
+     * Takes the slot holding the key so that no other thread can change it
+     *
+     * @return address of the slot or 0 if the key is not in the map
+     */
+    private long takeSlotOf( K key, int hash ) {
+
+        retry: while ( true ) {
+
+            long index = hash & mask;
+
+            for ( long probes = 0; probes < capacity; probes++, index = ( index + 1 ) & mask ) {
+
+                long slot = slotAddress( index );
+                long state = awaitState( slot );
+
+                if ( state == FREE ) {
+
+                    return 0;
+                }
+
+                if ( holds( slot, state, key, hash ) ) {
+
+                    if ( validate( slot, state ) &&
+                            UnsafeAccess.compareAndSwapLong( slot, state, state | BUSY ) ) {
+
+                        return slot;
+                    }
+
+                    continue retry;
+                }
+
+                if ( ! validate( slot, state ) ) {
+
+                    continue retry;
+                }
+            }
+
+            return 0;
+        }
+    }
+
+
+    /**
+     * Takes the first free slot or slot of a removed key on the probe sequence of the key and
+     * writes the key to it.  Must be called holding the insert lock of the key, after
+     * takeSlotOf(..) has found that the key is not in the map.
+     *
+     * @return address of the slot
+     */
+    private long takeSlotFor( K key, int hash ) {
+
+        retry: while ( true ) {
+
+            long index = hash & mask;
+
+            for ( long probes = 0; probes < capacity; probes++, index = ( index + 1 ) & mask ) {
+
+                long slot = slotAddress( index );
+                long state = awaitState( slot );
+
+                if ( ( state & PRESENT ) == 0 ) {
+
+                    if ( ! UnsafeAccess.compareAndSwapLong( slot, state, state | BUSY ) ) {
+
+                        continue retry;
+                    }
+
+                    UnsafeAccess.putInt( slot + HASH_OFFSET, hash );
+                    keyCodec.write( key, slot + KEY_OFFSET );
+                    return slot;
+                }
+            }
+
+            throw new IllegalStateException( "all " + capacity + " slots hold a key" );
+        }
+    }
+
+
+    private ReentrantLock insertLock( int hash ) {
+
+        return insertLocks[hash & ( LOCK_STRIPES - 1 )];
+    }
+
+
+    /**
+     * Writes the value of a new key.  Must be called holding the insert lock of the key.
+     */
+    private void insert( K key, int hash, V value ) {
+
+        long slot = takeSlotFor( key, hash );
+
+        try {
+            valueCodec.write( value, slot + valueOffset );
+        }
+        catch ( RuntimeException e ) {
+
+            release( slot, false );
+            throw e;
+        }
+
+        release( slot, true );
+        keyValuePairCount.increment();
+    }
+
+
+    /**
+     * Replaces the value of a slot taken by this thread and releases it
+     *
+     * @return the previous value
+     */
+    private V replaceValue( long slot, V value ) {
+
+        V oldValue;
+
+        try {
+            oldValue = valueCodec.read( slot + valueOffset );
+            valueCodec.write( value, slot + valueOffset );
+        }
+        catch ( RuntimeException e ) {
+
+            release( slot, true );
+            throw e;
+        }
+
+        release( slot, true );
+        return oldValue;
+    }
+
+
+    private static void checkNotNull( Object key, Object value ) {
+
+        if ( key == null || value == null ) {
+
+            throw new NullPointerException();
+        }
+    }
+
+
+    @Override
+    public V put( K key, V value ) {
+
+        checkNotNull( key, value );
+        int hash = hash( key );
+        long slot = takeSlotOf( key, hash );
+
+        if ( slot == 0 ) {
+
+            ReentrantLock lock = insertLock( hash );
+            lock.lock();
+
+            try {
+                slot = takeSlotOf( key, hash );
+
+                if ( slot == 0 ) {
+
+                    insert( key, hash, value );
+                    return null;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        return replaceValue( slot, value );
+    }
+
+
+    @Override
+    public V putIfAbsent( K key, V value ) {
+
+        checkNotNull( key, value );
+        int hash = hash( key );
+        V existingValue = getValue( key );
+
+        if ( existingValue != null ) {
+
+            return existingValue;
+        }
+
+        ReentrantLock lock = insertLock( hash );
+        lock.lock();
+
+        try {
+            // Under the insert lock no other thread can put the key, so if it is still missing
+            // after this read it can be inserted
+            existingValue = getValue( key );
+
+            if ( existingValue == null ) {
+
+                insert( key, hash, value );
+            }
+
+            return existingValue;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public boolean replace( K key, V oldValue, V newValue ) {
+
+        checkNotNull( key, newValue );
+        long slot = takeSlotOf( key, hash( key ) );
+
+        if ( slot == 0 ) {
+
+            return false;
+        }
+
+        boolean matches;
+
+        try {
+            matches = valueCodec.read( slot + valueOffset ).equals( oldValue );
+
+            if ( matches ) {
+
+                valueCodec.write( newValue, slot + valueOffset );
+            }
+        }
+        catch ( RuntimeException e ) {
+
+            release( slot, true );
+            throw e;
+        }
+
+        if ( matches ) {
+
+            release( slot, true );
+        }
+        else {
+
+            releaseUnchanged( slot );
+        }
+
+        return matches;
+    }
+
+
+    /**
+     * The mappingFunction is only called holding the insert lock of the key, so unlike
+     * ConcurrentMapImpl it is called at most once for a missing key.
+     */
+    @Override
+    public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction ) {
+
+        int hash = hash( key );
+        V value = getValue( key );
+
+        if ( value != null ) {
+
+            return value;
+        }
+
+        ReentrantLock lock = insertLock( hash );
+        lock.lock();
+
+        try {
+            value = getValue( key );
+
+            if ( value == null ) {
+
+                value = mappingFunction.apply( key );
+
+                if ( value != null ) {
+
+                    insert( key, hash, value );
+                }
+            }
+
+            return value;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * The remappingFunction is called holding the slot of the key, so it is called once and must
+     * not use this map.
+     */
+    @Override
+    public V merge(
+            K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction ) {
+
+        checkNotNull( key, value );
+        int hash = hash( key );
+        long slot = takeSlotOf( key, hash );
+
+        if ( slot == 0 ) {
+
+            ReentrantLock lock = insertLock( hash );
+            lock.lock();
+
+            try {
+                slot = takeSlotOf( key, hash );
+
+                if ( slot == 0 ) {
+
+                    insert( key, hash, value );
+                    return value;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        V newValue;
+
+        try {
+            newValue = remappingFunction.apply( valueCodec.read( slot + valueOffset ), value );
+
+            if ( newValue != null ) {
+
+                valueCodec.write( newValue, slot + valueOffset );
+            }
+        }
+        catch ( RuntimeException e ) {
+
+            release( slot, true );
+            throw e;
+        }
+
+        release( slot, newValue != null );
+
+        if ( newValue == null ) {
+
+            keyValuePairCount.decrement();
+        }
+
+        return newValue;
+    }
+
+
+    /**
+     * Reads the slots without taking them and starts again if a slot changes while being read
+     */
+    @Override
+    public V getValue( K key ) {
+
+        int hash = hash( key );
+
+        retry: while ( true ) {
+
+            long index = hash & mask;
+
+            for ( long probes = 0; probes < capacity; probes++, index = ( index + 1 ) & mask ) {
+
+                long slot = slotAddress( index );
+                long state = awaitState( slot );
+
+                if ( state == FREE ) {
+
+                    return null;
+                }
+
+                if ( holds( slot, state, key, hash ) ) {
+
+                    V value = valueCodec.read( slot + valueOffset );
+
+                    if ( validate( slot, state ) ) {
+
+                        return value;
+                    }
+
+                    continue retry;
+                }
+
+                if ( ! validate( slot, state ) ) {
+
+                    continue retry;
+                }
+            }
+
+            return null;
+        }
+    }
+
+
+    /**
+     * Clears the PRESENT bit of the slot.  The key stays in the slot so that lookups of other keys
+     * probe past it, and the slot is reused by the next new key that probes it.
+     */
+    @Override
+    public void remove( K key ) {
+
+        long slot = takeSlotOf( key, hash( key ) );
+
+        if ( slot != 0 ) {
+
+            release( slot, false );
+            keyValuePairCount.decrement();
+        }
+    }
+
+
+    @Override
+    public boolean remove( K key, V value ) {
+
+        long slot = value == null ? 0 : takeSlotOf( key, hash( key ) );
+
+        if ( slot == 0 ) {
+
+            return false;
+        }
+
+        boolean matches;
+
+        try {
+            matches = valueCodec.read( slot + valueOffset ).equals( value );
+        }
+        catch ( RuntimeException e ) {
+
+            releaseUnchanged( slot );
+            throw e;
+        }
+
+        if ( matches ) {
+
+            release( slot, false );
+            keyValuePairCount.decrement();
+        }
+        else {
+
+            releaseUnchanged( slot );
+        }
+
+        return matches;
+    }
+
+
+    @Override
+    public long size() {
+
+        return keyValuePairCount.sum();
+    }
+
+
+    /**
+     * @return number of bytes of native memory the map has allocated
+     */
+    public long nativeMemorySize() {
+
+        return capacity * slotSize;
+    }
+
+
+    /**
+     * Frees the native memory.  Must only be called once no other thread uses the map.
+     */
+    @Override
+    public synchronized void close() {
+
+        if ( ! closed ) {
+
+            closed = true;
+            UnsafeAccess.freeMemory( address );
+        }
+    }
+
+
+    /**
+     * Reads a slot without taking it
+     *
+     * @param index
+     *      index of the slot
+     *
+     * @return the key and value of the slot or null if it does not hold a value
+     */
+    private KeyValuePair<K, V> readSlot( long index ) {
+
+        long slot = slotAddress( index );
+        long state;
+        K key;
+        V value;
+
+        do {
+            state = awaitState( slot );
+
+            if ( ( state & PRESENT ) == 0 ) {
+
+                return null;
+            }
+
+            key = keyCodec.read( slot + KEY_OFFSET );
+            value = valueCodec.read( slot + valueOffset );
+        }
+        while ( ! validate( slot, state ) );
+
+        return new KeyValuePair<K, V>( key, value );
+    }
+
+
+    /**
+     * Walks the slots from index up to fence.  trySplit() hands the first half of the remaining
+     * slots to a new SlotSpliterator.
+     */
+    private final class SlotSpliterator implements Spliterator<KeyValuePair<K, V>> {
+
+        private final long fence;
+        private long index;
+        private long estimatedSize;
+
+        private SlotSpliterator( long index, long fence, long estimatedSize ) {
+
+            this.index = index;
+            this.fence = fence;
+            this.estimatedSize = estimatedSize;
+        }
+
+
+        @Override
+        public Spliterator<KeyValuePair<K, V>> trySplit() {
+
+            long mid = ( index + fence ) >>> 1;
+
+            if ( mid <= index ) {
+
+                return null;
+            }
+
+            SlotSpliterator prefix = new SlotSpliterator( index, mid, estimatedSize >>>= 1 );
+            index = mid;
+            return prefix;
+        }
+
+
+        @Override
+        public boolean tryAdvance( Consumer<? super KeyValuePair<K, V>> action ) {
+
+            while ( index < fence ) {
+
+                if ( closed ) {
+
+                    throw new IllegalStateException( "map has been closed" );
+                }
+
+                KeyValuePair<K, V> keyValuePair = readSlot( index++ );
+
+                if ( keyValuePair != null ) {
+
+                    action.accept( keyValuePair );
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+
+        @Override
+        public long estimateSize() {
+
+            return estimatedSize;
+        }
+
+
+        @Override
+        public int characteristics() {
+
+            return Spliterator.CONCURRENT | Spliterator.NONNULL;
+        }
+    }
+
+
+    @Override
+    public Spliterator<KeyValuePair<K, V>> spliterator() {
+
+        if ( closed ) {
+
+            throw new IllegalStateException( "map has been closed" );
+        }
+
+        return new SlotSpliterator( 0, capacity, Math.max( size(), 0 ) );
+    }
+
+
+    /**
+     * Only lists the slots holding a value, as a map may have billions of slots
+     */
+    @Override
+    public String debug() {
+
+        if ( closed ) {
+
+            throw new IllegalStateException( "map has been closed" );
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( long index = 0; index < capacity; index++ ) {
+
+            KeyValuePair<K, V> keyValuePair = readSlot( index );
+
+            if ( keyValuePair != null ) {
+
+                sb.append( "Index " ).append( index ).append( " : " );
+                sb.append( keyValuePair ).append( "\n" );
+            }
+        }
+
+        return sb.toString();
+    }
+}
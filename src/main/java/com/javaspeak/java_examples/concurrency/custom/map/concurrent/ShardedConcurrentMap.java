@@ -0,0 +1,49 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+/**
+ * A ConcurrentMap made of several independent ConcurrentMapImpls, called shards.  Each key always
+ * goes to the same shard, so a resize, or threads fighting over a few hot slots, only slows down
+ * the keys of one shard and never the readers and writers of the others.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public interface ShardedConcurrentMap<K, V> extends ExpiringConcurrentMap<K, V> {
+
+    /**
+     * @return number of shards
+     */
+    public int getShardCount();
+
+
+    /**
+     * @param key
+     *      key to find the shard of
+     *
+     * @return index of the shard the key belongs to
+     */
+    public int getShardIndex( K key );
+
+
+    /**
+     * @return number of keys in each shard
+     */
+    public long[] getShardSizes();
+
+
+    /**
+     * @return metrics of every shard added together
+     */
+    public ConcurrentMapMetrics getMetrics();
+
+
+    /**
+     * @param shardIndex
+     *      index of the shard
+     *
+     * @return metrics of one shard
+     */
+    public ConcurrentMapMetrics getShardMetrics( int shardIndex );
+}
@@ -0,0 +1,580 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheel;
+
+/**
+ * ShardedConcurrentMapImpl routes each key to one of a power of two number of ConcurrentMapImpls.
+ * By default there are four shards per processor, so that threads on different cores mostly work
+ * on different shards.
+ * <p>
+ * The shard of a key is picked with the top bits of its hashcode multiplied by the golden ratio
+ * constant, while a ConcurrentMapImpl picks the slot within the shard with the low bits of its own
+ * spread of the hashcode, so the keys of one shard still spread over all of its slots.
+ * <p>
+ * All the house keeping of a ConcurrentMapImpl is done by the threads using it: marked Buckets
+ * are unlinked by the writers that walk past them and a resize is done by the writers of the
+ * shard that outgrows its buckets array.  With shards, that work is confined to the shard it
+ * belongs to.  A shard growing from a million to two million slots migrates a million slots
+ * rather than the whole map, and readers and writers of the other shards never help with it or
+ * wait for it.
+ * <p>
+ * size(), getMetrics() and spliterator() are put together from the shards.  The spliterator
+ * splits by handing half of the shards to each side and only splits a single shard when there is
+ * one left, so a parallel stream walks different shards on different cores.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class ShardedConcurrentMapImpl<K, V> implements ShardedConcurrentMap<K, V> {
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    private static final int MAXIMUM_SHARD_COUNT = 1 << 16;
+
+    private final ConcurrentMapImpl<K, V>[] shards;
+    private final int shardShift;
+
+    /**
+     * Walks the shards from index up to fence, splitting by halving the range of shards and then
+     * by splitting the last shard itself
+     */
+    private static final class ShardSpliterator<K, V> implements Spliterator<KeyValuePair<K, V>> {
+
+        private final ConcurrentMapImpl<K, V>[] shards;
+        private final int fence;
+        private int index;
+        private Spliterator<KeyValuePair<K, V>> current;
+
+        private ShardSpliterator( ConcurrentMapImpl<K, V>[] shards, int index, int fence ) {
+
+            this.shards = shards;
+            this.index = index;
+            this.fence = fence;
+        }
+
+
+        @Override
+        public Spliterator<KeyValuePair<K, V>> trySplit() {
+
+            if ( current == null && fence - index > 1 ) {
+
+                int mid = ( index + fence ) >>> 1;
+                ShardSpliterator<K, V> prefix = new ShardSpliterator<>( shards, index, mid );
+                index = mid;
+                return prefix;
+            }
+
+            if ( current == null && index < fence ) {
+
+                current = shards[index++].spliterator();
+            }
+
+            return current == null ? null : current.trySplit();
+        }
+
+
+        @Override
+        public boolean tryAdvance( Consumer<? super KeyValuePair<K, V>> action ) {
+
+            while ( true ) {
+
+                if ( current != null && current.tryAdvance( action ) ) {
+
+                    return true;
+                }
+
+                if ( index >= fence ) {
+
+                    return false;
+                }
+
+                current = shards[index++].spliterator();
+            }
+        }
+
+
+        @Override
+        public void forEachRemaining( Consumer<? super KeyValuePair<K, V>> action ) {
+
+            if ( current != null ) {
+
+                current.forEachRemaining( action );
+                current = null;
+            }
+
+            while ( index < fence ) {
+
+                shards[index++].spliterator().forEachRemaining( action );
+            }
+        }
+
+
+        @Override
+        public long estimateSize() {
+
+            long size = current == null ? 0 : current.estimateSize();
+
+            for ( int i = index; i < fence; i++ ) {
+
+                size += Math.max( shards[i].size(), 0 );
+            }
+
+            return size;
+        }
+
+
+        @Override
+        public int characteristics() {
+
+            return Spliterator.CONCURRENT | Spliterator.NONNULL;
+        }
+    }
+
+
+    /**
+     * Adds up the metrics of the shards
+     */
+    private final class AggregatedMetrics implements ConcurrentMapMetrics {
+
+        private long sum( Function<ConcurrentMapMetrics, Long> metric ) {
+
+            long sum = 0;
+
+            for ( ConcurrentMapImpl<K, V> shard : shards ) {
+
+                sum += metric.apply( shard.getMetrics() );
+            }
+
+            return sum;
+        }
+
+
+        private long max( Function<ConcurrentMapMetrics, Long> metric ) {
+
+            long max = 0;
+
+            for ( ConcurrentMapImpl<K, V> shard : shards ) {
+
+                max = Math.max( max, metric.apply( shard.getMetrics() ) );
+            }
+
+            return max;
+        }
+
+
+        @Override
+        public boolean isEnabled() {
+
+            return ConcurrentMapMetricsImpl.ENABLED;
+        }
+
+
+        @Override
+        public long getPutCasFailureCount() {
+
+            return sum( ConcurrentMapMetrics::getPutCasFailureCount );
+        }
+
+
+        @Override
+        public long getRemoveCasFailureCount() {
+
+            return sum( ConcurrentMapMetrics::getRemoveCasFailureCount );
+        }
+
+
+        @Override
+        public long getResizeRetryCount() {
+
+            return sum( ConcurrentMapMetrics::getResizeRetryCount );
+        }
+
+
+        @Override
+        public long getUnlinkCount() {
+
+            return sum( ConcurrentMapMetrics::getUnlinkCount );
+        }
+
+
+        @Override
+        public long getUnlinkRetryCount() {
+
+            return sum( ConcurrentMapMetrics::getUnlinkRetryCount );
+        }
+
+
+        /**
+         * The largest of the 99th percentiles of the shards, as percentiles cannot be added
+         */
+        @Override
+        public long getWriteChainLength99thPercentile() {
+
+            return max( ConcurrentMapMetrics::getWriteChainLength99thPercentile );
+        }
+
+
+        @Override
+        public long getWriteChainLengthMax() {
+
+            return max( ConcurrentMapMetrics::getWriteChainLengthMax );
+        }
+
+
+        @Override
+        public long[] getChainLengthDistribution() {
+
+            long[] distribution = null;
+
+            for ( ConcurrentMapImpl<K, V> shard : shards ) {
+
+                long[] shardDistribution = shard.getMetrics().getChainLengthDistribution();
+
+                if ( distribution == null ) {
+
+                    distribution = shardDistribution;
+                    continue;
+                }
+
+                for ( int i = 0; i < distribution.length; i++ ) {
+
+                    distribution[i] += shardDistribution[i];
+                }
+            }
+
+            return distribution;
+        }
+
+
+        @Override
+        public long getResizeCount() {
+
+            return sum( ConcurrentMapMetrics::getResizeCount );
+        }
+
+
+        @Override
+        public double getResizeMeanNanos() {
+
+            double totalNanos = 0;
+            long count = 0;
+
+            for ( ConcurrentMapImpl<K, V> shard : shards ) {
+
+                ConcurrentMapMetrics metrics = shard.getMetrics();
+                totalNanos += metrics.getResizeMeanNanos() * metrics.getResizeCount();
+                count += metrics.getResizeCount();
+            }
+
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+
+        @Override
+        public long getResizeMaxNanos() {
+
+            return max( ConcurrentMapMetrics::getResizeMaxNanos );
+        }
+    }
+
+
+    private final AggregatedMetrics metrics = new AggregatedMetrics();
+
+
+    /**
+     * Constructor
+     *
+     * @param shardCount
+     *      number of shards, rounded up to a power of two
+     *
+     * @param bucketSize
+     *      initial number of slots of each shard
+     *
+     * @param timerWheel
+     *      TimerWheel which removes keys put with a time to live, or null to use
+     *      TimerWheelImpl.shared()
+     */
+    public ShardedConcurrentMapImpl( int shardCount, int bucketSize, TimerWheel timerWheel ) {
+
+        if ( shardCount < 1 || shardCount > MAXIMUM_SHARD_COUNT ) {
+
+            throw new IllegalArgumentException(
+                    "shardCount must be between 1 and " + MAXIMUM_SHARD_COUNT );
+        }
+
+        int shardBits = 32 - Integer.numberOfLeadingZeros( shardCount - 1 );
+
+        @SuppressWarnings( "unchecked" )
+        ConcurrentMapImpl<K, V>[] newShards =
+                ( ConcurrentMapImpl<K, V>[] )new ConcurrentMapImpl<?, ?>[1 << shardBits];
+
+        for ( int i = 0; i < newShards.length; i++ ) {
+
+            newShards[i] = new ConcurrentMapImpl<>( bucketSize, timerWheel );
+        }
+
+        this.shards = newShards;
+
+        // A shift of 32 is a shift of 0 in Java, so one shard is special cased in shardOf(..)
+        this.shardShift = 32 - shardBits;
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param shardCount
+     *      number of shards, rounded up to a power of two
+     */
+    public ShardedConcurrentMapImpl( int shardCount ) {
+
+        this( shardCount, 32, null );
+    }
+
+
+    /**
+     * Constructor with four shards per processor
+     */
+    public ShardedConcurrentMapImpl() {
+
+        this( Math.min( NCPU * 4, MAXIMUM_SHARD_COUNT ) );
+    }
+
+
+    private ConcurrentMapImpl<K, V> shardOf( K key ) {
+
+        return shards[getShardIndex( key )];
+    }
+
+
+    @Override
+    public int getShardIndex( K key ) {
+
+        return shards.length == 1 ? 0 : ( key.hashCode() * 0x9e3779b9 ) >>> shardShift;
+    }
+
+
+    @Override
+    public int getShardCount() {
+
+        return shards.length;
+    }
+
+
+    @Override
+    public long[] getShardSizes() {
+
+        long[] sizes = new long[shards.length];
+
+        for ( int i = 0; i < shards.length; i++ ) {
+
+            sizes[i] = shards[i].size();
+        }
+
+        return sizes;
+    }
+
+
+    @Override
+    public ConcurrentMapMetrics getMetrics() {
+
+        return metrics;
+    }
+
+
+    @Override
+    public ConcurrentMapMetrics getShardMetrics( int shardIndex ) {
+
+        return shards[shardIndex].getMetrics();
+    }
+
+
+    /**
+     * Publishes the metrics of the whole map to the platform MBeanServer as
+     * com.javaspeak.java_examples:type=ShardedConcurrentMap,name=&lt;name&gt;
+     *
+     * @param name
+     *      name telling this map apart from the others
+     *
+     * @return ObjectName the metrics were registered under, which can be used to unregister them
+     */
+    public ObjectName registerMetrics( String name ) {
+
+        try {
+            ObjectName objectName =
+                    new ObjectName(
+                            "com.javaspeak.java_examples:type=ShardedConcurrentMap,name=" +
+                                    ObjectName.quote( name ) );
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean( metrics, objectName );
+            return objectName;
+        }
+        catch ( JMException e ) {
+
+            throw new IllegalStateException( "Could not register metrics of " + name, e );
+        }
+    }
+
+
+    @Override
+    public V put( K key, V value ) {
+
+        return shardOf( key ).put( key, value );
+    }
+
+
+    @Override
+    public V put( K key, V value, long ttl, TimeUnit unit ) {
+
+        return shardOf( key ).put( key, value, ttl, unit );
+    }
+
+
+    @Override
+    public V putIfAbsent( K key, V value ) {
+
+        return shardOf( key ).putIfAbsent( key, value );
+    }
+
+
+    @Override
+    public boolean replace( K key, V oldValue, V newValue ) {
+
+        return shardOf( key ).replace( key, oldValue, newValue );
+    }
+
+
+    @Override
+    public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction ) {
+
+        return shardOf( key ).computeIfAbsent( key, mappingFunction );
+    }
+
+
+    @Override
+    public V merge(
+            K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction ) {
+
+        return shardOf( key ).merge( key, value, remappingFunction );
+    }
+
+
+    @Override
+    public V getValue( K key ) {
+
+        return shardOf( key ).getValue( key );
+    }
+
+
+    @Override
+    public void remove( K key ) {
+
+        shardOf( key ).remove( key );
+    }
+
+
+    @Override
+    public boolean remove( K key, V value ) {
+
+        return shardOf( key ).remove( key, value );
+    }
+
+
+    /**
+     * Splits the batch by shard so that each shard grows to fit its part of the batch once
+     */
+    @Override
+    public void putAll( Map<? extends K, ? extends V> map ) {
+
+        @SuppressWarnings( "unchecked" )
+        Map<K, V>[] batches = ( Map<K, V>[] )new Map<?, ?>[shards.length];
+
+        for ( Map.Entry<? extends K, ? extends V> entry : map.entrySet() ) {
+
+            int shardIndex = getShardIndex( entry.getKey() );
+
+            if ( batches[shardIndex] == null ) {
+
+                batches[shardIndex] = new HashMap<>();
+            }
+
+            batches[shardIndex].put( entry.getKey(), entry.getValue() );
+        }
+
+        for ( int i = 0; i < shards.length; i++ ) {
+
+            if ( batches[i] != null ) {
+
+                shards[i].putAll( batches[i] );
+            }
+        }
+    }
+
+
+    @Override
+    public Map<K, V> getAll( Collection<? extends K> keys ) {
+
+        Map<K, V> values = new HashMap<>();
+
+        for ( K key : keys ) {
+
+            V value = getValue( key );
+
+            if ( value != null ) {
+
+                values.put( key, value );
+            }
+        }
+
+        return values;
+    }
+
+
+    @Override
+    public long size() {
+
+        long size = 0;
+
+        for ( ConcurrentMapImpl<K, V> shard : shards ) {
+
+            size += shard.size();
+        }
+
+        return size;
+    }
+
+
+    @Override
+    public Spliterator<KeyValuePair<K, V>> spliterator() {
+
+        return new ShardSpliterator<>( shards, 0, shards.length );
+    }
+
+
+    @Override
+    public String debug() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < shards.length; i++ ) {
+
+            sb.append( "Shard " ).append( i ).append( " :" ).append( shards[i].debug() );
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes keys or values of one type to a snapshot file and reads them back.  Unlike an
+ * OffHeapCodec an instance may take any number of bytes, as the records of a snapshot are read in
+ * order rather than looked up at fixed offsets.
+ * <p>
+ * SnapshotCodecs has codecs for Long, Integer and String.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <T> type of key or value
+ */
+public interface SnapshotCodec<T> {
+
+    /**
+     * Writes the instance at the position of the buffer and moves the position past it
+     *
+     * @param t
+     *      instance to write
+     *
+     * @param buffer
+     *      buffer to write to
+     *
+     * @throws java.nio.BufferOverflowException
+     *      if the buffer does not have room for the instance.  The snapshot then writes the
+     *      instance again into an emptier buffer.
+     */
+    public void write( T t, ByteBuffer buffer );
+
+
+    /**
+     * Reads an instance at the position of the buffer and moves the position past it
+     *
+     * @param buffer
+     *      buffer holding bytes written by write(..)
+     *
+     * @return instance read
+     */
+    public T read( ByteBuffer buffer );
+}
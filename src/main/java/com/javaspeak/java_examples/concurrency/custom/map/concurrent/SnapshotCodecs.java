@@ -0,0 +1,84 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SnapshotCodecs for the types most often used as keys and values of a ConcurrentMap
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public final class SnapshotCodecs {
+
+    /**
+     * Writes a Long as 8 bytes
+     */
+    public static final SnapshotCodec<Long> LONG = new SnapshotCodec<Long>() {
+
+        @Override
+        public void write( Long t, ByteBuffer buffer ) {
+
+            buffer.putLong( t );
+        }
+
+
+        @Override
+        public Long read( ByteBuffer buffer ) {
+
+            return buffer.getLong();
+        }
+    };
+
+    /**
+     * Writes an Integer as 4 bytes
+     */
+    public static final SnapshotCodec<Integer> INTEGER = new SnapshotCodec<Integer>() {
+
+        @Override
+        public void write( Integer t, ByteBuffer buffer ) {
+
+            buffer.putInt( t );
+        }
+
+
+        @Override
+        public Integer read( ByteBuffer buffer ) {
+
+            return buffer.getInt();
+        }
+    };
+
+    /**
+     * Writes a String as the number of bytes of its UTF-8 encoding followed by the bytes
+     */
+    public static final SnapshotCodec<String> STRING = new SnapshotCodec<String>() {
+
+        @Override
+        public void write( String t, ByteBuffer buffer ) {
+
+            byte[] bytes = t.getBytes( StandardCharsets.UTF_8 );
+
+            if ( buffer.remaining() < 4 + bytes.length ) {
+
+                throw new BufferOverflowException();
+            }
+
+            buffer.putInt( bytes.length );
+            buffer.put( bytes );
+        }
+
+
+        @Override
+        public String read( ByteBuffer buffer ) {
+
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get( bytes );
+            return new String( bytes, StandardCharsets.UTF_8 );
+        }
+    };
+
+
+    private SnapshotCodecs() {
+    }
+}
@@ -0,0 +1,122 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.lang.reflect.Field;
+
+import sun.misc.Unsafe;
+
+/**
+ * Gets hold of sun.misc.Unsafe in the same way as UnsafeTest does, by reading the private
+ * theUnsafe field, and wraps the few methods the off-heap map and its codecs use to allocate
+ * native memory and to read, write and CAS it.  Addresses are absolute addresses returned by
+ * allocateMemory(..).
+ * <p>
+ * This is the only class that names Unsafe.  javac warns that Unsafe is an internal proprietary
+ * API wherever the type is named, and the warning cannot be turned off with @SuppressWarnings,
+ * so the warnings this class gives are accepted.  On Java 17, which this repository builds with,
+ * Unsafe is the only way to CAS native memory: the foreign memory API with MemorySegment is
+ * still incubating there.  Once the build moves to a Java with that API final, this class is the
+ * one place to change.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+final class UnsafeAccess {
+
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafeField = Unsafe.class.getDeclaredField( "theUnsafe" );
+            unsafeField.setAccessible( true );
+            UNSAFE = ( Unsafe )unsafeField.get( null );
+        }
+        catch ( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+
+    private UnsafeAccess() {
+
+    }
+
+
+    static long allocateMemory( long bytes ) {
+
+        return UNSAFE.allocateMemory( bytes );
+    }
+
+
+    static void setMemory( long address, long bytes, byte value ) {
+
+        UNSAFE.setMemory( address, bytes, value );
+    }
+
+
+    static void freeMemory( long address ) {
+
+        UNSAFE.freeMemory( address );
+    }
+
+
+    static long getLong( long address ) {
+
+        return UNSAFE.getLong( address );
+    }
+
+
+    static void putLong( long address, long value ) {
+
+        UNSAFE.putLong( address, value );
+    }
+
+
+    static long getLongVolatile( long address ) {
+
+        return UNSAFE.getLongVolatile( null, address );
+    }
+
+
+    static void putLongVolatile( long address, long value ) {
+
+        UNSAFE.putLongVolatile( null, address, value );
+    }
+
+
+    static boolean compareAndSwapLong( long address, long expected, long value ) {
+
+        return UNSAFE.compareAndSwapLong( null, address, expected, value );
+    }
+
+
+    static int getInt( long address ) {
+
+        return UNSAFE.getInt( address );
+    }
+
+
+    static void putInt( long address, int value ) {
+
+        UNSAFE.putInt( address, value );
+    }
+
+
+    static char getChar( long address ) {
+
+        return UNSAFE.getChar( address );
+    }
+
+
+    static void putChar( long address, char value ) {
+
+        UNSAFE.putChar( address, value );
+    }
+
+
+    /**
+     * Stops loads before the fence being reordered with loads and stores after it
+     */
+    static void loadFence() {
+
+        UNSAFE.loadFence();
+    }
+}
@@ -0,0 +1,54 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Append-only log of the changes made to a ConcurrentMap, which is replayed into a new map after
+ * a restart so that no change is lost.
+ * <p>
+ * Each record holds a key and the value it had at the time of the record, or no value if the key
+ * was removed, so replaying the records in order leaves each key with the value of its last
+ * record.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public interface WriteAheadLog<K, V> extends AutoCloseable {
+
+    /**
+     * Appends a record for the key after the map has been changed.  The record is given its place
+     * in the log before currentValue is called, so the record of the last change to a key always
+     * holds the value the key ended up with, however the threads changing it interleave.
+     *
+     * @param key
+     *      key which has been changed
+     *
+     * @param currentValue
+     *      returns the value the key has now, or null if it is not in the map
+     */
+    public void append( K key, Function<? super K, ? extends V> currentValue );
+
+
+    /**
+     * Puts and removes the keys of every record in the log in order
+     *
+     * @param map
+     *      map to replay the log into
+     *
+     * @return number of records replayed
+     *
+     * @throws IOException
+     *      if the log cannot be read
+     */
+    public long replay( ConcurrentMap<K, V> map ) throws IOException;
+
+
+    /**
+     * Writes and forces every record appended so far and stops the writer thread
+     */
+    @Override
+    public void close();
+}
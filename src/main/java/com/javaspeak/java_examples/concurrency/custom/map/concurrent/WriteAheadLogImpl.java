@@ -0,0 +1,538 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import com.javaspeak.java_examples.concurrency.custom.queue.RingBuffer;
+
+/**
+ * WriteAheadLogImpl appends records to a file without the threads appending them taking a lock or
+ * touching the file.
+ * <p>
+ * append(..) claims the next position of a RingBuffer, reads the current value of the key and
+ * publishes the record at the position it claimed.  A single writer thread polls the records in
+ * the order of their positions, encodes them into a direct buffer and writes the buffer with one
+ * FileChannel.write(..) once the ring is empty, or once it has taken as many records as the ring
+ * holds, so under load many records go to the file together.  The FsyncPolicy then decides
+ * whether that group is forced to disk and whether the appending threads wait for the force.  A
+ * full ring makes append(..) yield until the writer thread catches up.
+ * <p>
+ * Because a record is given its position before the value is read, of two records for the same
+ * key the one later in the log read the value later, so the last record of a key holds the value
+ * the key was left with even when two threads change it at the same time.
+ * <p>
+ * Each write is a frame of records:
+ * <p>
+ *     frame  : length of the records (int) | CRC32 of the records (int) | records<p>
+ *     record : 0 (byte) | key | value, for a put<p>
+ *     record : 1 (byte) | key, for a remove
+ * <p>
+ * so the CRC32 is worked out once per write over all of its bytes rather than once per record.
+ * When the log is opened it is read up to the first frame which is incomplete or fails its CRC32,
+ * which is where a crash stopped the last write, and the file is truncated there so new frames
+ * follow the last good one.  A frame is therefore replayed whole or not at all.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class WriteAheadLogImpl<K, V> implements WriteAheadLog<K, V> {
+
+    private static final byte PUT = 0;
+    private static final byte REMOVE = 1;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final SnapshotCodec<K> keyCodec;
+    private final SnapshotCodec<V> valueCodec;
+    private final FsyncPolicy fsyncPolicy;
+    private final FileChannel channel;
+    private final RingBuffer<Record<K, V>> ring;
+    private final Thread writerThread;
+    private final Object durableMonitor = new Object();
+
+    // Positions of the ring which have been written, and forced unless the policy is NEVER
+    private volatile long durableCount;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private volatile boolean writerStopped;
+
+    /**
+     * A key and its value at the time of the record, or a null value if the key was removed.  A
+     * Record without a key fills a position whose value could not be read.
+     */
+    private static final class Record<K, V> {
+
+        private final K key;
+        private final V value;
+
+        private Record( K key, V value ) {
+
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param path
+     *      file of the log, which is created if it does not exist
+     *
+     * @param keyCodec
+     *      writes and reads the keys
+     *
+     * @param valueCodec
+     *      writes and reads the values
+     *
+     * @param fsyncPolicy
+     *      when records are forced to disk
+     *
+     * @param ringCapacity
+     *      number of records which can wait for the writer thread before append(..) waits
+     *
+     * @throws IOException
+     *      if the file cannot be opened
+     */
+    public WriteAheadLogImpl(
+            Path path, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec,
+            FsyncPolicy fsyncPolicy, int ringCapacity ) throws IOException {
+
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.fsyncPolicy = fsyncPolicy;
+        this.ring = new RingBuffer<>( ringCapacity );
+        this.channel =
+                FileChannel.open(
+                        path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE );
+
+        try {
+            // Drops a frame the last write did not finish
+            long end = readFrames( frame -> { } );
+            channel.truncate( end );
+            channel.position( end );
+        }
+        catch ( IOException e ) {
+
+            channel.close();
+            throw e;
+        }
+
+        this.writerThread = new Thread( this::write, "write-ahead-log-" + path.getFileName() );
+        this.writerThread.setDaemon( true );
+        this.writerThread.start();
+    }
+
+
+    /**
+     * Reads every good frame from the start of the file
+     *
+     * @param frameConsumer
+     *      called with the records of each frame
+     *
+     * @return position just after the last good frame
+     */
+    private long readFrames( Consumer<ByteBuffer> frameConsumer ) throws IOException {
+
+        CRC32 crc32 = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE ).flip();
+        long size = channel.size();
+        long readPosition = 0;
+        long end = 0;
+
+        while ( true ) {
+
+            int needed = FRAME_HEADER_SIZE;
+
+            if ( buffer.remaining() >= FRAME_HEADER_SIZE ) {
+
+                int length = buffer.getInt( buffer.position() );
+
+                if ( length <= 0 || length > size - end - FRAME_HEADER_SIZE ) {
+
+                    return end;
+                }
+
+                needed += length;
+            }
+
+            if ( buffer.remaining() < needed ) {
+
+                if ( needed > buffer.capacity() ) {
+
+                    buffer = ByteBuffer.allocate( needed ).put( buffer );
+                }
+                else {
+
+                    buffer.compact();
+                }
+
+                int read = channel.read( buffer, readPosition );
+                buffer.flip();
+
+                if ( read <= 0 ) {
+
+                    return end;
+                }
+
+                readPosition += read;
+                continue;
+            }
+
+            buffer.getInt();
+            int crc = buffer.getInt();
+            ByteBuffer records = buffer.slice( buffer.position(), needed - FRAME_HEADER_SIZE );
+
+            crc32.reset();
+            crc32.update( records.duplicate() );
+
+            if ( ( int )crc32.getValue() != crc ) {
+
+                return end;
+            }
+
+            frameConsumer.accept( records );
+            buffer.position( buffer.position() + records.limit() );
+            end += needed;
+        }
+    }
+
+
+    private void checkOpen() {
+
+        if ( failure != null ) {
+
+            throw new IllegalStateException( "Write-ahead log failed", failure );
+        }
+
+        if ( closed ) {
+
+            throw new IllegalStateException( "Write-ahead log has been closed" );
+        }
+    }
+
+
+    @Override
+    public void append( K key, Function<? super K, ? extends V> currentValue ) {
+
+        checkOpen();
+        long pos;
+
+        while ( ( pos = ring.claim() ) < 0 ) {
+
+            checkOpen();
+            Thread.yield();
+        }
+
+        // close() may have been called since checkOpen(), in which case the writer thread may
+        // have stopped without waiting for this position.  It is filled in case the writer thread
+        // is still waiting for it, but the record is not written.
+        if ( closed || failure != null ) {
+
+            ring.publish( pos, new Record<>( null, null ) );
+            checkOpen();
+        }
+
+        Record<K, V> record;
+
+        try {
+            record = new Record<>( key, currentValue.apply( key ) );
+        }
+        catch ( RuntimeException | Error e ) {
+
+            // The position has to be filled or the writer thread would wait for it for ever
+            ring.publish( pos, new Record<>( null, null ) );
+            throw e;
+        }
+
+        ring.publish( pos, record );
+
+        if ( fsyncPolicy == FsyncPolicy.SYNC ) {
+
+            awaitDurable( pos );
+        }
+    }
+
+
+    /**
+     * Waits until the writer thread has forced the record at the position
+     */
+    private void awaitDurable( long pos ) {
+
+        if ( durableCount > pos ) {
+
+            return;
+        }
+
+        LockSupport.unpark( writerThread );
+        boolean interrupted = false;
+
+        synchronized ( durableMonitor ) {
+
+            while ( durableCount <= pos ) {
+
+                if ( failure != null || writerStopped ) {
+
+                    throw new IllegalStateException( "Write-ahead log failed", failure );
+                }
+
+                try {
+                    durableMonitor.wait();
+                }
+                catch ( InterruptedException e ) {
+
+                    interrupted = true;
+                }
+            }
+        }
+
+        if ( interrupted ) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Encodes a record into the frame being built in the buffer, writing the frame to the file
+     * first if the record does not fit
+     *
+     * @return buffer holding the record, which is a bigger one if the record is bigger than a
+     *      whole buffer
+     */
+    private ByteBuffer encode( Record<K, V> record, ByteBuffer buffer, CRC32 crc32 )
+            throws IOException {
+
+        while ( true ) {
+
+            int start = buffer.position();
+
+            try {
+                buffer.put( record.value == null ? REMOVE : PUT );
+                keyCodec.write( record.key, buffer );
+
+                if ( record.value != null ) {
+
+                    valueCodec.write( record.value, buffer );
+                }
+
+                return buffer;
+            }
+            catch ( BufferOverflowException e ) {
+
+                buffer.position( start );
+
+                if ( start == FRAME_HEADER_SIZE ) {
+
+                    buffer =
+                            ByteBuffer.allocateDirect( buffer.capacity() * 2 )
+                                    .position( FRAME_HEADER_SIZE );
+                }
+                else {
+
+                    writeFrame( buffer, crc32 );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Fills in the header of the frame in the buffer, writes it to the file and starts the next
+     * frame
+     */
+    private void writeFrame( ByteBuffer buffer, CRC32 crc32 ) throws IOException {
+
+        int length = buffer.position() - FRAME_HEADER_SIZE;
+
+        if ( length == 0 ) {
+
+            return;
+        }
+
+        crc32.reset();
+        crc32.update( buffer.flip().position( FRAME_HEADER_SIZE ) );
+        buffer.putInt( 0, length ).putInt( 4, ( int )crc32.getValue() ).position( 0 );
+
+        while ( buffer.hasRemaining() ) {
+
+            channel.write( buffer );
+        }
+
+        buffer.clear().position( FRAME_HEADER_SIZE );
+    }
+
+
+    /**
+     * Run by the writer thread until the log is closed and every record has been written
+     */
+    private void write() {
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE ).position( FRAME_HEADER_SIZE );
+        CRC32 crc32 = new CRC32();
+        long polledCount = 0;
+        int groupSize = 0;
+
+        try {
+            while ( true ) {
+
+                Record<K, V> record = groupSize < ring.capacity() ? ring.poll() : null;
+
+                if ( record != null ) {
+
+                    if ( record.key != null ) {
+
+                        buffer = encode( record, buffer, crc32 );
+                    }
+
+                    polledCount++;
+                    groupSize++;
+                    continue;
+                }
+
+                if ( groupSize > 0 ) {
+
+                    writeFrame( buffer, crc32 );
+
+                    if ( fsyncPolicy != FsyncPolicy.NEVER ) {
+
+                        channel.force( false );
+                    }
+
+                    durableCount = polledCount;
+                    groupSize = 0;
+
+                    if ( fsyncPolicy == FsyncPolicy.SYNC ) {
+
+                        synchronized ( durableMonitor ) {
+
+                            durableMonitor.notifyAll();
+                        }
+                    }
+
+                    continue;
+                }
+
+                // A position claimed before the log was closed is still waited for, and
+                // append(..) throws for a position claimed after the writer thread has stopped
+                if ( closed && ring.size() == 0 ) {
+
+                    break;
+                }
+
+                LockSupport.parkNanos( this, IDLE_PARK_NANOS );
+            }
+
+            channel.force( true );
+        }
+        catch ( IOException e ) {
+
+            failure = e;
+        }
+        finally {
+            writerStopped = true;
+
+            synchronized ( durableMonitor ) {
+
+                durableMonitor.notifyAll();
+            }
+
+            try {
+                channel.close();
+            }
+            catch ( IOException e ) {
+
+                if ( failure == null ) {
+
+                    failure = e;
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public long replay( ConcurrentMap<K, V> map ) throws IOException {
+
+        long[] count = new long[1];
+
+        readFrames( records -> {
+
+            while ( records.hasRemaining() ) {
+
+                byte type = records.get();
+                K key = keyCodec.read( records );
+
+                if ( type == PUT ) {
+
+                    map.put( key, valueCodec.read( records ) );
+                }
+                else {
+
+                    map.remove( key );
+                }
+
+                count[0]++;
+            }
+        } );
+
+        return count[0];
+    }
+
+
+    /**
+     * @return number of records appended which have been written, and forced unless the
+     *      FsyncPolicy is NEVER
+     */
+    public long getDurableCount() {
+
+        return durableCount;
+    }
+
+
+    @Override
+    public void close() {
+
+        if ( closed ) {
+
+            return;
+        }
+
+        closed = true;
+        LockSupport.unpark( writerThread );
+        boolean interrupted = false;
+
+        while ( writerThread.isAlive() ) {
+
+            try {
+                writerThread.join();
+            }
+            catch ( InterruptedException e ) {
+
+                interrupted = true;
+            }
+        }
+
+        if ( interrupted ) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        if ( failure != null ) {
+
+            throw new IllegalStateException( "Write-ahead log failed", failure );
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.javaspeak.java_examples.concurrency.custom.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RingBuffer is a bounded queue which any number of threads can offer to and poll from without
+ * taking a lock.
+ * <p>
+ * Every slot of the array has a sequence number as well as an element.  A producer at position
+ * pos may only fill slot pos &amp; mask once its sequence is pos, and claims it by CAS'ing the tail
+ * from pos to pos + 1.  It then writes the element and sets the sequence to pos + 1, which tells
+ * the consumer at position pos that the element is ready.  The consumer claims it by CAS'ing the
+ * head, takes the element and sets the sequence to pos + capacity so that the producer going
+ * round the ring next time can fill the slot again.  A full ring makes offer(..) return false
+ * rather than wait, so the caller decides whether to drop the element, drain the ring or block.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ *
+ * @param <E> type of element
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLong head = new AtomicLong( 0 );
+    private final AtomicLong tail = new AtomicLong( 0 );
+
+
+    /**
+     * @param capacity
+     *      maximum number of elements, rounded up to a power of two
+     */
+    public RingBuffer( int capacity ) {
+
+        if ( capacity < 1 || capacity > 1 << 30 ) {
+
+            throw new IllegalArgumentException( "capacity must be between 1 and 2^30" );
+        }
+
+        int size = capacity == 1 ? 1 : Integer.highestOneBit( capacity - 1 ) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray( size );
+        this.elements = new AtomicReferenceArray<>( size );
+
+        for ( int i = 0; i < size; i++ ) {
+
+            sequences.set( i, i );
+        }
+    }
+
+
+    /**
+     * @param element
+     *      element to add to the tail of the ring
+     *
+     * @return false if the ring is full
+     */
+    public boolean offer( E element ) {
+
+        if ( element == null ) {
+
+            throw new NullPointerException();
+        }
+
+        long pos = claim();
+
+        if ( pos < 0 ) {
+
+            return false;
+        }
+
+        publish( pos, element );
+        return true;
+    }
+
+
+    /**
+     * Claims the next position at the tail of the ring without filling it yet.  Consumers wait at
+     * a claimed position until publish(..) fills it, so the caller must publish straight away.
+     * Claiming first lets the caller build the element knowing where it falls in the order of the
+     * ring.
+     *
+     * @return position claimed, counting from 0, or -1 if the ring is full
+     */
+    public long claim() {
+
+        long pos = tail.get();
+
+        while ( true ) {
+
+            int index = ( int )pos & mask;
+            long difference = sequences.get( index ) - pos;
+
+            if ( difference == 0 ) {
+
+                if ( tail.compareAndSet( pos, pos + 1 ) ) {
+
+                    return pos;
+                }
+
+                pos = tail.get();
+            }
+            else if ( difference < 0 ) {
+
+                return -1;
+            }
+            else {
+
+                pos = tail.get();
+            }
+        }
+    }
+
+
+    /**
+     * @param pos
+     *      position returned by claim()
+     *
+     * @param element
+     *      element to fill the position with
+     */
+    public void publish( long pos, E element ) {
+
+        if ( element == null ) {
+
+            throw new NullPointerException();
+        }
+
+        int index = ( int )pos & mask;
+        elements.set( index, element );
+        sequences.set( index, pos + 1 );
+    }
+
+
+    /**
+     * @return element at the head of the ring or null if the ring is empty
+     */
+    public E poll() {
+
+        long pos = head.get();
+
+        while ( true ) {
+
+            int index = ( int )pos & mask;
+            long difference = sequences.get( index ) - ( pos + 1 );
+
+            if ( difference == 0 ) {
+
+                if ( head.compareAndSet( pos, pos + 1 ) ) {
+
+                    E element = elements.get( index );
+                    elements.set( index, null );
+                    sequences.set( index, pos + mask + 1 );
+                    return element;
+                }
+
+                pos = head.get();
+            }
+            else if ( difference < 0 ) {
+
+                return null;
+            }
+            else {
+
+                pos = head.get();
+            }
+        }
+    }
+
+
+    /**
+     * @return number of elements in the ring, which may be out of date as soon as it is returned
+     */
+    public int size() {
+
+        return ( int )Math.max( 0, Math.min( tail.get() - head.get(), mask + 1 ) );
+    }
+
+
+    /**
+     * @return maximum number of elements
+     */
+    public int capacity() {
+
+        return mask + 1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.javaspeak.java_examples.concurrency.custom.timer;
+
+/**
+ * Handle on a task scheduled with a TimerWheel
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public interface Timeout {
+
+    /**
+     * Stops the task from running if it has not run yet.  Takes O(1): the Timeout stays in the
+     * TimerWheel until its deadline comes round and is then dropped.
+     *
+     * @return true if the task will now never run
+     */
+    public boolean cancel();
+
+
+    /**
+     * @return true if cancel() stopped the task from running
+     */
+    public boolean isCancelled();
+
+
+    /**
+     * @return true if the deadline has passed and the task has been run
+     */
+    public boolean isExpired();
+}
@@ -0,0 +1,50 @@
+package com.javaspeak.java_examples.concurrency.custom.timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A TimerWheel runs tasks once their delay has passed.  Scheduling and cancelling a task take
+ * O(1) whatever the number of tasks waiting, so it can time out millions of map entries or
+ * waiting threads.
+ * <p>
+ * The tasks are run one after the other on the thread of the TimerWheel, so they must be short
+ * and must not block.  A task runs at most one tick after its deadline.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public interface TimerWheel extends AutoCloseable {
+
+    /**
+     * @param task
+     *      task to run once the delay has passed
+     *
+     * @param delay
+     *      delay after which to run the task
+     *
+     * @param unit
+     *      unit of the delay
+     *
+     * @return Timeout with which the task can be cancelled
+     */
+    public Timeout schedule( Runnable task, long delay, TimeUnit unit );
+
+
+    /**
+     * @return number of scheduled tasks which have not yet run or been dropped after being
+     *      cancelled
+     */
+    public long getPendingCount();
+
+
+    /**
+     * @return number of tasks which threw when they were run
+     */
+    public long getFailedCount();
+
+
+    /**
+     * Stops the thread of the TimerWheel.  Tasks which have not yet run never run.
+     */
+    @Override
+    public void close();
+}
@@ -0,0 +1,349 @@
+package com.javaspeak.java_examples.concurrency.custom.timer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TimerWheelImpl is a hierarchical timing wheel.  Time is cut into ticks, 1 millisecond by
+ * default, and there are 4 wheels of 64 buckets:
+ * <p>
+ *     wheel 0: one bucket per tick, covering 64 ticks<p>
+ *     wheel 1: one bucket per 64 ticks, covering 4,096 ticks<p>
+ *     wheel 2: one bucket per 4,096 ticks, covering 262,144 ticks<p>
+ *     wheel 3: one bucket per 262,144 ticks, covering 16,777,216 ticks, about 4.6 hours
+ * <p>
+ * A Timeout goes into the lowest wheel whose span takes in its deadline, at the bucket its
+ * deadline falls in.  Each tick the bucket of wheel 0 for that tick is run.  Every 64 ticks the
+ * next bucket of wheel 1 is emptied into wheel 0, every 4,096 ticks the next bucket of wheel 2 is
+ * emptied into wheel 1 and so on, so a Timeout is moved at most 3 times before it runs.
+ * Timeouts further away than wheel 3 reaches wait in an overflow list which is looked at each time
+ * wheel 3 goes round.  Adding, cancelling and running a Timeout are therefore all O(1), unlike a
+ * scan over every entry or a priority queue.
+ * <p>
+ * The wheels are only used by the thread of the TimerWheelImpl.  schedule(..) adds the Timeout to
+ * a lock-free queue which the thread empties into the wheels each tick, so scheduling never takes
+ * a lock.  cancel() only CAS's the state of the Timeout; the thread drops it when its bucket comes
+ * round.
+ * <p>
+ * A task which throws is logged and counted in getFailedCount(); it does not stop the thread.
+ * <p>
+ * shared() returns a TimerWheelImpl with a daemon thread which the maps in this repository use
+ * unless they are given one of their own.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class TimerWheelImpl implements TimerWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger( TimerWheelImpl.class );
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int WHEEL_COUNT = 4;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final long startTime;
+    private final TimeoutImpl[][] wheels = new TimeoutImpl[WHEEL_COUNT][WHEEL_SIZE];
+    private final ConcurrentLinkedQueue<TimeoutImpl> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final LongAdder pendingCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final Thread thread;
+    private final boolean closeable;
+    private volatile boolean closed;
+
+    // Only used by the thread
+    private TimeoutImpl overflow;
+    private long currentTick;
+
+    /**
+     * A scheduled task.  The buckets are singly linked lists of TimeoutImpls.
+     */
+    private final class TimeoutImpl implements Timeout {
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger( PENDING );
+        private TimeoutImpl next;
+
+        private TimeoutImpl( Runnable task, long deadline ) {
+
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+
+        @Override
+        public boolean cancel() {
+
+            if ( state.compareAndSet( PENDING, CANCELLED ) ) {
+
+                pendingCount.decrement();
+                return true;
+            }
+
+            return false;
+        }
+
+
+        @Override
+        public boolean isCancelled() {
+
+            return state.get() == CANCELLED;
+        }
+
+
+        @Override
+        public boolean isExpired() {
+
+            return state.get() == EXPIRED;
+        }
+
+
+        private void expire() {
+
+            if ( state.compareAndSet( PENDING, EXPIRED ) ) {
+
+                pendingCount.decrement();
+
+                try {
+                    task.run();
+                }
+                catch ( RuntimeException e ) {
+
+                    failedCount.increment();
+                    logger.error( "Task run by " + thread.getName() + " failed", e );
+                }
+            }
+        }
+    }
+
+    private static final class SharedTimerWheelHolder {
+
+        private static final TimerWheelImpl SHARED =
+                new TimerWheelImpl( 1, TimeUnit.MILLISECONDS, "shared-timer-wheel", false );
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param tickDuration
+     *      length of a tick, which is how late a task can run
+     *
+     * @param unit
+     *      unit of the tickDuration
+     *
+     * @param threadName
+     *      name of the daemon thread which runs the tasks
+     */
+    public TimerWheelImpl( long tickDuration, TimeUnit unit, String threadName ) {
+
+        this( tickDuration, unit, threadName, true );
+    }
+
+
+    private TimerWheelImpl(
+            long tickDuration, TimeUnit unit, String threadName, boolean closeable ) {
+
+        this.closeable = closeable;
+        this.tickNanos = unit.toNanos( tickDuration );
+
+        if ( tickNanos <= 0 ) {
+
+            throw new IllegalArgumentException( "tickDuration must be positive" );
+        }
+
+        this.startTime = System.nanoTime();
+        this.thread = new Thread( this::run, threadName );
+        this.thread.setDaemon( true );
+        this.thread.start();
+    }
+
+
+    /**
+     * @return TimerWheelImpl with a tick of 1 millisecond shared by the whole JVM.  It must not be
+     *      closed.
+     */
+    public static TimerWheelImpl shared() {
+
+        return SharedTimerWheelHolder.SHARED;
+    }
+
+
+    /**
+     * @return tick at or after the time, counted from the start of the TimerWheelImpl
+     */
+    private long tickOf( long nanoTime ) {
+
+        long elapsed = nanoTime - startTime;
+        return elapsed <= 0 ? 0 : ( elapsed + tickNanos - 1 ) / tickNanos;
+    }
+
+
+    private void run() {
+
+        while ( !closed ) {
+
+            long nowTick = ( System.nanoTime() - startTime ) / tickNanos;
+
+            for ( TimeoutImpl timeout; ( timeout = newTimeouts.poll() ) != null; ) {
+
+                add( timeout );
+            }
+
+            while ( currentTick < nowTick && !closed ) {
+
+                currentTick++;
+                processTick( currentTick );
+            }
+
+            long sleep = startTime + ( currentTick + 1 ) * tickNanos - System.nanoTime();
+
+            if ( sleep > 0 ) {
+
+                LockSupport.parkNanos( this, sleep );
+            }
+        }
+    }
+
+
+    /**
+     * Puts a Timeout in the bucket its deadline falls in, or runs it if the deadline has passed
+     */
+    private void add( TimeoutImpl timeout ) {
+
+        if ( timeout.state.get() != PENDING ) {
+
+            return;
+        }
+
+        long deadlineTick = tickOf( timeout.deadline );
+
+        if ( deadlineTick <= currentTick ) {
+
+            timeout.expire();
+            return;
+        }
+
+        // The lowest wheel in which the deadline and the current tick share every higher digit
+        long difference = deadlineTick ^ currentTick;
+
+        for ( int wheel = 0; wheel < WHEEL_COUNT; wheel++ ) {
+
+            if ( difference >>> ( WHEEL_BITS * ( wheel + 1 ) ) == 0 ) {
+
+                int bucket = ( int )( deadlineTick >>> ( WHEEL_BITS * wheel ) ) & WHEEL_MASK;
+                timeout.next = wheels[wheel][bucket];
+                wheels[wheel][bucket] = timeout;
+                return;
+            }
+        }
+
+        timeout.next = overflow;
+        overflow = timeout;
+    }
+
+
+    /**
+     * Moves the Timeouts of the higher wheels whose bucket starts at this tick down, then runs
+     * the bucket of wheel 0 for the tick
+     */
+    private void processTick( long tick ) {
+
+        if ( ( tick & ( ( 1L << ( WHEEL_BITS * WHEEL_COUNT ) ) - 1 ) ) == 0 ) {
+
+            TimeoutImpl timeouts = overflow;
+            overflow = null;
+            addAll( timeouts );
+        }
+
+        for ( int wheel = WHEEL_COUNT - 1; wheel > 0; wheel-- ) {
+
+            if ( ( tick & ( ( 1L << ( WHEEL_BITS * wheel ) ) - 1 ) ) == 0 ) {
+
+                int bucket = ( int )( tick >>> ( WHEEL_BITS * wheel ) ) & WHEEL_MASK;
+                TimeoutImpl timeouts = wheels[wheel][bucket];
+                wheels[wheel][bucket] = null;
+                addAll( timeouts );
+            }
+        }
+
+        int bucket = ( int )tick & WHEEL_MASK;
+        TimeoutImpl timeouts = wheels[0][bucket];
+        wheels[0][bucket] = null;
+
+        while ( timeouts != null ) {
+
+            TimeoutImpl next = timeouts.next;
+            timeouts.next = null;
+            timeouts.expire();
+            timeouts = next;
+        }
+    }
+
+
+    private void addAll( TimeoutImpl timeouts ) {
+
+        while ( timeouts != null ) {
+
+            TimeoutImpl next = timeouts.next;
+            timeouts.next = null;
+            add( timeouts );
+            timeouts = next;
+        }
+    }
+
+
+    @Override
+    public Timeout schedule( Runnable task, long delay, TimeUnit unit ) {
+
+        if ( closed ) {
+
+            throw new IllegalStateException( "TimerWheel has been closed" );
+        }
+
+        // Capped so that the deadline cannot overflow
+        long delayNanos = Math.min( Math.max( 0, unit.toNanos( delay ) ), Long.MAX_VALUE >>> 2 );
+        TimeoutImpl timeout = new TimeoutImpl( task, System.nanoTime() + delayNanos );
+        pendingCount.increment();
+        newTimeouts.add( timeout );
+        return timeout;
+    }
+
+
+    @Override
+    public long getPendingCount() {
+
+        return pendingCount.sum();
+    }
+
+
+    @Override
+    public long getFailedCount() {
+
+        return failedCount.sum();
+    }
+
+
+    @Override
+    public void close() {
+
+        if ( !closeable ) {
+
+            throw new UnsupportedOperationException( "The shared TimerWheel cannot be closed" );
+        }
+
+        closed = true;
+        LockSupport.unpark( thread );
+    }
+}
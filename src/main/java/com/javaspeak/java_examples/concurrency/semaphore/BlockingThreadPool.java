@@ -3,9 +3,17 @@ package com.javaspeak.java_examples.concurrency.semaphore;
  /**
  * @author John Dickerson - 23 Dec 2022
  */
-public interface BlockingThreadPool {
+public interface BlockingThreadPool extends AutoCloseable {
 
 	void executeRunnable( Runnable runnable ); 
 	
 	int numberFreeThreads();
+
+
+	/**
+	 * Waits for the running tasks to finish and stops the threads.  executeRunnable(..) then
+	 * throws RejectedExecutionException.
+	 */
+	@Override
+	void close();
 }
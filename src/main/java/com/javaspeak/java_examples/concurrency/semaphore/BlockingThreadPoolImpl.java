@@ -1,20 +1,80 @@
 package com.javaspeak.java_examples.concurrency.semaphore;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 
+import com.javaspeak.java_examples.concurrency.custom.queue.RingBuffer;
+
 /**
  * This Thread Pool will block on executeRunnable(..) for a thread to become available
+ * <p>
+ * The threads are started once and reused.  executeRunnable(..) takes a permit of the semaphore,
+ * which blocks while every thread is busy, and adds the task to a RingBuffer, a lock-free queue
+ * which any number of threads can add to and take from.  A task is only queued holding a permit,
+ * so the queue never holds more tasks than there are threads.  A worker thread waits on a second
+ * semaphore which counts the queued tasks, runs the task it takes and gives the permit back, so
+ * numberFreeThreads() counts the threads not running or about to run a task.
  * 
  * @author John Dickerson - 23 Dec 2022
  */
 public class BlockingThreadPoolImpl implements BlockingThreadPool {
 	
-	private Semaphore semaphore;
+	private final Semaphore semaphore;
+	private final Semaphore queuedTasks = new Semaphore( 0 );
+	private final RingBuffer<Runnable> queue;
+	private final Thread[] workers;
+	private volatile boolean closed;
 
 	public BlockingThreadPoolImpl( Integer numberThreads ) {
 		
 		semaphore = new Semaphore( numberThreads );
+		queue = new RingBuffer<>( numberThreads );
+		workers = new Thread[numberThreads];
+
+		for ( int i = 0; i < numberThreads; i++ ) {
+
+			workers[i] = new Thread( this::work, "blocking-thread-pool-" + i );
+			workers[i].setDaemon( true );
+			workers[i].start();
+		}
+	}
+
+
+	private void work() {
+
+		while ( true ) {
+
+			queuedTasks.acquireUninterruptibly();
+			Runnable runnable;
+
+			// The task is counted once it is published, but a task queued before it by another
+			// thread may still be being published
+			while ( ( runnable = queue.poll() ) == null ) {
+
+				if ( closed ) {
+
+					return;
+				}
+
+				Thread.onSpinWait();
+			}
+
+			try {
+				runnable.run();
+			}
+			catch ( Throwable t ) {
+
+				// Reported as if the task had its own thread, but the worker carries on
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException( thread, t );
+			}
+			finally {
+				// the permit is added back to the semaphore
+				semaphore.release();
+			}
+		}
 	}
+
 	
 	@Override
 	public int numberFreeThreads() {
@@ -27,28 +87,60 @@ public class BlockingThreadPoolImpl implements BlockingThreadPool {
 	@Override
 	public void executeRunnable( Runnable runnable ) {
 		
+		if ( closed ) {
+
+			throw new RejectedExecutionException( "BlockingThreadPool has been closed" );
+		}
+
 		try {
 			// This will block if we have used all the permits
 			semaphore.acquire();
-			
-			Thread thread = new Thread() {	
-			
-				public void run() {
-					
-					try {
-						runnable.run();
-					}
-					finally {
-						// the permit is added back to the semaphore
-						semaphore.release();
-					}
-				}
-			};
-
-			thread.start();
 		}
 		catch( InterruptedException e ) {
 			
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		if ( closed ) {
+
+			semaphore.release();
+			throw new RejectedExecutionException( "BlockingThreadPool has been closed" );
 		}
+
+		// There are as many slots in the queue as permits, but a worker which has just taken the
+		// task out of the slot we need may not have marked it free yet
+		while ( !queue.offer( runnable ) ) {
+
+			Thread.yield();
+		}
+
+		queuedTasks.release();
+	}
+
+
+	@Override
+	public void close() {
+
+		closed = true;
+
+		// Once every permit is held no task is running or queued
+		semaphore.acquireUninterruptibly( workers.length );
+		queuedTasks.release( workers.length );
+
+		for ( Thread worker : workers ) {
+
+			try {
+				worker.join();
+			}
+			catch ( InterruptedException e ) {
+
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		// Wakes callers of executeRunnable(..) which were waiting for a permit so they are rejected
+		semaphore.release( workers.length );
 	}
 }
@@ -0,0 +1,230 @@
+package com.javaspeak.java_examples.concurrency.semaphore;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * This Thread Pool will block on executeRunnable(..) once maxConcurrency tasks are running, but
+ * rather than keeping maxConcurrency threads it starts a virtual thread for each task.  A task
+ * which waits for I/O only holds a small object on the heap while it waits, and its carrier thread
+ * goes on to run other virtual threads, so maxConcurrency can be set by what the downstream system
+ * can take, say the connections to a database, instead of by how many threads the JVM can hold.
+ * <p>
+ * A virtual thread which blocks inside a synchronized block or a native method cannot leave its
+ * carrier thread.  Each time this pins a carrier for longer than the pinnedThreshold, the JVM
+ * records a jdk.VirtualThreadPinned JFR event.  If a pinningListener is given the pool streams
+ * these events, counts them in getPinnedCount() and hands each one, with the stack trace of the
+ * pinned thread, to the listener.
+ * <p>
+ * Virtual threads need Java 21.  The executor is looked up by reflection so that the class still
+ * compiles for older Javas, but on an older JVM the constructor throws an
+ * UnsupportedOperationException rather than quietly starting a platform thread per task.
+ * isSupported() tells whether the JVM has virtual threads.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class VirtualThreadBlockingThreadPoolImpl implements BlockingThreadPool {
+
+	private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+	private final Semaphore semaphore;
+	private final int maxConcurrency;
+	private final ExecutorService executorService;
+	private final RecordingStream recordingStream;
+	private final LongAdder pinnedCount = new LongAdder();
+	private volatile boolean closed;
+
+	/**
+	 * Constructor which does not report pinning
+	 *
+	 * @param maxConcurrency
+	 *      number of tasks which can run at the same time
+	 */
+	public VirtualThreadBlockingThreadPoolImpl( Integer maxConcurrency ) {
+
+		this( maxConcurrency, null, null );
+	}
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxConcurrency
+	 *      number of tasks which can run at the same time
+	 *
+	 * @param pinningListener
+	 *      called with each jdk.VirtualThreadPinned event, or null not to record them
+	 *
+	 * @param pinnedThreshold
+	 *      shortest pinning which is reported, or null for the JFR default of 20 milliseconds
+	 *
+	 * @throws UnsupportedOperationException
+	 *      if the JVM has no virtual threads
+	 */
+	public VirtualThreadBlockingThreadPoolImpl(
+			Integer maxConcurrency, Consumer<RecordedEvent> pinningListener,
+			Duration pinnedThreshold ) {
+
+		if ( maxConcurrency < 1 ) {
+
+			throw new IllegalArgumentException( "maxConcurrency must be positive" );
+		}
+
+		ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+
+		if ( virtualThreads == null ) {
+
+			throw new UnsupportedOperationException(
+					"Virtual threads need Java 21, this is Java " + Runtime.version().feature() );
+		}
+
+		this.semaphore = new Semaphore( maxConcurrency );
+		this.maxConcurrency = maxConcurrency;
+		this.executorService = virtualThreads;
+
+		if ( pinningListener == null ) {
+
+			this.recordingStream = null;
+		}
+		else {
+
+			this.recordingStream = new RecordingStream();
+
+			recordingStream.enable( PINNED_EVENT ).withStackTrace().withThreshold(
+					pinnedThreshold == null ? Duration.ofMillis( 20 ) : pinnedThreshold );
+
+			recordingStream.onEvent( PINNED_EVENT, event -> {
+
+				pinnedCount.increment();
+				pinningListener.accept( event );
+			} );
+
+			recordingStream.startAsync();
+		}
+	}
+
+
+	/**
+	 * @return true if the JVM has virtual threads, so that a VirtualThreadBlockingThreadPoolImpl
+	 *      can be created
+	 */
+	public static boolean isSupported() {
+
+		try {
+			Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			return true;
+		}
+		catch ( NoSuchMethodException e ) {
+
+			return false;
+		}
+	}
+
+
+	/**
+	 * @return ExecutorService starting a virtual thread per task, or null if the JVM has no
+	 *      virtual threads
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+
+		try {
+			return ( ExecutorService )Executors.class
+					.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+		}
+		catch ( ReflectiveOperationException e ) {
+
+			return null;
+		}
+	}
+
+
+	@Override
+	public int numberFreeThreads() {
+
+		// returns the number of tasks which can be started without blocking
+		return semaphore.availablePermits();
+	}
+
+
+	@Override
+	public void executeRunnable( Runnable runnable ) {
+
+		if ( closed ) {
+
+			throw new RejectedExecutionException( "BlockingThreadPool has been closed" );
+		}
+
+		try {
+			// This will block if we have used all the permits
+			semaphore.acquire();
+		}
+		catch( InterruptedException e ) {
+
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		if ( closed ) {
+
+			semaphore.release();
+			throw new RejectedExecutionException( "BlockingThreadPool has been closed" );
+		}
+
+		executorService.execute( () -> {
+
+			try {
+				runnable.run();
+			}
+			finally {
+				// the permit is added back to the semaphore
+				semaphore.release();
+			}
+		} );
+	}
+
+
+	/**
+	 * @return number of jdk.VirtualThreadPinned events reported to the pinningListener.  JFR
+	 *      hands events to the stream about once a second, so a pinning shows up that much later.
+	 */
+	public long getPinnedCount() {
+
+		return pinnedCount.sum();
+	}
+
+
+	@Override
+	public void close() {
+
+		closed = true;
+
+		// Once every permit is held no task is running
+		semaphore.acquireUninterruptibly( maxConcurrency );
+		executorService.shutdown();
+
+		try {
+			executorService.awaitTermination( 1, TimeUnit.MINUTES );
+		}
+		catch ( InterruptedException e ) {
+
+			Thread.currentThread().interrupt();
+		}
+
+		if ( recordingStream != null ) {
+
+			recordingStream.close();
+		}
+
+		// Wakes callers of executeRunnable(..) which were waiting for a permit so they are rejected
+		semaphore.release( maxConcurrency );
+	}
+}
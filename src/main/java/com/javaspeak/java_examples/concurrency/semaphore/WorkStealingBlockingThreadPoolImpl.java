@@ -0,0 +1,284 @@
+package com.javaspeak.java_examples.concurrency.semaphore;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This Thread Pool will block on executeRunnable(..) once maxInFlight tasks are queued or running.
+ * Rather than sharing one queue, which every thread would contend on, each worker thread has its
+ * own deque.
+ * <p>
+ * A task submitted by a worker, from inside a task it is running, is added to the worker's own
+ * deque.  Any other thread adds the task to the deque of a worker picked at random.  A worker
+ * takes tasks from the head of its own deque and, once that is empty, steals from the tail of the
+ * deques of the other workers, starting at a random one so that idle workers do not all pile onto
+ * the same victim.  The deques are ConcurrentLinkedDeques, so neither adding nor taking nor
+ * stealing takes a lock.
+ * <p>
+ * A worker which finds nothing to run adds itself to a queue of idle workers, looks at every deque
+ * once more and parks.  executeRunnable(..) adds the task before it wakes the next idle worker, so
+ * either the worker sees the task or executeRunnable(..) sees the worker.
+ * <p>
+ * As with BlockingThreadPoolImpl, a task which submits more tasks can block its worker when the
+ * limit is reached, so if every worker did so they would wait for each other forever.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class WorkStealingBlockingThreadPoolImpl implements BlockingThreadPool {
+
+	private final Semaphore semaphore;
+	private final int maxInFlight;
+	private final Worker[] workers;
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+	private final LongAdder stealCount = new LongAdder();
+	private volatile boolean closed;
+	private volatile boolean stopped;
+
+	/**
+	 * A worker thread and the deque it takes its tasks from first
+	 */
+	private final class Worker extends Thread {
+
+		private final ConcurrentLinkedDeque<Runnable> deque = new ConcurrentLinkedDeque<>();
+
+		private Worker( int index ) {
+
+			super( "work-stealing-thread-pool-" + index );
+			setDaemon( true );
+		}
+
+
+		private WorkStealingBlockingThreadPoolImpl pool() {
+
+			return WorkStealingBlockingThreadPoolImpl.this;
+		}
+
+
+		@Override
+		public void run() {
+
+			while ( true ) {
+
+				Runnable runnable = findTask( this );
+
+				if ( runnable == null ) {
+
+					idleWorkers.add( this );
+
+					// A task added before we became idle would not have woken us
+					runnable = findTask( this );
+
+					if ( runnable == null ) {
+
+						if ( stopped ) {
+
+							return;
+						}
+
+						LockSupport.park( this );
+						idleWorkers.remove( this );
+						continue;
+					}
+
+					idleWorkers.remove( this );
+				}
+
+				try {
+					runnable.run();
+				}
+				catch ( Throwable t ) {
+
+					// Reported as if the task had its own thread, but the worker carries on
+					getUncaughtExceptionHandler().uncaughtException( this, t );
+				}
+				finally {
+					// the permit is added back to the semaphore
+					semaphore.release();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Constructor which allows as many tasks in flight as there are threads
+	 *
+	 * @param numberThreads
+	 *      number of worker threads
+	 */
+	public WorkStealingBlockingThreadPoolImpl( Integer numberThreads ) {
+
+		this( numberThreads, numberThreads );
+	}
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param numberThreads
+	 *      number of worker threads
+	 *
+	 * @param maxInFlight
+	 *      number of tasks which can be queued or running before executeRunnable(..) blocks
+	 */
+	public WorkStealingBlockingThreadPoolImpl( Integer numberThreads, Integer maxInFlight ) {
+
+		if ( numberThreads < 1 || maxInFlight < 1 ) {
+
+			throw new IllegalArgumentException( "numberThreads and maxInFlight must be positive" );
+		}
+
+		this.semaphore = new Semaphore( maxInFlight );
+		this.maxInFlight = maxInFlight;
+		this.workers = new Worker[numberThreads];
+
+		for ( int i = 0; i < numberThreads; i++ ) {
+
+			workers[i] = new Worker( i );
+		}
+
+		for ( Worker worker : workers ) {
+
+			worker.start();
+		}
+	}
+
+
+	/**
+	 * @return task from the head of the worker's own deque or else one stolen from the tail of the
+	 *      deque of another worker, or null if every deque is empty
+	 */
+	private Runnable findTask( Worker worker ) {
+
+		Runnable runnable = worker.deque.pollFirst();
+
+		if ( runnable != null || workers.length == 1 ) {
+
+			return runnable;
+		}
+
+		int start = ThreadLocalRandom.current().nextInt( workers.length );
+
+		for ( int i = 0; i < workers.length; i++ ) {
+
+			Worker victim = workers[( start + i ) % workers.length];
+
+			if ( victim != worker && ( runnable = victim.deque.pollLast() ) != null ) {
+
+				stealCount.increment();
+				return runnable;
+			}
+		}
+
+		return null;
+	}
+
+
+	@Override
+	public int numberFreeThreads() {
+
+		// returns the number of tasks which can be submitted without blocking
+		return semaphore.availablePermits();
+	}
+
+
+	@Override
+	public void executeRunnable( Runnable runnable ) {
+
+		if ( closed ) {
+
+			throw new RejectedExecutionException( "BlockingThreadPool has been closed" );
+		}
+
+		try {
+			// This will block if we have used all the permits
+			semaphore.acquire();
+		}
+		catch( InterruptedException e ) {
+
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		if ( closed ) {
+
+			semaphore.release();
+			throw new RejectedExecutionException( "BlockingThreadPool has been closed" );
+		}
+
+		Thread thread = Thread.currentThread();
+
+		if ( thread instanceof Worker && ( ( Worker )thread ).pool() == this ) {
+
+			( ( Worker )thread ).deque.addFirst( runnable );
+		}
+		else {
+
+			workers[ThreadLocalRandom.current().nextInt( workers.length )].deque.addLast( runnable );
+		}
+
+		Worker idleWorker = idleWorkers.poll();
+
+		if ( idleWorker != null ) {
+
+			LockSupport.unpark( idleWorker );
+		}
+	}
+
+
+	/**
+	 * @return number of tasks which a worker has taken from the deque of another worker
+	 */
+	public long getStealCount() {
+
+		return stealCount.sum();
+	}
+
+
+	/**
+	 * @param index
+	 *      index of the worker from 0 to numberThreads - 1
+	 *
+	 * @return number of tasks waiting in the deque of the worker
+	 */
+	public int getQueuedCount( int index ) {
+
+		return workers[index].deque.size();
+	}
+
+
+	@Override
+	public void close() {
+
+		closed = true;
+
+		// Once every permit is held no task is running or queued
+		semaphore.acquireUninterruptibly( maxInFlight );
+		stopped = true;
+
+		for ( Worker worker : workers ) {
+
+			LockSupport.unpark( worker );
+		}
+
+		for ( Worker worker : workers ) {
+
+			try {
+				worker.join();
+			}
+			catch ( InterruptedException e ) {
+
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		// Wakes callers of executeRunnable(..) which were waiting for a permit so they are rejected
+		semaphore.release( maxInFlight );
+	}
+}
@@ -1,9 +1,19 @@
 package com.javaspeak.java_examples.concurrency.custom.map.blockonget;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.testng.Assert;
 import org.testng.TestListenerAdapter;
@@ -11,6 +21,8 @@ import org.testng.TestNG;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheelImpl;
+
 /**
  * @author John Dickerson - 15 Dec 2022
  */
@@ -81,6 +93,426 @@ public class BlockOnGetMapTest {
     }
 
 
+    @Test
+    public void timeoutTest() {
+
+        BlockOnGetMap<Long, String> map = new BlockOnGetMapImpl<Long, String>( 3000l );
+
+        long start = System.nanoTime();
+        Assert.assertNull( map.get( 1l, 200 ) );
+        Assert.assertTrue( System.nanoTime() - start >= 200 * 1000000l );
+
+        // The get which timed out leaves nothing behind so a later put and get still meet
+        map.put( 1l, "late" );
+        Assert.assertEquals( map.getEntryCount().intValue(), 1 );
+        Assert.assertEquals( map.get( 1l, 0 ), "late" );
+        Assert.assertEquals( map.getEntryCount().intValue(), 0 );
+    }
+
+
+    @Test
+    public void putBeforeGetTest() {
+
+        BlockOnGetMap<Long, String> map = new BlockOnGetMapImpl<Long, String>( 3000l );
+
+        map.put( 1l, "first" );
+        map.put( 1l, "second" );
+        Assert.assertEquals( map.getEntryCount().intValue(), 1 );
+        Assert.assertEquals( map.get( 1l, 1000 ), "second" );
+        Assert.assertNull( map.get( 1l, 0 ) );
+        Assert.assertEquals( map.getEntryCount().intValue(), 0 );
+    }
+
+
+    @Test
+    public void manyKeysTest() throws Exception {
+
+        BlockOnGetMap<Long, Long> map = new BlockOnGetMapImpl<Long, Long>( 60000l );
+        int numberThreads = 8;
+        int keysPerThread = 5000;
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads * 2 );
+        List<Future<Long>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            long start = t * keysPerThread;
+
+            // Consumers of one range of keys race the producers of the same range
+            futures.add( executorService.submit( () -> {
+
+                long sum = 0;
+
+                for ( long i = start; i < start + keysPerThread; i++ ) {
+
+                    Long value = map.get( i, 10000 );
+                    Assert.assertEquals( value, Long.valueOf( i * 2 ) );
+                    sum += value;
+                }
+
+                return sum;
+            } ) );
+
+            executorService.submit( () -> {
+
+                for ( long i = start; i < start + keysPerThread; i++ ) {
+
+                    map.put( i, i * 2 );
+                }
+            } );
+        }
+
+        long sum = 0;
+
+        for ( Future<Long> future : futures ) {
+
+            sum += future.get();
+        }
+
+        executorService.shutdown();
+
+        long keyCount = numberThreads * keysPerThread;
+        Assert.assertEquals( sum, keyCount * ( keyCount - 1 ) );
+        Assert.assertEquals( map.getEntryCount().intValue(), 0 );
+    }
+
+
+    @Test
+    public void getAsyncTest() throws Exception {
+
+        BlockOnGetMap<Long, Long> map = new BlockOnGetMapImpl<Long, Long>( 60000l );
+        int keyCount = 20000;
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+
+        // Many more pending gets than there could be threads
+        for ( long i = 0; i < keyCount; i++ ) {
+
+            futures.add( map.getAsync( i, i % 2 == 0 ? 10000 : 300 ) );
+        }
+
+        for ( long i = 0; i < keyCount; i += 2 ) {
+
+            map.put( i, i * 2 );
+        }
+
+        for ( int i = 0; i < keyCount; i++ ) {
+
+            Long value = futures.get( i ).get();
+            Assert.assertEquals( value, i % 2 == 0 ? Long.valueOf( i * 2 ) : null );
+        }
+
+        Assert.assertEquals( map.getEntryCount().intValue(), 0 );
+
+        // A value put before the getAsync completes it straight away
+        map.put( -1l, 7l );
+        CompletableFuture<Long> future = map.getAsync( -1l, 0 );
+        Assert.assertTrue( future.isDone() );
+        Assert.assertEquals( future.get(), Long.valueOf( 7 ) );
+    }
+
+
+    @Test
+    public void getAndGetAsyncShareKeyTest() throws Exception {
+
+        BlockOnGetMap<Long, String> map = new BlockOnGetMapImpl<Long, String>( 60000l );
+
+        // A short getAsync timing out must not stop a longer get or getAsync of the same key
+        // from getting the value.  A value goes to one waiter, so each key has one long waiter.
+        CompletableFuture<String> shortFuture = map.getAsync( 1l, 100 );
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<String> getFuture = executorService.submit( () -> map.get( 1l, 5000 ) );
+
+        CompletableFuture<String> shortFuture2 = map.getAsync( 2l, 100 );
+        CompletableFuture<String> longFuture = map.getAsync( 2l, 5000 );
+
+        Assert.assertNull( shortFuture.get() );
+        Assert.assertNull( shortFuture2.get() );
+        map.put( 1l, "hello" );
+        map.put( 2l, "world" );
+
+        Assert.assertEquals( getFuture.get(), "hello" );
+        Assert.assertEquals( longFuture.get(), "world" );
+        Assert.assertEquals( map.getEntryCount().intValue(), 0 );
+        executorService.shutdown();
+    }
+
+
+    @Test
+    public void metricsTest() throws Exception {
+
+        try ( TimerWheelImpl timerWheel =
+                new TimerWheelImpl( 1, TimeUnit.MILLISECONDS, "block-on-get-map-test" ) ) {
+
+            BlockOnGetMapImpl<Long, String> map =
+                    new BlockOnGetMapImpl<Long, String>( 200l, timerWheel );
+
+            for ( long i = 0; i < 1000; i++ ) {
+
+                map.put( i, "value" + i );
+            }
+
+            Assert.assertEquals( map.get( 0l, 0 ), "value0" );
+            Assert.assertNull( map.get( -1l, 0 ) );
+            Assert.assertNull( map.getAsync( -2l, 50 ).get() );
+
+            BlockOnGetMapMetrics metrics = map.getMetrics();
+            Assert.assertEquals( metrics.getPendingValueCount(), 999 );
+            Assert.assertEquals( metrics.getTimedOutGetCount(), 2 );
+
+            // The unclaimed values are purged by the TimerWheel without any further put
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 5 );
+
+            while ( metrics.getPendingValueCount() > 0 && System.nanoTime() < deadline ) {
+
+                Thread.sleep( 10 );
+            }
+
+            Assert.assertEquals( metrics.getPendingValueCount(), 0 );
+            Assert.assertEquals( metrics.getPurgedCount(), 999 );
+            Assert.assertEquals( timerWheel.getPendingCount(), 0 );
+
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = map.registerMetrics( "metricsTest" );
+            Assert.assertEquals( mBeanServer.getAttribute( objectName, "PurgedCount" ), 999l );
+            mBeanServer.unregisterMBean( objectName );
+        }
+    }
+
+
+    @Test
+    public void getAllTest() throws Exception {
+
+        BlockOnGetMap<Long, String> map = new BlockOnGetMapImpl<Long, String>( 60000l );
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        map.put( 1l, "one" );
+
+        executorService.submit( () -> {
+
+            Thread.sleep( 100 );
+            map.put( 3l, "three" );
+            Thread.sleep( 100 );
+            map.put( 2l, "two" );
+            return null;
+        } );
+
+        // One wait for all the keys, whatever order the values arrive in
+        Map<Long, String> values = map.getAll( List.of( 1l, 2l, 3l ), 5000 );
+        Assert.assertEquals( values, Map.of( 1l, "one", 2l, "two", 3l, "three" ) );
+        Assert.assertEquals( new ArrayList<>( values.keySet() ), List.of( 1l, 2l, 3l ) );
+        Assert.assertEquals( map.getEntryCount().intValue(), 0 );
+
+        // The timeout covers the whole wait and the values which arrived are returned
+        map.put( 4l, "four" );
+        long start = System.nanoTime();
+        values = map.getAll( List.of( 4l, 5l, 6l ), 300 );
+        long elapsedMilli = ( System.nanoTime() - start ) / 1000000;
+
+        Assert.assertEquals( values, Map.of( 4l, "four" ) );
+        Assert.assertTrue( elapsedMilli >= 300 && elapsedMilli < 2000, "" + elapsedMilli );
+        Assert.assertEquals( map.getAll( List.of(), 1000 ), Map.of() );
+
+        // Keys which timed out can still be got later
+        map.put( 5l, "five" );
+        Assert.assertEquals( map.get( 5l, 0 ), "five" );
+        executorService.shutdown();
+    }
+
+
+    @Test
+    public void awaitAnyTest() throws Exception {
+
+        BlockOnGetMap<Long, String> map = new BlockOnGetMapImpl<Long, String>( 60000l );
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        executorService.submit( () -> {
+
+            Thread.sleep( 100 );
+            map.put( 2l, "two" );
+            return null;
+        } );
+
+        Map.Entry<Long, String> entry = map.awaitAny( List.of( 1l, 2l, 3l ), 5000 );
+        Assert.assertEquals( entry.getKey(), Long.valueOf( 2 ) );
+        Assert.assertEquals( entry.getValue(), "two" );
+
+        // Only the first value is claimed
+        map.put( 3l, "three" );
+        map.put( 1l, "one" );
+        entry = map.awaitAny( List.of( 1l, 3l ), 5000 );
+        Assert.assertTrue( entry.equals( Map.entry( 1l, "one" ) ) ||
+                entry.equals( Map.entry( 3l, "three" ) ) );
+        Assert.assertEquals( map.getEntryCount().intValue(), 1 );
+
+        Assert.assertNull( map.awaitAny( List.of( 7l, 8l ), 100 ) );
+        Assert.assertNull( map.get( 2l, 0 ) );
+        executorService.shutdown();
+    }
+
+
+    @Test
+    public void rejectWhenFullTest() {
+
+        BlockOnGetMapImpl<Long, String> map =
+                new BlockOnGetMapImpl<Long, String>(
+                        60000l, null, 10, OverflowPolicy.REJECT, ( k, v ) -> v.length() );
+
+        map.put( 1l, "12345" );
+        map.put( 2l, "1234" );
+
+        try {
+            map.put( 3l, "12" );
+            Assert.fail( "The put should have been rejected" );
+        }
+        catch ( IllegalStateException e ) {
+
+            Assert.assertEquals( map.getMetrics().getRejectedCount(), 1 );
+        }
+
+        // Replacing a value gives back the room of the old one
+        map.put( 2l, "1" );
+        map.put( 3l, "1234" );
+        Assert.assertEquals( map.getMetrics().getPendingWeight(), 10 );
+
+        // A value handed straight to a waiting get takes no room
+        CompletableFuture<String> future = map.getAsync( 4l, 5000 );
+        map.put( 4l, "1234567890" );
+        Assert.assertEquals( future.join(), "1234567890" );
+
+        Assert.assertEquals( map.get( 1l, 0 ), "12345" );
+        Assert.assertEquals( map.getMetrics().getPendingWeight(), 5 );
+        map.put( 5l, "12345" );
+        Assert.assertEquals( map.getEntryCount().intValue(), 3 );
+    }
+
+
+    @Test
+    public void declinedHandOffKeepsValueTest() {
+
+        BlockOnGetMapImpl<Long, String> map =
+                new BlockOnGetMapImpl<Long, String>(
+                        60000l, null, 4, OverflowPolicy.REJECT, null );
+
+        for ( long i = 0; i < 20; i++ ) {
+
+            long key = i;
+
+            // Dependents of a getAsync(..) which times out run before its Rendezvous is given
+            // up, so this put hands its value to a Waiter which no longer wants it
+            map.getAsync( key, 1 ).thenRun( () -> map.put( key, "value" ) )
+                    .exceptionally( throwable -> null ).join();
+        }
+
+        // The declined values are kept, taking the map over its capacity
+        Assert.assertEquals( map.getEntryCount().intValue(), 20 );
+        Assert.assertEquals( map.getMetrics().getPendingWeight(), 20 );
+        Assert.assertEquals( map.getMetrics().getRejectedCount(), 0 );
+
+        try {
+            map.put( 100l, "value" );
+            Assert.fail( "The put should have been rejected" );
+        }
+        catch ( IllegalStateException e ) {
+
+            Assert.assertEquals( map.getMetrics().getRejectedCount(), 1 );
+        }
+
+        // Claiming the values gives their room back until there is room for a put again
+        for ( long i = 0; i < 17; i++ ) {
+
+            Assert.assertEquals( map.get( i, 0 ), "value" );
+        }
+
+        Assert.assertEquals( map.getMetrics().getPendingWeight(), 3 );
+        map.put( 100l, "value" );
+        Assert.assertEquals( map.getMetrics().getPendingWeight(), 4 );
+        Assert.assertEquals( map.getEntryCount().intValue(), 4 );
+    }
+
+
+    @Test
+    public void evictOldestTest() {
+
+        BlockOnGetMapImpl<Long, Long> map =
+                new BlockOnGetMapImpl<Long, Long>(
+                        60000l, null, 100, OverflowPolicy.EVICT_OLDEST, null );
+
+        for ( long i = 0; i < 1000; i++ ) {
+
+            map.put( i, i );
+
+            // Claiming some values on the way keeps them out of the way of the evictions
+            if ( i % 10 == 0 ) {
+
+                Assert.assertEquals( map.get( i, 0 ), Long.valueOf( i ) );
+            }
+        }
+
+        Assert.assertEquals( map.getEntryCount().intValue(), 100 );
+        Assert.assertEquals( map.getMetrics().getPendingWeight(), 100 );
+        Assert.assertEquals( map.getMetrics().getEvictedCount(), 1000 - 100 - 100 );
+
+        // The newest values are kept
+        Assert.assertNull( map.get( 887l, 0 ) );
+        Assert.assertEquals( map.get( 889l, 0 ), Long.valueOf( 889 ) );
+        Assert.assertEquals( map.get( 999l, 0 ), Long.valueOf( 999 ) );
+    }
+
+
+    @Test
+    public void blockWhenFullTest() throws Exception {
+
+        BlockOnGetMapImpl<Long, Long> map =
+                new BlockOnGetMapImpl<Long, Long>( 60000l, null, 2, OverflowPolicy.BLOCK, null );
+
+        map.put( 1l, 1l );
+        map.put( 2l, 2l );
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<?> future = executorService.submit( () -> map.put( 3l, 3l ) );
+
+        Thread.sleep( 200 );
+        Assert.assertFalse( future.isDone() );
+
+        // Claiming a value makes room for the blocked put
+        Assert.assertEquals( map.get( 1l, 0 ), Long.valueOf( 1 ) );
+        future.get( 5, TimeUnit.SECONDS );
+        Assert.assertEquals( map.get( 3l, 0 ), Long.valueOf( 3 ) );
+        executorService.shutdown();
+    }
+
+
+    @Test
+    public void waitHoldsNoMonitorTest() throws Exception {
+
+        BlockOnGetMap<Long, String> map = new BlockOnGetMapImpl<Long, String>( 60000l );
+        Thread thread = new Thread( () -> map.get( 1l, 10000 ) );
+        thread.start();
+
+        while ( thread.getState() != Thread.State.TIMED_WAITING ) {
+
+            Thread.sleep( 1 );
+        }
+
+        // A virtual thread waiting while holding a monitor would pin its carrier thread
+        ThreadInfo threadInfo =
+                ManagementFactory.getThreadMXBean()
+                        .getThreadInfo( new long[] { thread.getId() }, true, true )[0];
+
+        Assert.assertEquals( threadInfo.getLockedMonitors().length, 0 );
+
+        for ( StackTraceElement element : threadInfo.getStackTrace() ) {
+
+            Assert.assertFalse(
+                    element.getClassName().equals( "java.lang.Object" ) &&
+                            element.getMethodName().equals( "wait" ) );
+        }
+
+        map.put( 1l, "hello" );
+        thread.join();
+    }
+
+
     public static void main( String[] args ) {
 
         TestListenerAdapter tla = new TestListenerAdapter();
@@ -0,0 +1,206 @@
+package com.javaspeak.java_examples.concurrency.custom.map.blockonget;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of how long it takes waiterCount waiters, each on its own key, to all get their
+ * values from a BlockOnGetMapImpl.  Each invocation registers every waiter and then puts every
+ * value.
+ * <p>
+ *     ASYNC: each waiter is a getAsync(..), so no thread is held while it waits<p>
+ *     VIRTUAL: each waiter is a virtual thread blocked in get(..).  The puts are made by another
+ *     virtual thread of the same executor, so if waiting pinned the carrier threads the puts
+ *     could never run and the benchmark would not finish.
+ * <p>
+ * Virtual threads need Java 21.  On an older JVM main(..) only runs ASYNC.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main BlockOnGetMapWaiterBenchmark -p mode=ASYNC
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class BlockOnGetMapWaiterBenchmark {
+
+    private static final int TIMEOUT_MILLI = 60000;
+
+    @Param( { "ASYNC", "VIRTUAL" } )
+    public String mode;
+
+    @Param( { "1000", "100000" } )
+    public int waiterCount;
+
+    private Long[] keys;
+    private BlockOnGetMap<Long, Long> blockOnGetMap;
+    private ExecutorService executorService;
+
+
+    /**
+     * @return ExecutorService starting a virtual thread per task, or null if the JVM has no
+     *      virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+
+        try {
+            return ( ExecutorService )Executors.class
+                    .getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch ( ReflectiveOperationException e ) {
+
+            return null;
+        }
+    }
+
+
+    @Setup( Level.Trial )
+    public void setUp() {
+
+        keys = new Long[waiterCount];
+
+        for ( int i = 0; i < waiterCount; i++ ) {
+
+            keys[i] = Long.valueOf( i );
+        }
+
+        if ( mode.equals( "VIRTUAL" ) ) {
+
+            executorService = newVirtualThreadPerTaskExecutor();
+
+            if ( executorService == null ) {
+
+                throw new UnsupportedOperationException( "Virtual threads need Java 21" );
+            }
+        }
+    }
+
+
+    @Setup( Level.Invocation )
+    public void setUpInvocation() {
+
+        blockOnGetMap = new BlockOnGetMapImpl<>( 60000l );
+    }
+
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+
+        if ( executorService != null ) {
+
+            executorService.shutdown();
+        }
+    }
+
+
+    private void putAll() {
+
+        for ( Long key : keys ) {
+
+            blockOnGetMap.put( key, key );
+        }
+    }
+
+
+    @Benchmark
+    public long waiters() throws Exception {
+
+        long sum = 0;
+
+        if ( mode.equals( "ASYNC" ) ) {
+
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[waiterCount];
+
+            for ( int i = 0; i < waiterCount; i++ ) {
+
+                futures[i] = blockOnGetMap.getAsync( keys[i], TIMEOUT_MILLI );
+            }
+
+            putAll();
+
+            for ( CompletableFuture<?> future : futures ) {
+
+                sum += ( Long )future.get();
+            }
+
+            return sum;
+        }
+
+        CountDownLatch started = new CountDownLatch( waiterCount );
+
+        Future<?>[] futures = new Future<?>[waiterCount];
+
+        for ( int i = 0; i < waiterCount; i++ ) {
+
+            Long key = keys[i];
+
+            futures[i] = executorService.submit( () -> {
+
+                started.countDown();
+                return blockOnGetMap.get( key, TIMEOUT_MILLI );
+            } );
+        }
+
+        executorService.submit( () -> {
+
+            started.await();
+            putAll();
+            return null;
+
+        } ).get( TIMEOUT_MILLI, TimeUnit.MILLISECONDS );
+
+        for ( Future<?> future : futures ) {
+
+            sum += ( Long )future.get();
+        }
+
+        return sum;
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+
+        OptionsBuilder optionsBuilder = new OptionsBuilder();
+        optionsBuilder.include( BlockOnGetMapWaiterBenchmark.class.getSimpleName() );
+
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+
+        if ( virtualThreads == null ) {
+
+            optionsBuilder.param( "mode", "ASYNC" );
+        }
+        else {
+
+            virtualThreads.shutdown();
+        }
+
+        Options options = optionsBuilder.build();
+        new Runner( options ).run();
+    }
+}
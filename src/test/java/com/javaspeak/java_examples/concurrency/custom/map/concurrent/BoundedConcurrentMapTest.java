@@ -0,0 +1,230 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.Test;
+
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheelImpl;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class BoundedConcurrentMapTest {
+
+    @Test
+    public void maximumSizeTest() {
+
+        BoundedConcurrentMapImpl<Long, String> boundedMap = new BoundedConcurrentMapImpl<>( 100 );
+
+        for ( long i = 0; i < 1000; i++ ) {
+
+            boundedMap.put( i, "value" + i );
+        }
+
+        boundedMap.cleanUp();
+
+        Assert.assertEquals( boundedMap.size(), 100 );
+        Assert.assertEquals( boundedMap.getEvictionCount(), 900 );
+        Assert.assertEquals( boundedMap.parallelStream().count(), 100 );
+    }
+
+
+    @Test
+    public void putReplaceMergeAndRemoveTest() {
+
+        BoundedConcurrentMapImpl<Long, String> boundedMap = new BoundedConcurrentMapImpl<>( 10 );
+
+        Assert.assertNull( boundedMap.put( 1l, "aa" ) );
+        Assert.assertEquals( boundedMap.put( 1l, "bb" ), "aa" );
+        Assert.assertEquals( boundedMap.putIfAbsent( 1l, "cc" ), "bb" );
+        Assert.assertTrue( boundedMap.replace( 1l, "bb", "dd" ) );
+        Assert.assertFalse( boundedMap.replace( 1l, "bb", "ee" ) );
+        Assert.assertEquals( boundedMap.merge( 1l, "f", String::concat ), "ddf" );
+        Assert.assertEquals( boundedMap.computeIfAbsent( 2l, key -> "gg" ), "gg" );
+        Assert.assertFalse( boundedMap.remove( 2l, "hh" ) );
+        Assert.assertTrue( boundedMap.remove( 2l, "gg" ) );
+        boundedMap.remove( 1l );
+
+        boundedMap.cleanUp();
+
+        Assert.assertNull( boundedMap.getValue( 1l ) );
+        Assert.assertEquals( boundedMap.size(), 0 );
+        Assert.assertEquals( boundedMap.getEvictionCount(), 0 );
+    }
+
+
+    /**
+     * A set of hot keys is used over and over while a scan puts keys which are never used again.
+     * An LRU map of the same size would lose every hot key to each scan.
+     */
+    @Test
+    public void timeToLiveTest() throws Exception {
+
+        BoundedConcurrentMapImpl<Long, String> boundedMap = new BoundedConcurrentMapImpl<>( 10 );
+
+        Assert.assertNull( boundedMap.put( 1l, "aa", 50, TimeUnit.MILLISECONDS ) );
+        boundedMap.put( 2l, "bb", 50, TimeUnit.MILLISECONDS );
+        boundedMap.put( 3l, "cc", 1, TimeUnit.HOURS );
+        boundedMap.put( 4l, "dd" );
+
+        Assert.assertTrue( boundedMap.replace( 2l, "bb", "ee" ) );
+        Assert.assertEquals( boundedMap.getValue( 1l ), "aa" );
+        Assert.assertEquals( boundedMap.size(), 4 );
+
+        Thread.sleep( 300 );
+        boundedMap.cleanUp();
+
+        // Removed by the TimerWheel, and replace(..) kept the expiry of key 2
+        Assert.assertEquals( boundedMap.size(), 2 );
+        Assert.assertNull( boundedMap.getValue( 1l ) );
+        Assert.assertNull( boundedMap.getValue( 2l ) );
+        Assert.assertEquals( boundedMap.getValue( 3l ), "cc" );
+        Assert.assertEquals( boundedMap.getValue( 4l ), "dd" );
+        Assert.assertEquals( boundedMap.getEvictionCount(), 0 );
+    }
+
+
+    @Test
+    public void expiredKeysAreAbsentTest() throws Exception {
+
+        // The TimerWheel is never run so only the lookups can notice the expiry
+        try ( TimerWheelImpl timerWheel =
+                new TimerWheelImpl( 1, TimeUnit.HOURS, "idle-timer-wheel" ) ) {
+
+            BoundedConcurrentMapImpl<Long, String> boundedMap =
+                    new BoundedConcurrentMapImpl<>( 10, timerWheel );
+
+            boundedMap.put( 1l, "aa", 10, TimeUnit.MILLISECONDS );
+            boundedMap.put( 2l, "bb", 10, TimeUnit.MILLISECONDS );
+            boundedMap.put( 3l, "cc", 10, TimeUnit.MILLISECONDS );
+            boundedMap.put( 4l, "dd", 10, TimeUnit.MILLISECONDS );
+
+            Thread.sleep( 50 );
+
+            Assert.assertEquals( boundedMap.parallelStream().count(), 0 );
+            Assert.assertNull( boundedMap.getValue( 1l ) );
+            Assert.assertNull( boundedMap.putIfAbsent( 2l, "ee" ) );
+            Assert.assertEquals( boundedMap.getValue( 2l ), "ee" );
+            Assert.assertFalse( boundedMap.replace( 3l, "cc", "ff" ) );
+            Assert.assertEquals( boundedMap.merge( 4l, "g", String::concat ), "g" );
+
+            boundedMap.cleanUp();
+
+            Assert.assertEquals( boundedMap.size(), 2 );
+        }
+    }
+
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void nonPositiveTimeToLiveTest() {
+
+        new BoundedConcurrentMapImpl<Long, String>( 10 ).put( 1l, "aa", 0, TimeUnit.SECONDS );
+    }
+
+
+    @Test
+    public void scanResistanceTest() {
+
+        BoundedConcurrentMapImpl<Long, String> boundedMap = new BoundedConcurrentMapImpl<>( 100 );
+
+        int hotKeyCount = 50;
+        long nextScanKey = 1000;
+        int hits = 0;
+        int reads = 0;
+
+        for ( int round = 0; round < 200; round++ ) {
+
+            for ( long key = 0; key < hotKeyCount; key++ ) {
+
+                if ( boundedMap.getValue( key ) == null ) {
+
+                    boundedMap.put( key, "hot" + key );
+                }
+                else if ( round >= 20 ) {
+
+                    hits++;
+                }
+
+                if ( round >= 20 ) {
+
+                    reads++;
+                }
+            }
+
+            for ( int i = 0; i < 100; i++, nextScanKey++ ) {
+
+                boundedMap.put( nextScanKey, "scan" + nextScanKey );
+            }
+        }
+
+        double hitRatio = ( double )hits / reads;
+        Assert.assertTrue( hitRatio > 0.9, "hit ratio " + hitRatio );
+    }
+
+
+    @Test
+    public void concurrentPutAndGetTest() throws Exception {
+
+        BoundedConcurrentMapImpl<Long, String> boundedMap = new BoundedConcurrentMapImpl<>( 500 );
+
+        int numberThreads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            futures.add( executorService.submit( () -> {
+
+                for ( int i = 0; i < 50000; i++ ) {
+
+                    long key = ThreadLocalRandom.current().nextLong( 10000 );
+                    String value = boundedMap.getValue( key );
+
+                    if ( value == null ) {
+
+                        boundedMap.put( key, "value" + key );
+                    }
+                    else {
+
+                        Assert.assertEquals( value, "value" + key );
+                    }
+
+                    if ( i % 10 == 0 ) {
+
+                        boundedMap.remove( key );
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+        boundedMap.cleanUp();
+
+        Assert.assertTrue( boundedMap.size() <= 500, "size " + boundedMap.size() );
+        Assert.assertEquals( boundedMap.parallelStream().count(), boundedMap.size() );
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { BoundedConcurrentMapTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
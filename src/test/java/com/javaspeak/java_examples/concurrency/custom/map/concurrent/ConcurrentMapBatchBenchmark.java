@@ -0,0 +1,138 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the batch methods of ConcurrentMapImpl against the same work done one key at a
+ * time.
+ * <p>
+ * putOneByOne and putAll load batchSize new keys into an empty map, where putAll saves the
+ * migrations of the resizes the keys would otherwise go through.  getOneByOne and getAll look up
+ * batchSize random keys, a tenth of them missing, in a map of a million keys.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main ConcurrentMapBatchBenchmark
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class ConcurrentMapBatchBenchmark {
+
+    private static final int KEY_COUNT = 1_000_000;
+
+    @Param( { "1000", "100000" } )
+    public int batchSize;
+
+    private ConcurrentMapImpl<Long, Long> concurrentMap;
+    private Map<Long, Long> batch;
+    private List<Long> lookupKeys;
+
+
+    @Setup( Level.Trial )
+    public void setUp() {
+
+        SplittableRandom random = new SplittableRandom( 42 );
+        concurrentMap = new ConcurrentMapImpl<>();
+
+        for ( long i = 0; i < KEY_COUNT; i++ ) {
+
+            concurrentMap.put( i, i );
+        }
+
+        batch = new HashMap<>();
+        lookupKeys = new ArrayList<>();
+
+        while ( batch.size() < batchSize ) {
+
+            long key = random.nextLong( KEY_COUNT * 10L );
+            batch.put( key, key );
+        }
+
+        for ( int i = 0; i < batchSize; i++ ) {
+
+            lookupKeys.add( random.nextLong( KEY_COUNT * 10L / 9 ) );
+        }
+    }
+
+
+    @Benchmark
+    public ConcurrentMap<Long, Long> putOneByOne() {
+
+        ConcurrentMap<Long, Long> map = new ConcurrentMapImpl<>();
+        batch.forEach( map::put );
+        return map;
+    }
+
+
+    @Benchmark
+    public ConcurrentMap<Long, Long> putAll() {
+
+        ConcurrentMap<Long, Long> map = new ConcurrentMapImpl<>();
+        map.putAll( batch );
+        return map;
+    }
+
+
+    @Benchmark
+    public Map<Long, Long> getOneByOne() {
+
+        Map<Long, Long> values = new HashMap<>();
+
+        for ( Long key : lookupKeys ) {
+
+            Long value = concurrentMap.getValue( key );
+
+            if ( value != null ) {
+
+                values.put( key, value );
+            }
+        }
+
+        return values;
+    }
+
+
+    @Benchmark
+    public Map<Long, Long> getAll() {
+
+        return concurrentMap.getAll( lookupKeys );
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+
+        Options options =
+                new OptionsBuilder()
+                        .include( ConcurrentMapBatchBenchmark.class.getSimpleName() )
+                        .build();
+
+        new Runner( options ).run();
+    }
+}
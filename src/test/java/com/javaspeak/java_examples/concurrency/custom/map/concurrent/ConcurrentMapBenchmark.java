@@ -0,0 +1,216 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the ConcurrentMapImpl hot paths.
+ * <p>
+ * getValue and getValueColliding measure lookups of keys that are present.  getValueColliding
+ * uses keys that share one of only 64 hashcodes so that every lookup walks a long chain of
+ * Buckets.  put measures inserting new keys into a map which is recreated every iteration.
+ * <p>
+ * The mixed group samples the latency of getValue on two threads while two other threads put and 
+ * remove random keys of the same map, half of their operations being removes.  Compare the p0.99 
+ * of getValueMixed between versions of the map.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main ConcurrentMapBenchmark -prof gc
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class ConcurrentMapBenchmark {
+
+    /**
+     * Key whose hashcode only takes 64 different values
+     */
+    public static final class CollidingKey {
+
+        private final long id;
+
+        public CollidingKey( long id ) {
+
+            this.id = id;
+        }
+
+
+        @Override
+        public int hashCode() {
+
+            return ( int )( id & 63 );
+        }
+
+
+        @Override
+        public boolean equals( Object obj ) {
+
+            return obj instanceof CollidingKey && ( ( CollidingKey )obj ).id == id;
+        }
+    }
+
+
+    @Param( { "1000", "100000" } )
+    public int keyCount;
+
+    private ConcurrentMap<Long, Long> concurrentMap;
+    private Long[] keys;
+    private ConcurrentMap<CollidingKey, Long> collidingConcurrentMap;
+    private CollidingKey[] collidingKeys;
+
+
+    @Setup( Level.Trial )
+    public void setUp() {
+
+        concurrentMap = new ConcurrentMapImpl<>();
+        collidingConcurrentMap = new ConcurrentMapImpl<>();
+        keys = new Long[keyCount];
+        collidingKeys = new CollidingKey[Math.min( keyCount, 10000 )];
+
+        // Keys are boxed up front so that lookups only measure the map
+        for ( int i = 0; i < keyCount; i++ ) {
+
+            keys[i] = Long.valueOf( i );
+            concurrentMap.put( keys[i], keys[i] );
+        }
+
+        for ( int i = 0; i < collidingKeys.length; i++ ) {
+
+            collidingKeys[i] = new CollidingKey( i );
+            collidingConcurrentMap.put( collidingKeys[i], ( long )i );
+        }
+    }
+
+
+    /**
+     * State for the put benchmark which starts every iteration with an empty map
+     */
+    @State( Scope.Thread )
+    public static class PutState {
+
+        private ConcurrentMap<Long, Long> concurrentMap;
+        private long nextKey;
+
+        @Setup( Level.Iteration )
+        public void setUp() {
+
+            concurrentMap = new ConcurrentMapImpl<>();
+            nextKey = 0;
+        }
+    }
+
+
+    /**
+     * State for the mixed group which shares one map between the readers and the writers
+     */
+    @State( Scope.Group )
+    public static class MixedState {
+
+        private ConcurrentMap<Long, Long> concurrentMap;
+        private Long[] keys;
+
+        @Setup( Level.Trial )
+        public void setUp( ConcurrentMapBenchmark benchmark ) {
+
+            concurrentMap = new ConcurrentMapImpl<>();
+            keys = new Long[benchmark.keyCount];
+
+            for ( int i = 0; i < keys.length; i++ ) {
+
+                keys[i] = Long.valueOf( i );
+                concurrentMap.put( keys[i], keys[i] );
+            }
+        }
+    }
+
+
+    @Benchmark
+    public Long getValue() {
+
+        return concurrentMap.getValue( keys[ThreadLocalRandom.current().nextInt( keyCount )] );
+    }
+
+
+    @Benchmark
+    public Long getValueColliding() {
+
+        return collidingConcurrentMap.getValue(
+                collidingKeys[ThreadLocalRandom.current().nextInt( collidingKeys.length )] );
+    }
+
+
+    @Benchmark
+    @Measurement( iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS )
+    public void put( PutState putState ) {
+
+        Long key = putState.nextKey++;
+        putState.concurrentMap.put( key, key );
+    }
+
+
+    @Benchmark
+    @Group( "mixed" )
+    @GroupThreads( 2 )
+    @BenchmarkMode( Mode.SampleTime )
+    public Long getValueMixed( MixedState mixedState ) {
+
+        Long[] keys = mixedState.keys;
+        return mixedState.concurrentMap.getValue(
+                keys[ThreadLocalRandom.current().nextInt( keys.length )] );
+    }
+
+
+    @Benchmark
+    @Group( "mixed" )
+    @GroupThreads( 2 )
+    @BenchmarkMode( Mode.SampleTime )
+    public void putOrRemoveMixed( MixedState mixedState ) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Long key = mixedState.keys[random.nextInt( mixedState.keys.length )];
+
+        if ( random.nextBoolean() ) {
+
+            mixedState.concurrentMap.remove( key );
+        }
+        else {
+
+            mixedState.concurrentMap.put( key, key );
+        }
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+
+        Options options =
+                new OptionsBuilder()
+                        .include( ConcurrentMapBenchmark.class.getSimpleName() )
+                        .build();
+
+        new Runner( options ).run();
+    }
+}
@@ -0,0 +1,128 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of ConcurrentMapImpl lookups with skewed key sets:
+ * <p>
+ *     SEQUENTIAL_INTEGER   : 0, 1, 2, ...<p>
+ *     STRIDED_INTEGER      : 0, 64, 128, ... (ids that are multiples of a power of two)<p>
+ *     COMMON_PREFIX_STRING : "customer:order:0000000", "customer:order:0000001", ...<p>
+ *     UUID_STRING          : random UUIDs as Strings
+ * <p>
+ * Before measuring, the setup prints how the keys are spread across the slots of the buckets
+ * array: the number of slots, the percentage of empty slots and the longest chain.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main ConcurrentMapKeyDistributionBenchmark
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class ConcurrentMapKeyDistributionBenchmark {
+
+    public enum KeySet {
+
+        SEQUENTIAL_INTEGER, STRIDED_INTEGER, COMMON_PREFIX_STRING, UUID_STRING
+    }
+
+
+    @Param( { "SEQUENTIAL_INTEGER", "STRIDED_INTEGER", "COMMON_PREFIX_STRING", "UUID_STRING" } )
+    public KeySet keySet;
+
+    @Param( { "100000" } )
+    public int keyCount;
+
+    private ConcurrentMapImpl<Object, Object> concurrentMap;
+    private Object[] keys;
+
+
+    private Object createKey( int i ) {
+
+        switch ( keySet ) {
+
+            case SEQUENTIAL_INTEGER:
+                return Integer.valueOf( i );
+
+            case STRIDED_INTEGER:
+                return Integer.valueOf( i * 64 );
+
+            case COMMON_PREFIX_STRING:
+                return String.format( "customer:order:%07d", i );
+
+            default:
+                return UUID.randomUUID().toString();
+        }
+    }
+
+
+    @Setup( Level.Trial )
+    public void setUp() {
+
+        concurrentMap = new ConcurrentMapImpl<>();
+        keys = new Object[keyCount];
+
+        for ( int i = 0; i < keyCount; i++ ) {
+
+            keys[i] = createKey( i );
+            concurrentMap.put( keys[i], keys[i] );
+        }
+
+        int[] chainLengths = concurrentMap.getChainLengths();
+        int emptySlots = 0;
+        int longestChain = 0;
+
+        for ( int chainLength : chainLengths ) {
+
+            emptySlots += chainLength == 0 ? 1 : 0;
+            longestChain = Math.max( longestChain, chainLength );
+        }
+
+        System.out.println(
+                "\n" + keySet + " slots: " + chainLengths.length +
+                        ", empty slots: " + ( 100 * emptySlots / chainLengths.length ) + "%" +
+                        ", longest chain: " + longestChain );
+    }
+
+
+    @Benchmark
+    public Object getValue() {
+
+        return concurrentMap.getValue( keys[ThreadLocalRandom.current().nextInt( keyCount )] );
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+
+        Options options =
+                new OptionsBuilder()
+                        .include( ConcurrentMapKeyDistributionBenchmark.class.getSimpleName() )
+                        .build();
+
+        new Runner( options ).run();
+    }
+}
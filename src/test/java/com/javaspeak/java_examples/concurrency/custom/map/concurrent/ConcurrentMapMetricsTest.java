@@ -0,0 +1,150 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Metrics are only recorded when the JVM is started with
+ * -Dcom.javaspeak.java_examples.concurrentMap.metrics=true, which main(..) and the surefire
+ * execution running this test in a JVM of its own both do.  The rest of the tests run with
+ * metrics off.
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class ConcurrentMapMetricsTest {
+
+    private ConcurrentMapImpl<Integer, Integer> concurrentMap;
+
+    @BeforeMethod
+    private void setUp() {
+
+        concurrentMap = new ConcurrentMapImpl<Integer, Integer>( 16 );
+
+        if ( !concurrentMap.getMetrics().isEnabled() ) {
+
+            throw new SkipException( "Metrics are not enabled in this JVM" );
+        }
+    }
+
+
+    @Test
+    public void resizeAndUnlinkTest() {
+
+        for ( int i = 0; i < 1000; i++ ) {
+
+            concurrentMap.put( i, i );
+        }
+
+        for ( int i = 0; i < 500; i++ ) {
+
+            concurrentMap.remove( i );
+        }
+
+        ConcurrentMapMetrics metrics = concurrentMap.getMetrics();
+
+        // 16 -> 32 -> ... -> 2048 slots
+        Assert.assertEquals( metrics.getResizeCount(), 7 );
+        Assert.assertTrue( metrics.getResizeMaxNanos() > 0 );
+        Assert.assertTrue( metrics.getResizeMeanNanos() <= metrics.getResizeMaxNanos() );
+        Assert.assertEquals( metrics.getUnlinkCount(), 500 );
+        Assert.assertTrue(
+                metrics.getWriteChainLength99thPercentile() <= metrics.getWriteChainLengthMax() );
+
+        long[] distribution = metrics.getChainLengthDistribution();
+        long slots = 0;
+        long keys = 0;
+
+        for ( int chainLength = 0; chainLength < distribution.length; chainLength++ ) {
+
+            slots += distribution[chainLength];
+            keys += chainLength * distribution[chainLength];
+        }
+
+        Assert.assertEquals( slots, 2048 );
+        Assert.assertEquals( keys, 500 );
+    }
+
+
+    @Test
+    public void casFailuresUnderContentionTest() throws Exception {
+
+        int numberThreads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            futures.add( executorService.submit( () -> {
+
+                for ( int i = 0; i < 100000; i++ ) {
+
+                    concurrentMap.merge( i & 3, 1, Integer::sum );
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        int total = 0;
+
+        for ( int i = 0; i < 4; i++ ) {
+
+            total += concurrentMap.getValue( i );
+        }
+
+        Assert.assertEquals( total, numberThreads * 100000 );
+        Assert.assertEquals( concurrentMap.getMetrics().getRemoveCasFailureCount(), 0 );
+        System.out.println(
+                "put CAS failures: " + concurrentMap.getMetrics().getPutCasFailureCount() );
+    }
+
+
+    @Test
+    public void registerMetricsTest() throws Exception {
+
+        concurrentMap.put( 1, 1 );
+        concurrentMap.remove( 1 );
+
+        ObjectName objectName = concurrentMap.registerMetrics( "registerMetricsTest" );
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            Assert.assertEquals( mBeanServer.getAttribute( objectName, "UnlinkCount" ), 1L );
+            Assert.assertEquals( mBeanServer.getAttribute( objectName, "Enabled" ), true );
+        }
+        finally {
+            mBeanServer.unregisterMBean( objectName );
+        }
+    }
+
+
+    public static void main( String[] args ) {
+
+        System.setProperty( ConcurrentMapMetricsImpl.ENABLED_PROPERTY, "true" );
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { ConcurrentMapMetricsTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
@@ -0,0 +1,213 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class ConcurrentMapSnapshotTest {
+
+    private Path directory;
+    private Path path;
+
+    @BeforeMethod
+    private void setUp() throws IOException {
+
+        directory = Files.createTempDirectory( "snapshot" );
+        path = directory.resolve( "map.snapshot" );
+    }
+
+
+    @AfterMethod
+    private void tearDown() throws IOException {
+
+        Files.deleteIfExists( path );
+        Files.deleteIfExists( directory );
+    }
+
+
+    @Test
+    public void writeAndLoadTest() throws Exception {
+
+        ConcurrentMap<String, Long> map = new ConcurrentMapImpl<>();
+
+        for ( long i = 0; i < 200000; i++ ) {
+
+            map.put( "key" + i, i );
+        }
+
+        map.remove( "key7" );
+
+        // A value bigger than a whole chunk
+        ConcurrentMap<String, String> bigValueMap = new ConcurrentMapImpl<>();
+        bigValueMap.put( "big", "x".repeat( 3 << 20 ) );
+
+        ConcurrentMapSnapshot<String, Long> snapshot =
+                new ConcurrentMapSnapshotImpl<>( SnapshotCodecs.STRING, SnapshotCodecs.LONG );
+
+        Assert.assertEquals( snapshot.write( map, path ), 199999 );
+
+        long start = System.nanoTime();
+        ConcurrentMapImpl<String, Long> loadedMap = snapshot.load( path, 4 );
+
+        System.out.println(
+                "Loaded 199999 keys in " +
+                        TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) + " ms" );
+
+        Assert.assertEquals( loadedMap.size(), 199999 );
+        Assert.assertNull( loadedMap.getValue( "key7" ) );
+
+        for ( long i = 0; i < 200000; i++ ) {
+
+            Assert.assertEquals(
+                    loadedMap.getValue( "key" + i ), i == 7 ? null : Long.valueOf( i ) );
+        }
+
+        // The map was sized for the snapshot so it never resized while loading
+        Assert.assertEquals( loadedMap.getChainLengths().length, 1 << 19 );
+
+        ConcurrentMapSnapshot<String, String> bigValueSnapshot =
+                new ConcurrentMapSnapshotImpl<>( SnapshotCodecs.STRING, SnapshotCodecs.STRING );
+
+        Assert.assertEquals( bigValueSnapshot.write( bigValueMap, path ), 1 );
+        Assert.assertEquals(
+                bigValueSnapshot.load( path, 1 ).getValue( "big" ).length(), 3 << 20 );
+    }
+
+
+    @Test
+    public void timeToLiveTest() throws Exception {
+
+        ExpiringConcurrentMap<Long, Long> map = new ConcurrentMapImpl<>();
+        map.put( 1L, 1L );
+        map.put( 2L, 2L, 1, TimeUnit.HOURS );
+        map.put( 3L, 3L, 100, TimeUnit.MILLISECONDS );
+
+        ConcurrentMapSnapshot<Long, Long> snapshot =
+                new ConcurrentMapSnapshotImpl<>( SnapshotCodecs.LONG, SnapshotCodecs.LONG );
+
+        Assert.assertEquals( snapshot.write( map, path ), 3 );
+        Thread.sleep( 200 );
+
+        ConcurrentMap<Long, Long> loadedMap = new ConcurrentMapImpl<>();
+        Assert.assertEquals( snapshot.load( path, loadedMap, 2 ), 2 );
+        Assert.assertEquals( loadedMap.getValue( 1L ), Long.valueOf( 1 ) );
+        Assert.assertEquals( loadedMap.getValue( 2L ), Long.valueOf( 2 ) );
+        Assert.assertNull( loadedMap.getValue( 3L ) );
+    }
+
+
+    @Test
+    public void boundedMapTimeToLiveTest() throws Exception {
+
+        BoundedConcurrentMapImpl<Long, Long> map = new BoundedConcurrentMapImpl<>( 10 );
+        map.put( 1L, 1L );
+        map.put( 2L, 2L, 200, TimeUnit.MILLISECONDS );
+
+        ConcurrentMapSnapshot<Long, Long> snapshot =
+                new ConcurrentMapSnapshotImpl<>( SnapshotCodecs.LONG, SnapshotCodecs.LONG );
+
+        Assert.assertEquals( snapshot.write( map, path ), 2 );
+
+        BoundedConcurrentMapImpl<Long, Long> loadedMap = new BoundedConcurrentMapImpl<>( 10 );
+        Assert.assertEquals( snapshot.load( path, loadedMap, 2 ), 2 );
+        Assert.assertEquals( loadedMap.getValue( 2L ), Long.valueOf( 2 ) );
+
+        Thread.sleep( 400 );
+
+        Assert.assertEquals( loadedMap.getValue( 1L ), Long.valueOf( 1 ) );
+        Assert.assertNull( loadedMap.getValue( 2L ) );
+    }
+
+
+    @Test
+    public void timeToLiveIntoNonExpiringMapTest() throws Exception {
+
+        ExpiringConcurrentMap<Long, Long> map = new ConcurrentMapImpl<>();
+
+        for ( long i = 0; i < 1000; i++ ) {
+
+            map.put( i, i );
+        }
+
+        map.put( 500L, 500L, 1, TimeUnit.HOURS );
+
+        ConcurrentMapSnapshot<Long, Long> snapshot =
+                new ConcurrentMapSnapshotImpl<>( SnapshotCodecs.LONG, SnapshotCodecs.LONG );
+
+        snapshot.write( map, path );
+
+        try ( OffHeapConcurrentMapImpl<Long, Long> offHeapMap =
+                new OffHeapConcurrentMapImpl<>( 2048, OffHeapCodecs.LONG, OffHeapCodecs.LONG ) ) {
+
+            try {
+                snapshot.load( path, offHeapMap, 1 );
+                Assert.fail( "The load should have been refused" );
+            }
+            catch ( IllegalArgumentException e ) {
+
+                Assert.assertTrue( e.getMessage().endsWith( "cannot expire" ) );
+            }
+
+            // Refused before any key was put rather than part way through
+            Assert.assertEquals( offHeapMap.size(), 0 );
+        }
+    }
+
+
+    @Test( expectedExceptions = IOException.class,
+            expectedExceptionsMessageRegExp = ".*is corrupt.*" )
+    public void corruptSnapshotTest() throws Exception {
+
+        ConcurrentMap<Long, Long> map = new ConcurrentMapImpl<>();
+
+        for ( long i = 0; i < 1000; i++ ) {
+
+            map.put( i, i );
+        }
+
+        ConcurrentMapSnapshot<Long, Long> snapshot =
+                new ConcurrentMapSnapshotImpl<>( SnapshotCodecs.LONG, SnapshotCodecs.LONG );
+
+        snapshot.write( map, path );
+
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.WRITE ) ) {
+
+            channel.write( ByteBuffer.wrap( new byte[] { 1, 2, 3 } ), 100 );
+        }
+
+        snapshot.load( path, 2 );
+    }
+
+
+    @Test( expectedExceptions = IOException.class,
+            expectedExceptionsMessageRegExp = ".*not a ConcurrentMap snapshot" )
+    public void notSnapshotTest() throws Exception {
+
+        Files.writeString( path, "not a snapshot" );
+        new ConcurrentMapSnapshotImpl<>( SnapshotCodecs.LONG, SnapshotCodecs.LONG ).load( path, 1 );
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { ConcurrentMapSnapshotTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
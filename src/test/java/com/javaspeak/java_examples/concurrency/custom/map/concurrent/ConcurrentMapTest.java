@@ -1,29 +1,39 @@
 package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.testng.Assert;
 import org.testng.TestListenerAdapter;
 import org.testng.TestNG;
-import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.javaspeak.java_examples.concurrency.custom.timer.TimerWheelImpl;
+
 /**
  * @author John Dickerson - 16 Dec 2022
  */
 public class ConcurrentMapTest {
 
     private static final String EL = "\n";
-    private ConcurrentMap<Long, String> concurrentMap;
+    private ExpiringConcurrentMap<Long, String> concurrentMap;
 
-    @BeforeClass
+    @BeforeMethod
     private void setUp() {
 
         int bucketSize = 4;
-        int numberOfKeyValuePairsDeletedBeforeHouseKeeping = 2;
 
-        concurrentMap =
-                new ConcurrentMapImpl<Long, String>(
-                        bucketSize,
-                        numberOfKeyValuePairsDeletedBeforeHouseKeeping );
+        concurrentMap = new ConcurrentMapImpl<Long, String>( bucketSize );
     }
 
 
@@ -31,21 +41,21 @@ public class ConcurrentMapTest {
     public void putOnDifferentIndexTest() {
 
         concurrentMap.put( 0l, "aa" );
-        concurrentMap.put( 1l, "bb" );
+        concurrentMap.put( 3l, "bb" );
 
         String expected =
                 EL +
                         "Index 0 : KeyValuePair [key=0, value=aa] ==> null bucket" + EL +
-                        "Index 1 : KeyValuePair [key=1, value=bb] ==> null bucket" + EL +
-                        "Index 2 : null keyValuePair ==> null bucket" + EL +
-                        "Index 3 : null keyValuePair ==> null bucket" + EL;
+                        "Index 1 : KeyValuePair [key=3, value=bb] ==> null bucket" + EL +
+                        "Index 2 : null bucket" + EL +
+                        "Index 3 : null bucket" + EL;
 
         String debug = concurrentMap.debug();
         System.out.println( debug );
         Assert.assertEquals( debug, expected );
 
         Assert.assertEquals( concurrentMap.getValue( 0l ), "aa" );
-        Assert.assertEquals( concurrentMap.getValue( 1l ), "bb" );
+        Assert.assertEquals( concurrentMap.getValue( 3l ), "bb" );
     }
 
 
@@ -53,21 +63,21 @@ public class ConcurrentMapTest {
     public void putOnSameIndexTest() {
 
         concurrentMap.put( 0l, "aa" );
-        concurrentMap.put( 4l, "bb" );
+        concurrentMap.put( 2l, "bb" );
         
         String expected = 
                 EL +
-                "Index 0 : KeyValuePair [key=0, value=aa] ==> KeyValuePair [key=4, value=bb] ==> null bucket" + EL +
-                        "Index 1 : null keyValuePair ==> null bucket" + EL +
-                        "Index 2 : null keyValuePair ==> null bucket" + EL +
-                        "Index 3 : null keyValuePair ==> null bucket" + EL;
+                "Index 0 : KeyValuePair [key=0, value=aa] ==> KeyValuePair [key=2, value=bb] ==> null bucket" + EL +
+                        "Index 1 : null bucket" + EL +
+                        "Index 2 : null bucket" + EL +
+                        "Index 3 : null bucket" + EL;
 
         String debug = concurrentMap.debug();
         System.out.println( debug );
         Assert.assertEquals( debug, expected );
 
         Assert.assertEquals( concurrentMap.getValue( 0l ), "aa" );
-        Assert.assertEquals( concurrentMap.getValue( 4l ), "bb" );
+        Assert.assertEquals( concurrentMap.getValue( 2l ), "bb" );
     }
 
 
@@ -75,47 +85,484 @@ public class ConcurrentMapTest {
     public void putOnSameIndexAndDeleteFirstTest() {
 
         concurrentMap.put( 0l, "aa" );
-        concurrentMap.put( 4l, "bb" );
+        concurrentMap.put( 2l, "bb" );
         concurrentMap.remove( 0l );
 
         String expected =
                 EL +
-                        "Index 0 : null keyValuePair ==> KeyValuePair [key=4, value=bb] ==> null bucket"
-                        + EL +
-                        "Index 1 : null keyValuePair ==> null bucket" + EL +
-                        "Index 2 : null keyValuePair ==> null bucket" + EL +
-                        "Index 3 : null keyValuePair ==> null bucket" + EL;
+                        "Index 0 : KeyValuePair [key=2, value=bb] ==> null bucket" + EL +
+                        "Index 1 : null bucket" + EL +
+                        "Index 2 : null bucket" + EL +
+                        "Index 3 : null bucket" + EL;
 
         String debug = concurrentMap.debug();
         System.out.println( debug );
         Assert.assertEquals( debug, expected );
 
         Assert.assertNull( concurrentMap.getValue( 0l ) );
-        Assert.assertEquals( concurrentMap.getValue( 4l ), "bb" );
+        Assert.assertEquals( concurrentMap.getValue( 2l ), "bb" );
     }
 
 
     @Test
-    public void triggerSpringCleanTest() {
+    public void removeUnlinksBucketsTest() {
 
         concurrentMap.put( 0l, "aa" );
-        concurrentMap.put( 4l, "bb" );
+        concurrentMap.put( 2l, "bb" );
         concurrentMap.remove( 0l );
-        concurrentMap.remove( 4l );
+        concurrentMap.remove( 2l );
 
         String expected =
                 EL +
-                        "Index 0 : null keyValuePair ==> null bucket" + EL +
-                        "Index 1 : null keyValuePair ==> null bucket" + EL +
-                        "Index 2 : null keyValuePair ==> null bucket" + EL +
-                        "Index 3 : null keyValuePair ==> null bucket" + EL;
+                        "Index 0 : null bucket" + EL +
+                        "Index 1 : null bucket" + EL +
+                        "Index 2 : null bucket" + EL +
+                        "Index 3 : null bucket" + EL;
 
         String debug = concurrentMap.debug();
         System.out.println( debug );
         Assert.assertEquals( debug, expected );
 
         Assert.assertNull( concurrentMap.getValue( 0l ) );
-        Assert.assertNull( concurrentMap.getValue( 4l ) );
+        Assert.assertNull( concurrentMap.getValue( 2l ) );
+    }
+
+
+    @Test
+    public void removeMiddleBucketTest() {
+
+        concurrentMap.put( 0l, "aa" );
+        concurrentMap.put( 2l, "bb" );
+        concurrentMap.put( 5l, "cc" );
+        concurrentMap.remove( 2l );
+
+        String expected =
+                EL +
+                        "Index 0 : KeyValuePair [key=0, value=aa] ==> KeyValuePair [key=5, value=cc] ==> null bucket" + EL +
+                        "Index 1 : null bucket" + EL +
+                        "Index 2 : null bucket" + EL +
+                        "Index 3 : null bucket" + EL;
+
+        String debug = concurrentMap.debug();
+        System.out.println( debug );
+        Assert.assertEquals( debug, expected );
+
+        // A removed key can be put again and goes on the end of the chain
+        concurrentMap.put( 2l, "dd" );
+        Assert.assertEquals( concurrentMap.getValue( 2l ), "dd" );
+    }
+
+
+    @Test
+    public void concurrentPutAndRemoveTest() throws Exception {
+
+        int numberThreads = 8;
+        int keysPerThread = 5000;
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            long start = t * keysPerThread;
+
+            futures.add( executorService.submit( () -> {
+
+                // Every key is put and removed several times so that Buckets are marked and 
+                // unlinked while other threads are putting to the same chains
+                for ( int round = 0; round < 5; round++ ) {
+
+                    for ( long i = start; i < start + keysPerThread; i++ ) {
+
+                        concurrentMap.put( i, "value" + i );
+                    }
+
+                    for ( long i = start; i < start + keysPerThread; i += 2 ) {
+
+                        concurrentMap.remove( i );
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        for ( long i = 0; i < numberThreads * keysPerThread; i++ ) {
+
+            Assert.assertEquals( concurrentMap.getValue( i ), i % 2 == 0 ? null : "value" + i );
+        }
+
+        // Every removed Bucket has been unlinked
+        String debug = concurrentMap.debug();
+        Assert.assertFalse( debug.contains( "null keyValuePair" ) );
+        Assert.assertFalse( debug.contains( "MarkerBucket" ) );
+    }
+
+
+    @Test
+    public void putReplacesValueTest() {
+
+        Assert.assertNull( concurrentMap.put( 0l, "aa" ) );
+        Assert.assertNull( concurrentMap.put( 2l, "bb" ) );
+        Assert.assertEquals( concurrentMap.put( 0l, "cc" ), "aa" );
+
+        String expected =
+                EL +
+                        "Index 0 : KeyValuePair [key=0, value=cc] ==> KeyValuePair [key=2, value=bb] ==> null bucket" + EL +
+                        "Index 1 : null bucket" + EL +
+                        "Index 2 : null bucket" + EL +
+                        "Index 3 : null bucket" + EL;
+
+        String debug = concurrentMap.debug();
+        System.out.println( debug );
+        Assert.assertEquals( debug, expected );
+
+        Assert.assertEquals( concurrentMap.getValue( 0l ), "cc" );
+    }
+
+
+    @Test
+    public void putIfAbsentAndReplaceTest() {
+
+        Assert.assertNull( concurrentMap.putIfAbsent( 0l, "aa" ) );
+        Assert.assertEquals( concurrentMap.putIfAbsent( 0l, "bb" ), "aa" );
+        Assert.assertEquals( concurrentMap.getValue( 0l ), "aa" );
+
+        Assert.assertFalse( concurrentMap.replace( 0l, "bb", "cc" ) );
+        Assert.assertFalse( concurrentMap.replace( 2l, "aa", "cc" ) );
+        Assert.assertTrue( concurrentMap.replace( 0l, "aa", "cc" ) );
+        Assert.assertEquals( concurrentMap.getValue( 0l ), "cc" );
+        Assert.assertNull( concurrentMap.getValue( 2l ) );
+    }
+
+
+    @Test
+    public void computeIfAbsentTest() {
+
+        Assert.assertEquals( concurrentMap.computeIfAbsent( 0l, k -> "value" + k ), "value0" );
+        Assert.assertEquals( concurrentMap.computeIfAbsent( 0l, k -> "other" ), "value0" );
+        Assert.assertNull( concurrentMap.computeIfAbsent( 2l, k -> null ) );
+        Assert.assertNull( concurrentMap.getValue( 2l ) );
+    }
+
+
+    @Test
+    public void concurrentMergeTest() throws Exception {
+
+        ConcurrentMap<Long, Long> counterMap = new ConcurrentMapImpl<>( 4 );
+
+        int numberThreads = 8;
+        int incrementsPerThread = 10000;
+        int numberKeys = 16;
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            futures.add( executorService.submit( () -> {
+
+                for ( int i = 0; i < incrementsPerThread; i++ ) {
+
+                    counterMap.merge( ( long )( i % numberKeys ), 1l, Long::sum );
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        for ( long k = 0; k < numberKeys; k++ ) {
+
+            Assert.assertEquals(
+                    counterMap.getValue( k ).longValue(),
+                    numberThreads * incrementsPerThread / numberKeys );
+        }
+
+        // A merge returning null removes the key
+        Assert.assertNull( counterMap.merge( 0l, 1l, ( a, b ) -> null ) );
+        Assert.assertNull( counterMap.getValue( 0l ) );
+    }
+
+
+    @Test
+    public void negativeHashCodeTest() {
+
+        ConcurrentMap<String, String> stringConcurrentMap = new ConcurrentMapImpl<>( 5 );
+
+        // "polygenelubricants".hashCode() is Integer.MIN_VALUE
+        Assert.assertTrue( "polygenelubricants".hashCode() < 0 );
+        Assert.assertTrue( "Aa".hashCode() > 0 );
+
+        stringConcurrentMap.put( "polygenelubricants", "negative" );
+        stringConcurrentMap.put( "Aa", "positive" );
+
+        Assert.assertEquals( stringConcurrentMap.getValue( "polygenelubricants" ), "negative" );
+        Assert.assertEquals( stringConcurrentMap.getValue( "Aa" ), "positive" );
+
+        // The bucket size is rounded up to a power of two
+        Assert.assertEquals( stringConcurrentMap.debug().split( EL ).length - 1, 8 );
+    }
+
+
+    @Test
+    public void resizeTest() {
+
+        for ( long i = 0; i < 10000; i++ ) {
+
+            concurrentMap.put( i, "value" + i );
+        }
+
+        for ( long i = 0; i < 10000; i++ ) {
+
+            Assert.assertEquals( concurrentMap.getValue( i ), "value" + i );
+        }
+
+        for ( long i = 0; i < 10000; i += 2 ) {
+
+            concurrentMap.remove( i );
+        }
+
+        for ( long i = 0; i < 10000; i++ ) {
+
+            Assert.assertEquals( concurrentMap.getValue( i ), i % 2 == 0 ? null : "value" + i );
+        }
+    }
+
+
+    @Test
+    public void concurrentResizeTest() throws Exception {
+
+        int numberThreads = 8;
+        int keysPerThread = 20000;
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            long start = t * keysPerThread;
+
+            Callable<Void> callable = new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+
+                    for ( long i = start; i < start + keysPerThread; i++ ) {
+
+                        concurrentMap.put( i, "value" + i );
+                        Assert.assertEquals( concurrentMap.getValue( i ), "value" + i );
+                    }
+
+                    return null;
+                }
+            };
+
+            futures.add( executorService.submit( callable ) );
+        }
+
+        for ( Future<Void> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        for ( long i = 0; i < numberThreads * keysPerThread; i++ ) {
+
+            Assert.assertEquals( concurrentMap.getValue( i ), "value" + i );
+        }
+    }
+
+
+    @Test
+    public void iterationAndSizeTest() {
+
+        for ( long i = 0; i < 100; i++ ) {
+
+            concurrentMap.put( i, "value" + i );
+        }
+
+        concurrentMap.remove( 50l );
+        Assert.assertEquals( concurrentMap.size(), 99 );
+
+        Map<Long, String> entries = new HashMap<>();
+        concurrentMap.forEach( ( key, value ) -> Assert.assertNull( entries.put( key, value ) ) );
+        Assert.assertEquals( entries.size(), 99 );
+        Assert.assertFalse( entries.containsKey( 50l ) );
+        Assert.assertEquals( entries.get( 7l ), "value7" );
+
+        int count = 0;
+
+        for ( Iterator<KeyValuePair<Long, String>> iterator = concurrentMap.entryIterator();
+                iterator.hasNext(); count++ ) {
+
+            KeyValuePair<Long, String> keyValuePair = iterator.next();
+            Assert.assertEquals( keyValuePair.getValue(), "value" + keyValuePair.getKey() );
+        }
+
+        Assert.assertEquals( count, 99 );
+
+        long sum = concurrentMap.parallelStream().mapToLong( KeyValuePair::getKey ).sum();
+        Assert.assertEquals( sum, 99 * 100 / 2 - 50 );
+    }
+
+
+    @Test
+    public void iterationDuringResizeTest() throws Exception {
+
+        int numberKeys = 10000;
+
+        for ( long i = 0; i < numberKeys; i++ ) {
+
+            concurrentMap.put( i, "value" + i );
+        }
+
+        // Another thread keeps adding keys so that the walks below cross several resizes
+        AtomicBoolean stop = new AtomicBoolean( false );
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        Future<?> future = executorService.submit( () -> {
+
+            for ( long i = numberKeys; !stop.get() && i < 20 * numberKeys; i++ ) {
+
+                concurrentMap.put( i, "value" + i );
+            }
+        } );
+
+        for ( int walk = 0; walk < 5; walk++ ) {
+
+            boolean[] seen = new boolean[numberKeys];
+
+            concurrentMap.parallelStream().forEach( keyValuePair -> {
+
+                long key = keyValuePair.getKey();
+
+                if ( key < numberKeys ) {
+
+                    synchronized ( seen ) {
+
+                        seen[( int )key] = true;
+                    }
+                }
+            } );
+
+            for ( int i = 0; i < numberKeys; i++ ) {
+
+                Assert.assertTrue( seen[i], "key " + i + " missed" );
+            }
+        }
+
+        stop.set( true );
+        future.get();
+        executorService.shutdown();
+    }
+
+
+    @Test
+    public void timeToLiveTest() throws Exception {
+
+        concurrentMap.put( 1l, "aa", 50, TimeUnit.MILLISECONDS );
+        concurrentMap.put( 2l, "bb", 50, TimeUnit.MILLISECONDS );
+        concurrentMap.put( 3l, "cc", 50, TimeUnit.MILLISECONDS );
+        concurrentMap.put( 4l, "dd", 1, TimeUnit.HOURS );
+
+        // A put without a time to live replaces the expiry, replace(..) keeps it
+        concurrentMap.put( 2l, "bb" );
+        Assert.assertTrue( concurrentMap.replace( 3l, "cc", "cc2" ) );
+
+        Assert.assertEquals( concurrentMap.getValue( 1l ), "aa" );
+        Assert.assertEquals( concurrentMap.size(), 4 );
+
+        Thread.sleep( 200 );
+
+        // Removed by the TimerWheel without any lookup
+        Assert.assertEquals( concurrentMap.size(), 2 );
+        Assert.assertNull( concurrentMap.getValue( 1l ) );
+        Assert.assertEquals( concurrentMap.getValue( 2l ), "bb" );
+        Assert.assertNull( concurrentMap.getValue( 3l ) );
+        Assert.assertEquals( concurrentMap.getValue( 4l ), "dd" );
+        Assert.assertFalse( concurrentMap.debug().contains( "key=1," ) );
+    }
+
+
+    @Test
+    public void expiredKeyCountsAsAbsentTest() throws Exception {
+
+        // The TimerWheel is never run so only the lookups can notice the expiry
+        try ( TimerWheelImpl timerWheel =
+                new TimerWheelImpl( 1, TimeUnit.HOURS, "idle-timer-wheel" ) ) {
+
+            ExpiringConcurrentMap<Long, String> expiringMap =
+                    new ConcurrentMapImpl<Long, String>( 4, timerWheel );
+
+            expiringMap.put( 1l, "aa", 10, TimeUnit.MILLISECONDS );
+            expiringMap.put( 2l, "bb", 10, TimeUnit.MILLISECONDS );
+            expiringMap.put( 3l, "cc", 10, TimeUnit.MILLISECONDS );
+            expiringMap.put( 4l, "dd", 10, TimeUnit.MILLISECONDS );
+
+            Thread.sleep( 50 );
+
+            Assert.assertEquals( expiringMap.size(), 4 );
+            Assert.assertEquals( expiringMap.parallelStream().count(), 0 );
+            Assert.assertNull( expiringMap.putIfAbsent( 1l, "aa2" ) );
+            Assert.assertEquals( expiringMap.getValue( 1l ), "aa2" );
+            Assert.assertFalse( expiringMap.replace( 2l, "bb", "bb2" ) );
+            Assert.assertEquals( expiringMap.merge( 3l, "cc2", String::concat ), "cc2" );
+            Assert.assertNull( expiringMap.getValue( 4l ) );
+            Assert.assertNull( expiringMap.getValue( 2l ) );
+            Assert.assertEquals( expiringMap.size(), 2 );
+        }
+    }
+
+
+    @Test
+    public void batchTest() {
+
+        Map<Long, String> batch = new HashMap<>();
+
+        for ( long i = 0; i < 10000; i++ ) {
+
+            batch.put( i, "value" + i );
+        }
+
+        concurrentMap.put( 0l, "old" );
+        concurrentMap.putAll( batch );
+        Assert.assertEquals( concurrentMap.size(), 10000 );
+
+        List<Long> keys = new ArrayList<>();
+
+        for ( long i = -10; i < 10010; i += 2 ) {
+
+            keys.add( i );
+        }
+
+        Map<Long, String> values = concurrentMap.getAll( keys );
+        Assert.assertEquals( values.size(), 5000 );
+
+        for ( long i = 0; i < 10000; i += 2 ) {
+
+            Assert.assertEquals( values.get( i ), "value" + i );
+        }
+
+        concurrentMap.removeAll( keys );
+        Assert.assertEquals( concurrentMap.size(), 5000 );
+        Assert.assertTrue( concurrentMap.getAll( keys ).isEmpty() );
+        Assert.assertEquals( concurrentMap.getValue( 9999l ), "value9999" );
+
+        // The resize checks made during the batch still grew the map to fit it
+        Assert.assertEquals(
+                ( ( ConcurrentMapImpl<Long, String> )concurrentMap ).getChainLengths().length,
+                16384 );
     }
 
 
@@ -0,0 +1,111 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the put throughput of DurableConcurrentMapImpl with each FsyncPolicy against
+ * ConcurrentMapImpl without a WriteAheadLog, which is the IN_MEMORY case.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main DurableConcurrentMapBenchmark -t 4
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@Threads( 2 )
+@State( Scope.Benchmark )
+public class DurableConcurrentMapBenchmark {
+
+    private static final int KEY_COUNT = 100_000;
+
+    @Param( { "IN_MEMORY", "NEVER", "GROUP", "SYNC" } )
+    public String fsyncPolicy;
+
+    private ConcurrentMap<Long, Long> concurrentMap;
+    private Long[] keys;
+    private Path directory;
+
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+
+        keys = new Long[KEY_COUNT];
+
+        for ( int i = 0; i < KEY_COUNT; i++ ) {
+
+            keys[i] = Long.valueOf( i );
+        }
+
+        if ( fsyncPolicy.equals( "IN_MEMORY" ) ) {
+
+            concurrentMap = new ConcurrentMapImpl<>();
+        }
+        else {
+
+            directory = Files.createTempDirectory( "wal-benchmark" );
+
+            concurrentMap =
+                    new DurableConcurrentMapImpl<>(
+                            directory.resolve( "map.wal" ), SnapshotCodecs.LONG,
+                            SnapshotCodecs.LONG, FsyncPolicy.valueOf( fsyncPolicy ) );
+        }
+    }
+
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+
+        if ( concurrentMap instanceof DurableConcurrentMapImpl ) {
+
+            ( ( DurableConcurrentMapImpl<Long, Long> )concurrentMap ).close();
+            Files.delete( directory.resolve( "map.wal" ) );
+            Files.delete( directory );
+        }
+    }
+
+
+    @Benchmark
+    public Long put() {
+
+        Long key = keys[ThreadLocalRandom.current().nextInt( KEY_COUNT )];
+        return concurrentMap.put( key, key );
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+
+        Options options =
+                new OptionsBuilder()
+                        .include( DurableConcurrentMapBenchmark.class.getSimpleName() )
+                        .build();
+
+        new Runner( options ).run();
+    }
+}
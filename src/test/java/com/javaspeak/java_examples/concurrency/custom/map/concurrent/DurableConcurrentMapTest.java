@@ -0,0 +1,271 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class DurableConcurrentMapTest {
+
+    private Path directory;
+    private Path path;
+
+    @BeforeMethod
+    private void setUp() throws IOException {
+
+        directory = Files.createTempDirectory( "wal" );
+        path = directory.resolve( "map.wal" );
+    }
+
+
+    @AfterMethod
+    private void tearDown() throws IOException {
+
+        Files.deleteIfExists( path );
+        Files.deleteIfExists( directory );
+    }
+
+
+    private DurableConcurrentMapImpl<Long, String> open( FsyncPolicy fsyncPolicy )
+            throws IOException {
+
+        return new DurableConcurrentMapImpl<>(
+                path, SnapshotCodecs.LONG, SnapshotCodecs.STRING, fsyncPolicy );
+    }
+
+
+    @Test
+    public void replayTest() throws Exception {
+
+        try ( DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.GROUP ) ) {
+
+            map.put( 1L, "aa" );
+            map.put( 2L, "bb" );
+            map.put( 1L, "cc" );
+            map.remove( 2L );
+            Assert.assertTrue( map.replace( 1L, "cc", "dd" ) );
+            Assert.assertFalse( map.replace( 1L, "cc", "ee" ) );
+            Assert.assertEquals( map.merge( 3L, "x", String::concat ), "x" );
+            Assert.assertEquals( map.merge( 3L, "y", String::concat ), "xy" );
+            Assert.assertEquals( map.computeIfAbsent( 4L, k -> "ff" ), "ff" );
+            Assert.assertNull( map.merge( 4L, "", ( a, b ) -> null ) );
+        }
+
+        try ( DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.GROUP ) ) {
+
+            Assert.assertEquals( map.size(), 2 );
+            Assert.assertEquals( map.getValue( 1L ), "dd" );
+            Assert.assertNull( map.getValue( 2L ) );
+            Assert.assertEquals( map.getValue( 3L ), "xy" );
+            Assert.assertNull( map.getValue( 4L ) );
+
+            map.put( 5L, "gg" );
+        }
+
+        try ( DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.NEVER ) ) {
+
+            Assert.assertEquals( map.size(), 3 );
+            Assert.assertEquals( map.getValue( 5L ), "gg" );
+        }
+    }
+
+
+    @Test
+    public void concurrentWritersTest() throws Exception {
+
+        int numberThreads = 8;
+        DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.GROUP );
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        // Few keys so that threads keep changing the same keys at the same time
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            int thread = t;
+
+            futures.add( executorService.submit( () -> {
+
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                for ( int i = 0; i < 20000; i++ ) {
+
+                    long key = random.nextLong( 64 );
+
+                    if ( random.nextInt( 4 ) == 0 ) {
+
+                        map.remove( key );
+                    }
+                    else {
+
+                        map.put( key, thread + ":" + i );
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+        map.close();
+
+        try ( DurableConcurrentMapImpl<Long, String> replayedMap = open( FsyncPolicy.GROUP ) ) {
+
+            Assert.assertEquals( replayedMap.size(), map.size() );
+
+            for ( long key = 0; key < 64; key++ ) {
+
+                Assert.assertEquals( replayedMap.getValue( key ), map.getValue( key ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void syncTest() throws Exception {
+
+        WriteAheadLogImpl<Long, String> writeAheadLog =
+                new WriteAheadLogImpl<>(
+                        path, SnapshotCodecs.LONG, SnapshotCodecs.STRING, FsyncPolicy.SYNC, 16 );
+
+        try ( DurableConcurrentMapImpl<Long, String> map =
+                new DurableConcurrentMapImpl<>( new ConcurrentMapImpl<>(), writeAheadLog ) ) {
+
+            for ( long i = 0; i < 100; i++ ) {
+
+                map.put( i, "value" + i );
+
+                // SYNC only returns once the record has been forced
+                Assert.assertEquals( writeAheadLog.getDurableCount(), i + 1 );
+            }
+        }
+    }
+
+
+    @Test
+    public void tornRecordTest() throws Exception {
+
+        try ( DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.GROUP ) ) {
+
+            map.put( 1L, "aa" );
+            map.put( 2L, "bb" );
+        }
+
+        // A crash part way through writing a record leaves half of it at the end of the file
+        long size = Files.size( path );
+
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.WRITE ) ) {
+
+            channel.write( ByteBuffer.allocate( 12 ).putInt( 40 ).putInt( 7 ).flip(), size );
+        }
+
+        try ( DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.GROUP ) ) {
+
+            Assert.assertEquals( Files.size( path ), size );
+            Assert.assertEquals( map.size(), 2 );
+            map.put( 3L, "cc" );
+        }
+
+        try ( DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.GROUP ) ) {
+
+            Assert.assertEquals( map.size(), 3 );
+            Assert.assertEquals( map.getValue( 3L ), "cc" );
+        }
+    }
+
+
+    @Test( expectedExceptions = IllegalStateException.class )
+    public void closedTest() throws Exception {
+
+        DurableConcurrentMapImpl<Long, String> map = open( FsyncPolicy.NEVER );
+        map.close();
+        map.put( 1L, "aa" );
+    }
+
+
+    @Test
+    public void appendWhileClosingTest() throws Exception {
+
+        int numberThreads = 8;
+        WriteAheadLogImpl<Long, String> writeAheadLog =
+                new WriteAheadLogImpl<>(
+                        path, SnapshotCodecs.LONG, SnapshotCodecs.STRING, FsyncPolicy.NEVER, 4 );
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<List<Long>>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            long firstKey = t * 1_000_000L;
+
+            futures.add( executorService.submit( () -> {
+
+                List<Long> appendedKeys = new ArrayList<>();
+
+                try {
+                    for ( long key = firstKey; ; key++ ) {
+
+                        writeAheadLog.append( key, k -> "value" );
+                        appendedKeys.add( key );
+                    }
+                }
+                catch ( IllegalStateException e ) {
+
+                    return appendedKeys;
+                }
+            } ) );
+        }
+
+        Thread.sleep( 50 );
+        writeAheadLog.close();
+        ConcurrentMapImpl<Long, String> replayedMap = new ConcurrentMapImpl<>();
+
+        try ( WriteAheadLogImpl<Long, String> reopened =
+                new WriteAheadLogImpl<>(
+                        path, SnapshotCodecs.LONG, SnapshotCodecs.STRING, FsyncPolicy.NEVER, 4 ) ) {
+
+            reopened.replay( replayedMap );
+        }
+
+        // Every append(..) which returned, rather than threw, has its record in the log
+        for ( Future<List<Long>> future : futures ) {
+
+            for ( Long key : future.get() ) {
+
+                Assert.assertEquals( replayedMap.getValue( key ), "value" );
+            }
+        }
+
+        executorService.shutdown();
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { DurableConcurrentMapTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
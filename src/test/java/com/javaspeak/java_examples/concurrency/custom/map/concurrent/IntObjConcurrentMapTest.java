@@ -0,0 +1,113 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class IntObjConcurrentMapTest {
+
+    private IntObjConcurrentMap<String> intObjConcurrentMap;
+
+    @BeforeMethod
+    private void setUp() {
+
+        intObjConcurrentMap = new IntObjConcurrentMapImpl<String>( 4 );
+    }
+
+
+    @Test
+    public void putGetAndRemoveTest() {
+
+        Assert.assertNull( intObjConcurrentMap.put( 1, "aa" ) );
+        Assert.assertEquals( intObjConcurrentMap.put( 1, "bb" ), "aa" );
+        Assert.assertEquals( intObjConcurrentMap.putIfAbsent( 1, "cc" ), "bb" );
+        Assert.assertEquals( intObjConcurrentMap.getValue( 1 ), "bb" );
+        Assert.assertNull( intObjConcurrentMap.getValue( 2 ) );
+
+        Assert.assertNull( intObjConcurrentMap.put( 0, "zero" ) );
+        Assert.assertNull( intObjConcurrentMap.put( -7, "negative" ) );
+        Assert.assertEquals( intObjConcurrentMap.getValue( 0 ), "zero" );
+        Assert.assertEquals( intObjConcurrentMap.getValue( -7 ), "negative" );
+        Assert.assertEquals( intObjConcurrentMap.size(), 3 );
+
+        Assert.assertEquals( intObjConcurrentMap.remove( 1 ), "bb" );
+        Assert.assertEquals( intObjConcurrentMap.remove( 0 ), "zero" );
+        Assert.assertNull( intObjConcurrentMap.remove( 1 ) );
+        Assert.assertNull( intObjConcurrentMap.getValue( 1 ) );
+        Assert.assertEquals( intObjConcurrentMap.size(), 1 );
+    }
+
+
+    @Test( expectedExceptions = NullPointerException.class )
+    public void nullValueTest() {
+
+        intObjConcurrentMap.put( 1, null );
+    }
+
+
+    @Test
+    public void concurrentResizeTest() throws Exception {
+
+        int numberThreads = 8;
+        int keysPerThread = 20000;
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            int start = t * keysPerThread;
+
+            futures.add( executorService.submit( () -> {
+
+                for ( int i = start; i < start + keysPerThread; i++ ) {
+
+                    intObjConcurrentMap.put( i, "value" + i );
+                    Assert.assertEquals( intObjConcurrentMap.getValue( i ), "value" + i );
+
+                    if ( i % 3 == 0 ) {
+
+                        Assert.assertEquals( intObjConcurrentMap.remove( i ), "value" + i );
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        for ( int i = 0; i < numberThreads * keysPerThread; i++ ) {
+
+            Assert.assertEquals(
+                    intObjConcurrentMap.getValue( i ), i % 3 == 0 ? null : "value" + i );
+        }
+
+        Assert.assertEquals(
+                intObjConcurrentMap.size(), numberThreads * keysPerThread * 2 / 3 );
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { IntObjConcurrentMapTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
@@ -0,0 +1,154 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import static com.javaspeak.java_examples.concurrency.custom.map.concurrent.LongLongConcurrentMap.NO_VALUE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class LongLongConcurrentMapTest {
+
+    private LongLongConcurrentMap longLongConcurrentMap;
+
+    @BeforeMethod
+    private void setUp() {
+
+        longLongConcurrentMap = new LongLongConcurrentMapImpl( 4 );
+    }
+
+
+    @Test
+    public void putGetAndRemoveTest() {
+
+        Assert.assertEquals( longLongConcurrentMap.put( 1l, 10l ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.put( 1l, 11l ), 10l );
+        Assert.assertEquals( longLongConcurrentMap.putIfAbsent( 1l, 12l ), 11l );
+        Assert.assertEquals( longLongConcurrentMap.getValue( 1l ), 11l );
+        Assert.assertEquals( longLongConcurrentMap.getValue( 2l ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.size(), 1 );
+
+        Assert.assertEquals( longLongConcurrentMap.remove( 1l ), 11l );
+        Assert.assertEquals( longLongConcurrentMap.remove( 1l ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.getValue( 1l ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.size(), 0 );
+
+        // The slot of a removed key is reused when the key is put again
+        Assert.assertEquals( longLongConcurrentMap.putIfAbsent( 1l, 12l ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.getValue( 1l ), 12l );
+    }
+
+
+    @Test
+    public void zeroKeyAndNegativeValuesTest() {
+
+        Assert.assertEquals( longLongConcurrentMap.put( 0l, -1l ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.put( -5l, Long.MAX_VALUE ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.getValue( 0l ), -1l );
+        Assert.assertEquals( longLongConcurrentMap.getValue( -5l ), Long.MAX_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.size(), 2 );
+
+        Assert.assertEquals( longLongConcurrentMap.remove( 0l ), -1l );
+        Assert.assertEquals( longLongConcurrentMap.getValue( 0l ), NO_VALUE );
+        Assert.assertEquals( longLongConcurrentMap.size(), 1 );
+    }
+
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void reservedValueTest() {
+
+        longLongConcurrentMap.put( 1l, NO_VALUE + 1 );
+    }
+
+
+    @Test
+    public void resizeTest() {
+
+        for ( long i = 0; i < 10000; i++ ) {
+
+            longLongConcurrentMap.put( i, i * 3 );
+        }
+
+        for ( long i = 0; i < 10000; i += 2 ) {
+
+            longLongConcurrentMap.remove( i );
+        }
+
+        // Putting and removing new keys fills the slots with removed keys which resizes clear out
+        for ( long i = 10000; i < 100000; i++ ) {
+
+            longLongConcurrentMap.put( i, i * 3 );
+            longLongConcurrentMap.remove( i );
+        }
+
+        for ( long i = 0; i < 10000; i++ ) {
+
+            Assert.assertEquals( longLongConcurrentMap.getValue( i ), i % 2 == 0 ? NO_VALUE : i * 3 );
+        }
+
+        Assert.assertEquals( longLongConcurrentMap.size(), 5000 );
+    }
+
+
+    @Test
+    public void concurrentResizeTest() throws Exception {
+
+        int numberThreads = 8;
+        int keysPerThread = 20000;
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            long start = t * keysPerThread;
+
+            futures.add( executorService.submit( () -> {
+
+                for ( long i = start; i < start + keysPerThread; i++ ) {
+
+                    longLongConcurrentMap.put( i, i + 1 );
+                    Assert.assertEquals( longLongConcurrentMap.getValue( i ), i + 1 );
+
+                    if ( i % 3 == 0 ) {
+
+                        Assert.assertEquals( longLongConcurrentMap.remove( i ), i + 1 );
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        for ( long i = 0; i < numberThreads * keysPerThread; i++ ) {
+
+            Assert.assertEquals(
+                    longLongConcurrentMap.getValue( i ), i % 3 == 0 ? NO_VALUE : i + 1 );
+        }
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { LongLongConcurrentMapTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
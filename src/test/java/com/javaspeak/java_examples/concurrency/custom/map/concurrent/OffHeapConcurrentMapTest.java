@@ -0,0 +1,202 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class OffHeapConcurrentMapTest {
+
+    private OffHeapConcurrentMapImpl<Long, String> offHeapConcurrentMap;
+
+    @BeforeMethod
+    private void setUp() {
+
+        offHeapConcurrentMap =
+                new OffHeapConcurrentMapImpl<Long, String>(
+                        8, OffHeapCodecs.LONG, OffHeapCodecs.string( 16 ) );
+    }
+
+
+    @AfterMethod
+    private void tearDown() {
+
+        offHeapConcurrentMap.close();
+    }
+
+
+    @Test
+    public void putGetAndRemoveTest() {
+
+        Assert.assertNull( offHeapConcurrentMap.put( 1L, "aa" ) );
+        Assert.assertEquals( offHeapConcurrentMap.put( 1L, "bb" ), "aa" );
+        Assert.assertEquals( offHeapConcurrentMap.putIfAbsent( 1L, "cc" ), "bb" );
+        Assert.assertEquals( offHeapConcurrentMap.getValue( 1L ), "bb" );
+        Assert.assertNull( offHeapConcurrentMap.getValue( 2L ) );
+
+        Assert.assertNull( offHeapConcurrentMap.put( 0L, "" ) );
+        Assert.assertNull( offHeapConcurrentMap.put( -7L, "negative" ) );
+        Assert.assertEquals( offHeapConcurrentMap.getValue( 0L ), "" );
+        Assert.assertEquals( offHeapConcurrentMap.getValue( -7L ), "negative" );
+        Assert.assertEquals( offHeapConcurrentMap.size(), 3 );
+
+        offHeapConcurrentMap.remove( 1L );
+        offHeapConcurrentMap.remove( 1L );
+        Assert.assertNull( offHeapConcurrentMap.getValue( 1L ) );
+        Assert.assertEquals( offHeapConcurrentMap.size(), 2 );
+        Assert.assertFalse( offHeapConcurrentMap.debug().contains( "key=1," ) );
+    }
+
+
+    @Test
+    public void replaceComputeIfAbsentAndMergeTest() {
+
+        Assert.assertFalse( offHeapConcurrentMap.replace( 1L, "aa", "bb" ) );
+        Assert.assertEquals( offHeapConcurrentMap.computeIfAbsent( 1L, k -> "aa" ), "aa" );
+        Assert.assertEquals( offHeapConcurrentMap.computeIfAbsent( 1L, k -> "xx" ), "aa" );
+        Assert.assertFalse( offHeapConcurrentMap.replace( 1L, "xx", "bb" ) );
+        Assert.assertTrue( offHeapConcurrentMap.replace( 1L, "aa", "bb" ) );
+
+        Assert.assertEquals( offHeapConcurrentMap.merge( 1L, "c", String::concat ), "bbc" );
+        Assert.assertEquals( offHeapConcurrentMap.merge( 2L, "d", String::concat ), "d" );
+        Assert.assertNull( offHeapConcurrentMap.merge( 2L, "d", ( a, b ) -> null ) );
+        Assert.assertNull( offHeapConcurrentMap.getValue( 2L ) );
+        Assert.assertEquals( offHeapConcurrentMap.size(), 1 );
+    }
+
+
+    @Test
+    public void removedSlotsAreReusedTest() {
+
+        // Many more distinct keys than slots go through the map
+        for ( long i = 0; i < 1000; i++ ) {
+
+            offHeapConcurrentMap.put( i, "value" + i );
+            Assert.assertEquals( offHeapConcurrentMap.getValue( i ), "value" + i );
+            offHeapConcurrentMap.remove( i );
+        }
+
+        Assert.assertEquals( offHeapConcurrentMap.size(), 0 );
+    }
+
+
+    @Test( expectedExceptions = IllegalStateException.class )
+    public void fullTest() {
+
+        for ( long i = 0; i < 9; i++ ) {
+
+            offHeapConcurrentMap.put( i, "value" + i );
+        }
+    }
+
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void valueTooLongTest() {
+
+        offHeapConcurrentMap.put( 1L, "abcdefghijklmnopq" );
+    }
+
+
+    @Test
+    public void concurrentPutAndRemoveTest() throws Exception {
+
+        int numberThreads = 8;
+        int keysPerThread = 20000;
+
+        OffHeapConcurrentMapImpl<Long, Long> map =
+                new OffHeapConcurrentMapImpl<Long, Long>(
+                        numberThreads * keysPerThread * 2, OffHeapCodecs.LONG, OffHeapCodecs.LONG );
+
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            long start = t * keysPerThread;
+
+            futures.add( executorService.submit( () -> {
+
+                for ( long i = start; i < start + keysPerThread; i++ ) {
+
+                    map.put( i, i * 10 );
+                    Assert.assertEquals( map.getValue( i ), Long.valueOf( i * 10 ) );
+                    map.merge( -1L, 1L, Long::sum );
+
+                    if ( i % 3 == 0 ) {
+
+                        map.remove( i );
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        for ( long i = 0; i < numberThreads * keysPerThread; i++ ) {
+
+            Assert.assertEquals( map.getValue( i ), i % 3 == 0 ? null : Long.valueOf( i * 10 ) );
+        }
+
+        Assert.assertEquals( map.getValue( -1L ), Long.valueOf( numberThreads * keysPerThread ) );
+        Assert.assertEquals( map.size(), numberThreads * keysPerThread * 2 / 3 + 1 );
+        map.close();
+    }
+
+
+    @Test
+    public void iterationTest() {
+
+        for ( long i = 0; i < 6; i++ ) {
+
+            offHeapConcurrentMap.put( i, "value" + i );
+        }
+
+        offHeapConcurrentMap.remove( 3L );
+
+        List<Long> keys = new ArrayList<>();
+        offHeapConcurrentMap.forEach( ( key, value ) -> {
+
+            Assert.assertEquals( value, "value" + key );
+            keys.add( key );
+        } );
+
+        keys.sort( null );
+        Assert.assertEquals( keys, List.of( 0L, 1L, 2L, 4L, 5L ) );
+        Assert.assertEquals(
+                offHeapConcurrentMap.parallelStream().mapToLong( KeyValuePair::getKey ).sum(), 12 );
+    }
+
+
+    @Test( expectedExceptions = IllegalStateException.class )
+    public void closedTest() {
+
+        offHeapConcurrentMap.close();
+        offHeapConcurrentMap.getValue( 1L );
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { OffHeapConcurrentMapTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
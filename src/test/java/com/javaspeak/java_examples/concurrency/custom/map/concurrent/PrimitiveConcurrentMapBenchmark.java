@@ -0,0 +1,199 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing lookups in ConcurrentMapImpl&lt;Long, Long&gt; with lookups in
+ * LongLongConcurrentMapImpl, IntObjConcurrentMapImpl and OffHeapConcurrentMapImpl holding the same
+ * keys.
+ * <p>
+ * Before measuring, the setup prints the heap each map takes per entry, and the native memory
+ * OffHeapConcurrentMapImpl takes, which the garbage collector never sees.  The keys are ids that
+ * are not in the Long cache so that ConcurrentMapImpl pays for boxing them as it would in use.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main PrimitiveConcurrentMapBenchmark -prof gc
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class PrimitiveConcurrentMapBenchmark {
+
+    private static final long FIRST_ID = 1_000_000;
+
+    @Param( { "1000000" } )
+    public int keyCount;
+
+    private ConcurrentMap<Long, Long> concurrentMap;
+    private LongLongConcurrentMap longLongConcurrentMap;
+    private IntObjConcurrentMap<Long> intObjConcurrentMap;
+    private OffHeapConcurrentMapImpl<Long, Long> offHeapConcurrentMap;
+    private Long[] keys;
+
+
+    private static long usedHeap() {
+
+        for ( int i = 0; i < 3; i++ ) {
+
+            System.gc();
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    private <T> T measure( String name, Supplier<T> supplier ) {
+
+        long before = usedHeap();
+        T map = supplier.get();
+        long after = usedHeap();
+
+        System.out.println( name + ": " + ( after - before ) / keyCount + " bytes per entry" );
+        return map;
+    }
+
+
+    @Setup( Level.Trial )
+    public void setUp() {
+
+        keys = new Long[keyCount];
+
+        for ( int i = 0; i < keyCount; i++ ) {
+
+            keys[i] = FIRST_ID + i;
+        }
+
+        System.out.println();
+
+        concurrentMap = measure( "ConcurrentMapImpl<Long, Long>", () -> {
+
+            ConcurrentMap<Long, Long> map = new ConcurrentMapImpl<>();
+
+            for ( long id = FIRST_ID; id < FIRST_ID + keyCount; id++ ) {
+
+                map.put( id, id );
+            }
+
+            return map;
+        } );
+
+        longLongConcurrentMap = measure( "LongLongConcurrentMapImpl", () -> {
+
+            LongLongConcurrentMap map = new LongLongConcurrentMapImpl();
+
+            for ( long id = FIRST_ID; id < FIRST_ID + keyCount; id++ ) {
+
+                map.put( id, id );
+            }
+
+            return map;
+        } );
+
+        // The values are boxed as any IntObjConcurrentMap value is an object
+        intObjConcurrentMap = measure( "IntObjConcurrentMapImpl<Long>", () -> {
+
+            IntObjConcurrentMap<Long> map = new IntObjConcurrentMapImpl<>();
+
+            for ( long id = FIRST_ID; id < FIRST_ID + keyCount; id++ ) {
+
+                map.put( ( int )id, id );
+            }
+
+            return map;
+        } );
+
+        offHeapConcurrentMap = measure( "OffHeapConcurrentMapImpl<Long, Long>", () -> {
+
+            OffHeapConcurrentMapImpl<Long, Long> map =
+                    new OffHeapConcurrentMapImpl<>(
+                            2L * keyCount, OffHeapCodecs.LONG, OffHeapCodecs.LONG );
+
+            for ( long id = FIRST_ID; id < FIRST_ID + keyCount; id++ ) {
+
+                map.put( id, id );
+            }
+
+            return map;
+        } );
+
+        System.out.println(
+                "OffHeapConcurrentMapImpl<Long, Long>: " +
+                        offHeapConcurrentMap.nativeMemorySize() / keyCount +
+                            " bytes of native memory per entry" );
+    }
+
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+
+        offHeapConcurrentMap.close();
+    }
+
+
+    @Benchmark
+    public Long concurrentMapGetValue() {
+
+        return concurrentMap.getValue( keys[ThreadLocalRandom.current().nextInt( keyCount )] );
+    }
+
+
+    @Benchmark
+    public long longLongConcurrentMapGetValue() {
+
+        return longLongConcurrentMap.getValue(
+                FIRST_ID + ThreadLocalRandom.current().nextInt( keyCount ) );
+    }
+
+
+    @Benchmark
+    public Long intObjConcurrentMapGetValue() {
+
+        return intObjConcurrentMap.getValue(
+                ( int )FIRST_ID + ThreadLocalRandom.current().nextInt( keyCount ) );
+    }
+
+
+    @Benchmark
+    public Long offHeapConcurrentMapGetValue() {
+
+        return offHeapConcurrentMap.getValue(
+                keys[ThreadLocalRandom.current().nextInt( keyCount )] );
+    }
+
+
+    public static void main( String[] args ) throws Exception {
+
+        Options options =
+                new OptionsBuilder()
+                        .include( PrimitiveConcurrentMapBenchmark.class.getSimpleName() )
+                        .build();
+
+        new Runner( options ).run();
+    }
+}
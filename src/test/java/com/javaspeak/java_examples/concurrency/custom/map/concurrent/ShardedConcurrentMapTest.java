@@ -0,0 +1,182 @@
+package com.javaspeak.java_examples.concurrency.custom.map.concurrent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class ShardedConcurrentMapTest {
+
+    @Test
+    public void putGetAndRemoveTest() {
+
+        ShardedConcurrentMapImpl<Integer, String> map = new ShardedConcurrentMapImpl<>( 8 );
+
+        Assert.assertEquals( map.getShardCount(), 8 );
+        Assert.assertNull( map.put( 1, "aa" ) );
+        Assert.assertEquals( map.put( 1, "bb" ), "aa" );
+        Assert.assertEquals( map.putIfAbsent( 1, "cc" ), "bb" );
+        Assert.assertTrue( map.replace( 1, "bb", "dd" ) );
+        Assert.assertEquals( map.computeIfAbsent( 2, k -> "ee" ), "ee" );
+        Assert.assertEquals( map.merge( 2, "f", String::concat ), "eef" );
+        Assert.assertEquals( map.getValue( 1 ), "dd" );
+        Assert.assertEquals( map.size(), 2 );
+
+        map.remove( 1 );
+        Assert.assertFalse( map.remove( 2, "xx" ) );
+        Assert.assertTrue( map.remove( 2, "eef" ) );
+        Assert.assertNull( map.getValue( 1 ) );
+        Assert.assertEquals( map.size(), 0 );
+    }
+
+
+    @Test
+    public void shardCountTest() {
+
+        Assert.assertEquals( new ShardedConcurrentMapImpl<>( 1 ).getShardCount(), 1 );
+        Assert.assertEquals( new ShardedConcurrentMapImpl<>( 5 ).getShardCount(), 8 );
+
+        int defaultShardCount = new ShardedConcurrentMapImpl<Integer, String>().getShardCount();
+        Assert.assertEquals( Integer.bitCount( defaultShardCount ), 1 );
+        Assert.assertTrue(
+                defaultShardCount >= Runtime.getRuntime().availableProcessors() * 4 );
+    }
+
+
+    @Test
+    public void keysSpreadOverShardsTest() {
+
+        ShardedConcurrentMapImpl<Integer, Integer> map = new ShardedConcurrentMapImpl<>( 16 );
+        Map<Integer, Integer> batch = new HashMap<>();
+
+        for ( int i = 0; i < 16000; i++ ) {
+
+            batch.put( i, i );
+        }
+
+        map.putAll( batch );
+        Assert.assertEquals( map.size(), 16000 );
+
+        // Sequential keys should not pile up in a few shards
+        for ( long shardSize : map.getShardSizes() ) {
+
+            Assert.assertTrue( shardSize > 500 && shardSize < 1500, "shard size " + shardSize );
+        }
+
+        Map<Integer, Integer> values = map.getAll( List.of( 1, 2, 16001 ) );
+        Assert.assertEquals( values, Map.of( 1, 1, 2, 2 ) );
+
+        map.removeAll( batch.keySet() );
+        Assert.assertEquals( map.size(), 0 );
+    }
+
+
+    @Test
+    public void iterationTest() {
+
+        ShardedConcurrentMapImpl<Long, Long> map = new ShardedConcurrentMapImpl<>( 4 );
+
+        for ( long i = 0; i < 1000; i++ ) {
+
+            map.put( i, i * 2 );
+        }
+
+        List<Long> keys = new ArrayList<>();
+        map.forEach( ( key, value ) -> {
+
+            Assert.assertEquals( value, Long.valueOf( key * 2 ) );
+            keys.add( key );
+        } );
+
+        Assert.assertEquals( keys.size(), 1000 );
+        Assert.assertEquals(
+                map.parallelStream().mapToLong( KeyValuePair::getKey ).sum(), 999 * 1000 / 2 );
+    }
+
+
+    @Test
+    public void concurrentTest() throws Exception {
+
+        int numberThreads = 8;
+        int keysPerThread = 20000;
+
+        ShardedConcurrentMapImpl<Integer, Integer> map =
+                new ShardedConcurrentMapImpl<>( 8, 2, null );
+        ExecutorService executorService = Executors.newFixedThreadPool( numberThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < numberThreads; t++ ) {
+
+            int start = t * keysPerThread;
+
+            futures.add( executorService.submit( () -> {
+
+                for ( int i = start; i < start + keysPerThread; i++ ) {
+
+                    map.put( i, i );
+                    map.merge( -1, 1, Integer::sum );
+
+                    if ( i % 2 == 0 ) {
+
+                        map.remove( i );
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures ) {
+
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        Assert.assertEquals( map.size(), numberThreads * keysPerThread / 2 + 1 );
+        Assert.assertEquals( map.getValue( -1 ), Integer.valueOf( numberThreads * keysPerThread ) );
+
+        ConcurrentMapMetrics metrics = map.getMetrics();
+        long resizeCount = 0;
+        long chainCount = 0;
+
+        for ( int i = 0; i < map.getShardCount(); i++ ) {
+
+            resizeCount += map.getShardMetrics( i ).getResizeCount();
+        }
+
+        for ( long count : metrics.getChainLengthDistribution() ) {
+
+            chainCount += count;
+        }
+
+        // Each shard grew from 2 slots on its own
+        Assert.assertEquals( metrics.getResizeCount(), resizeCount );
+
+        if ( metrics.isEnabled() ) {
+
+            Assert.assertTrue( resizeCount >= map.getShardCount() );
+        }
+
+        Assert.assertTrue( chainCount >= map.getShardCount() * 2 );
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { ShardedConcurrentMapTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
@@ -0,0 +1,129 @@
+package com.javaspeak.java_examples.concurrency.custom.timer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class TimerWheelTest {
+
+    private TimerWheel timerWheel;
+
+    @BeforeMethod
+    private void setUp() {
+
+        // A tick of 10 microseconds so that the delays below cross buckets of wheels 1 and 2
+        timerWheel = new TimerWheelImpl( 10, TimeUnit.MICROSECONDS, "timer-wheel-test" );
+    }
+
+
+    @AfterMethod
+    private void tearDown() {
+
+        timerWheel.close();
+    }
+
+
+    @Test
+    public void tasksRunAfterTheirDelayTest() throws Exception {
+
+        int numberTasks = 10000;
+        CountDownLatch countDownLatch = new CountDownLatch( numberTasks );
+        AtomicInteger early = new AtomicInteger();
+        AtomicLong maxLateNanos = new AtomicLong();
+
+        for ( int i = 0; i < numberTasks; i++ ) {
+
+            long delayNanos =
+                    ThreadLocalRandom.current().nextLong( TimeUnit.MILLISECONDS.toNanos( 100 ) );
+            long deadline = System.nanoTime() + delayNanos;
+
+            timerWheel.schedule( () -> {
+
+                long late = System.nanoTime() - deadline;
+
+                if ( late < 0 ) {
+
+                    early.incrementAndGet();
+                }
+
+                maxLateNanos.accumulateAndGet( late, Math::max );
+                countDownLatch.countDown();
+
+            }, delayNanos, TimeUnit.NANOSECONDS );
+        }
+
+        Assert.assertTrue( countDownLatch.await( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( early.get(), 0 );
+        Assert.assertEquals( timerWheel.getPendingCount(), 0 );
+        System.out.println( "Latest task ran " + maxLateNanos.get() / 1000 + " us late" );
+    }
+
+
+    @Test
+    public void cancelTest() throws Exception {
+
+        AtomicInteger runCount = new AtomicInteger();
+        Runnable task = runCount::incrementAndGet;
+        Timeout cancelled = timerWheel.schedule( task, 20, TimeUnit.MILLISECONDS );
+        Timeout expired = timerWheel.schedule( task, 20, TimeUnit.MILLISECONDS );
+
+        Assert.assertTrue( cancelled.cancel() );
+        Assert.assertFalse( cancelled.cancel() );
+        Assert.assertEquals( timerWheel.getPendingCount(), 1 );
+
+        Thread.sleep( 200 );
+
+        Assert.assertEquals( runCount.get(), 1 );
+        Assert.assertTrue( cancelled.isCancelled() );
+        Assert.assertFalse( cancelled.isExpired() );
+        Assert.assertTrue( expired.isExpired() );
+        Assert.assertFalse( expired.cancel() );
+    }
+
+
+    @Test
+    public void failingTaskIsCountedTest() throws Exception {
+
+        CountDownLatch countDownLatch = new CountDownLatch( 1 );
+
+        timerWheel.schedule( () -> {
+
+            throw new IllegalStateException( "Thrown on purpose by failingTaskIsCountedTest" );
+
+        }, 1, TimeUnit.MILLISECONDS );
+
+        timerWheel.schedule( countDownLatch::countDown, 2, TimeUnit.MILLISECONDS );
+
+        Assert.assertTrue( countDownLatch.await( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( timerWheel.getFailedCount(), 1 );
+    }
+
+
+    @Test( expectedExceptions = UnsupportedOperationException.class )
+    public void sharedCannotBeClosedTest() {
+
+        TimerWheelImpl.shared().close();
+    }
+
+
+    public static void main( String[] args ) {
+
+        TestListenerAdapter tla = new TestListenerAdapter();
+        TestNG testng = new TestNG();
+        testng.setTestClasses( new Class[] { TimerWheelTest.class } );
+        testng.addListener( tla );
+        testng.run();
+    }
+}
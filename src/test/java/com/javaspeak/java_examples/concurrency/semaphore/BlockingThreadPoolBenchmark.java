@@ -0,0 +1,151 @@
+package com.javaspeak.java_examples.concurrency.semaphore;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of how long executeRunnable(..) takes to hand a small task to a pool of
+ * numberThreads threads.
+ * <p>
+ *     POOL: BlockingThreadPoolImpl, whose threads are started once and reused<p>
+ *     WORK_STEALING: WorkStealingBlockingThreadPoolImpl, whose threads each have their own deque
+ *     and steal from each other<p>
+ *     THREAD_PER_TASK: a semaphore which caps the number of threads, and a new thread per task,
+ *     which is how BlockingThreadPoolImpl used to work
+ * <p>
+ * Once every thread is busy executeRunnable(..) blocks, so the time per operation is the time to
+ * submit a task plus any time spent waiting for a thread.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main BlockingThreadPoolBenchmark
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class BlockingThreadPoolBenchmark {
+
+	@Param( { "POOL", "WORK_STEALING", "THREAD_PER_TASK" } )
+	public String mode;
+
+	@Param( { "4" } )
+	public int numberThreads;
+
+	private final LongAdder counter = new LongAdder();
+	private final Runnable task = counter::increment;
+	private BlockingThreadPool threadPool;
+
+
+	/**
+	 * The old BlockingThreadPoolImpl
+	 */
+	private static class ThreadPerTaskPool implements BlockingThreadPool {
+
+		private final Semaphore semaphore;
+		private final int numberThreads;
+
+		private ThreadPerTaskPool( int numberThreads ) {
+
+			this.semaphore = new Semaphore( numberThreads );
+			this.numberThreads = numberThreads;
+		}
+
+
+		@Override
+		public void executeRunnable( Runnable runnable ) {
+
+			semaphore.acquireUninterruptibly();
+
+			new Thread( () -> {
+
+				try {
+					runnable.run();
+				}
+				finally {
+					semaphore.release();
+				}
+
+			} ).start();
+		}
+
+
+		@Override
+		public int numberFreeThreads() {
+
+			return semaphore.availablePermits();
+		}
+
+
+		@Override
+		public void close() {
+
+			semaphore.acquireUninterruptibly( numberThreads );
+			semaphore.release( numberThreads );
+		}
+	}
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+
+		if ( mode.equals( "POOL" ) ) {
+
+			threadPool = new BlockingThreadPoolImpl( numberThreads );
+		}
+		else if ( mode.equals( "WORK_STEALING" ) ) {
+
+			threadPool = new WorkStealingBlockingThreadPoolImpl( numberThreads );
+		}
+		else {
+
+			threadPool = new ThreadPerTaskPool( numberThreads );
+		}
+	}
+
+
+	@TearDown( Level.Trial )
+	public void tearDown() {
+
+		threadPool.close();
+	}
+
+
+	@Benchmark
+	public void executeRunnable() {
+
+		threadPool.executeRunnable( task );
+	}
+
+
+	public static void main( String[] args ) throws Exception {
+
+		Options options = new OptionsBuilder()
+				.include( BlockingThreadPoolBenchmark.class.getSimpleName() )
+				.build();
+
+		new Runner( options ).run();
+	}
+}
@@ -1,6 +1,15 @@
 package com.javaspeak.java_examples.concurrency.semaphore;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
@@ -49,4 +58,106 @@ public class SemaphoreExampleTest {
     	// The thread has completed so it should have been given back to the pool
     	Assert.assertEquals( threadPool.numberFreeThreads(), 4 );
     }
+
+
+    @Test
+    public void threadsAreReusedTest() throws InterruptedException {
+
+    	try ( BlockingThreadPool pool = new BlockingThreadPoolImpl( 4 ) ) {
+
+    		int taskCount = 10000;
+    		Set<String> threadNames = ConcurrentHashMap.newKeySet();
+    		CountDownLatch done = new CountDownLatch( taskCount );
+
+    		for ( int i = 0; i < taskCount; i++ ) {
+
+    			pool.executeRunnable( () -> {
+
+    				threadNames.add( Thread.currentThread().getName() );
+    				done.countDown();
+    			} );
+    		}
+
+    		Assert.assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+    		Assert.assertTrue( threadNames.size() <= 4 );
+
+    		for ( String threadName : threadNames ) {
+
+    			Assert.assertTrue( threadName.startsWith( "blocking-thread-pool-" ) );
+    		}
+    	}
+    }
+
+
+    @Test
+    public void blocksWhenAllThreadsBusyTest() throws Exception {
+
+    	CountDownLatch release = new CountDownLatch( 1 );
+    	AtomicInteger ran = new AtomicInteger( 0 );
+
+    	try ( BlockingThreadPool pool = new BlockingThreadPoolImpl( 2 ) ) {
+
+    		Runnable blocked = () -> {
+
+    			try {
+    				release.await();
+    				ran.incrementAndGet();
+    			}
+    			catch ( InterruptedException e ) {
+
+    				Thread.currentThread().interrupt();
+    			}
+    		};
+
+    		pool.executeRunnable( blocked );
+    		pool.executeRunnable( blocked );
+    		Assert.assertEquals( pool.numberFreeThreads(), 0 );
+
+    		ExecutorService executorService = Executors.newSingleThreadExecutor();
+    		Future<?> third = executorService.submit( () -> pool.executeRunnable( blocked ) );
+
+    		Thread.sleep( 200 );
+    		Assert.assertFalse( third.isDone() );
+
+    		release.countDown();
+    		third.get( 5, TimeUnit.SECONDS );
+    		executorService.shutdown();
+    	}
+
+    	// close() waits for the running tasks, so all three have finished
+    	Assert.assertEquals( ran.get(), 3 );
+    }
+
+
+    @Test
+    public void failingTaskKeepsThreadTest() throws InterruptedException {
+
+    	try ( BlockingThreadPool pool = new BlockingThreadPoolImpl( 1 ) ) {
+
+    		CountDownLatch done = new CountDownLatch( 1 );
+
+    		pool.executeRunnable( () -> {
+
+    			throw new IllegalStateException( "Thrown on purpose by failingTaskKeepsThreadTest" );
+    		} );
+
+    		pool.executeRunnable( done::countDown );
+    		Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+    	}
+    }
+
+
+    @Test( expectedExceptions = RejectedExecutionException.class )
+    public void closedTest() {
+
+    	BlockingThreadPool pool = new BlockingThreadPoolImpl( 2 );
+    	AtomicInteger ran = new AtomicInteger( 0 );
+
+    	pool.executeRunnable( ran::incrementAndGet );
+    	pool.close();
+
+    	// close() waits for the tasks already submitted
+    	Assert.assertEquals( ran.get(), 1 );
+    	pool.executeRunnable( ran::incrementAndGet );
+    }
 }
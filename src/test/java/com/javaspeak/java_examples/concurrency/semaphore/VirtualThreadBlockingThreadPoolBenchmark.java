@@ -0,0 +1,112 @@
+package com.javaspeak.java_examples.concurrency.semaphore;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of how long VirtualThreadBlockingThreadPoolImpl takes to run taskCount tasks which
+ * each wait sleepMillis milliseconds, as if for I/O, with at most maxConcurrency of them running
+ * at once.  The virtual threads run on 2 carrier threads, so 1,000,000 tasks can only finish in
+ * a few seconds, rather than the 5,000 seconds 2 platform threads would take, because a sleeping
+ * virtual thread leaves its carrier thread.  taskCount / maxConcurrency * sleepMillis, 1 second
+ * here, is the lower bound; starting a million virtual threads takes most of the rest.
+ * <p>
+ * Virtual threads need Java 21, so the benchmark must be run on Java 21 or later.
+ * <p>
+ * Run main(..) or, after mvn test-compile, from the command line with the test classpath:
+ * <p>
+ *     java -cp ... org.openjdk.jmh.Main VirtualThreadBlockingThreadPoolBenchmark
+ *
+ * @author John Dickerson - 18 Oct 2026
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 1 )
+@Measurement( iterations = 3 )
+@Fork( value = 1, jvmArgsAppend = {
+		"-Xmx2g", "-Djdk.virtualThreadScheduler.parallelism=2",
+		"-Djdk.virtualThreadScheduler.maxPoolSize=2" } )
+@State( Scope.Benchmark )
+public class VirtualThreadBlockingThreadPoolBenchmark {
+
+	@Param( { "1000000" } )
+	public int taskCount;
+
+	@Param( { "10000" } )
+	public int maxConcurrency;
+
+	@Param( { "10" } )
+	public int sleepMillis;
+
+	private VirtualThreadBlockingThreadPoolImpl threadPool;
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+
+		threadPool = new VirtualThreadBlockingThreadPoolImpl( maxConcurrency );
+	}
+
+
+	@TearDown( Level.Trial )
+	public void tearDown() {
+
+		threadPool.close();
+	}
+
+
+	@Benchmark
+	public void ioTasks() throws InterruptedException {
+
+		CountDownLatch done = new CountDownLatch( taskCount );
+
+		for ( int i = 0; i < taskCount; i++ ) {
+
+			threadPool.executeRunnable( () -> {
+
+				try {
+					Thread.sleep( sleepMillis );
+				}
+				catch ( InterruptedException e ) {
+
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					done.countDown();
+				}
+			} );
+		}
+
+		done.await();
+	}
+
+
+	public static void main( String[] args ) throws Exception {
+
+		if ( !VirtualThreadBlockingThreadPoolImpl.isSupported() ) {
+
+			throw new UnsupportedOperationException( "Virtual threads need Java 21" );
+		}
+
+		OptionsBuilder optionsBuilder = new OptionsBuilder();
+		optionsBuilder.include( VirtualThreadBlockingThreadPoolBenchmark.class.getSimpleName() );
+
+		new Runner( optionsBuilder.build() ).run();
+	}
+}
@@ -0,0 +1,153 @@
+package com.javaspeak.java_examples.concurrency.semaphore;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.TestNG;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class VirtualThreadBlockingThreadPoolTest {
+
+	private static void skipWithoutVirtualThreads() {
+
+		if ( !VirtualThreadBlockingThreadPoolImpl.isSupported() ) {
+
+			throw new SkipException( "Virtual threads need Java 21" );
+		}
+	}
+
+
+	@Test
+	public void semaphoreLimitsConcurrencyTest() throws InterruptedException {
+
+		skipWithoutVirtualThreads();
+
+		try ( VirtualThreadBlockingThreadPoolImpl pool =
+				new VirtualThreadBlockingThreadPoolImpl( 5 ) ) {
+
+			int taskCount = 200;
+			CountDownLatch done = new CountDownLatch( taskCount );
+			AtomicInteger running = new AtomicInteger( 0 );
+			AtomicInteger maxRunning = new AtomicInteger( 0 );
+
+			for ( int i = 0; i < taskCount; i++ ) {
+
+				pool.executeRunnable( () -> {
+
+					maxRunning.accumulateAndGet( running.incrementAndGet(), Math::max );
+
+					try {
+						// An I/O wait
+						Thread.sleep( 2 );
+					}
+					catch ( InterruptedException e ) {
+
+						Thread.currentThread().interrupt();
+					}
+					finally {
+						running.decrementAndGet();
+						done.countDown();
+					}
+				} );
+			}
+
+			Assert.assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+			Assert.assertTrue( maxRunning.get() <= 5 );
+			Assert.assertTrue( maxRunning.get() >= 1 );
+		}
+	}
+
+
+	@Test
+	public void pinningReportedTest() throws InterruptedException {
+
+		skipWithoutVirtualThreads();
+
+		if ( Runtime.version().feature() >= 24 ) {
+
+			// Since Java 24 a virtual thread waiting inside a synchronized block unmounts
+			throw new SkipException( "synchronized no longer pins virtual threads" );
+		}
+
+		AtomicInteger pinned = new AtomicInteger( 0 );
+		Object lock = new Object();
+
+		try ( VirtualThreadBlockingThreadPoolImpl pool = new VirtualThreadBlockingThreadPoolImpl(
+				2, event -> pinned.incrementAndGet(), Duration.ofMillis( 10 ) ) ) {
+
+			pool.executeRunnable( () -> {
+
+				synchronized ( lock ) {
+
+					try {
+						Thread.sleep( 100 );
+					}
+					catch ( InterruptedException e ) {
+
+						Thread.currentThread().interrupt();
+					}
+				}
+			} );
+
+			// JFR hands the events to the stream about once a second
+			for ( int i = 0; i < 100 && pool.getPinnedCount() == 0; i++ ) {
+
+				Thread.sleep( 100 );
+			}
+
+			Assert.assertTrue( pool.getPinnedCount() > 0 );
+			Assert.assertTrue( pinned.get() > 0 );
+		}
+	}
+
+
+	@Test( expectedExceptions = RejectedExecutionException.class )
+	public void closedTest() {
+
+		skipWithoutVirtualThreads();
+
+		VirtualThreadBlockingThreadPoolImpl pool = new VirtualThreadBlockingThreadPoolImpl( 2 );
+		AtomicInteger ran = new AtomicInteger( 0 );
+
+		for ( int i = 0; i < 8; i++ ) {
+
+			pool.executeRunnable( ran::incrementAndGet );
+		}
+
+		pool.close();
+
+		// close() waits for the tasks already submitted
+		Assert.assertEquals( ran.get(), 8 );
+		pool.executeRunnable( ran::incrementAndGet );
+	}
+
+
+	@Test
+	public void unsupportedTest() {
+
+		if ( VirtualThreadBlockingThreadPoolImpl.isSupported() ) {
+
+			throw new SkipException( "Virtual threads are supported" );
+		}
+
+		Assert.assertThrows(
+				UnsupportedOperationException.class,
+				() -> new VirtualThreadBlockingThreadPoolImpl( 2 ) );
+	}
+
+
+	public static void main( String[] args ) {
+
+		TestNG testng = new TestNG();
+		testng.setTestClasses( new Class[] { VirtualThreadBlockingThreadPoolTest.class } );
+		testng.run();
+	}
+}
@@ -0,0 +1,166 @@
+package com.javaspeak.java_examples.concurrency.semaphore;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.TestNG;
+import org.testng.annotations.Test;
+
+/**
+ * @author John Dickerson - 18 Oct 2026
+ */
+public class WorkStealingBlockingThreadPoolTest {
+
+	@Test
+	public void threadsAreReusedTest() throws InterruptedException {
+
+		try ( BlockingThreadPool pool = new WorkStealingBlockingThreadPoolImpl( 4, 64 ) ) {
+
+			int taskCount = 10000;
+			Set<String> threadNames = ConcurrentHashMap.newKeySet();
+			CountDownLatch done = new CountDownLatch( taskCount );
+
+			for ( int i = 0; i < taskCount; i++ ) {
+
+				pool.executeRunnable( () -> {
+
+					threadNames.add( Thread.currentThread().getName() );
+					done.countDown();
+				} );
+			}
+
+			Assert.assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+			Assert.assertTrue( threadNames.size() <= 4 );
+
+			for ( String threadName : threadNames ) {
+
+				Assert.assertTrue( threadName.startsWith( "work-stealing-thread-pool-" ) );
+			}
+		}
+	}
+
+
+	@Test
+	public void idleWorkersStealTest() throws InterruptedException {
+
+		try ( WorkStealingBlockingThreadPoolImpl pool =
+				new WorkStealingBlockingThreadPoolImpl( 4, 1000 ) ) {
+
+			int subtaskCount = 200;
+			CountDownLatch done = new CountDownLatch( subtaskCount );
+
+			// Every subtask goes onto the deque of the worker running this task, which then waits
+			// for them, so the other workers can only run them by stealing
+			pool.executeRunnable( () -> {
+
+				for ( int i = 0; i < subtaskCount; i++ ) {
+
+					pool.executeRunnable( done::countDown );
+				}
+
+				try {
+					done.await();
+				}
+				catch ( InterruptedException e ) {
+
+					Thread.currentThread().interrupt();
+				}
+			} );
+
+			Assert.assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+			Assert.assertTrue( pool.getStealCount() > 0 );
+		}
+	}
+
+
+	@Test
+	public void blocksAtInFlightLimitTest() throws Exception {
+
+		try ( BlockingThreadPool pool = new WorkStealingBlockingThreadPoolImpl( 2, 3 ) ) {
+
+			CountDownLatch release = new CountDownLatch( 1 );
+
+			Runnable blocked = () -> {
+
+				try {
+					release.await();
+				}
+				catch ( InterruptedException e ) {
+
+					Thread.currentThread().interrupt();
+				}
+			};
+
+			// 2 tasks running and 1 queued
+			for ( int i = 0; i < 3; i++ ) {
+
+				pool.executeRunnable( blocked );
+			}
+
+			Assert.assertEquals( pool.numberFreeThreads(), 0 );
+
+			ExecutorService executorService = Executors.newSingleThreadExecutor();
+			Future<?> fourth = executorService.submit( () -> pool.executeRunnable( blocked ) );
+
+			Thread.sleep( 200 );
+			Assert.assertFalse( fourth.isDone() );
+
+			release.countDown();
+			fourth.get( 5, TimeUnit.SECONDS );
+			executorService.shutdown();
+		}
+	}
+
+
+	@Test
+	public void failingTaskKeepsThreadTest() throws InterruptedException {
+
+		try ( BlockingThreadPool pool = new WorkStealingBlockingThreadPoolImpl( 1 ) ) {
+
+			CountDownLatch done = new CountDownLatch( 1 );
+
+			pool.executeRunnable( () -> {
+
+				throw new IllegalStateException( "Thrown on purpose by failingTaskKeepsThreadTest" );
+			} );
+
+			pool.executeRunnable( done::countDown );
+			Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+		}
+	}
+
+
+	@Test( expectedExceptions = RejectedExecutionException.class )
+	public void closedTest() {
+
+		BlockingThreadPool pool = new WorkStealingBlockingThreadPoolImpl( 2, 8 );
+		AtomicInteger ran = new AtomicInteger( 0 );
+
+		for ( int i = 0; i < 8; i++ ) {
+
+			pool.executeRunnable( ran::incrementAndGet );
+		}
+
+		pool.close();
+
+		// close() waits for the tasks already submitted
+		Assert.assertEquals( ran.get(), 8 );
+		pool.executeRunnable( ran::incrementAndGet );
+	}
+
+
+	public static void main( String[] args ) {
+
+		TestNG testng = new TestNG();
+		testng.setTestClasses( new Class[] { WorkStealingBlockingThreadPoolTest.class } );
+		testng.run();
+	}
+}